@@ -13,7 +13,12 @@
 
 package org.pentaho.metastore.api;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.pentaho.metastore.api.exceptions.MetaStoreDependenciesExistsException;
 import org.pentaho.metastore.api.exceptions.MetaStoreElementExistException;
@@ -231,6 +236,30 @@ public interface IMetaStore {
     return getElements( namespace, elementType, lock );
   }
 
+  /**
+   * Retrieve all the elements belonging to an element type, optionally without reading more than their IDs and names.
+   * Listing the names of a large element type is a lot cheaper that way.
+   *
+   * @param namespace
+   *          The namespace to reference
+   * @param elementType
+   *          The type of element to retrieve
+   * @param lock
+   *          lock the metastore for modification
+   * @param exceptionList
+   *          An empty list to be populated by any MetaStoreException that occur on single entries in the list.
+   * @param lazy
+   *          true to return elements that only read their attributes, owner and permissions when they are first used.
+   *          Stores that can't do this return complete elements.
+   * @return A list of entities
+   * @throws MetaStoreException
+   *           In case there is a problem in the underlying store that was not added to the exceptionList
+   */
+  public default List<IMetaStoreElement> getElements( String namespace, IMetaStoreElementType elementType, boolean lock,
+      List<MetaStoreException> exceptionList, boolean lazy ) throws MetaStoreException {
+    return getElements( namespace, elementType, lock, exceptionList );
+  }
+
   /**
    * Retrieve all the element IDs belonging to a meta store element type
    * 
@@ -244,6 +273,74 @@ public interface IMetaStore {
    */
   public List<String> getElementIds( String namespace, IMetaStoreElementType elementType ) throws MetaStoreException;
 
+  /**
+   * Count the elements belonging to an element type without loading them
+   *
+   * @param namespace
+   *          The namespace to reference
+   * @param elementType
+   *          The element type
+   * @return The number of elements
+   * @throws MetaStoreException
+   *           in case there is a problem in the underlying store
+   */
+  public default int countElements( String namespace, IMetaStoreElementType elementType ) throws MetaStoreException {
+    return getElementIds( namespace, elementType ).size();
+  }
+
+  /**
+   * Check if an element exists without loading it
+   *
+   * @param namespace
+   *          The namespace
+   * @param elementType
+   *          The type
+   * @param elementId
+   *          The element ID
+   * @return true if there is an element with the ID
+   * @throws MetaStoreException
+   *           in case there is a problem in the underlying store
+   */
+  public default boolean elementExists( String namespace, IMetaStoreElementType elementType, String elementId )
+    throws MetaStoreException {
+    return getElement( namespace, elementType, elementId ) != null;
+  }
+
+  /**
+   * Retrieve a page of the elements belonging to an element type, sorted by name or by modification time. Only the
+   * elements on the page are loaded by stores that can sort without loading every element.
+   *
+   * @param namespace
+   *          The namespace to reference
+   * @param elementType
+   *          The type of element to retrieve
+   * @param order
+   *          The order of the elements
+   * @param offset
+   *          The number of elements to skip
+   * @param limit
+   *          The maximum number of elements to return
+   * @return The elements on the page, an empty list past the last page
+   * @throws MetaStoreException
+   *           in case there is a problem in the underlying store or the store can't sort in the given order
+   */
+  public default List<IMetaStoreElement> getElementsPage( String namespace, IMetaStoreElementType elementType,
+      MetaStoreElementOrder order, int offset, int limit ) throws MetaStoreException {
+    if ( order != MetaStoreElementOrder.NAME ) {
+      throw new MetaStoreException( "Metastore '" + getName() + "' can't sort elements in order " + order );
+    }
+    if ( offset < 0 || limit < 0 ) {
+      throw new IllegalArgumentException( "The offset and the limit of a page can't be negative" );
+    }
+    List<IMetaStoreElement> elements = new ArrayList<IMetaStoreElement>( getElements( namespace, elementType ) );
+    if ( offset >= elements.size() ) {
+      return new ArrayList<IMetaStoreElement>();
+    }
+    Collections.sort( elements, MetaStoreElementOrder.ELEMENT_NAME_ORDER );
+    return new ArrayList<IMetaStoreElement>(
+      elements.subList( offset, (int) Math.min( (long) offset + limit, elements.size() ) ) );
+  }
+
   /**
    * Load the meta store element with the specified namespace, element type ID and element ID
    * 
@@ -297,6 +394,63 @@ public interface IMetaStore {
     return getElementByName( namespace, elementType, name );
   }
 
+  /**
+   * Load a number of elements with the specified namespace, element type and element IDs. Stores can implement this a
+   * lot faster than loading the elements one by one.
+   *
+   * @param namespace
+   *          The namespace
+   * @param elementType
+   *          The type
+   * @param elementIds
+   *          The element IDs
+   * @return The elements by ID in the order of the IDs. Elements that weren't found are left out.
+   * @throws MetaStoreException
+   *           in case there is a problem in the underlying store
+   */
+  public default Map<String, IMetaStoreElement> getElementsByIds( String namespace, IMetaStoreElementType elementType,
+      Collection<String> elementIds ) throws MetaStoreException {
+    Map<String, IMetaStoreElement> elements = new LinkedHashMap<>();
+    for ( String elementId : elementIds ) {
+      if ( !elements.containsKey( elementId ) ) {
+        IMetaStoreElement element = getElement( namespace, elementType, elementId );
+        if ( element != null ) {
+          elements.put( elementId, element );
+        }
+      }
+    }
+    return elements;
+  }
+
+  /**
+   * Find a number of elements in a namespace with a particular type, using their names. Stores can implement this a lot
+   * faster than finding the elements one by one.
+   *
+   * @param namespace
+   *          The namespace to reference
+   * @param elementType
+   *          The element type to search
+   * @param names
+   *          The names to look for
+   * @return The first encountered element with every name, by name in the order of the names. Names that couldn't be
+   *         matched are left out.
+   * @throws MetaStoreException
+   *           in case there is a problem in the underlying store
+   */
+  public default Map<String, IMetaStoreElement> getElementsByNames( String namespace,
+      IMetaStoreElementType elementType, Collection<String> names ) throws MetaStoreException {
+    Map<String, IMetaStoreElement> elements = new LinkedHashMap<>();
+    for ( String name : names ) {
+      if ( !elements.containsKey( name ) ) {
+        IMetaStoreElement element = getElementByName( namespace, elementType, name );
+        if ( element != null ) {
+          elements.put( name, element );
+        }
+      }
+    }
+    return elements;
+  }
+
   /**
    * Create a new element for a element type in a namespace
    * 
@@ -346,6 +500,102 @@ public interface IMetaStore {
   public void updateElement( String namespace, IMetaStoreElementType elementType, String elementId,
       IMetaStoreElement element ) throws MetaStoreException;
 
+  /**
+   * Create a number of new elements for an element type in a namespace. If an element can't be created, add the error
+   * to exceptionList and continue with the other elements. Stores can implement this a lot faster than creating the
+   * elements one by one.
+   *
+   * @param namespace
+   *          The namespace to reference
+   * @param elementType
+   *          The element type to use
+   * @param elements
+   *          The elements to create
+   * @param exceptionList
+   *          An empty list to be populated by any MetaStoreException that occur on single elements. If it is null, the
+   *          first error is thrown and the remaining elements are not created.
+   * @throws MetaStoreException
+   *           in case there is a problem in the underlying store that was not added to the exceptionList
+   */
+  public default void createElements( String namespace, IMetaStoreElementType elementType,
+      Collection<? extends IMetaStoreElement> elements, List<MetaStoreException> exceptionList )
+    throws MetaStoreException {
+    for ( IMetaStoreElement element : elements ) {
+      try {
+        createElement( namespace, elementType, element );
+      } catch ( Exception e ) {
+        if ( exceptionList == null ) {
+          throw e;
+        }
+        exceptionList.add(
+          new MetaStoreException( "Could not create metaStore element '" + element.getName() + "'", e ) );
+      }
+    }
+  }
+
+  /**
+   * Update a number of elements of an element type in a namespace. Every element is updated with its own ID as the ID
+   * of the old version. If an element can't be updated, add the error to exceptionList and continue with the other
+   * elements.
+   *
+   * @param namespace
+   *          The namespace to reference
+   * @param elementType
+   *          The element type to update
+   * @param elements
+   *          The elements to update, make sure they have the IDs of existing elements!
+   * @param exceptionList
+   *          An empty list to be populated by any MetaStoreException that occur on single elements. If it is null, the
+   *          first error is thrown and the remaining elements are not updated.
+   * @throws MetaStoreException
+   *           in case there is a problem in the underlying store that was not added to the exceptionList
+   */
+  public default void updateElements( String namespace, IMetaStoreElementType elementType,
+      Collection<? extends IMetaStoreElement> elements, List<MetaStoreException> exceptionList )
+    throws MetaStoreException {
+    for ( IMetaStoreElement element : elements ) {
+      try {
+        updateElement( namespace, elementType, element.getId(), element );
+      } catch ( Exception e ) {
+        if ( exceptionList == null ) {
+          throw e;
+        }
+        exceptionList.add(
+          new MetaStoreException( "Could not update metaStore element '" + element.getId() + "'", e ) );
+      }
+    }
+  }
+
+  /**
+   * Remove a number of elements from the metastore in the specified namespace and element type. If an element can't
+   * be removed, add the error to exceptionList and continue with the other elements.
+   *
+   * @param namespace
+   *          The namespace to reference
+   * @param elementType
+   *          The element type to use
+   * @param elementIds
+   *          The IDs of the elements to remove
+   * @param exceptionList
+   *          An empty list to be populated by any MetaStoreException that occur on single elements. If it is null, the
+   *          first error is thrown and the remaining elements are not removed.
+   * @throws MetaStoreException
+   *           in case there is a problem in the underlying store that was not added to the exceptionList
+   */
+  public default void deleteElements( String namespace, IMetaStoreElementType elementType,
+      Collection<String> elementIds, List<MetaStoreException> exceptionList ) throws MetaStoreException {
+    for ( String elementId : elementIds ) {
+      try {
+        deleteElement( namespace, elementType, elementId );
+      } catch ( Exception e ) {
+        if ( exceptionList == null ) {
+          throw e;
+        }
+        exceptionList.add( new MetaStoreException( "Could not delete metaStore element '" + elementId + "'", e ) );
+      }
+    }
+  }
+
   /**
    * Have the meta store generate a new element type for you in the specified namespace
    * 
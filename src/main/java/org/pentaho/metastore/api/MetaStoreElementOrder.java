@@ -0,0 +1,51 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.metastore.api;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * The order in which a page of elements is listed, see
+ * {@link IMetaStore#getElementsPage(String, IMetaStoreElementType, MetaStoreElementOrder, int, int)}
+ */
+public enum MetaStoreElementOrder {
+  /** By name ignoring case, elements with the same name by ID */
+  NAME,
+
+  /** The most recently created or updated elements first, elements modified at the same time by name */
+  LAST_MODIFIED;
+
+  /**
+   * Elements by name ignoring case and then by ID, see {@link #NAME}
+   */
+  public static final Comparator<IMetaStoreElement> ELEMENT_NAME_ORDER = new Comparator<IMetaStoreElement>() {
+    @Override
+    public int compare( IMetaStoreElement element1, IMetaStoreElement element2 ) {
+      int result = getNameSortKey( element1.getName() ).compareTo( getNameSortKey( element2.getName() ) );
+      if ( result == 0 ) {
+        String id1 = element1.getId() == null ? "" : element1.getId();
+        result = id1.compareTo( element2.getId() == null ? "" : element2.getId() );
+      }
+      return result;
+    }
+  };
+
+  /**
+   * @return the name as it is compared when sorting by name: lower case, an empty string for null
+   */
+  public static String getNameSortKey( String name ) {
+    return name == null ? "" : name.toLowerCase( Locale.ROOT );
+  }
+}
@@ -24,6 +24,10 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
 public class MetaStoreOwnerPermissions {
 
   private IMetaStoreElementOwner owner;
@@ -88,6 +92,39 @@ public class MetaStoreOwnerPermissions {
     }
   }
 
+  /**
+   * Load the owner permissions from a streaming reader positioned on the start tag of the owner-permissions element.
+   * The reader is left on the matching end tag.
+   */
+  public MetaStoreOwnerPermissions( XMLStreamReader reader ) throws MetaStoreException, XMLStreamException {
+    this();
+    while ( XmlUtil.nextChildElement( reader ) ) {
+      String nodeName = reader.getLocalName();
+      if ( "owner".equals( nodeName ) ) {
+        owner = new XmlMetaStoreElementOwner( reader );
+        if ( owner.getName() == null || owner.getOwnerType() == null ) {
+          owner = null;
+        }
+      } else if ( "permissions".equals( nodeName ) ) {
+        while ( XmlUtil.nextChildElement( reader ) ) {
+          if ( "permission".equals( reader.getLocalName() ) ) {
+            String permissionString = XmlUtil.getElementValue( reader );
+            try {
+              permissions.add( MetaStoreObjectPermission.valueOf( permissionString ) );
+            } catch ( Exception e ) {
+              throw new MetaStoreException( "Unable to recognize permission '" + permissionString
+                  + "' as one of CREATE, READ, UPDATE or DELETE", e );
+            }
+          } else {
+            XmlUtil.skipElement( reader );
+          }
+        }
+      } else {
+        XmlUtil.skipElement( reader );
+      }
+    }
+  }
+
   public void append( Document doc, Element element ) {
     Element ownerElement = doc.createElement( "owner" );
     if ( owner != null ) {
@@ -104,6 +141,20 @@ public class MetaStoreOwnerPermissions {
     element.appendChild( permissionsElement );
   }
 
+  public void append( XMLStreamWriter writer ) throws XMLStreamException {
+    writer.writeStartElement( "owner" );
+    if ( owner != null ) {
+      ( (XmlMetaStoreElementOwner) owner ).append( writer );
+    }
+    writer.writeEndElement();
+
+    writer.writeStartElement( "permissions" );
+    for ( MetaStoreObjectPermission permission : permissions ) {
+      XmlUtil.writeElement( writer, "permission", permission.name() );
+    }
+    writer.writeEndElement();
+  }
+
   public IMetaStoreElementOwner getOwner() {
     return owner;
   }
@@ -0,0 +1,66 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.persist;
+
+import org.pentaho.metastore.api.IMetaStoreAttribute;
+import org.pentaho.metastore.api.exceptions.MetaStoreException;
+
+/**
+ * Loads and saves the {@link MetaStoreAttribute} fields of one class without reflection.
+ * <p>
+ * Serializers are generated at compile time by
+ * {@link org.pentaho.metastore.persist.processor.MetaStoreSerializerProcessor}. A {@link MetaStoreFactory} uses the
+ * serializer of a class if there is a class with the name of the class followed by {@link #CLASS_NAME_SUFFIX} in the
+ * same class loader, and falls back to reflection if there isn't.
+ *
+ * @param <T>
+ *          the class the serializer is generated for
+ */
+public interface IMetaStoreSerializer<T> {
+
+  /**
+   * Appended to the binary name of a class to get the name of its serializer
+   */
+  String CLASS_NAME_SUFFIX = "_MetaStoreSerializer";
+
+  /**
+   * @return the class the serializer is generated for
+   */
+  Class<T> getType();
+
+  /**
+   * Set the attributes of the object from the children of the parent attribute.
+   *
+   * @param object
+   *          the object to load the attributes into
+   * @param parent
+   *          the element or attribute holding the attributes of the object
+   * @param context
+   *          the factory doing the loading
+   */
+  void loadAttributes( T object, IMetaStoreAttribute parent, IMetaStoreSerializerContext context )
+    throws MetaStoreException;
+
+  /**
+   * Add the attributes of the object to the parent attribute.
+   *
+   * @param object
+   *          the object to save the attributes of
+   * @param parent
+   *          the element or attribute to add the attributes to
+   * @param context
+   *          the factory doing the saving
+   */
+  void saveAttributes( T object, IMetaStoreAttribute parent, IMetaStoreSerializerContext context )
+    throws MetaStoreException;
+}
@@ -0,0 +1,90 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.persist;
+
+import java.util.Date;
+
+import org.pentaho.metastore.api.IMetaStoreAttribute;
+import org.pentaho.metastore.api.exceptions.MetaStoreException;
+
+/**
+ * What a generated {@link IMetaStoreSerializer} gets from the {@link MetaStoreFactory} using it: the conversions that
+ * depend on the factory and its metastore, and the reflective loading and saving of the attributes the serializer
+ * doesn't handle itself, like lists, references and nested objects.
+ */
+public interface IMetaStoreSerializerContext {
+
+  /**
+   * @return the child of the parent with the given key or one of its older keys from {@link MetaStoreKeyMap}, null if
+   *         there is no such child or it has neither a value nor children.
+   */
+  IMetaStoreAttribute getChild( IMetaStoreAttribute parent, String key );
+
+  /**
+   * @return the value of the attribute as a string, decoded with the two way password encoder of the metastore if
+   *         password is true
+   */
+  String getString( IMetaStoreAttribute attribute, boolean password );
+
+  /**
+   * @return the value encoded with the two way password encoder of the metastore
+   */
+  String encodePassword( String value );
+
+  /**
+   * @return the date in the string or null if the string is null
+   * @throws MetaStoreException
+   *           if the string isn't a date saved by a factory
+   */
+  Date parseDate( String value ) throws MetaStoreException;
+
+  /**
+   * @return the date as a string or null if the date is null
+   */
+  String formatDate( Date date );
+
+  /**
+   * @return a new attribute of the metastore
+   */
+  IMetaStoreAttribute newAttribute( String key, Object value ) throws MetaStoreException;
+
+  /**
+   * Load one attribute of the object with reflection.
+   *
+   * @param parentClass
+   *          the class the serializer is generated for
+   * @param object
+   *          the object to load the attribute into
+   * @param fieldName
+   *          the name of the annotated field
+   * @param child
+   *          the child attribute returned by {@link #getChild(IMetaStoreAttribute, String)}
+   */
+  void loadAttribute( Class<?> parentClass, Object object, String fieldName, IMetaStoreAttribute child )
+    throws MetaStoreException;
+
+  /**
+   * Save one attribute of the object with reflection.
+   *
+   * @param parentClass
+   *          the class the serializer is generated for
+   * @param parent
+   *          the element or attribute to add the attribute to
+   * @param object
+   *          the object to save the attribute of
+   * @param fieldName
+   *          the name of the annotated field
+   */
+  void saveAttribute( Class<?> parentClass, IMetaStoreAttribute parent, Object object, String fieldName )
+    throws MetaStoreException;
+}
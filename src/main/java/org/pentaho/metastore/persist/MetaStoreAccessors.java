@@ -0,0 +1,159 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.persist;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Calls the getters, setters and empty constructors of the classes a {@link MetaStoreFactory} loads and saves.
+ * <p>
+ * Where possible the methods are bound as method handles, which the JIT can inline, instead of going through
+ * {@link Method#invoke(Object, Object...)} with its argument arrays and access checks on every call. Methods that can't
+ * be bound with the access this package has, for example because their class isn't public, are called through
+ * reflection like before, so they fail or succeed the same way.
+ * <p>
+ * Exceptions thrown by the called method are passed on as they are, not wrapped in an
+ * {@link InvocationTargetException}.
+ */
+final class MetaStoreAccessors {
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType( Object.class, Object.class );
+  private static final MethodType SETTER_TYPE = MethodType.methodType( void.class, Object.class, Object.class );
+  private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType( Object.class );
+
+  interface Getter {
+    Object get( Object object ) throws Exception;
+  }
+
+  interface Setter {
+    void set( Object object, Object value ) throws Exception;
+  }
+
+  interface Instantiator {
+    Object newInstance() throws Exception;
+  }
+
+  private MetaStoreAccessors() {
+  }
+
+  /**
+   * @return a getter calling the given method without arguments
+   */
+  static Getter getter( Method method ) {
+    final MethodHandle handle = unreflect( method, GETTER_TYPE );
+    if ( handle == null ) {
+      return reflectiveGetter( method );
+    }
+    return object -> {
+      try {
+        return (Object) handle.invokeExact( object );
+      } catch ( Throwable t ) {
+        throw propagate( t );
+      }
+    };
+  }
+
+  /**
+   * @return a setter calling the given method with one argument
+   */
+  static Setter setter( Method method ) {
+    final MethodHandle handle = unreflect( method, SETTER_TYPE );
+    if ( handle == null ) {
+      return reflectiveSetter( method );
+    }
+    return ( object, value ) -> {
+      try {
+        handle.invokeExact( object, value );
+      } catch ( Throwable t ) {
+        throw propagate( t );
+      }
+    };
+  }
+
+  /**
+   * @return an instantiator calling the empty constructor of the given class
+   */
+  static Instantiator instantiator( Class<?> clazz ) {
+    MethodHandle handle;
+    try {
+      handle = LOOKUP.findConstructor( clazz, MethodType.methodType( void.class ) ).asType( CONSTRUCTOR_TYPE );
+    } catch ( ReflectiveOperationException | RuntimeException e ) {
+      return reflectiveInstantiator( clazz );
+    }
+    final MethodHandle constructor = handle;
+    return () -> {
+      try {
+        return (Object) constructor.invokeExact();
+      } catch ( Throwable t ) {
+        throw propagate( t );
+      }
+    };
+  }
+
+  /**
+   * @return a getter always calling the given method through reflection
+   */
+  static Getter reflectiveGetter( Method method ) {
+    return object -> {
+      try {
+        return method.invoke( object );
+      } catch ( InvocationTargetException e ) {
+        throw propagate( e.getCause() );
+      }
+    };
+  }
+
+  /**
+   * @return a setter always calling the given method through reflection
+   */
+  static Setter reflectiveSetter( Method method ) {
+    return ( object, value ) -> {
+      try {
+        method.invoke( object, value );
+      } catch ( InvocationTargetException e ) {
+        throw propagate( e.getCause() );
+      }
+    };
+  }
+
+  /**
+   * @return an instantiator always calling {@link Class#newInstance()}
+   */
+  static Instantiator reflectiveInstantiator( Class<?> clazz ) {
+    return clazz::newInstance;
+  }
+
+  /**
+   * @return the handle of the method adapted to the given type or null if this package can't access the method
+   */
+  private static MethodHandle unreflect( Method method, MethodType type ) {
+    try {
+      return LOOKUP.unreflect( method ).asType( type );
+    } catch ( IllegalAccessException | RuntimeException e ) {
+      return null;
+    }
+  }
+
+  private static Exception propagate( Throwable t ) {
+    if ( t instanceof Error ) {
+      throw (Error) t;
+    }
+    return t instanceof Exception ? (Exception) t : new InvocationTargetException( t );
+  }
+}
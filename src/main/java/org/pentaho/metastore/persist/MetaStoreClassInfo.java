@@ -0,0 +1,400 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.persist;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.pentaho.metastore.persist.MetaStoreAccessors.Getter;
+import org.pentaho.metastore.persist.MetaStoreAccessors.Instantiator;
+import org.pentaho.metastore.persist.MetaStoreAccessors.Setter;
+
+/**
+ * What a {@link MetaStoreFactory} needs to know about a class to load and save its objects: the element type
+ * annotation, the attributes with their keys and types, and the methods to get and set them. The methods are called
+ * through {@link MetaStoreAccessors}.
+ * <p>
+ * The information is worked out the first time a class is used and then shared by all the factories in all the
+ * threads, so that loading a lot of objects only pays for the reflection once. Method lookups are remembered as well,
+ * including the ones that didn't find anything.
+ */
+class MetaStoreClassInfo {
+
+  enum AttributeType {
+    STRING, INTEGER, LONG, DATE, BOOLEAN, LIST, NAME_REFERENCE, FILENAME_REFERENCE, FACTORY_NAME_REFERENCE, ENUM, POJO;
+  }
+
+  // One instance per class. Unlike a map on the class, a ClassValue doesn't keep plugin classes from being unloaded.
+  //
+  private static final ClassValue<MetaStoreClassInfo> CLASS_INFO = new ClassValue<MetaStoreClassInfo>() {
+    @Override
+    protected MetaStoreClassInfo computeValue( Class<?> type ) {
+      return new MetaStoreClassInfo( type );
+    }
+  };
+
+  private final Class<?> clazz;
+  private final MetaStoreElementType elementType;
+  private final List<Attribute> attributes;
+  private final Map<String, Attribute> attributesByName;
+
+  /** The methods found by getDeclaredMethod() by name and parameter types, empty if there is no such method */
+  private final Map<List<Object>, Optional<Method>> declaredMethods = new ConcurrentHashMap<>();
+
+  /** The public methods found by getMethod() by name and parameter types, empty if there is no such method */
+  private final Map<List<Object>, Optional<Method>> publicMethods = new ConcurrentHashMap<>();
+
+  /** The getters and setters of getDeclaredGetter() and getDeclaredSetter(), empty if there is no such method */
+  private final Map<String, Optional<Getter>> getters = new ConcurrentHashMap<>();
+  private final Map<List<Object>, Optional<Setter>> setters = new ConcurrentHashMap<>();
+
+  private volatile Instantiator instantiator;
+
+  /** The generated serializer, empty if there is none */
+  private volatile Optional<IMetaStoreSerializer<?>> serializer;
+
+  private MetaStoreClassInfo( Class<?> clazz ) {
+    this.clazz = clazz;
+    this.elementType = clazz.getAnnotation( MetaStoreElementType.class );
+
+    List<Attribute> classAttributes = new ArrayList<>();
+    for ( Field field : getFields( clazz ) ) {
+      MetaStoreAttribute annotation = field.getAnnotation( MetaStoreAttribute.class );
+      if ( annotation != null ) {
+        classAttributes.add( new Attribute( this, field, annotation ) );
+      }
+    }
+    this.attributes = Collections.unmodifiableList( classAttributes );
+    this.attributesByName = new HashMap<>();
+    for ( Attribute attribute : classAttributes ) {
+      attributesByName.put( attribute.getName(), attribute );
+    }
+  }
+
+  /**
+   * @return the information about the given class
+   */
+  static MetaStoreClassInfo get( Class<?> clazz ) {
+    return CLASS_INFO.get( clazz );
+  }
+
+  /**
+   * @return the element type annotation of the class or null if it doesn't have one
+   */
+  MetaStoreElementType getElementType() {
+    return elementType;
+  }
+
+  /**
+   * @return the attributes of the class, including the ones declared in its superclasses
+   */
+  List<Attribute> getAttributes() {
+    return attributes;
+  }
+
+  /**
+   * @return the attribute for the field with the given name or null if there is no such attribute
+   */
+  Attribute getAttribute( String fieldName ) {
+    return attributesByName.get( fieldName );
+  }
+
+  /**
+   * @return the serializer generated for the class or null if there is none, see {@link IMetaStoreSerializer}
+   */
+  IMetaStoreSerializer<?> getSerializer() {
+    Optional<IMetaStoreSerializer<?>> classSerializer = serializer;
+    if ( classSerializer == null ) {
+      classSerializer = Optional.ofNullable( findSerializer( clazz ) );
+      serializer = classSerializer;
+    }
+    return classSerializer.orElse( null );
+  }
+
+  private static IMetaStoreSerializer<?> findSerializer( Class<?> clazz ) {
+    ClassLoader classLoader = clazz.getClassLoader();
+    if ( classLoader == null ) {
+      // Classes of the JDK don't have serializers
+      return null;
+    }
+    try {
+      Class<?> serializerClass =
+        Class.forName( clazz.getName() + IMetaStoreSerializer.CLASS_NAME_SUFFIX, true, classLoader );
+      if ( !IMetaStoreSerializer.class.isAssignableFrom( serializerClass ) ) {
+        return null;
+      }
+      IMetaStoreSerializer<?> classSerializer =
+        (IMetaStoreSerializer<?>) serializerClass.getDeclaredConstructor().newInstance();
+      return classSerializer.getType() == clazz ? classSerializer : null;
+    } catch ( ReflectiveOperationException | LinkageError | RuntimeException e ) {
+      // No usable serializer, use reflection
+      return null;
+    }
+  }
+
+  /**
+   * Find a method declared in the class or one of its superclasses, whatever its visibility.
+   *
+   * @return the method or null if there is no such method
+   */
+  Method getDeclaredMethod( String name, Class<?>... parameterTypes ) {
+    return declaredMethods.computeIfAbsent( getMethodKey( name, parameterTypes ),
+      key -> Optional.ofNullable( findDeclaredMethod( clazz, name, parameterTypes ) ) ).orElse( null );
+  }
+
+  /**
+   * @return the getter of {@link #getDeclaredMethod(String, Class...)} without parameters or null if there is no such
+   *         method
+   */
+  Getter getDeclaredGetter( String name ) {
+    return getters.computeIfAbsent( name,
+      key -> Optional.ofNullable( getDeclaredMethod( name ) ).map( MetaStoreAccessors::getter ) ).orElse( null );
+  }
+
+  /**
+   * @return the setter of {@link #getDeclaredMethod(String, Class...)} with the given parameter type or null if there is
+   *         no such method
+   */
+  Setter getDeclaredSetter( String name, Class<?> parameterType ) {
+    return setters.computeIfAbsent( getMethodKey( name, parameterType ),
+      key -> Optional.ofNullable( getDeclaredMethod( name, parameterType ) ).map( MetaStoreAccessors::setter ) )
+      .orElse( null );
+  }
+
+  /**
+   * Create a new object of the class with its empty constructor, like {@link Class#newInstance()}.
+   */
+  Object newInstance() throws Exception {
+    Instantiator classInstantiator = instantiator;
+    if ( classInstantiator == null ) {
+      classInstantiator = MetaStoreAccessors.instantiator( clazz );
+      instantiator = classInstantiator;
+    }
+    return classInstantiator.newInstance();
+  }
+
+  /**
+   * Find a public method of the class, like {@link Class#getMethod(String, Class...)}.
+   *
+   * @throws NoSuchMethodException
+   *           if there is no such method
+   */
+  Method getMethod( String name, Class<?>... parameterTypes ) throws NoSuchMethodException {
+    Optional<Method> method = publicMethods.computeIfAbsent( getMethodKey( name, parameterTypes ), key -> {
+      try {
+        return Optional.of( clazz.getMethod( name, parameterTypes ) );
+      } catch ( NoSuchMethodException | SecurityException e ) {
+        return Optional.empty();
+      }
+    } );
+    if ( !method.isPresent() ) {
+      throw new NoSuchMethodException( clazz.getName() + "." + name + Arrays.toString( parameterTypes ) );
+    }
+    return method.get();
+  }
+
+  private static List<Object> getMethodKey( String name, Class<?>... parameterTypes ) {
+    List<Object> key = new ArrayList<>( parameterTypes.length + 1 );
+    key.add( name );
+    key.addAll( Arrays.asList( parameterTypes ) );
+    return key;
+  }
+
+  private static Method findDeclaredMethod( Class<?> parentClass, String name, Class<?>... parameterTypes ) {
+    while ( parentClass != null && parentClass != Object.class ) {
+      try {
+        return parentClass.getDeclaredMethod( name, parameterTypes );
+      } catch ( NoSuchMethodException | SecurityException e ) {
+        parentClass = parentClass.getSuperclass();
+      }
+    }
+    return null;
+  }
+
+  private static List<Field> getFields( Class<?> clazz ) {
+    Set<String> visitedFieldNames = new HashSet<>();
+    List<Field> fields = new ArrayList<>();
+    while ( clazz != null && clazz != Object.class ) {
+      for ( Field field : clazz.getDeclaredFields() ) {
+        if ( !Modifier.isStatic( field.getModifiers() ) && visitedFieldNames.add( field.getName() ) ) {
+          fields.add( field );
+        }
+      }
+
+      clazz = clazz.getSuperclass();
+    }
+
+    return fields;
+  }
+
+  private static AttributeType determineAttributeType( Field field, MetaStoreAttribute annotation ) {
+    Class<?> fieldClass = field.getType();
+    if ( List.class.equals( fieldClass ) ) {
+      return AttributeType.LIST;
+    }
+    if ( annotation.nameReference() ) {
+      return AttributeType.NAME_REFERENCE;
+    }
+    if ( annotation.filenameReference() ) {
+      return AttributeType.FILENAME_REFERENCE;
+    }
+    if ( annotation.factoryNameReference() ) {
+      return AttributeType.FACTORY_NAME_REFERENCE;
+    }
+    if ( String.class.equals( fieldClass ) ) {
+      return AttributeType.STRING;
+    }
+    if ( int.class.equals( fieldClass ) ) {
+      return AttributeType.INTEGER;
+    }
+    if ( long.class.equals( fieldClass ) ) {
+      return AttributeType.LONG;
+    }
+    if ( Date.class.equals( fieldClass ) ) {
+      return AttributeType.DATE;
+    }
+    if ( boolean.class.equals( fieldClass ) ) {
+      return AttributeType.BOOLEAN;
+    }
+    if ( fieldClass.isEnum() ) {
+      return AttributeType.ENUM;
+    }
+    return AttributeType.POJO;
+  }
+
+  /**
+   * myAttribute ==>  setMyAttribute
+   */
+  static String getSetterMethodName( String name ) {
+    return "set" + name.substring( 0, 1 ).toUpperCase() + name.substring( 1 );
+  }
+
+  /**
+   * myAttribute ==>  getMyAttribute or isMyAttribute
+   */
+  static String getGetterMethodName( String name, boolean isBoolean ) {
+    return ( isBoolean ? "is" : "get" ) + name.substring( 0, 1 ).toUpperCase() + name.substring( 1 );
+  }
+
+  /**
+   * A field annotated with {@link MetaStoreAttribute}
+   */
+  static class Attribute {
+    private final Field field;
+    private final MetaStoreAttribute annotation;
+    private final String key;
+    private final AttributeType type;
+    private final String getterName;
+    private final String setterName;
+    private final Method getter;
+    private final Method setter;
+    private final Getter getterAccessor;
+    private final Setter setterAccessor;
+
+    private Attribute( MetaStoreClassInfo classInfo, Field field, MetaStoreAttribute annotation ) {
+      this.field = field;
+      this.annotation = annotation;
+      String annotationKey = annotation.key();
+      this.key = annotationKey == null || annotationKey.length() == 0 ? field.getName() : annotationKey;
+      this.type = determineAttributeType( field, annotation );
+      this.getterName = getGetterMethodName( field.getName(), type == AttributeType.BOOLEAN );
+      this.setterName = getSetterMethodName( field.getName() );
+      this.getter = classInfo.getDeclaredMethod( getterName );
+      this.setter = classInfo.getDeclaredMethod( setterName, field.getType() );
+      this.getterAccessor = classInfo.getDeclaredGetter( getterName );
+      this.setterAccessor = classInfo.getDeclaredSetter( setterName, field.getType() );
+    }
+
+    /**
+     * @return the name of the field
+     */
+    String getName() {
+      return field.getName();
+    }
+
+    Field getField() {
+      return field;
+    }
+
+    MetaStoreAttribute getAnnotation() {
+      return annotation;
+    }
+
+    /**
+     * @return the key the attribute is stored under
+     */
+    String getKey() {
+      return key;
+    }
+
+    /**
+     * @return the keys the attribute was stored under in earlier versions, read from {@link MetaStoreKeyMap} on every
+     *         call so that keys mapped at any time are seen
+     */
+    List<String> getAliasKeys() {
+      return Arrays.asList( MetaStoreKeyMap.get( key ) );
+    }
+
+    AttributeType getType() {
+      return type;
+    }
+
+    String getGetterName() {
+      return getterName;
+    }
+
+    String getSetterName() {
+      return setterName;
+    }
+
+    /**
+     * @return the getter or null if the class doesn't have one
+     */
+    Method getGetter() {
+      return getter;
+    }
+
+    /**
+     * @return the setter taking the type of the field or null if the class doesn't have one
+     */
+    Method getSetter() {
+      return setter;
+    }
+
+    /**
+     * @return the accessor calling the getter or null if the class doesn't have one
+     */
+    Getter getGetterAccessor() {
+      return getterAccessor;
+    }
+
+    /**
+     * @return the accessor calling the setter or null if the class doesn't have one
+     */
+    Setter getSetterAccessor() {
+      return setterAccessor;
+    }
+  }
+}
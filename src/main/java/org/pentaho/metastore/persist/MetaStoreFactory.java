@@ -20,33 +20,30 @@ import org.pentaho.metastore.api.IMetaStoreElementType;
 import org.pentaho.metastore.api.exceptions.MetaStoreException;
 import org.pentaho.metastore.util.MetaStoreUtil;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.pentaho.metastore.api.IMetaStore;
 import org.pentaho.metastore.api.IMetaStoreAttribute;
 import org.pentaho.metastore.api.IMetaStoreElement;
 import org.pentaho.metastore.api.IMetaStoreElementType;
 import org.pentaho.metastore.api.exceptions.MetaStoreException;
+import org.pentaho.metastore.persist.MetaStoreAccessors.Getter;
+import org.pentaho.metastore.persist.MetaStoreAccessors.Setter;
+import org.pentaho.metastore.persist.MetaStoreClassInfo.Attribute;
 import org.pentaho.metastore.util.MetaStoreUtil;
-import java.util.Set;
 
 public class MetaStoreFactory<T> {
 
-  private enum AttributeType {
-    STRING, INTEGER, LONG, DATE, BOOLEAN, LIST, NAME_REFERENCE, FILENAME_REFERENCE, FACTORY_NAME_REFERENCE, ENUM, POJO;
-  }
-
   private static final String OBJECT_FACTORY_CONTEXT = "_ObjectFactoryContext_";
   private static final String POJO_CHILD = "_POJO_";
 
@@ -60,8 +57,13 @@ public class MetaStoreFactory<T> {
 
   protected IMetaStoreObjectFactory objectFactory;
 
+  /** The elements of this factory loaded as references by other factories, if enabled */
+  private volatile Map<String, Object> referenceCache;
+
   private volatile SimpleDateFormat DATE_FORMAT = new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss.SSS" );
 
+  private final IMetaStoreSerializerContext serializerContext = new SerializerContext();
+
   public MetaStoreFactory( Class<T> clazz, IMetaStore metaStore, String namespace ) {
     this.metaStore = metaStore;
     this.clazz = clazz;
@@ -86,45 +88,53 @@ public class MetaStoreFactory<T> {
   /** Load an element from the metastore, straight into the appropriate class 
    */
   public T loadElement( String name ) throws MetaStoreException {
+    LoadSession session = LoadSession.begin();
+    try {
+      if ( name == null || name.length() == 0 ) {
+        throw new MetaStoreException( "You need to specify the name of an element to load" );
+      }
 
-    if ( name == null || name.length() == 0 ) {
-      throw new MetaStoreException( "You need to specify the name of an element to load" );
-    }
-
-    MetaStoreElementType elementTypeAnnotation = getElementTypeAnnotation();
+      MetaStoreElementType elementTypeAnnotation = getElementTypeAnnotation();
 
-    IMetaStoreElementType elementType = metaStore.getElementTypeByName( namespace, elementTypeAnnotation.name() );
-    if ( elementType == null ) {
-      return null;
-    }
+      IMetaStoreElementType elementType = metaStore.getElementTypeByName( namespace, elementTypeAnnotation.name() );
+      if ( elementType == null ) {
+        return null;
+      }
 
-    IMetaStoreElement element = metaStore.getElementByName( namespace, elementType, name );
-    if ( element == null ) {
-      return null;
+      IMetaStoreElement element = metaStore.getElementByName( namespace, elementType, name );
+      if ( element == null ) {
+        return null;
+      }
+      return loadElement( element );
+    } finally {
+      session.end();
     }
-    return loadElement( element );
   }
 
   /** Load an element from the metastore, straight into the appropriate class
    */
   public T loadElement( String name, boolean lock ) throws MetaStoreException {
+    LoadSession session = LoadSession.begin();
+    try {
+      if ( name == null || name.length() == 0 ) {
+        throw new MetaStoreException( "You need to specify the name of an element to load" );
+      }
 
-    if ( name == null || name.length() == 0 ) {
-      throw new MetaStoreException( "You need to specify the name of an element to load" );
-    }
-
-    MetaStoreElementType elementTypeAnnotation = getElementTypeAnnotation();
+      MetaStoreElementType elementTypeAnnotation = getElementTypeAnnotation();
 
-    IMetaStoreElementType elementType = metaStore.getElementTypeByName( namespace, elementTypeAnnotation.name(), lock );
-    if ( elementType == null ) {
-      return null;
-    }
+      IMetaStoreElementType elementType = metaStore.getElementTypeByName( namespace, elementTypeAnnotation.name(), lock );
+      if ( elementType == null ) {
+        return null;
+      }
 
-    IMetaStoreElement element = metaStore.getElementByName( namespace, elementType, name, lock );
-    if ( element == null ) {
-      return null;
+      IMetaStoreElement element = metaStore.getElementByName( namespace, elementType, name, lock );
+      if ( element == null ) {
+        return null;
+      }
+      return loadElement( element );
+    } finally {
+      session.end();
     }
-    return loadElement( element );
   }
 
   /** Load an element from the metastore, straight into the appropriate class 
@@ -133,7 +143,7 @@ public class MetaStoreFactory<T> {
     T object;
 
     try {
-      object = clazz.newInstance();
+      object = clazz.cast( MetaStoreClassInfo.get( clazz ).newInstance() );
     } catch ( Exception e ) {
       throw new MetaStoreException( "Class " + clazz.getName() + " could not be instantiated. Make sure the empty constructor is present", e );
     }
@@ -146,93 +156,106 @@ public class MetaStoreFactory<T> {
     return object;
   }
 
-  @SuppressWarnings( { "rawtypes", "unchecked" } )
+  @SuppressWarnings( "unchecked" )
   private void loadAttributes( Object parentObject, IMetaStoreAttribute parentElement, Class<?> parentClass ) throws MetaStoreException {
 
+    MetaStoreClassInfo classInfo = MetaStoreClassInfo.get( parentClass );
+    IMetaStoreSerializer<Object> serializer = (IMetaStoreSerializer<Object>) classInfo.getSerializer();
+    if ( serializer != null ) {
+      serializer.loadAttributes( parentObject, parentElement, serializerContext );
+      return;
+    }
+
     // Which are the attributes to load?
     //
-    Field[] fields = getFields( parentClass );
-    for ( Field field : fields ) {
-      MetaStoreAttribute attributeAnnotation = field.getAnnotation( MetaStoreAttribute.class );
-      if ( attributeAnnotation != null ) {
-        String key = attributeAnnotation.key();
-        if ( key == null || key.length() == 0 ) {
-          key = field.getName();
+    for ( Attribute attribute : classInfo.getAttributes() ) {
+      IMetaStoreAttribute child = getChild( parentElement, attribute.getKey(), attribute.getAliasKeys() );
+      if ( child != null ) {
+        loadAttribute( parentClass, parentObject, attribute, child );
+      }
+    }
+  }
+
+  /**
+   * @return the child with the key or one of the alias keys, null if there is no such child or it has neither a value
+   *         nor children
+   */
+  private static IMetaStoreAttribute getChild( IMetaStoreAttribute parentElement, String key, Iterable<String> aliasKeys ) {
+    IMetaStoreAttribute child = parentElement.getChild( key );
+    if ( child == null ) {
+      for ( String aliasKey : aliasKeys ) {
+        child = parentElement.getChild( aliasKey );
+        if ( child != null ) {
+          break;
         }
+      }
+    }
+    if ( child != null && ( child.getValue() != null || !child.getChildren().isEmpty() ) ) {
+      return child;
+    }
+    return null;
+  }
 
-        AttributeType type = determineAttributeType( field, attributeAnnotation );
-        IMetaStoreAttribute child = parentElement.getChild( key );
-        if ( child == null ) {
-          for ( String mappedKey : MetaStoreKeyMap.get( key ) ) {
-            child = parentElement.getChild( mappedKey );
-            if ( child != null ) {
-              break;
-            }
-          }
+  @SuppressWarnings( { "rawtypes", "unchecked" } )
+  private void loadAttribute( Class<?> parentClass, Object parentObject, Attribute attribute, IMetaStoreAttribute child ) throws MetaStoreException {
+    String childValue = MetaStoreUtil.getAttributeString( child );
+    if ( attribute.getAnnotation().password() ) {
+      childValue = metaStore.getTwoWayPasswordEncoder().decode( childValue );
+    }
+    switch ( attribute.getType() ) {
+      case STRING:
+        setAttributeValue( parentObject, attribute, childValue );
+        break;
+      case INTEGER:
+        setAttributeValue( parentObject, attribute, Integer.valueOf( childValue ) );
+        break;
+      case LONG:
+        setAttributeValue( parentObject, attribute, Long.valueOf( childValue ) );
+        break;
+      case BOOLEAN:
+        setAttributeValue( parentObject, attribute, "Y".equalsIgnoreCase( childValue ) );
+        break;
+      case ENUM:
+        Enum<?> enumValue = null;
+        final Class<? extends Enum> enumClass = (Class<? extends Enum>) attribute.getField().getType();
+        if ( childValue != null && childValue.length() > 0 ) {
+          enumValue = Enum.valueOf( enumClass, childValue );
         }
-        if ( child != null && ( child.getValue() != null || !child.getChildren().isEmpty() ) ) {
-          String setterName = getSetterMethodName( field.getName() );
-          String childValue = MetaStoreUtil.getAttributeString( child );
-          if ( attributeAnnotation.password() ) {
-            childValue = metaStore.getTwoWayPasswordEncoder().decode( childValue );
-          }
-          switch ( type ) {
-            case STRING:
-              setAttributeValue( parentClass, parentObject, field.getName(), setterName, String.class, childValue );
-              break;
-            case INTEGER:
-              setAttributeValue( parentClass, parentObject, field.getName(), setterName, int.class, Integer.valueOf( childValue ) );
-              break;
-            case LONG:
-              setAttributeValue( parentClass, parentObject, field.getName(), setterName, long.class, Long.valueOf( childValue ) );
-              break;
-            case BOOLEAN:
-              setAttributeValue( parentClass, parentObject, field.getName(), setterName, boolean.class, "Y".equalsIgnoreCase( childValue ) );
-              break;
-            case ENUM:
-              Enum<?> enumValue = null;
-              final Class<? extends Enum> enumClass = (Class<? extends Enum>) field.getType();
-              if ( childValue != null && childValue.length() > 0 ) {
-                enumValue = Enum.valueOf( enumClass, childValue );
-              }
-              setAttributeValue( parentClass, parentObject, field.getName(), setterName, field.getType(), enumValue );
-              break;
-            case DATE:
-              try {
-                synchronized ( DATE_FORMAT ) {
-                  Date date = childValue == null ? null : DATE_FORMAT.parse( childValue );
-                  setAttributeValue( parentClass, parentObject, field.getName(), setterName, Date.class, date );
-                }
-              } catch ( Exception e ) {
-                throw new MetaStoreException( "Unexpected date parsing problem with value: '" + childValue + "'", e );
-              }
-              break;
-            case LIST:
-              loadAttributesList( parentClass, parentObject, field, child );
-              break;
-            case NAME_REFERENCE:
-              loadNameReference( parentClass, parentObject, field, child, attributeAnnotation );
-              break;
-            case FACTORY_NAME_REFERENCE:
-              Object object = loadFactoryNameReference( parentClass, parentObject, field, child, attributeAnnotation );
-              setAttributeValue( parentClass, parentObject, field.getName(), getSetterMethodName( field.getName() ), field.getType(), object );
-              break;
-            case FILENAME_REFERENCE:
-              loadFilenameReference( parentClass, parentObject, field, child, attributeAnnotation );
-              break;
-            case POJO:
-              Object pojo = loadPojo( parentClass, parentObject, field, child, attributeAnnotation );
-              setAttributeValue( parentClass, parentObject, field.getName(), setterName, field.getType(), pojo );
-              break;
-            default:
-              throw new MetaStoreException( "Only String values are supported at this time" );
+        setAttributeValue( parentObject, attribute, enumValue );
+        break;
+      case DATE:
+        try {
+          synchronized ( DATE_FORMAT ) {
+            Date date = childValue == null ? null : DATE_FORMAT.parse( childValue );
+            setAttributeValue( parentObject, attribute, date );
           }
+        } catch ( Exception e ) {
+          throw new MetaStoreException( "Unexpected date parsing problem with value: '" + childValue + "'", e );
         }
-      }
+        break;
+      case LIST:
+        loadAttributesList( parentClass, parentObject, attribute, child );
+        break;
+      case NAME_REFERENCE:
+        loadNameReference( parentClass, parentObject, attribute, child );
+        break;
+      case FACTORY_NAME_REFERENCE:
+        Object object = loadFactoryNameReference( parentClass, parentObject, attribute, child );
+        setAttributeValue( parentObject, attribute, object );
+        break;
+      case FILENAME_REFERENCE:
+        loadFilenameReference( parentClass, parentObject, attribute, child );
+        break;
+      case POJO:
+        Object pojo = loadPojo( parentClass, parentObject, attribute, child );
+        setAttributeValue( parentObject, attribute, pojo );
+        break;
+      default:
+        throw new MetaStoreException( "Only String values are supported at this time" );
     }
   }
 
-  private Object loadPojo( Class<?> parentClass, Object parentObject, Field field, IMetaStoreAttribute child, MetaStoreAttribute attributeAnnotation ) throws MetaStoreException {
+  private Object loadPojo( Class<?> parentClass, Object parentObject, Attribute attribute, IMetaStoreAttribute child ) throws MetaStoreException {
 
     // There are 2 possible attributes in the child attribute: the object factory and/or the pojo top level attributes
     // If there is no pojo attribute it means the value of the object was null when save so we can stop if that's the case.
@@ -257,7 +280,7 @@ public class MetaStoreFactory<T> {
       Object pojoObject;
       if ( objectFactory == null ) {
         pojoClass = clazz.getClassLoader().loadClass( pojoChildClassName );
-        pojoObject = pojoClass.newInstance();
+        pojoObject = MetaStoreClassInfo.get( pojoClass ).newInstance();
       } else {
         Map<String, String> objectFactoryContext = getObjectFactoryContext( child );
         pojoObject = objectFactory.instantiateClass( pojoChildClassName, objectFactoryContext );
@@ -314,7 +337,7 @@ public class MetaStoreFactory<T> {
     }
   }
 
-  private void loadAttributesList( Class<?> parentClass, Object parentObject, Field field, IMetaStoreAttribute parentElement ) throws MetaStoreException {
+  private void loadAttributesList( Class<?> parentClass, Object parentObject, Attribute attribute, IMetaStoreAttribute parentElement ) throws MetaStoreException {
     try {
 
       if ( parentElement.getValue() == null ) {
@@ -322,12 +345,11 @@ public class MetaStoreFactory<T> {
         return;
       }
 
-      MetaStoreAttribute metaStoreAttribute = field.getAnnotation( MetaStoreAttribute.class );
+      MetaStoreAttribute metaStoreAttribute = attribute.getAnnotation();
 
       // What is the list object to populate?
       //
-      String listGetter = getGetterMethodName( field.getName(), false );
-      Method listGetMethod = parentClass.getMethod( listGetter );
+      Method listGetMethod = MetaStoreClassInfo.get( parentClass ).getMethod( attribute.getGetterName() );
       @SuppressWarnings( "unchecked" )
       List<Object> list = (List<Object>) listGetMethod.invoke( parentObject );
 
@@ -345,7 +367,7 @@ public class MetaStoreFactory<T> {
         if ( metaStoreAttribute != null && metaStoreAttribute.factoryNameReference() ) {
           // Name reference to another factory OR locally embedded POJO
           //
-          Object object = loadFactoryNameReference( parentClass, parentObject, field, child, metaStoreAttribute );
+          Object object = loadFactoryNameReference( parentClass, parentObject, attribute, child );
           if ( object != null ) {
             list.add( object );
           }
@@ -361,7 +383,7 @@ public class MetaStoreFactory<T> {
           Object childObject;
           if ( objectFactory == null ) {
             childClass = clazz.getClassLoader().loadClass( childClassName );
-            childObject = childClass.newInstance();
+            childObject = MetaStoreClassInfo.get( childClass ).newInstance();
           } else {
             Map<String, String> context = getObjectFactoryContext( child );
             childObject = objectFactory.instantiateClass( childClassName, context );
@@ -374,12 +396,12 @@ public class MetaStoreFactory<T> {
       }
     } catch ( Exception e ) {
       e.printStackTrace();
-      throw new MetaStoreException( "Unable to load list attribute for field '" + field.getName() + "'", e );
+      throw new MetaStoreException( "Unable to load list attribute for field '" + attribute.getName() + "'", e );
     }
 
   }
 
-  private void loadNameReference( Class<?> parentClass, Object parentObject, Field field, IMetaStoreAttribute parentElement, MetaStoreAttribute attributeAnnotation ) throws MetaStoreException {
+  private void loadNameReference( Class<?> parentClass, Object parentObject, Attribute attribute, IMetaStoreAttribute parentElement ) throws MetaStoreException {
     try {
 
       if ( parentElement.getValue() == null ) {
@@ -396,6 +418,7 @@ public class MetaStoreFactory<T> {
       }
       // What is the reference list to look up in?
       //
+      MetaStoreAttribute attributeAnnotation = attribute.getAnnotation();
       List<?> list = nameListMap.get( attributeAnnotation.nameListKey() );
       if ( list == null ) {
         // No reference list, developer didn't provide a list!
@@ -403,24 +426,33 @@ public class MetaStoreFactory<T> {
         throw new MetaStoreException( "Unable to find reference list for named objects with key '" + attributeAnnotation.nameListKey() + "', name reference '" + name + "' can not be looked up" );
       }
 
-      for ( Object object : list ) {
-        String verifyName = (String) object.getClass().getMethod( "getName" ).invoke( object );
-        if ( verifyName.equals( name ) ) {
-          // This is the object we want to set on the parent object...
-          // Ex: setDatabaseMeta(), setNameElement()
-          //
-          String setter = getSetterMethodName( field.getName() );
-          Method setterMethod = parentObject.getClass().getMethod( setter, object.getClass() );
-          setterMethod.invoke( parentObject, object );
-          break;
-        }
+      Object object = findReference( list, "getName", name );
+      if ( object != null ) {
+        // This is the object we want to set on the parent object...
+        // Ex: setDatabaseMeta(), setNameElement()
+        //
+        Method setterMethod = MetaStoreClassInfo.get( parentObject.getClass() ).getMethod( attribute.getSetterName(), object.getClass() );
+        setterMethod.invoke( parentObject, object );
       }
     } catch ( Exception e ) {
-      throw new MetaStoreException( "Error lookup up reference for field '" + field.getName() + "'", e );
+      throw new MetaStoreException( "Error lookup up reference for field '" + attribute.getName() + "'", e );
     }
   }
 
-  private Object loadFactoryNameReference( Class<?> parentClass, Object parentObject, Field field, IMetaStoreAttribute parentElement, MetaStoreAttribute attributeAnnotation ) throws MetaStoreException {
+  /**
+   * Look up a name or filename reference. The index of the list is kept for the rest of the top level load, since the
+   * caller can change the objects in the list between loads.
+   */
+  private static Object findReference( List<?> list, String getterName, String name ) throws Exception {
+    LoadSession session = LoadSession.begin();
+    try {
+      return session.getReferenceIndex( list, getterName ).find( name );
+    } finally {
+      session.end();
+    }
+  }
+
+  private Object loadFactoryNameReference( Class<?> parentClass, Object parentObject, Attribute attribute, IMetaStoreAttribute parentElement ) throws MetaStoreException {
     try {
 
       if ( parentElement.getValue() == null ) {
@@ -438,7 +470,7 @@ public class MetaStoreFactory<T> {
       if ( pojoChild != null ) {
         // Simply load POJO and set the name on the object...
         //
-        Object pojo = loadPojo( parentClass, parentObject, field, parentElement, attributeAnnotation );
+        Object pojo = loadPojo( parentClass, parentObject, attribute, parentElement );
 
         // The name is not saved automatically but we have it...
         //
@@ -457,6 +489,7 @@ public class MetaStoreFactory<T> {
 
       // What is the reference list to look up in?
       //
+      MetaStoreAttribute attributeAnnotation = attribute.getAnnotation();
       MetaStoreFactory<?> factory = nameFactoryMap.get( attributeAnnotation.factoryNameKey() );
       if ( factory == null ) {
         // No reference list, developer didn't provide a list!
@@ -464,15 +497,13 @@ public class MetaStoreFactory<T> {
         throw new MetaStoreException( "Unable to find factory to load attribute for factory key '" + attributeAnnotation.factoryNameKey() + "', name reference '" + name + "' can not be looked up" );
       }
 
-      Object object = factory.loadElement( name );
-
-      return object;
+      return factory.loadReferencedElement( name );
     } catch ( Exception e ) {
-      throw new MetaStoreException( "Error lookup up reference for field '" + field.getName() + "'", e );
+      throw new MetaStoreException( "Error lookup up reference for field '" + attribute.getName() + "'", e );
     }
   }
 
-  private void loadFilenameReference( Class<?> parentClass, Object parentObject, Field field, IMetaStoreAttribute parentElement, MetaStoreAttribute attributeAnnotation ) throws MetaStoreException {
+  private void loadFilenameReference( Class<?> parentClass, Object parentObject, Attribute attribute, IMetaStoreAttribute parentElement ) throws MetaStoreException {
     try {
 
       if ( parentElement.getValue() == null ) {
@@ -489,6 +520,7 @@ public class MetaStoreFactory<T> {
       }
       // What is the reference list to look up in?
       //
+      MetaStoreAttribute attributeAnnotation = attribute.getAnnotation();
       List<?> list = filenameListMap.get( attributeAnnotation.filenameListKey() );
       if ( list == null ) {
         // No reference list, developer didn't provide a list!
@@ -496,21 +528,47 @@ public class MetaStoreFactory<T> {
         throw new MetaStoreException( "Unable to find reference list for named objects with key '" + attributeAnnotation.filenameListKey() + "', name reference '" + filename + "' can not be looked up" );
       }
 
-      for ( Object object : list ) {
-        Method getNameMethod = object.getClass().getMethod( "getFilename" );
-        String verifyName = (String) getNameMethod.invoke( object );
-        if ( verifyName.equals( filename ) ) {
-          // This is the object we want to set on the parent object...
-          // Ex: setDatabaseMeta(), setNameElement()
-          //
-          String setter = getSetterMethodName( field.getName() );
-          Method setterMethod = parentObject.getClass().getMethod( setter, object.getClass() );
-          setterMethod.invoke( parentObject, object );
-          break;
-        }
+      Object object = findReference( list, "getFilename", filename );
+      if ( object != null ) {
+        // This is the object we want to set on the parent object...
+        // Ex: setDatabaseMeta(), setNameElement()
+        //
+        Method setterMethod = MetaStoreClassInfo.get( parentObject.getClass() ).getMethod( attribute.getSetterName(), object.getClass() );
+        setterMethod.invoke( parentObject, object );
       }
     } catch ( Exception e ) {
-      throw new MetaStoreException( "Error lookup up reference for field '" + field.getName() + "'", e );
+      throw new MetaStoreException( "Error lookup up reference for field '" + attribute.getName() + "'", e );
+    }
+  }
+
+  /**
+   * Load an element referenced by an object loaded by another factory. Within one call to loadElement() or
+   * getElements() every referenced element is loaded only once, and all the objects referencing it share it. With the
+   * reference cache enabled it's shared across calls as well.
+   */
+  private Object loadReferencedElement( String name ) throws MetaStoreException {
+    Map<String, Object> cache = referenceCache;
+    if ( cache != null ) {
+      Object object = cache.get( name );
+      if ( object != null ) {
+        return object;
+      }
+    }
+
+    LoadSession session = LoadSession.begin();
+    try {
+      Map<String, Object> loaded = session.getLoadedElements( this );
+      if ( loaded.containsKey( name ) ) {
+        return loaded.get( name );
+      }
+      Object object = loadElement( name );
+      loaded.put( name, object );
+      if ( cache != null && object != null ) {
+        cache.put( name, object );
+      }
+      return object;
+    } finally {
+      session.end();
     }
   }
 
@@ -567,101 +625,104 @@ public class MetaStoreFactory<T> {
     } else {
       metaStore.updateElement( namespace, elementType, existingElement.getId(), element );
     }
+    clearReferenceCache( name );
   }
 
+  @SuppressWarnings( "unchecked" )
   private void saveAttributes( IMetaStoreAttribute parentElement, Class<?> parentClass, Object parentObject ) throws MetaStoreException {
     try {
-      Field[] fields = getFields( parentClass );
-      for ( Field field : fields ) {
-        MetaStoreAttribute attributeAnnotation = field.getAnnotation( MetaStoreAttribute.class );
-        if ( attributeAnnotation != null ) {
-          String key = attributeAnnotation.key();
-          if ( key == null || key.length() == 0 ) {
-            key = field.getName();
-          }
-
-          AttributeType type = determineAttributeType( field, attributeAnnotation );
-
-          IMetaStoreAttribute child;
-          switch ( type ) {
-            case STRING:
-              String value = (String) getAttributeValue( parentClass, parentObject, field.getName(), getGetterMethodName( field.getName(), false ) );
-              if ( attributeAnnotation.password() ) {
-                value = metaStore.getTwoWayPasswordEncoder().encode( value );
-              }
-              child = metaStore.newAttribute( key, value );
-              parentElement.addChild( child );
-              break;
-            case INTEGER:
-              int intValue = (Integer) getAttributeValue( parentClass, parentObject, field.getName(), getGetterMethodName( field.getName(), false ) );
-              child = metaStore.newAttribute( key, Integer.toString( intValue ) );
-              parentElement.addChild( child );
-              break;
-            case LONG:
-              long longValue = (Long) getAttributeValue( parentClass, parentObject, field.getName(), getGetterMethodName( field.getName(), false ) );
-              child = metaStore.newAttribute( key, Long.toString( longValue ) );
-              parentElement.addChild( child );
-              break;
-            case BOOLEAN:
-              boolean boolValue = (Boolean) getAttributeValue( parentClass, parentObject, field.getName(), getGetterMethodName( field.getName(), true ) );
-              child = metaStore.newAttribute( key, boolValue ? "Y" : "N" );
-              parentElement.addChild( child );
-              break;
-            case ENUM:
-              Object enumValue = getAttributeValue( parentClass, parentObject, field.getName(), getGetterMethodName( field.getName(), false ) );
-              String name = null;
-              if ( enumValue != null ) {
-                name = (String) getAttributeValue( Enum.class, enumValue, field.getName(), "name" );
-              }
-              child = metaStore.newAttribute( key, name );
-              parentElement.addChild( child );
-              break;
-            case DATE:
-              Date dateValue = (Date) getAttributeValue( parentClass, parentObject, field.getName(), getGetterMethodName( field.getName(), false ) );
-              child = metaStore.newAttribute( key, dateValue == null ? null : DATE_FORMAT.format( dateValue ) );
-              parentElement.addChild( child );
-              break;
-            case LIST:
-              saveListAttribute( parentClass, parentElement, parentObject, field, key );
-              break;
-            case NAME_REFERENCE:
-              saveNameReference( parentClass, parentElement, parentObject, field, key );
-              break;
-            case FACTORY_NAME_REFERENCE:
-              saveFactoryNameReference( parentClass, parentElement, parentObject, field, key );
-              break;
-            case FILENAME_REFERENCE:
-              saveFilenameReference( parentClass, parentElement, parentObject, field, key );
-              break;
-            case POJO:
-              // Create a new empty child element in the parent as a placeholder...
-              //
-              IMetaStoreAttribute pojoChild = metaStore.newAttribute( key, null );
-              parentElement.addChild( pojoChild );
-
-              // Save the POJO and the context in this child element
-              //
-              savePojo( parentClass, pojoChild, parentObject, field );
-              break;
-            default:
-              throw new MetaStoreException( "Only String values are supported at this time" );
-          }
-
-          // TODO: support other field data types...
+      MetaStoreClassInfo classInfo = MetaStoreClassInfo.get( parentClass );
+      IMetaStoreSerializer<Object> serializer = (IMetaStoreSerializer<Object>) classInfo.getSerializer();
+      if ( serializer != null ) {
+        serializer.saveAttributes( parentObject, parentElement, serializerContext );
+        return;
+      }
 
-        }
+      for ( Attribute attribute : classInfo.getAttributes() ) {
+        saveAttribute( parentElement, parentClass, parentObject, attribute );
       }
     } catch ( Exception e ) {
       throw new MetaStoreException( "Unable to save attributes of element id '" + parentElement.getId() + "', class " + parentClass.getName(), e );
     }
   }
 
+  private void saveAttribute( IMetaStoreAttribute parentElement, Class<?> parentClass, Object parentObject, Attribute attribute ) throws MetaStoreException {
+    String key = attribute.getKey();
+
+    IMetaStoreAttribute child;
+    switch ( attribute.getType() ) {
+      case STRING:
+        String value = (String) getAttributeValue( parentClass, parentObject, attribute );
+        if ( attribute.getAnnotation().password() ) {
+          value = metaStore.getTwoWayPasswordEncoder().encode( value );
+        }
+        child = metaStore.newAttribute( key, value );
+        parentElement.addChild( child );
+        break;
+      case INTEGER:
+        int intValue = (Integer) getAttributeValue( parentClass, parentObject, attribute );
+        child = metaStore.newAttribute( key, Integer.toString( intValue ) );
+        parentElement.addChild( child );
+        break;
+      case LONG:
+        long longValue = (Long) getAttributeValue( parentClass, parentObject, attribute );
+        child = metaStore.newAttribute( key, Long.toString( longValue ) );
+        parentElement.addChild( child );
+        break;
+      case BOOLEAN:
+        boolean boolValue = (Boolean) getAttributeValue( parentClass, parentObject, attribute );
+        child = metaStore.newAttribute( key, boolValue ? "Y" : "N" );
+        parentElement.addChild( child );
+        break;
+      case ENUM:
+        Object enumValue = getAttributeValue( parentClass, parentObject, attribute );
+        String name = null;
+        if ( enumValue != null ) {
+          name = ( (Enum<?>) enumValue ).name();
+        }
+        child = metaStore.newAttribute( key, name );
+        parentElement.addChild( child );
+        break;
+      case DATE:
+        Date dateValue = (Date) getAttributeValue( parentClass, parentObject, attribute );
+        child = metaStore.newAttribute( key, dateValue == null ? null : DATE_FORMAT.format( dateValue ) );
+        parentElement.addChild( child );
+        break;
+      case LIST:
+        saveListAttribute( parentClass, parentElement, parentObject, attribute );
+        break;
+      case NAME_REFERENCE:
+        saveNameReference( parentClass, parentElement, parentObject, attribute );
+        break;
+      case FACTORY_NAME_REFERENCE:
+        saveFactoryNameReference( parentClass, parentElement, parentObject, attribute );
+        break;
+      case FILENAME_REFERENCE:
+        saveFilenameReference( parentClass, parentElement, parentObject, attribute );
+        break;
+      case POJO:
+        // Create a new empty child element in the parent as a placeholder...
+        //
+        IMetaStoreAttribute pojoChild = metaStore.newAttribute( key, null );
+        parentElement.addChild( pojoChild );
+
+        // Save the POJO and the context in this child element
+        //
+        savePojo( parentClass, pojoChild, parentObject, attribute );
+        break;
+      default:
+        throw new MetaStoreException( "Only String values are supported at this time" );
+    }
+
+    // TODO: support other field data types...
+  }
+
   @SuppressWarnings( "unchecked" )
-  private void saveListAttribute( Class<?> parentClass, IMetaStoreAttribute parentElement, Object parentObject, Field field, String key ) throws MetaStoreException {
-    List<Object> list = (List<Object>) getAttributeValue( parentClass, parentObject, field.getName(), getGetterMethodName( field.getName(), false ) );
-    IMetaStoreAttribute topChild = metaStore.newAttribute( key, null );
+  private void saveListAttribute( Class<?> parentClass, IMetaStoreAttribute parentElement, Object parentObject, Attribute attribute ) throws MetaStoreException {
+    List<Object> list = (List<Object>) getAttributeValue( parentClass, parentObject, attribute );
+    IMetaStoreAttribute topChild = metaStore.newAttribute( attribute.getKey(), null );
     parentElement.addChild( topChild );
-    MetaStoreAttribute metaStoreAttribute = field.getAnnotation( MetaStoreAttribute.class );
+    MetaStoreAttribute metaStoreAttribute = attribute.getAnnotation();
 
     if ( !list.isEmpty() ) {
       // Save the class name used as well, otherwise we can't re-inflate afterwards...
@@ -680,7 +741,7 @@ public class MetaStoreFactory<T> {
         if ( metaStoreAttribute != null && metaStoreAttribute.factoryNameReference() ) {
           // Is this a list of factory name references?
           //
-          saveFactoryNameReference( parentClass, childAttribute, parentObject, field, object );
+          saveFactoryNameReference( parentClass, childAttribute, parentObject, attribute, object );
 
         } else if ( object instanceof String ) {
           // STRING
@@ -701,31 +762,31 @@ public class MetaStoreFactory<T> {
     }
   }
 
-  private void saveNameReference( Class<?> parentClass, IMetaStoreAttribute parentElement, Object parentObject, Field field, String key ) throws MetaStoreException {
+  private void saveNameReference( Class<?> parentClass, IMetaStoreAttribute parentElement, Object parentObject, Attribute attribute ) throws MetaStoreException {
     // What is the object of which we need to store the name as a reference?
     //
-    Object namedObject = getAttributeValue( parentClass, parentObject, field.getName(), getGetterMethodName( field.getName(), false ) );
+    Object namedObject = getAttributeValue( parentClass, parentObject, attribute );
     String name = null;
     if ( namedObject != null ) {
       name = (String) getAttributeValue( namedObject.getClass(), namedObject, "name", "getName" );
     }
-    IMetaStoreAttribute nameChild = metaStore.newAttribute( key, name );
+    IMetaStoreAttribute nameChild = metaStore.newAttribute( attribute.getKey(), name );
     parentElement.addChild( nameChild );
   }
 
-  private void saveFactoryNameReference( Class<?> parentClass, IMetaStoreAttribute parentElement, Object parentObject, Field field, String key ) throws MetaStoreException {
+  private void saveFactoryNameReference( Class<?> parentClass, IMetaStoreAttribute parentElement, Object parentObject, Attribute attribute ) throws MetaStoreException {
 
     // What is the object of which we need to store the name as a reference?
     //
-    Object namedObject = getAttributeValue( parentClass, parentObject, field.getName(), getGetterMethodName( field.getName(), false ) );
+    Object namedObject = getAttributeValue( parentClass, parentObject, attribute );
     if ( namedObject == null ) {
       // Nothing to see here, move along.
       return;
     }
 
-    IMetaStoreAttribute refChild = metaStore.newAttribute( key, null );
+    IMetaStoreAttribute refChild = metaStore.newAttribute( attribute.getKey(), null );
     parentElement.addChild( refChild );
-    saveFactoryNameReference( parentClass, refChild, parentObject, field, namedObject );
+    saveFactoryNameReference( parentClass, refChild, parentObject, attribute, namedObject );
 
   }
 
@@ -734,12 +795,12 @@ public class MetaStoreFactory<T> {
    * @param parentClass
    * @param targetElement
    * @param parentObject
-   * @param field
-   * @param key
+   * @param attribute
    * @param namedObject
    * @throws MetaStoreException
    */
-  private void saveFactoryNameReference( Class<?> parentClass, IMetaStoreAttribute targetElement, Object parentObject, Field field, Object namedObject ) throws MetaStoreException {
+  @SuppressWarnings( "unchecked" )
+  private void saveFactoryNameReference( Class<?> parentClass, IMetaStoreAttribute targetElement, Object parentObject, Attribute attribute, Object namedObject ) throws MetaStoreException {
     Class<?> namedObjectClass = namedObject.getClass();
 
     // What's the name of this named object?
@@ -749,12 +810,12 @@ public class MetaStoreFactory<T> {
 
     // Do we need to store this named object locally or use a factory to store it centrally?
     //
-    String indicatorName = field.getAnnotation( MetaStoreAttribute.class ).factorySharedIndicatorName();
+    String indicatorName = attribute.getAnnotation().factorySharedIndicatorName();
     if ( indicatorName != null && indicatorName.length() > 0 ) {
       // True : shared
       // False : local embedding of attributes
       //
-      String isSharedMethod = getGetterMethodName( indicatorName, true );
+      String isSharedMethod = MetaStoreClassInfo.getGetterMethodName( indicatorName, true );
       Boolean shared = (Boolean) getAttributeValue( namedObjectClass, namedObject, indicatorName, isSharedMethod );
       if ( shared == null ) {
         throw new MetaStoreException( "Shared indicator attribute is not available through '" + namedObjectClass.getName() + "." + isSharedMethod + "()'" );
@@ -766,19 +827,18 @@ public class MetaStoreFactory<T> {
       }
     }
 
-    String factoryNameKey = field.getAnnotation( MetaStoreAttribute.class ).factoryNameKey();
-    MetaStoreFactory<?> factory = nameFactoryMap.get( factoryNameKey );
+    String factoryNameKey = attribute.getAnnotation().factoryNameKey();
+    MetaStoreFactory<Object> factory = (MetaStoreFactory<Object>) nameFactoryMap.get( factoryNameKey );
 
     try {
-      Method method = factory.getClass().getMethod( "saveElement", Object.class );
-      method.invoke( factory, namedObject );
+      factory.saveElement( namedObject );
     } catch ( Exception e ) {
       throw new MetaStoreException( "Unable to save attribute element of class " + namedObject.getClass() + " in metastore", e );
     }
   }
 
-  private void savePojo( Class<?> parentClass, IMetaStoreAttribute pojoElement, Object parentObject, Field field ) throws MetaStoreException {
-    Object pojo = getAttributeValue( parentClass, parentObject, field.getName(), getGetterMethodName( field.getName(), false ) );
+  private void savePojo( Class<?> parentClass, IMetaStoreAttribute pojoElement, Object parentObject, Attribute attribute ) throws MetaStoreException {
+    Object pojo = getAttributeValue( parentClass, parentObject, attribute );
     savePojo( parentClass, pojoElement, parentObject, pojo );
   }
 
@@ -803,15 +863,15 @@ public class MetaStoreFactory<T> {
     saveAttributes( pojoChild, pojo.getClass(), pojo );
   }
 
-  private void saveFilenameReference( Class<?> parentClass, IMetaStoreAttribute parentElement, Object parentObject, Field field, String key ) throws MetaStoreException {
+  private void saveFilenameReference( Class<?> parentClass, IMetaStoreAttribute parentElement, Object parentObject, Attribute attribute ) throws MetaStoreException {
     // What is the object of which we need to store the filename as a reference?
     //
-    Object namedObject = getAttributeValue( parentClass, parentObject, field.getName(), getGetterMethodName( field.getName(), false ) );
+    Object namedObject = getAttributeValue( parentClass, parentObject, attribute );
     String name = null;
     if ( namedObject != null ) {
       name = (String) getAttributeValue( namedObject.getClass(), namedObject, "filename", "getFilename" );
     }
-    IMetaStoreAttribute nameChild = metaStore.newAttribute( key, name );
+    IMetaStoreAttribute nameChild = metaStore.newAttribute( attribute.getKey(), name );
     parentElement.addChild( nameChild );
   }
 
@@ -841,17 +901,22 @@ public class MetaStoreFactory<T> {
    * @throws MetaStoreException
    */
   public List<T> getElements( boolean lock, List<MetaStoreException> exceptionList ) throws MetaStoreException {
-    MetaStoreElementType elementTypeAnnotation = getElementTypeAnnotation();
-    IMetaStoreElementType elementType = metaStore.getElementTypeByName( namespace, elementTypeAnnotation.name(), lock );
-    if ( elementType == null ) {
-      return Collections.emptyList();
-    }
-    List<IMetaStoreElement> elements = metaStore.getElements( namespace, elementType, lock, exceptionList );
-    List<T> list = new ArrayList<T>( elements.size() );
-    for ( IMetaStoreElement metaStoreElement : elements ) {
-      list.add( loadElement( metaStoreElement ) );
+    LoadSession session = LoadSession.begin();
+    try {
+      MetaStoreElementType elementTypeAnnotation = getElementTypeAnnotation();
+      IMetaStoreElementType elementType = metaStore.getElementTypeByName( namespace, elementTypeAnnotation.name(), lock );
+      if ( elementType == null ) {
+        return Collections.emptyList();
+      }
+      List<IMetaStoreElement> elements = metaStore.getElements( namespace, elementType, lock, exceptionList );
+      List<T> list = new ArrayList<T>( elements.size() );
+      for ( IMetaStoreElement metaStoreElement : elements ) {
+        list.add( loadElement( metaStoreElement ) );
+      }
+      return list;
+    } finally {
+      session.end();
     }
-    return list;
   }
 
   /**
@@ -873,6 +938,7 @@ public class MetaStoreFactory<T> {
     }
 
     metaStore.deleteElement( namespace, elementType, element.getId() );
+    clearReferenceCache( name );
   }
 
   /**
@@ -898,7 +964,10 @@ public class MetaStoreFactory<T> {
       return names;
     }
 
-    List<IMetaStoreElement> elements = metaStore.getElements( namespace, elementType, lock, new ArrayList<MetaStoreException>() );
+    // Only the names are needed, don't read the rest of the elements
+    //
+    List<IMetaStoreElement> elements =
+        metaStore.getElements( namespace, elementType, lock, new ArrayList<MetaStoreException>(), true );
     for ( IMetaStoreElement element : elements ) {
       names.add( element.getName() );
     }
@@ -915,45 +984,8 @@ public class MetaStoreFactory<T> {
     return metaStore.getElementTypeByName( namespace, elementTypeAnnotation.name() );
   }
 
-  private AttributeType determineAttributeType( Field field, MetaStoreAttribute annotation ) throws MetaStoreException {
-    Class<?> fieldClass = field.getType();
-    if ( List.class.equals( fieldClass ) ) {
-      return AttributeType.LIST;
-    }
-    if ( annotation.nameReference() ) {
-      return AttributeType.NAME_REFERENCE;
-    }
-    if ( annotation.filenameReference() ) {
-      return AttributeType.FILENAME_REFERENCE;
-    }
-    if ( annotation.factoryNameReference() ) {
-      return AttributeType.FACTORY_NAME_REFERENCE;
-    }
-    if ( String.class.equals( fieldClass ) ) {
-      return AttributeType.STRING;
-    }
-    if ( int.class.equals( fieldClass ) ) {
-      return AttributeType.INTEGER;
-    }
-    if ( long.class.equals( fieldClass ) ) {
-      return AttributeType.LONG;
-    }
-    if ( Date.class.equals( fieldClass ) ) {
-      return AttributeType.DATE;
-    }
-    if ( boolean.class.equals( fieldClass ) ) {
-      return AttributeType.BOOLEAN;
-    }
-    if ( fieldClass.isEnum() ) {
-      return AttributeType.ENUM;
-    }
-    return AttributeType.POJO;
-
-    // throw new MetaStoreException( "Unable to recognize attribute type for class '" + fieldClass + "'" );
-  }
-
   private MetaStoreElementType getElementTypeAnnotation() throws MetaStoreException {
-    MetaStoreElementType elementTypeAnnotation = clazz.getAnnotation( MetaStoreElementType.class );
+    MetaStoreElementType elementTypeAnnotation = MetaStoreClassInfo.get( clazz ).getElementType();
     if ( elementTypeAnnotation == null ) {
       throw new MetaStoreException( "The class you want to serialize needs to have the @MetaStoreElementType annotation" );
     }
@@ -971,26 +1003,42 @@ public class MetaStoreFactory<T> {
    * @throws MetaStoreException
    */
   private void setAttributeValue( Class<?> parentClass, Object object, String fieldName, String setterName, Class<?> valueClass, Object value ) throws MetaStoreException {
-    Method method = getDeclaredMethod( parentClass, setterName, valueClass );
-    if ( method == null ) {
+    Setter setter = MetaStoreClassInfo.get( parentClass ).getDeclaredSetter( setterName, valueClass );
+    setAttributeValue( setter, object, fieldName, setterName, value );
+  }
+
+  private void setAttributeValue( Object object, Attribute attribute, Object value ) throws MetaStoreException {
+    setAttributeValue( attribute.getSetterAccessor(), object, attribute.getName(), attribute.getSetterName(), value );
+  }
+
+  private void setAttributeValue( Setter setter, Object object, String fieldName, String setterName, Object value ) throws MetaStoreException {
+    if ( setter == null ) {
       throw new MetaStoreException( "Unable to find setter for attribute field : " + fieldName + ". Expected '" + setterName + "'" );
     }
 
     try {
-      method.invoke( object, value );
+      setter.set( object, value );
     } catch ( Exception e ) {
       throw new MetaStoreException( "Unable to set value '" + value + "' using method '" + setterName + "'", e );
     }
   }
 
   private Object getAttributeValue( Class<?> parentClass, Object object, String fieldName, String getterName ) throws MetaStoreException {
-    Method method = getDeclaredMethod( parentClass, getterName );
-    if ( method == null ) {
+    Getter getter = MetaStoreClassInfo.get( parentClass ).getDeclaredGetter( getterName );
+    return getAttributeValue( getter, parentClass, object, fieldName, getterName );
+  }
+
+  private Object getAttributeValue( Class<?> parentClass, Object object, Attribute attribute ) throws MetaStoreException {
+    return getAttributeValue( attribute.getGetterAccessor(), parentClass, object, attribute.getName(), attribute.getGetterName() );
+  }
+
+  private Object getAttributeValue( Getter getter, Class<?> parentClass, Object object, String fieldName, String getterName ) throws MetaStoreException {
+    if ( getter == null ) {
       throw new MetaStoreException( "Unable to find getter for attribute field : " + fieldName + ". Expected '" + getterName + "'" );
     }
 
     try {
-      Object value = method.invoke( object );
+      Object value = getter.get( object );
       return value;
     } catch ( Exception e ) {
       throw new MetaStoreException( "Unable to get value using method '" + getterName + "' on class " + parentClass.getName(), e );
@@ -998,44 +1046,6 @@ public class MetaStoreFactory<T> {
 
   }
 
-  private Method getDeclaredMethod( Class<?> parentClass, String name, Class<?>... parameterTypes ) {
-    if ( parentClass == Object.class ) {
-      return null;
-    }
-    try {
-      return parentClass.getDeclaredMethod( name, parameterTypes );
-    } catch ( NoSuchMethodException | SecurityException e ) {
-      parentClass = parentClass.getSuperclass();
-      return getDeclaredMethod( parentClass, name, parameterTypes );
-    }
-  }
-
-  /**
-   * myAttribute ==>  setMyAttribute
-   */
-  private String getSetterMethodName( String name ) {
-
-    StringBuilder setter = new StringBuilder();
-    setter.append( "set" );
-    setter.append( name.substring( 0, 1 ).toUpperCase() );
-    setter.append( name.substring( 1 ) );
-
-    return setter.toString();
-  }
-
-  /**
-   * myAttribute ==>  getMyAttribute
-   */
-  private String getGetterMethodName( String name, boolean isBoolean ) {
-
-    StringBuilder setter = new StringBuilder();
-    setter.append( isBoolean ? "is" : "get" );
-    setter.append( name.substring( 0, 1 ).toUpperCase() );
-    setter.append( name.substring( 1 ) );
-
-    return setter.toString();
-  }
-
   public IMetaStore getMetaStore() {
     return metaStore;
   }
@@ -1090,20 +1100,161 @@ public class MetaStoreFactory<T> {
     this.objectFactory = objectFactory;
   }
 
-  private Field[] getFields( Class<?> clazz ) {
-    Set<String> visitedFieldNames = new HashSet<>();
-    List<Field> fields = new ArrayList<>();
-    while ( clazz != Object.class ) {
-      for ( Field field : clazz.getDeclaredFields() ) {
-        if ( !Modifier.isStatic( field.getModifiers() ) && !visitedFieldNames.contains( field.getName() ) ) {
-          visitedFieldNames.add( field.getName() );
-          fields.add( field );
+  /**
+   * @return true if the elements of this factory that other factories load as references are cached across calls
+   */
+  public boolean isReferenceCacheEnabled() {
+    return referenceCache != null;
+  }
+
+  /**
+   * Cache the elements of this factory that other factories load as factory name references. Objects loaded at
+   * different times then share the same referenced object, and the metastore is only read the first time.
+   * <p>
+   * Saving or deleting an element through this factory removes it from the cache. Changes made in any other way, for
+   * example by another factory or another process, are only seen after calling {@link #clearReferenceCache()} or
+   * {@link #clearReferenceCache(String)}.
+   *
+   * @param enabled true to cache referenced elements, false to stop caching and clear the cache
+   */
+  public void setReferenceCacheEnabled( boolean enabled ) {
+    if ( enabled ) {
+      if ( referenceCache == null ) {
+        referenceCache = new ConcurrentHashMap<>();
+      }
+    } else {
+      referenceCache = null;
+    }
+  }
+
+  /**
+   * Forget all the cached referenced elements
+   */
+  public void clearReferenceCache() {
+    Map<String, Object> cache = referenceCache;
+    if ( cache != null ) {
+      cache.clear();
+    }
+  }
+
+  /**
+   * Forget the cached referenced element with the given name
+   */
+  public void clearReferenceCache( String name ) {
+    Map<String, Object> cache = referenceCache;
+    if ( cache != null && name != null ) {
+      cache.remove( name );
+    }
+  }
+
+  /**
+   * Gives generated serializers access to this factory
+   */
+  private class SerializerContext implements IMetaStoreSerializerContext {
+
+    @Override
+    public IMetaStoreAttribute getChild( IMetaStoreAttribute parent, String key ) {
+      return MetaStoreFactory.getChild( parent, key, Arrays.asList( MetaStoreKeyMap.get( key ) ) );
+    }
+
+    @Override
+    public String getString( IMetaStoreAttribute attribute, boolean password ) {
+      String value = MetaStoreUtil.getAttributeString( attribute );
+      return password ? metaStore.getTwoWayPasswordEncoder().decode( value ) : value;
+    }
+
+    @Override
+    public String encodePassword( String value ) {
+      return metaStore.getTwoWayPasswordEncoder().encode( value );
+    }
+
+    @Override
+    public Date parseDate( String value ) throws MetaStoreException {
+      if ( value == null ) {
+        return null;
+      }
+      try {
+        synchronized ( DATE_FORMAT ) {
+          return DATE_FORMAT.parse( value );
         }
+      } catch ( Exception e ) {
+        throw new MetaStoreException( "Unexpected date parsing problem with value: '" + value + "'", e );
+      }
+    }
+
+    @Override
+    public String formatDate( Date date ) {
+      if ( date == null ) {
+        return null;
+      }
+      synchronized ( DATE_FORMAT ) {
+        return DATE_FORMAT.format( date );
+      }
+    }
+
+    @Override
+    public IMetaStoreAttribute newAttribute( String key, Object value ) throws MetaStoreException {
+      return metaStore.newAttribute( key, value );
+    }
+
+    @Override
+    public void loadAttribute( Class<?> parentClass, Object object, String fieldName, IMetaStoreAttribute child ) throws MetaStoreException {
+      MetaStoreFactory.this.loadAttribute( parentClass, object, getAttribute( parentClass, fieldName ), child );
+    }
+
+    @Override
+    public void saveAttribute( Class<?> parentClass, IMetaStoreAttribute parent, Object object, String fieldName ) throws MetaStoreException {
+      MetaStoreFactory.this.saveAttribute( parent, parentClass, object, getAttribute( parentClass, fieldName ) );
+    }
+
+    private Attribute getAttribute( Class<?> parentClass, String fieldName ) throws MetaStoreException {
+      Attribute attribute = MetaStoreClassInfo.get( parentClass ).getAttribute( fieldName );
+      if ( attribute == null ) {
+        throw new MetaStoreException( "Class " + parentClass.getName() + " has no attribute field '" + fieldName + "'" );
       }
+      return attribute;
+    }
+  }
 
-      clazz = clazz.getSuperclass();
+  /**
+   * The elements loaded as references during one top level loadElement() or getElements() call in the current thread,
+   * by factory and name, and the indexes of the reference lists looked up in, by getter name and list.
+   */
+  private static class LoadSession {
+
+    private static final ThreadLocal<LoadSession> CURRENT = new ThreadLocal<>();
+
+    private final Map<MetaStoreFactory<?>, Map<String, Object>> loadedElements = new IdentityHashMap<>();
+    private final Map<String, Map<List<?>, MetaStoreReferenceIndex>> referenceIndexes = new HashMap<>();
+    private int depth;
+
+    /**
+     * Join the session of the current thread or start a new one. Every call needs to be followed by {@link #end()}.
+     */
+    static LoadSession begin() {
+      LoadSession session = CURRENT.get();
+      if ( session == null ) {
+        session = new LoadSession();
+        CURRENT.set( session );
+      }
+      session.depth++;
+      return session;
     }
 
-    return fields.toArray( new Field[ 0 ] );
+    void end() {
+      depth--;
+      if ( depth == 0 ) {
+        CURRENT.remove();
+      }
+    }
+
+    Map<String, Object> getLoadedElements( MetaStoreFactory<?> factory ) {
+      return loadedElements.computeIfAbsent( factory, f -> new HashMap<>() );
+    }
+
+    MetaStoreReferenceIndex getReferenceIndex( List<?> list, String getterName ) {
+      return referenceIndexes.computeIfAbsent( getterName, g -> new IdentityHashMap<>() )
+        .computeIfAbsent( list, l -> new MetaStoreReferenceIndex( l, getterName ) );
+    }
   }
 }
@@ -0,0 +1,68 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.persist;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the objects of a name or filename reference list by name, without going over the whole list for every
+ * reference.
+ * <p>
+ * The list belongs to the caller, who can add, remove or rename objects between two loads, so an index only lives
+ * during one top level loadElement() or getElements() call in one thread. The list is only read as far as needed: a
+ * lookup stops at the first object with the name, like a search over the list would, and the next lookups continue
+ * from there. A name that isn't in the list stays missing for the rest of the load.
+ */
+class MetaStoreReferenceIndex {
+
+  private final List<?> list;
+  private final String getterName;
+
+  // The first object with every name in the part of the list read so far
+  //
+  private final Map<String, Object> objects = new HashMap<>();
+  private int indexed;
+
+  /**
+   * @param getterName
+   *          the name of the public method returning the name of an object, getName or getFilename
+   */
+  MetaStoreReferenceIndex( List<?> list, String getterName ) {
+    this.list = list;
+    this.getterName = getterName;
+  }
+
+  /**
+   * @return the first object in the list with the given name or null if there is no such object
+   */
+  Object find( String name ) throws Exception {
+    Object object = objects.get( name );
+    while ( object == null && indexed < list.size() ) {
+      Object candidate = list.get( indexed++ );
+      if ( candidate != null ) {
+        String candidateName = getName( candidate );
+        if ( candidateName != null && objects.putIfAbsent( candidateName, candidate ) == null
+          && candidateName.equals( name ) ) {
+          object = candidate;
+        }
+      }
+    }
+    return object;
+  }
+
+  private String getName( Object object ) throws Exception {
+    return (String) MetaStoreClassInfo.get( object.getClass() ).getMethod( getterName ).invoke( object );
+  }
+}
@@ -0,0 +1,436 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.persist.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import org.pentaho.metastore.persist.IMetaStoreSerializer;
+import org.pentaho.metastore.persist.MetaStoreAttribute;
+import org.pentaho.metastore.persist.MetaStoreElementType;
+
+/**
+ * Generates an {@link IMetaStoreSerializer} for every class with {@link MetaStoreAttribute} fields or a
+ * {@link MetaStoreElementType} annotation, so that a {@link org.pentaho.metastore.persist.MetaStoreFactory} can load
+ * and save its objects without reflection.
+ * <p>
+ * The processor is optional and isn't registered as a service, so it only runs when it's asked for, for example with
+ * <code>javac -processor org.pentaho.metastore.persist.processor.MetaStoreSerializerProcessor</code> or in the
+ * <code>annotationProcessors</code> of the Maven compiler plugin.
+ * <p>
+ * The generated code calls the getters and setters of string, int, long, boolean, date and enum attributes directly.
+ * Lists, references and nested objects are handed back to the factory, as are attributes whose getter or setter can't
+ * be called from the package of the class. Classes that can't be referenced from generated code, like private or
+ * generic classes, don't get a serializer and keep using reflection.
+ */
+@SupportedAnnotationTypes( { "org.pentaho.metastore.persist.MetaStoreElementType",
+  "org.pentaho.metastore.persist.MetaStoreAttribute" } )
+public class MetaStoreSerializerProcessor extends AbstractProcessor {
+
+  private enum AttributeType {
+    STRING, INTEGER, LONG, BOOLEAN, DATE, ENUM, OTHER
+  }
+
+  private final Set<String> generated = new HashSet<>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process( Set<? extends TypeElement> annotations, RoundEnvironment roundEnv ) {
+    Set<TypeElement> types = new LinkedHashSet<>();
+    for ( Element element : roundEnv.getElementsAnnotatedWith( MetaStoreElementType.class ) ) {
+      if ( element.getKind() == ElementKind.CLASS ) {
+        types.add( (TypeElement) element );
+      }
+    }
+    for ( Element element : roundEnv.getElementsAnnotatedWith( MetaStoreAttribute.class ) ) {
+      Element enclosing = element.getEnclosingElement();
+      if ( element.getKind() == ElementKind.FIELD && enclosing.getKind() == ElementKind.CLASS ) {
+        types.add( (TypeElement) enclosing );
+      }
+    }
+
+    for ( TypeElement type : types ) {
+      if ( isAccessible( type, processingEnv.getElementUtils().getPackageOf( type ) )
+        && generated.add( type.getQualifiedName().toString() ) ) {
+        try {
+          generate( type );
+        } catch ( IOException e ) {
+          processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR,
+            "Unable to generate the metastore serializer of " + type.getQualifiedName() + ": " + e.getMessage(), type );
+        }
+      }
+    }
+
+    // Other processors can use the annotations too
+    //
+    return false;
+  }
+
+  /**
+   * @return true if generated code in the given package can refer to the type
+   */
+  private boolean isAccessible( TypeElement type, PackageElement packageElement ) {
+    if ( !type.getTypeParameters().isEmpty() ) {
+      return false;
+    }
+    boolean samePackage = processingEnv.getElementUtils().getPackageOf( type ).equals( packageElement );
+    Element element = type;
+    while ( element instanceof TypeElement ) {
+      TypeElement typeElement = (TypeElement) element;
+      if ( typeElement.getModifiers().contains( Modifier.PRIVATE )
+        || ( !samePackage && !typeElement.getModifiers().contains( Modifier.PUBLIC ) ) ) {
+        return false;
+      }
+      if ( typeElement.getNestingKind() == NestingKind.LOCAL || typeElement.getNestingKind() == NestingKind.ANONYMOUS ) {
+        return false;
+      }
+      if ( typeElement.getNestingKind() == NestingKind.MEMBER
+        && !typeElement.getModifiers().contains( Modifier.STATIC ) ) {
+        return false;
+      }
+      element = typeElement.getEnclosingElement();
+    }
+    return true;
+  }
+
+  private void generate( TypeElement type ) throws IOException {
+    Elements elements = processingEnv.getElementUtils();
+    PackageElement packageElement = elements.getPackageOf( type );
+    String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    String binaryName = elements.getBinaryName( type ).toString();
+    String className =
+      ( packageName.isEmpty() ? binaryName : binaryName.substring( packageName.length() + 1 ) )
+        + IMetaStoreSerializer.CLASS_NAME_SUFFIX;
+    String typeName = type.getQualifiedName().toString();
+
+    List<Attribute> attributes = getAttributes( type, packageElement );
+
+    StringBuilder code = new StringBuilder();
+    code.append( "// Generated by " ).append( getClass().getName() ).append( ", do not edit\n" );
+    if ( !packageName.isEmpty() ) {
+      code.append( "package " ).append( packageName ).append( ";\n" );
+    }
+    code.append( "\n" );
+    code.append( "import org.pentaho.metastore.api.IMetaStoreAttribute;\n" );
+    code.append( "import org.pentaho.metastore.api.exceptions.MetaStoreException;\n" );
+    code.append( "import org.pentaho.metastore.persist.IMetaStoreSerializer;\n" );
+    code.append( "import org.pentaho.metastore.persist.IMetaStoreSerializerContext;\n" );
+    code.append( "\n" );
+    code.append( "public final class " ).append( className ).append( " implements IMetaStoreSerializer<" )
+      .append( typeName ).append( "> {\n" );
+    code.append( "\n" );
+    code.append( "  @Override\n" );
+    code.append( "  public Class<" ).append( typeName ).append( "> getType() {\n" );
+    code.append( "    return " ).append( typeName ).append( ".class;\n" );
+    code.append( "  }\n" );
+    code.append( "\n" );
+    code.append( "  @Override\n" );
+    code.append( "  public void loadAttributes( " ).append( typeName )
+      .append( " object, IMetaStoreAttribute parent, IMetaStoreSerializerContext context )\n" );
+    code.append( "    throws MetaStoreException {\n" );
+    code.append( "    IMetaStoreAttribute child;\n" );
+    code.append( "    String value;\n" );
+    for ( Attribute attribute : attributes ) {
+      appendLoad( code, typeName, attribute );
+    }
+    code.append( "  }\n" );
+    code.append( "\n" );
+    code.append( "  @Override\n" );
+    code.append( "  public void saveAttributes( " ).append( typeName )
+      .append( " object, IMetaStoreAttribute parent, IMetaStoreSerializerContext context )\n" );
+    code.append( "    throws MetaStoreException {\n" );
+    for ( Attribute attribute : attributes ) {
+      appendSave( code, typeName, attribute );
+    }
+    code.append( "  }\n" );
+    code.append( "}\n" );
+
+    String sourceName = packageName.isEmpty() ? className : packageName + "." + className;
+    try ( Writer writer = processingEnv.getFiler().createSourceFile( sourceName, type ).openWriter() ) {
+      writer.write( code.toString() );
+    }
+  }
+
+  private void appendLoad( StringBuilder code, String typeName, Attribute attribute ) {
+    code.append( "    child = context.getChild( parent, " ).append( literal( attribute.key ) ).append( " );\n" );
+    code.append( "    if ( child != null ) {\n" );
+    if ( attribute.setter == null ) {
+      code.append( "      context.loadAttribute( " ).append( typeName ).append( ".class, object, " )
+        .append( literal( attribute.fieldName ) ).append( ", child );\n" );
+    } else {
+      code.append( "      value = context.getString( child, " ).append( attribute.password ).append( " );\n" );
+      code.append( "      object." ).append( attribute.setter ).append( "( " );
+      switch ( attribute.type ) {
+        case STRING:
+          code.append( "value" );
+          break;
+        case INTEGER:
+          code.append( "Integer.parseInt( value )" );
+          break;
+        case LONG:
+          code.append( "Long.parseLong( value )" );
+          break;
+        case BOOLEAN:
+          code.append( "\"Y\".equalsIgnoreCase( value )" );
+          break;
+        case DATE:
+          code.append( "context.parseDate( value )" );
+          break;
+        case ENUM:
+          code.append( "value == null || value.isEmpty() ? null : " ).append( attribute.enumType )
+            .append( ".valueOf( value )" );
+          break;
+        default:
+          throw new IllegalStateException( "Attributes of type " + attribute.type + " are loaded by the factory" );
+      }
+      code.append( " );\n" );
+    }
+    code.append( "    }\n" );
+  }
+
+  private void appendSave( StringBuilder code, String typeName, Attribute attribute ) {
+    if ( attribute.getter == null ) {
+      code.append( "    context.saveAttribute( " ).append( typeName ).append( ".class, parent, object, " )
+        .append( literal( attribute.fieldName ) ).append( " );\n" );
+      return;
+    }
+    String get = "object." + attribute.getter + "()";
+    String value;
+    switch ( attribute.type ) {
+      case STRING:
+        value = attribute.password ? "context.encodePassword( " + get + " )" : get;
+        break;
+      case INTEGER:
+        value = "Integer.toString( " + get + " )";
+        break;
+      case LONG:
+        value = "Long.toString( " + get + " )";
+        break;
+      case BOOLEAN:
+        value = get + " ? \"Y\" : \"N\"";
+        break;
+      case DATE:
+        value = "context.formatDate( " + get + " )";
+        break;
+      case ENUM:
+        code.append( "    {\n" );
+        code.append( "      " ).append( attribute.enumType ).append( " value = " ).append( get ).append( ";\n" );
+        code.append( "      parent.addChild( context.newAttribute( " ).append( literal( attribute.key ) )
+          .append( ", value == null ? null : value.name() ) );\n" );
+        code.append( "    }\n" );
+        return;
+      default:
+        throw new IllegalStateException( "Attributes of type " + attribute.type + " are saved by the factory" );
+    }
+    code.append( "    parent.addChild( context.newAttribute( " ).append( literal( attribute.key ) ).append( ", " )
+      .append( value ).append( " ) );\n" );
+  }
+
+  /**
+   * @return the attributes of the type and its superclasses in the order the factory uses with reflection
+   */
+  private List<Attribute> getAttributes( TypeElement type, PackageElement packageElement ) {
+    Types types = processingEnv.getTypeUtils();
+    List<Attribute> attributes = new ArrayList<>();
+    Set<String> visitedFieldNames = new HashSet<>();
+    TypeElement current = type;
+    while ( current != null && !current.getQualifiedName().contentEquals( Object.class.getName() ) ) {
+      for ( VariableElement field : ElementFilter.fieldsIn( current.getEnclosedElements() ) ) {
+        if ( field.getModifiers().contains( Modifier.STATIC ) ) {
+          continue;
+        }
+        String fieldName = field.getSimpleName().toString();
+        if ( !visitedFieldNames.add( fieldName ) ) {
+          continue;
+        }
+        MetaStoreAttribute annotation = field.getAnnotation( MetaStoreAttribute.class );
+        if ( annotation != null ) {
+          attributes.add( new Attribute( type, packageElement, field, annotation ) );
+        }
+      }
+      Element superclass = types.asElement( current.getSuperclass() );
+      current = superclass instanceof TypeElement ? (TypeElement) superclass : null;
+    }
+    return attributes;
+  }
+
+  private AttributeType getAttributeType( VariableElement field, MetaStoreAttribute annotation ) {
+    if ( annotation.nameReference() || annotation.filenameReference() || annotation.factoryNameReference() ) {
+      return AttributeType.OTHER;
+    }
+    TypeMirror fieldType = field.asType();
+    switch ( fieldType.getKind() ) {
+      case INT:
+        return AttributeType.INTEGER;
+      case LONG:
+        return AttributeType.LONG;
+      case BOOLEAN:
+        return AttributeType.BOOLEAN;
+      case DECLARED:
+        break;
+      default:
+        return AttributeType.OTHER;
+    }
+    if ( isClass( fieldType, String.class ) ) {
+      return AttributeType.STRING;
+    }
+    if ( isClass( fieldType, java.util.Date.class ) ) {
+      return AttributeType.DATE;
+    }
+    Element element = processingEnv.getTypeUtils().asElement( fieldType );
+    if ( element != null && element.getKind() == ElementKind.ENUM ) {
+      return AttributeType.ENUM;
+    }
+    return AttributeType.OTHER;
+  }
+
+  private boolean isClass( TypeMirror type, Class<?> clazz ) {
+    Types types = processingEnv.getTypeUtils();
+    TypeElement classElement = processingEnv.getElementUtils().getTypeElement( clazz.getName() );
+    return classElement != null && types.isSameType( types.erasure( type ), types.erasure( classElement.asType() ) );
+  }
+
+  /**
+   * @return the name of the method if generated code can call it on the type with the given parameter and return
+   *         types, null otherwise
+   */
+  private String findMethod( TypeElement type, PackageElement packageElement, String name, TypeMirror parameterType,
+      TypeMirror returnType ) {
+    Types types = processingEnv.getTypeUtils();
+    Elements elements = processingEnv.getElementUtils();
+    for ( ExecutableElement method : ElementFilter.methodsIn( elements.getAllMembers( type ) ) ) {
+      if ( !method.getSimpleName().contentEquals( name ) ) {
+        continue;
+      }
+      List<? extends VariableElement> parameters = method.getParameters();
+      if ( parameterType == null ? !parameters.isEmpty()
+        : parameters.size() != 1
+          || !types.isSameType( types.erasure( parameters.get( 0 ).asType() ), types.erasure( parameterType ) ) ) {
+        continue;
+      }
+      if ( returnType != null
+        && !types.isSameType( types.erasure( method.getReturnType() ), types.erasure( returnType ) ) ) {
+        continue;
+      }
+      Set<Modifier> modifiers = method.getModifiers();
+      if ( modifiers.contains( Modifier.STATIC ) || modifiers.contains( Modifier.PRIVATE ) ) {
+        return null;
+      }
+      if ( modifiers.contains( Modifier.PUBLIC ) || elements.getPackageOf( method ).equals( packageElement ) ) {
+        return name;
+      }
+      return null;
+    }
+    return null;
+  }
+
+  private static String capitalize( String name ) {
+    return name.substring( 0, 1 ).toUpperCase() + name.substring( 1 );
+  }
+
+  private static String literal( String value ) {
+    StringBuilder literal = new StringBuilder( "\"" );
+    for ( char c : value.toCharArray() ) {
+      switch ( c ) {
+        case '"':
+          literal.append( "\\\"" );
+          break;
+        case '\\':
+          literal.append( "\\\\" );
+          break;
+        case '\n':
+          literal.append( "\\n" );
+          break;
+        case '\r':
+          literal.append( "\\r" );
+          break;
+        case '\t':
+          literal.append( "\\t" );
+          break;
+        default:
+          if ( c < ' ' || c > '~' ) {
+            literal.append( String.format( "\\u%04x", (int) c ) );
+          } else {
+            literal.append( c );
+          }
+      }
+    }
+    return literal.append( '"' ).toString();
+  }
+
+  private class Attribute {
+    private final String fieldName;
+    private final String key;
+    private final boolean password;
+    private final AttributeType type;
+    private final String enumType;
+
+    /** The getter and setter to call or null if the factory has to load or save the attribute */
+    private final String getter;
+    private final String setter;
+
+    private Attribute( TypeElement type, PackageElement packageElement, VariableElement field,
+        MetaStoreAttribute annotation ) {
+      this.fieldName = field.getSimpleName().toString();
+      this.key = annotation.key() == null || annotation.key().isEmpty() ? fieldName : annotation.key();
+      this.password = annotation.password();
+      this.type = getAttributeType( field, annotation );
+
+      TypeMirror fieldType = field.asType();
+      if ( this.type == AttributeType.ENUM ) {
+        this.enumType =
+          ( (TypeElement) processingEnv.getTypeUtils().asElement( fieldType ) ).getQualifiedName().toString();
+      } else {
+        this.enumType = null;
+      }
+      boolean enumAccessible = this.type != AttributeType.ENUM || isAccessible(
+        (TypeElement) processingEnv.getTypeUtils().asElement( fieldType ), packageElement );
+
+      if ( this.type == AttributeType.OTHER || !enumAccessible ) {
+        this.getter = null;
+        this.setter = null;
+      } else {
+        String getterName = ( this.type == AttributeType.BOOLEAN ? "is" : "get" ) + capitalize( fieldName );
+        this.getter = findMethod( type, packageElement, getterName, null, fieldType );
+        this.setter = findMethod( type, packageElement, "set" + capitalize( fieldName ), fieldType, null );
+      }
+    }
+  }
+}
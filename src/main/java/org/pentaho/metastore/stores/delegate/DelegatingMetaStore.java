@@ -15,15 +15,21 @@ package org.pentaho.metastore.stores.delegate;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.pentaho.metastore.api.IMetaStore;
 import org.pentaho.metastore.api.IMetaStoreAttribute;
 import org.pentaho.metastore.api.IMetaStoreElement;
 import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.api.MetaStoreElementOrder;
 import org.pentaho.metastore.api.exceptions.MetaStoreDependenciesExistsException;
 import org.pentaho.metastore.api.exceptions.MetaStoreElementExistException;
 import org.pentaho.metastore.api.exceptions.MetaStoreElementTypeExistsException;
@@ -33,6 +39,7 @@ import org.pentaho.metastore.api.security.Base64TwoWayPasswordEncoder;
 import org.pentaho.metastore.api.security.IMetaStoreElementOwner;
 import org.pentaho.metastore.api.security.ITwoWayPasswordEncoder;
 import org.pentaho.metastore.api.security.MetaStoreElementOwnerType;
+import org.pentaho.metastore.util.MetaStoreUtil;
 
 /**
  * This class can be used as a wrapper around one or more meta stores. For example, if you have a local XML metastore, a
@@ -271,11 +278,21 @@ public class DelegatingMetaStore implements IMetaStore {
   @Override
   public List<IMetaStoreElement> getElements( String namespace, IMetaStoreElementType elementType, boolean lock,
                                               List<MetaStoreException> exceptionList ) throws MetaStoreException {
+    return getElements( namespace, elementType, lock, exceptionList, false );
+  }
+
+  @Override
+  public List<IMetaStoreElement> getElements( String namespace, IMetaStoreElementType elementType, boolean lock,
+                                              List<MetaStoreException> exceptionList, boolean lazy )
+    throws MetaStoreException {
     List<IMetaStoreElement> elements = new ArrayList<IMetaStoreElement>();
     for ( IMetaStore metaStore : getReadMetaStoreList() ) {
       IMetaStoreElementType localElementType = metaStore.getElementTypeByName( namespace, elementType.getName() );
       if ( localElementType != null ) {
-        for ( IMetaStoreElement element : metaStore.getElements( namespace, localElementType, lock, exceptionList ) ) {
+        List<IMetaStoreElement> localElements = lazy
+            ? metaStore.getElements( namespace, localElementType, lock, exceptionList, true )
+            : metaStore.getElements( namespace, localElementType, lock, exceptionList );
+        for ( IMetaStoreElement element : localElements ) {
           if ( getElementByName( elements, element.getName() ) == null ) {
             elements.add( element );
           }
@@ -294,6 +311,50 @@ public class DelegatingMetaStore implements IMetaStore {
     return elementIds;
   }
 
+  @Override
+  public int countElements( String namespace, IMetaStoreElementType elementType ) throws MetaStoreException {
+    List<IMetaStore> readMetaStoreList = getReadMetaStoreList();
+    if ( readMetaStoreList.size() != 1 ) {
+      // An element with the same name in several stores is only counted once
+      //
+      return getElementIds( namespace, elementType ).size();
+    }
+    IMetaStore metaStore = readMetaStoreList.get( 0 );
+    IMetaStoreElementType localElementType = metaStore.getElementTypeByName( namespace, elementType.getName() );
+    return localElementType == null ? 0 : metaStore.countElements( namespace, localElementType );
+  }
+
+  @Override
+  public List<IMetaStoreElement> getElementsPage( String namespace, IMetaStoreElementType elementType,
+      MetaStoreElementOrder order, int offset, int limit ) throws MetaStoreException {
+    List<IMetaStore> metaStores = getReadMetaStoreList();
+    if ( metaStores.size() != 1 ) {
+      // The elements of several stores are merged by name, sort them all
+      //
+      return IMetaStore.super.getElementsPage( namespace, elementType, order, offset, limit );
+    }
+    IMetaStore metaStore = metaStores.get( 0 );
+    IMetaStoreElementType localElementType = metaStore.getElementTypeByName( namespace, elementType.getName() );
+    if ( localElementType == null ) {
+      return MetaStoreUtil.getPage( new ArrayList<IMetaStoreElement>(), offset, limit );
+    }
+    return metaStore.getElementsPage( namespace, localElementType, order, offset, limit );
+  }
+
+  @Override
+  public boolean elementExists( String namespace, IMetaStoreElementType elementType, String elementId )
+    throws MetaStoreException {
+    for ( IMetaStore localStore : getReadMetaStoreList() ) {
+      if ( elementType.getMetaStoreName() == null || elementType.getMetaStoreName().equals( localStore.getName() ) ) {
+        IMetaStoreElementType localType = localStore.getElementTypeByName( namespace, elementType.getName() );
+        if ( localType != null && localStore.elementExists( namespace, localType, elementId ) ) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   @Override
   public IMetaStoreElement getElement( String namespace, IMetaStoreElementType elementType, String elementId )
     throws MetaStoreException {
@@ -318,6 +379,56 @@ public class DelegatingMetaStore implements IMetaStore {
     return getElementByName( getElements( namespace, elementType, true, new ArrayList<MetaStoreException>() ), name );
   }
 
+  @Override
+  public Map<String, IMetaStoreElement> getElementsByIds( String namespace, IMetaStoreElementType elementType,
+      Collection<String> elementIds ) throws MetaStoreException {
+    Map<String, IMetaStoreElement> found = new HashMap<String, IMetaStoreElement>();
+    Set<String> remaining = new LinkedHashSet<String>( elementIds );
+    for ( IMetaStore localStore : getReadMetaStoreList() ) {
+      if ( remaining.isEmpty() ) {
+        break;
+      }
+      if ( elementType.getMetaStoreName() == null || elementType.getMetaStoreName().equals( localStore.getName() ) ) {
+        IMetaStoreElementType localType = localStore.getElementTypeByName( namespace, elementType.getName() );
+        if ( localType != null ) {
+          found.putAll( localStore.getElementsByIds( namespace, localType, remaining ) );
+          remaining.removeAll( found.keySet() );
+        }
+      }
+    }
+    return inRequestedOrder( elementIds, found );
+  }
+
+  @Override
+  public Map<String, IMetaStoreElement> getElementsByNames( String namespace, IMetaStoreElementType elementType,
+      Collection<String> names ) throws MetaStoreException {
+    Map<String, IMetaStoreElement> found = new HashMap<String, IMetaStoreElement>();
+    Set<String> remaining = new LinkedHashSet<String>( names );
+    for ( IMetaStore localStore : getReadMetaStoreList() ) {
+      if ( remaining.isEmpty() ) {
+        break;
+      }
+      IMetaStoreElementType localType = localStore.getElementTypeByName( namespace, elementType.getName() );
+      if ( localType != null ) {
+        found.putAll( localStore.getElementsByNames( namespace, localType, remaining ) );
+        remaining.removeAll( found.keySet() );
+      }
+    }
+    return inRequestedOrder( names, found );
+  }
+
+  private static Map<String, IMetaStoreElement> inRequestedOrder( Collection<String> keys,
+      Map<String, IMetaStoreElement> found ) {
+    Map<String, IMetaStoreElement> elements = new LinkedHashMap<String, IMetaStoreElement>();
+    for ( String key : keys ) {
+      IMetaStoreElement element = found.get( key );
+      if ( element != null ) {
+        elements.put( key, element );
+      }
+    }
+    return elements;
+  }
+
   @Override
   public void createElement( String namespace, IMetaStoreElementType elementType, IMetaStoreElement element )
     throws MetaStoreException, MetaStoreElementExistException {
@@ -336,6 +447,26 @@ public class DelegatingMetaStore implements IMetaStore {
     getWriteMetaStore().updateElement( namespace, elementType, elementId, element );
   }
 
+  @Override
+  public void createElements( String namespace, IMetaStoreElementType elementType,
+      Collection<? extends IMetaStoreElement> elements, List<MetaStoreException> exceptionList )
+    throws MetaStoreException {
+    getWriteMetaStore().createElements( namespace, elementType, elements, exceptionList );
+  }
+
+  @Override
+  public void updateElements( String namespace, IMetaStoreElementType elementType,
+      Collection<? extends IMetaStoreElement> elements, List<MetaStoreException> exceptionList )
+    throws MetaStoreException {
+    getWriteMetaStore().updateElements( namespace, elementType, elements, exceptionList );
+  }
+
+  @Override
+  public void deleteElements( String namespace, IMetaStoreElementType elementType, Collection<String> elementIds,
+      List<MetaStoreException> exceptionList ) throws MetaStoreException {
+    getWriteMetaStore().deleteElements( namespace, elementType, elementIds, exceptionList );
+  }
+
   @Override
   public IMetaStoreElementType newElementType( String namespace ) throws MetaStoreException {
     return getWriteMetaStore().newElementType( namespace );
@@ -14,6 +14,7 @@
 package org.pentaho.metastore.stores.memory;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -28,6 +29,7 @@ import org.pentaho.metastore.api.IMetaStore;
 import org.pentaho.metastore.api.IMetaStoreAttribute;
 import org.pentaho.metastore.api.IMetaStoreElement;
 import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.api.MetaStoreElementOrder;
 import org.pentaho.metastore.api.exceptions.MetaStoreDependenciesExistsException;
 import org.pentaho.metastore.api.exceptions.MetaStoreElementExistException;
 import org.pentaho.metastore.api.exceptions.MetaStoreElementTypeExistsException;
@@ -289,6 +291,54 @@ public class MemoryMetaStore extends BaseMetaStore implements IMetaStore {
     } );
   }
 
+  @Override
+  public int countElements( final String namespace, final IMetaStoreElementType elementType )
+    throws MetaStoreException {
+    return MetaStoreUtil.executeLockedOperation( readLock, new Callable<Integer>() {
+
+      @Override
+      public Integer call() throws Exception {
+        MemoryMetaStoreNamespace storeNamespace = namespacesMap.get( namespace );
+        if ( storeNamespace != null ) {
+          return storeNamespace.getElementCountByElementTypeName( elementType.getName() );
+        }
+        return 0;
+      }
+    } );
+  }
+
+  @Override
+  public List<IMetaStoreElement> getElementsPage( final String namespace, final IMetaStoreElementType elementType,
+      final MetaStoreElementOrder order, int offset, int limit ) throws MetaStoreException {
+    List<IMetaStoreElement> sortedElements =
+        MetaStoreUtil.executeLockedOperation( readLock, new Callable<List<IMetaStoreElement>>() {
+
+          @Override
+          public List<IMetaStoreElement> call() throws Exception {
+            MemoryMetaStoreNamespace storeNamespace = namespacesMap.get( namespace );
+            if ( storeNamespace != null ) {
+              return storeNamespace.getSortedElementsByTypeName( elementType.getName(), order );
+            }
+            return Collections.emptyList();
+          }
+        } );
+    return MetaStoreUtil.getPage( sortedElements, offset, limit );
+  }
+
+  @Override
+  public boolean elementExists( final String namespace, final IMetaStoreElementType elementType,
+      final String elementId ) throws MetaStoreException {
+    return MetaStoreUtil.executeLockedOperation( readLock, new Callable<Boolean>() {
+
+      @Override
+      public Boolean call() throws Exception {
+        MemoryMetaStoreNamespace storeNamespace = namespacesMap.get( namespace );
+        return storeNamespace != null
+            && storeNamespace.containsElementByTypeNameId( elementType.getName(), elementId );
+      }
+    } );
+  }
+
   @Override
   public IMetaStoreElement getElement( final String namespace, final IMetaStoreElementType elementType,
       final String elementId ) throws MetaStoreException {
@@ -321,6 +371,38 @@ public class MemoryMetaStore extends BaseMetaStore implements IMetaStore {
     } );
   }
 
+  @Override
+  public Map<String, IMetaStoreElement> getElementsByIds( final String namespace, final IMetaStoreElementType elementType,
+      final Collection<String> elementIds ) throws MetaStoreException {
+    return MetaStoreUtil.executeLockedOperation( readLock, new Callable<Map<String, IMetaStoreElement>>() {
+
+      @Override
+      public Map<String, IMetaStoreElement> call() throws Exception {
+        MemoryMetaStoreNamespace storeNamespace = namespacesMap.get( namespace );
+        if ( storeNamespace != null ) {
+          return storeNamespace.getElementsByIds( elementType.getName(), elementIds );
+        }
+        return Collections.emptyMap();
+      }
+    } );
+  }
+
+  @Override
+  public Map<String, IMetaStoreElement> getElementsByNames( final String namespace, final IMetaStoreElementType elementType,
+      final Collection<String> names ) throws MetaStoreException {
+    return MetaStoreUtil.executeLockedOperation( readLock, new Callable<Map<String, IMetaStoreElement>>() {
+
+      @Override
+      public Map<String, IMetaStoreElement> call() throws Exception {
+        MemoryMetaStoreNamespace storeNamespace = namespacesMap.get( namespace );
+        if ( storeNamespace != null ) {
+          return storeNamespace.getElementsByNames( elementType.getName(), names );
+        }
+        return Collections.emptyMap();
+      }
+    } );
+  }
+
   @Override
   public void createElement( final String namespace, final IMetaStoreElementType elementType,
       final IMetaStoreElement element ) throws MetaStoreException, MetaStoreElementExistException {
@@ -383,6 +465,70 @@ public class MemoryMetaStore extends BaseMetaStore implements IMetaStore {
     } );
   }
 
+  @Override
+  public void createElements( final String namespace, final IMetaStoreElementType elementType,
+      final Collection<? extends IMetaStoreElement> elements, List<MetaStoreException> exceptionList )
+    throws MetaStoreException {
+    MetaStoreUtil.executeLockedOperation( readLock, new Callable<Void>() {
+
+      @Override
+      public Void call() throws Exception {
+        MemoryMetaStoreNamespace storeNamespace = namespacesMap.get( namespace );
+        if ( storeNamespace != null ) {
+          storeNamespace.createElements( elementType, elements );
+        } else {
+          throw new MetaStoreException( "Namespace '" + namespace + "' doesn't exist!" );
+        }
+        return null;
+      }
+    } );
+  }
+
+  @Override
+  public void updateElements( final String namespace, final IMetaStoreElementType elementType,
+      final Collection<? extends IMetaStoreElement> elements, List<MetaStoreException> exceptionList )
+    throws MetaStoreException {
+
+    // verify that the element type belongs to this meta store
+    //
+    if ( elementType.getMetaStoreName() == null || !elementType.getMetaStoreName().equals( getName() ) ) {
+      throw new MetaStoreException( "The element type '" + elementType.getName()
+          + "' needs to explicitly belong to the meta store in which you are updating." );
+    }
+
+    MetaStoreUtil.executeLockedOperation( readLock, new Callable<Void>() {
+
+      @Override
+      public Void call() throws Exception {
+        MemoryMetaStoreNamespace storeNamespace = namespacesMap.get( namespace );
+        if ( storeNamespace != null ) {
+          storeNamespace.updateElements( elementType, elements );
+        } else {
+          throw new MetaStoreException( "Namespace '" + namespace + "' doesn't exist!" );
+        }
+        return null;
+      }
+    } );
+  }
+
+  @Override
+  public void deleteElements( final String namespace, final IMetaStoreElementType elementType,
+      final Collection<String> elementIds, List<MetaStoreException> exceptionList ) throws MetaStoreException {
+    MetaStoreUtil.executeLockedOperation( readLock, new Callable<Void>() {
+
+      @Override
+      public Void call() throws Exception {
+        MemoryMetaStoreNamespace storeNamespace = namespacesMap.get( namespace );
+        if ( storeNamespace != null ) {
+          storeNamespace.deleteElements( elementType, elementIds );
+        } else {
+          throw new MetaStoreException( "Namespace '" + namespace + "' doesn't exist!" );
+        }
+        return null;
+      }
+    } );
+  }
+
   @Override
   public IMetaStoreElementType newElementType( String namespace ) throws MetaStoreException {
     return new MemoryMetaStoreElementType( namespace );
@@ -16,14 +16,21 @@ package org.pentaho.metastore.stores.memory;
 import org.pentaho.metastore.api.BaseElementType;
 import org.pentaho.metastore.api.IMetaStoreElement;
 import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.api.MetaStoreElementOrder;
 import org.pentaho.metastore.api.exceptions.MetaStoreException;
 import org.pentaho.metastore.util.MetaStoreUtil;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -32,6 +39,16 @@ public class MemoryMetaStoreElementType extends BaseElementType {
 
   private final Map<String, MemoryMetaStoreElement> elementMap = new HashMap<String, MemoryMetaStoreElement>();
 
+  // The order in which the elements were last created or updated, by ID
+  //
+  private final Map<String, Long> modificationMap = new HashMap<String, Long>();
+  private long modificationCount;
+
+  // The elements in every order, sorted when a page is requested and dropped when an element changes
+  //
+  private final Map<MetaStoreElementOrder, List<IMetaStoreElement>> sortedElementsMap =
+      new ConcurrentHashMap<MetaStoreElementOrder, List<IMetaStoreElement>>();
+
   private final ReadLock readLock;
   private final WriteLock writeLock;
 
@@ -109,6 +126,26 @@ public class MemoryMetaStoreElementType extends BaseElementType {
     } );
   }
 
+  public int getElementCount() {
+    return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<Integer>() {
+
+      @Override
+      public Integer call() throws Exception {
+        return elementMap.size();
+      }
+    } );
+  }
+
+  public boolean containsElement( final String elementId ) {
+    return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<Boolean>() {
+
+      @Override
+      public Boolean call() throws Exception {
+        return elementMap.containsKey( elementId );
+      }
+    } );
+  }
+
   public List<IMetaStoreElement> getElements() {
     return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<List<IMetaStoreElement>>() {
 
@@ -134,6 +171,49 @@ public class MemoryMetaStoreElementType extends BaseElementType {
     } );
   }
 
+  public Map<String, IMetaStoreElement> getElementsByIds( final Collection<String> elementIds ) {
+    return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<Map<String, IMetaStoreElement>>() {
+
+      @Override
+      public Map<String, IMetaStoreElement> call() throws Exception {
+        Map<String, IMetaStoreElement> elements = new LinkedHashMap<String, IMetaStoreElement>();
+        for ( String elementId : elementIds ) {
+          MemoryMetaStoreElement element = elementMap.get( elementId );
+          if ( element != null ) {
+            elements.put( elementId, element );
+          }
+        }
+        return elements;
+      }
+    } );
+  }
+
+  public Map<String, IMetaStoreElement> getElementsByNames( final Collection<String> elementNames ) {
+    return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<Map<String, IMetaStoreElement>>() {
+
+      @Override
+      public Map<String, IMetaStoreElement> call() throws Exception {
+        // Go over the elements once, the first element with a name wins like in getElementByName()
+        //
+        Map<String, MemoryMetaStoreElement> elementsByName = new HashMap<String, MemoryMetaStoreElement>();
+        for ( MemoryMetaStoreElement element : elementMap.values() ) {
+          if ( element.getName() != null ) {
+            elementsByName.putIfAbsent( element.getName().toLowerCase( Locale.ROOT ), element );
+          }
+        }
+        Map<String, IMetaStoreElement> elements = new LinkedHashMap<String, IMetaStoreElement>();
+        for ( String elementName : elementNames ) {
+          MemoryMetaStoreElement element =
+              elementName == null ? null : elementsByName.get( elementName.toLowerCase( Locale.ROOT ) );
+          if ( element != null ) {
+            elements.put( elementName, element );
+          }
+        }
+        return elements;
+      }
+    } );
+  }
+
   public void createElement( final IMetaStoreElement element ) {
     // For the memory store, the ID is the same as the name if empty
     if ( element.getId() == null ) {
@@ -143,7 +223,7 @@ public class MemoryMetaStoreElementType extends BaseElementType {
 
       @Override
       public Void call() throws Exception {
-        elementMap.put( element.getId(), new MemoryMetaStoreElement( element ) );
+        putElement( element.getId(), element );
         return null;
       }
     } );
@@ -158,7 +238,41 @@ public class MemoryMetaStoreElementType extends BaseElementType {
 
       @Override
       public Void call() throws Exception {
-        elementMap.put( elementId, new MemoryMetaStoreElement( element ) );
+        putElement( elementId, element );
+        return null;
+      }
+    } );
+  }
+
+  public void createElements( final Collection<? extends IMetaStoreElement> elements ) {
+    MetaStoreUtil.executeLockedOperationQuietly( writeLock, new Callable<Void>() {
+
+      @Override
+      public Void call() throws Exception {
+        for ( IMetaStoreElement element : elements ) {
+          // For the memory store, the ID is the same as the name if empty
+          if ( element.getId() == null ) {
+            element.setId( element.getName() );
+          }
+          putElement( element.getId(), element );
+        }
+        return null;
+      }
+    } );
+  }
+
+  public void updateElements( final Collection<? extends IMetaStoreElement> elements ) {
+    MetaStoreUtil.executeLockedOperationQuietly( writeLock, new Callable<Void>() {
+
+      @Override
+      public Void call() throws Exception {
+        for ( IMetaStoreElement element : elements ) {
+          // For the memory store, the ID is the same as the name if empty
+          if ( element.getId() == null ) {
+            element.setId( element.getName() );
+          }
+          putElement( element.getId(), element );
+        }
         return null;
       }
     } );
@@ -169,10 +283,78 @@ public class MemoryMetaStoreElementType extends BaseElementType {
 
       @Override
       public Void call() throws Exception {
-        elementMap.remove( elementId );
+        removeElement( elementId );
         return null;
       }
     } );
   }
 
+  public void deleteElements( final Collection<String> elementIds ) {
+    MetaStoreUtil.executeLockedOperationQuietly( writeLock, new Callable<Void>() {
+
+      @Override
+      public Void call() throws Exception {
+        for ( String elementId : elementIds ) {
+          removeElement( elementId );
+        }
+        return null;
+      }
+    } );
+  }
+
+  /**
+   * All the elements in the given order. The list is kept until an element is created, updated or deleted, so asking
+   * for the next page doesn't sort again.
+   *
+   * @return an unmodifiable list of the elements
+   */
+  public List<IMetaStoreElement> getSortedElements( final MetaStoreElementOrder order ) {
+    return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<List<IMetaStoreElement>>() {
+
+      @Override
+      public List<IMetaStoreElement> call() throws Exception {
+        List<IMetaStoreElement> sortedElements = sortedElementsMap.get( order );
+        if ( sortedElements == null ) {
+          sortedElements = Collections.unmodifiableList( sortElements( order ) );
+          sortedElementsMap.put( order, sortedElements );
+        }
+        return sortedElements;
+      }
+    } );
+  }
+
+  private List<IMetaStoreElement> sortElements( MetaStoreElementOrder order ) {
+    if ( order == MetaStoreElementOrder.LAST_MODIFIED ) {
+      List<Map.Entry<String, MemoryMetaStoreElement>> entries =
+          new ArrayList<Map.Entry<String, MemoryMetaStoreElement>>( elementMap.entrySet() );
+      Collections.sort( entries, new Comparator<Map.Entry<String, MemoryMetaStoreElement>>() {
+        @Override
+        public int compare( Map.Entry<String, MemoryMetaStoreElement> entry1,
+            Map.Entry<String, MemoryMetaStoreElement> entry2 ) {
+          return modificationMap.get( entry2.getKey() ).compareTo( modificationMap.get( entry1.getKey() ) );
+        }
+      } );
+      List<IMetaStoreElement> elements = new ArrayList<IMetaStoreElement>( entries.size() );
+      for ( Map.Entry<String, MemoryMetaStoreElement> entry : entries ) {
+        elements.add( entry.getValue() );
+      }
+      return elements;
+    }
+    List<IMetaStoreElement> elements = new ArrayList<IMetaStoreElement>( elementMap.values() );
+    Collections.sort( elements, MetaStoreUtil.ELEMENT_NAME_ORDER );
+    return elements;
+  }
+
+  private void putElement( String elementId, IMetaStoreElement element ) {
+    elementMap.put( elementId, new MemoryMetaStoreElement( element ) );
+    modificationMap.put( elementId, ++modificationCount );
+    sortedElementsMap.clear();
+  }
+
+  private void removeElement( String elementId ) {
+    elementMap.remove( elementId );
+    modificationMap.remove( elementId );
+    sortedElementsMap.clear();
+  }
+
 }
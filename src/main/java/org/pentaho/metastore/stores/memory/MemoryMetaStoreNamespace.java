@@ -14,6 +14,7 @@
 package org.pentaho.metastore.stores.memory;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -25,6 +26,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
 import org.pentaho.metastore.api.IMetaStoreElement;
 import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.api.MetaStoreElementOrder;
 import org.pentaho.metastore.api.exceptions.MetaStoreDependenciesExistsException;
 import org.pentaho.metastore.api.exceptions.MetaStoreElementTypeExistsException;
 import org.pentaho.metastore.api.exceptions.MetaStoreException;
@@ -245,6 +247,46 @@ public class MemoryMetaStoreNamespace {
     } );
   }
 
+  public int getElementCountByElementTypeName( final String elementTypeName ) {
+    return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<Integer>() {
+
+      @Override
+      public Integer call() throws Exception {
+        MemoryMetaStoreElementType elementType = getElementTypeByNameInternal( elementTypeName );
+        if ( elementType != null ) {
+          return elementType.getElementCount();
+        }
+        return 0;
+      }
+    } );
+  }
+
+  public List<IMetaStoreElement> getSortedElementsByTypeName( final String elementTypeName,
+      final MetaStoreElementOrder order ) {
+    return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<List<IMetaStoreElement>>() {
+
+      @Override
+      public List<IMetaStoreElement> call() throws Exception {
+        MemoryMetaStoreElementType elementType = getElementTypeByNameInternal( elementTypeName );
+        if ( elementType != null ) {
+          return elementType.getSortedElements( order );
+        }
+        return Collections.emptyList();
+      }
+    } );
+  }
+
+  public boolean containsElementByTypeNameId( final String elementTypeName, final String elementId ) {
+    return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<Boolean>() {
+
+      @Override
+      public Boolean call() throws Exception {
+        MemoryMetaStoreElementType elementType = getElementTypeByNameInternal( elementTypeName );
+        return elementType != null && elementType.containsElement( elementId );
+      }
+    } );
+  }
+
   public IMetaStoreElement getElementByTypeNameId( final String elementTypeName, final String elementId ) {
     return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<IMetaStoreElement>() {
 
@@ -269,6 +311,34 @@ public class MemoryMetaStoreNamespace {
     } );
   }
 
+  public Map<String, IMetaStoreElement> getElementsByIds( final String elementTypeName, final Collection<String> elementIds ) {
+    return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<Map<String, IMetaStoreElement>>() {
+
+      @Override
+      public Map<String, IMetaStoreElement> call() throws Exception {
+        MemoryMetaStoreElementType elementType = getElementTypeByNameInternal( elementTypeName );
+        if ( elementType != null ) {
+          return elementType.getElementsByIds( elementIds );
+        }
+        return Collections.emptyMap();
+      }
+    } );
+  }
+
+  public Map<String, IMetaStoreElement> getElementsByNames( final String elementTypeName, final Collection<String> elementNames ) {
+    return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<Map<String, IMetaStoreElement>>() {
+
+      @Override
+      public Map<String, IMetaStoreElement> call() throws Exception {
+        MemoryMetaStoreElementType elementType = getElementTypeByNameInternal( elementTypeName );
+        if ( elementType != null ) {
+          return elementType.getElementsByNames( elementNames );
+        }
+        return Collections.emptyMap();
+      }
+    } );
+  }
+
   public IMetaStoreElement getElementByNameTypeName( final String elementTypeName, final String elementName ) {
     return MetaStoreUtil.executeLockedOperationQuietly( readLock, new Callable<IMetaStoreElement>() {
 
@@ -334,4 +404,55 @@ public class MemoryMetaStoreNamespace {
     } );
   }
 
+  public void createElements( final IMetaStoreElementType elementType, final Collection<? extends IMetaStoreElement> elements )
+    throws MetaStoreException {
+    MetaStoreUtil.executeLockedOperation( readLock, new Callable<Void>() {
+
+      @Override
+      public Void call() throws Exception {
+        MemoryMetaStoreElementType foundElementType = getElementTypeByNameInternal( elementType.getName() );
+        if ( foundElementType != null ) {
+          foundElementType.createElements( elements );
+        } else {
+          throw new MetaStoreException( "Element type '" + elementType.getName() + "' couldn't be found" );
+        }
+        return null;
+      }
+    } );
+  }
+
+  public void updateElements( final IMetaStoreElementType elementType, final Collection<? extends IMetaStoreElement> elements )
+    throws MetaStoreException {
+    MetaStoreUtil.executeLockedOperation( readLock, new Callable<Void>() {
+
+      @Override
+      public Void call() throws Exception {
+        MemoryMetaStoreElementType foundElementType = getElementTypeByNameInternal( elementType.getName() );
+        if ( foundElementType != null ) {
+          foundElementType.updateElements( elements );
+        } else {
+          throw new MetaStoreException( "Element type '" + elementType.getName() + "' couldn't be found" );
+        }
+        return null;
+      }
+    } );
+  }
+
+  public void deleteElements( final IMetaStoreElementType elementType, final Collection<String> elementIds )
+    throws MetaStoreException {
+    MetaStoreUtil.executeLockedOperation( readLock, new Callable<Void>() {
+
+      @Override
+      public Void call() throws Exception {
+        MemoryMetaStoreElementType foundElementType = getElementTypeByNameInternal( elementType.getName() );
+        if ( foundElementType != null ) {
+          foundElementType.deleteElements( elementIds );
+        } else {
+          throw new MetaStoreException( "Element type '" + elementType.getName() + "' couldn't be found" );
+        }
+        return null;
+      }
+    } );
+  }
+
 }
@@ -13,20 +13,45 @@
 
 package org.pentaho.metastore.stores.xml;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.pentaho.metastore.api.BaseMetaStore;
 import org.pentaho.metastore.api.IMetaStore;
 import org.pentaho.metastore.api.IMetaStoreAttribute;
 import org.pentaho.metastore.api.IMetaStoreElement;
 import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.api.MetaStoreElementOrder;
 import org.pentaho.metastore.api.exceptions.MetaStoreDependenciesExistsException;
 import org.pentaho.metastore.api.exceptions.MetaStoreElementExistException;
 import org.pentaho.metastore.api.exceptions.MetaStoreElementTypeExistsException;
 import org.pentaho.metastore.api.exceptions.MetaStoreException;
 import org.pentaho.metastore.api.exceptions.MetaStoreNamespaceExistsException;
+import org.pentaho.metastore.util.MetaStoreUtil;
 import java.util.Collections;
 
 /**
@@ -39,10 +64,46 @@ import java.util.Collections;
 public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMetaStore {
 
   private final XmlMetaStoreCache metaStoreCache;
+
+  // Readers proceed in parallel, writers get exclusive access to the store, a namespace or an element type
+  private final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();
+  private final Map<String, ReentrantReadWriteLock> folderLocks = new ConcurrentHashMap<>();
   // root path. This is never interpreted by this class directly, but is used to
   // generate paths for subclasses to use.
   private volatile String rootFolder;
 
+  // Optional cache of parsed elements, null if elements are parsed on every read
+  private volatile XmlMetaStoreElementCache elementCache;
+
+  // The parsed element types by the path of their type file
+  private volatile boolean elementTypeCacheEnabled = true;
+  private final Map<String, CachedElementType> elementTypeCache = new ConcurrentHashMap<>();
+
+  // Watches the root folder for changes while folder listings are cached, null if the file system is checked instead
+  private volatile XmlMetaStoreWatcher watcher;
+  private final Map<String, List<String>> folderListings = new ConcurrentHashMap<>();
+  private final Map<String, List<T>> fileListings = new ConcurrentHashMap<>();
+
+  // The number of threads parsing element files in getElements, 1 to parse them on the calling thread
+  private volatile int elementLoadingParallelism = 1;
+  private ExecutorService elementLoadingExecutor;
+
+  // Keep a name index file for every element type to find elements by name after a restart
+  private volatile boolean nameIndexEnabled;
+
+  // The element and element type names in a folder after it was read completely, to answer lookups of missing names
+  private volatile boolean missingNameCacheEnabled;
+  private final Map<String, KnownNames> knownNames = new ConcurrentHashMap<>();
+
+  // The name indexes of the element types listed by page while the name index files are disabled, by folder
+  private final Map<String, XmlMetaStoreNameIndex> memoryNameIndexes = new ConcurrentHashMap<>();
+
+  // Create new element types with the sharded layout
+  private volatile boolean shardedLayout;
+  // The element type folders with the sharded layout, which a folder never leaves, and the watched ones without it
+  private final Set<String> shardedFolders = ConcurrentHashMap.newKeySet();
+  private final Set<String> flatFolders = ConcurrentHashMap.newKeySet();
+
   /**
    *
    * @param rootFolder
@@ -84,33 +145,343 @@ public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMeta
    * @param rootFolder
    */
   public void setRootFolder( String rootFolder ) {
+    stopWatching();
     this.rootFolder = rootFolder;
+    elementTypeCache.clear();
+  }
+
+  /**
+   * @return true if parsed element types are kept in memory
+   */
+  public boolean isElementTypeCacheEnabled() {
+    return elementTypeCacheEnabled;
+  }
+
+  /**
+   * Keep the parsed element types in memory. A cached type is used as long as the last modified time and the size of
+   * its type file don't change, and callers always get a copy. Enabled by default: type files are small and rarely
+   * change, but are read by almost every operation.
+   *
+   * @param elementTypeCacheEnabled
+   *          false to parse the type file on every read
+   */
+  public void setElementTypeCacheEnabled( boolean elementTypeCacheEnabled ) {
+    this.elementTypeCacheEnabled = elementTypeCacheEnabled;
+    if ( !elementTypeCacheEnabled ) {
+      elementTypeCache.clear();
+    }
+  }
+
+  /**
+   * @return the number of threads that parse the element files of an element type in
+   *         {@link #getElements(String, IMetaStoreElementType)}, 1 if they are parsed on the calling thread
+   */
+  public int getElementLoadingParallelism() {
+    return elementLoadingParallelism;
+  }
+
+  /**
+   * Parse the element files of an element type on several threads when all the elements are read. The elements are
+   * returned in the same order as when they are parsed one by one. The same threads write the element files when a
+   * number of elements is created, updated or deleted at once. A local disk usually gains little beyond the number of
+   * processors, a network share where every read waits for the server can use a lot more threads.
+   *
+   * @param elementLoadingParallelism
+   *          the maximum number of threads parsing or writing element files for this store, 1 to do it on the calling
+   *          thread
+   */
+  public synchronized void setElementLoadingParallelism( int elementLoadingParallelism ) {
+    if ( elementLoadingParallelism < 1 ) {
+      throw new IllegalArgumentException( "The element loading parallelism needs to be at least 1" );
+    }
+    if ( elementLoadingExecutor != null && elementLoadingParallelism != this.elementLoadingParallelism ) {
+      elementLoadingExecutor.shutdown();
+      elementLoadingExecutor = null;
+    }
+    this.elementLoadingParallelism = elementLoadingParallelism;
+  }
+
+  /**
+   * @return true if the element names are indexed in a file in every element type folder
+   */
+  public boolean isNameIndexEnabled() {
+    return nameIndexEnabled;
+  }
+
+  /**
+   * Keep the names of the elements in an index file in every element type folder. Finding an element by name after a
+   * restart then reads a single element file instead of all of them, and a page of elements sorted by name or by
+   * modification time is listed without reading the names again. The index is written the first time the elements of
+   * a type are searched by name or listed by page and kept up to date when elements are saved or deleted. The index
+   * files are kept in a hidden folder in the root folder, apart from the element files, so older versions don't see
+   * them. An index that older versions made outdated is brought up to date the next time it is used.
+   *
+   * @param nameIndexEnabled
+   *          true to use and maintain the index files
+   */
+  public void setNameIndexEnabled( boolean nameIndexEnabled ) {
+    this.nameIndexEnabled = nameIndexEnabled;
+  }
+
+  /**
+   * @return true if lookups of element and element type names that don't exist are answered from memory
+   */
+  public boolean isMissingNameCacheEnabled() {
+    return missingNameCacheEnabled;
+  }
+
+  /**
+   * Remember all the names in an element type folder, or all the element type names in a namespace, after searching
+   * it by name. As long as the folder isn't modified, a name that isn't among them doesn't exist and is answered
+   * without reading any file. Saving new elements one after the other, each after checking that its name is free,
+   * then doesn't read the folder again for every element.
+   * <p>
+   * Adding and removing files modifies a folder, changing a file doesn't: the last modified times of the files the
+   * names were read from are checked as well, since older versions rewrite files in place. A lookup of a missing name
+   * then checks the last modified time of every file in the folder instead of reading them all.
+   *
+   * @param missingNameCacheEnabled
+   *          true to remember the names in every folder searched by name
+   */
+  public void setMissingNameCacheEnabled( boolean missingNameCacheEnabled ) {
+    this.missingNameCacheEnabled = missingNameCacheEnabled;
+    if ( !missingNameCacheEnabled ) {
+      knownNames.clear();
+    }
+  }
+
+  /**
+   * @return true if new element types are created with the sharded layout
+   */
+  public boolean isShardedLayout() {
+    return shardedLayout;
+  }
+
+  /**
+   * Create new element types with the sharded layout: their element files are spread over 256 shard folders two levels
+   * below the element type folder instead of all being stored in the element type folder itself. Listing and looking
+   * up elements in an element type with tens of thousands of elements then doesn't have to go through one huge folder.
+   * Existing element types are converted with {@link #migrateToShardedLayout(String, IMetaStoreElementType)}.
+   * <p>
+   * Every store reads and writes both layouts, whatever this setting is: the layout of an element type is recorded in
+   * its folder. Older versions don't know the sharded layout and don't see the elements of sharded element types.
+   *
+   * @param shardedLayout
+   *          true to create new element types with the sharded layout
+   */
+  public void setShardedLayout( boolean shardedLayout ) {
+    this.shardedLayout = shardedLayout;
+  }
+
+  private synchronized ExecutorService getElementLoadingExecutor() {
+    if ( elementLoadingExecutor == null ) {
+      // The threads go away when the store is idle, so a forgotten store doesn't keep them around
+      //
+      String name = "XML metastore element loader for " + rootFolder;
+      ThreadPoolExecutor executor = new ThreadPoolExecutor( elementLoadingParallelism, elementLoadingParallelism,
+        60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread( runnable, name );
+          thread.setDaemon( true );
+          return thread;
+        } );
+      executor.allowCoreThreadTimeOut( true );
+      elementLoadingExecutor = executor;
+    }
+    return elementLoadingExecutor;
+  }
+
+  /**
+   * @return the cache of parsed elements or null if elements are read from their file every time
+   */
+  public XmlMetaStoreElementCache getElementCache() {
+    return elementCache;
+  }
+
+  /**
+   * Set the cache of parsed elements used by getElement(), getElements() and getElementByName(). A cached element is
+   * used as long as the last modified time and size of its file don't change. Only stores that can report file sizes
+   * (see {@link #fileSize(String)}) use the cache.
+   *
+   * @param elementCache
+   *          the cache to use or null to parse the element file on every read
+   */
+  public void setElementCache( XmlMetaStoreElementCache elementCache ) {
+    this.elementCache = elementCache;
+  }
+
+  /**
+   * Start watching the root folder, the namespace folders and the element type folders for changes. While watching,
+   * the contents of these folders are cached and only read again after a change was reported, and changed files are
+   * removed from the caches as soon as the change is reported. Changes made by other processes on this host become
+   * visible once the operating system reported them. The shard folders of sharded element types aren't watched and are
+   * read on every call.
+   * <p>
+   * Network file systems like NFS and SMB don't report changes made by other hosts, and the JDK can only poll for
+   * changes on some operating systems, like macOS, where they are reported seconds late. The folders aren't watched on
+   * such file systems. A network share mapped to a drive letter on Windows looks like a local disk: don't watch a
+   * metastore on it that other hosts write to.
+   * <p>
+   * Watching uses a background thread: call {@link #stopWatching()} when the metastore is no longer used.
+   *
+   * @return true if the folders are watched, false if the file system doesn't report changes reliably. In that case
+   *         the folders are read on every call, as they are when not watching.
+   */
+  public synchronized boolean startWatching() {
+    if ( watcher != null ) {
+      return true;
+    }
+    XmlMetaStoreWatcher newWatcher = XmlMetaStoreWatcher.start( this, rootFolder );
+    if ( newWatcher == null ) {
+      return false;
+    }
+    // Changes made before we started watching were not reported
+    //
+    rescan();
+    watcher = newWatcher;
+    return true;
+  }
+
+  public synchronized void stopWatching() {
+    XmlMetaStoreWatcher currentWatcher = watcher;
+    if ( currentWatcher != null ) {
+      watcher = null;
+      currentWatcher.close();
+      folderListings.clear();
+      fileListings.clear();
+    }
+  }
+
+  /**
+   * @return true if the folders of the metastore are watched for changes
+   */
+  public boolean isWatching() {
+    return watcher != null;
+  }
+
+  /**
+   * Called by the watcher when a file or folder was created, modified or deleted.
+   *
+   * @param folder
+   *          the absolute path of the folder that contains the changed file or folder
+   * @param path
+   *          the absolute path of the changed file or folder
+   */
+  void pathChanged( String folder, String path ) {
+    folderChanged( folder );
+    folderChanged( path );
+    metaStoreCache.unregisterProcessedFile( path );
+    evictElement( path );
+  }
+
+  /**
+   * Called by the watcher when changes were lost: forget everything that was cached.
+   */
+  void rescan() {
+    folderListings.clear();
+    fileListings.clear();
+    flatFolders.clear();
+    metaStoreCache.clear();
+    XmlMetaStoreElementCache cache = elementCache;
+    if ( cache != null ) {
+      cache.clear();
+    }
+  }
+
+  /**
+   * Called by the watcher when it can't report changes anymore: go back to reading the folders on every call.
+   */
+  void watcherFailed( XmlMetaStoreWatcher failedWatcher ) {
+    if ( watcher == failedWatcher ) {
+      watcher = null;
+      rescan();
+    }
+  }
+
+  private void folderChanged( String folder ) {
+    folderListings.remove( folder );
+    fileListings.remove( folder );
+    flatFolders.remove( folder );
+  }
+
+  /**
+   * List the folders in a folder, from the cache if the folder is watched and didn't change since it was last read.
+   */
+  private List<String> listWatchedFolders( String folder ) throws MetaStoreException {
+    XmlMetaStoreWatcher currentWatcher = watcher;
+    if ( currentWatcher == null ) {
+      return listFolders( folder );
+    }
+    List<String> folders = folderListings.get( folder );
+    if ( folders == null ) {
+      long generation = currentWatcher.getGeneration();
+      folders = Collections.unmodifiableList( new ArrayList<>( listFolders( folder ) ) );
+      if ( currentWatcher.isWatched( folder ) ) {
+        folderListings.put( folder, folders );
+        // Don't keep a listing that may have missed a change reported while reading the folder
+        //
+        if ( currentWatcher.getGeneration() != generation || watcher != currentWatcher ) {
+          folderListings.remove( folder, folders );
+        }
+      }
+    }
+    return new ArrayList<>( folders );
+  }
+
+  /**
+   * List the files in a folder, from the cache if the folder is watched and didn't change since it was last read.
+   * While watching, a file in processedFiles didn't change since it was processed: a change would have removed it.
+   */
+  private List<T> listWatchedFiles( String folder, Map<String, Long> processedFiles ) throws MetaStoreException {
+    XmlMetaStoreWatcher currentWatcher = watcher;
+    if ( currentWatcher == null || !currentWatcher.isWatched( folder ) ) {
+      // Shard folders aren't watched, the processed files have to be checked against the file system
+      //
+      return listFiles( folder, processedFiles );
+    }
+    List<T> files = fileListings.get( folder );
+    if ( files == null ) {
+      long generation = currentWatcher.getGeneration();
+      files = Collections.unmodifiableList( new ArrayList<>( listFiles( folder, Collections.emptyMap() ) ) );
+      if ( currentWatcher.isWatched( folder ) ) {
+        fileListings.put( folder, files );
+        if ( currentWatcher.getGeneration() != generation || watcher != currentWatcher ) {
+          fileListings.remove( folder, files );
+        }
+      }
+    }
+    List<T> result = new ArrayList<>( files.size() );
+    for ( T file : files ) {
+      if ( processedFiles.isEmpty() || !processedFiles.containsKey( folder + File.separator + getFilename( file ) ) ) {
+        result.add( file );
+      }
+    }
+    return result;
   }
 
   @Override
-  public synchronized List<String> getNamespaces() throws MetaStoreException {
-    lockStore();
+  public List<String> getNamespaces() throws MetaStoreException {
+    lockForReading( true, null, null );
     try {
-      return listFolders( rootFolder );
+      return listWatchedFolders( rootFolder );
     } finally {
-      unlockStore();
+      unlockForReading( true, null, null );
     }
   }
 
   @Override
-  public synchronized boolean namespaceExists( String namespace ) throws MetaStoreException {
-    lockStore();
+  public boolean namespaceExists( String namespace ) throws MetaStoreException {
+    lockForReading( true, null, null );
     try {
       String path = XmlUtil.getNamespaceFolder( rootFolder, namespace );
       return pathExists( path );
     } finally {
-      unlockStore();
+      unlockForReading( true, null, null );
     }
   }
 
   @Override
-  public synchronized void createNamespace( String namespace ) throws MetaStoreException {
-    lockStore();
+  public void createNamespace( String namespace ) throws MetaStoreException {
+    lockForWriting( null, null );
     try {
       String path = XmlUtil.getNamespaceFolder( rootFolder, namespace );
       if ( pathExists( path ) ) {
@@ -119,51 +490,58 @@ public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMeta
       if ( !createDirectory( path ) ) {
         throw new MetaStoreException( "Unable to create XML meta store namespace folder: " + path );
       }
+      folderChanged( rootFolder );
     } finally {
-      unlockStore();
+      unlockForWriting( null, null );
     }
   }
 
   @Override
-  public synchronized void deleteNamespace( String namespace ) throws MetaStoreException {
-    lockStore();
+  public void deleteNamespace( String namespace ) throws MetaStoreException {
+    lockForWriting( null, null );
     try {
       String path = XmlUtil.getNamespaceFolder( rootFolder, namespace );
       if ( !pathExists( path ) ) {
         return; // Should we throw an exception?
       }
-      List<IMetaStoreElementType> elementTypes = getElementTypes( namespace, false );
-
-      if ( !elementTypes.isEmpty() ) {
-        List<String> dependencies = new ArrayList<>( elementTypes.size() );
-        for ( IMetaStoreElementType elementType : elementTypes ) {
-          dependencies.add( elementType.getId() );
+      // The element types are the folders with a type file, their IDs are the folder names
+      //
+      List<String> dependencies = new ArrayList<>();
+      for ( String elementTypeId : listWatchedFolders( path ) ) {
+        if ( pathExists( XmlUtil.getElementTypeFile( rootFolder, namespace, elementTypeId ) ) ) {
+          dependencies.add( elementTypeId );
         }
+      }
+
+      if ( !dependencies.isEmpty() ) {
         throw new MetaStoreDependenciesExistsException( dependencies,
             "Unable to delete the XML meta store namespace with name '" + namespace
                 + "' as it still contains dependencies" );
       }
 
+      folderChanged( rootFolder );
+      folderChanged( path );
+      deleteFolderFile( path, XmlUtil.STORE_LOCK_FILE_NAME );
       if ( !deletePath( path ) ) {
         throw new MetaStoreException( "Unable to delete XML meta store namespace folder, check to see if it's empty" );
       }
+      deleteFolderLock( path );
+      deleteFolderFile( getNameIndexesFolder(), namespace );
     } finally {
-      unlockStore();
+      unlockForWriting( null, null );
     }
   }
 
   @Override
-  public synchronized List<IMetaStoreElementType> getElementTypes( String namespace ) throws MetaStoreException {
+  public List<IMetaStoreElementType> getElementTypes( String namespace ) throws MetaStoreException {
     return getElementTypes( namespace, true );
   }
 
-  protected synchronized List<IMetaStoreElementType> getElementTypes( String namespace, boolean lock )
+  protected List<IMetaStoreElementType> getElementTypes( String namespace, boolean lock )
     throws MetaStoreException {
-    if ( lock ) {
-      lockStore();
-    }
+    lockForReading( lock, namespace, null );
     try {
-      List<String> elementTypeFolders = listFolders( XmlUtil.getNamespaceFolder( rootFolder, namespace ) );
+      List<String> elementTypeFolders = listWatchedFolders( XmlUtil.getNamespaceFolder( rootFolder, namespace ) );
       List<IMetaStoreElementType> elementTypes = new ArrayList<>( elementTypeFolders.size() );
       for ( String elementTypeFolder : elementTypeFolders ) {
         IMetaStoreElementType elementType = getElementType( namespace, elementTypeFolder, false );
@@ -173,68 +551,139 @@ public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMeta
       }
       return elementTypes;
     } finally {
-      if ( lock ) {
-        unlockStore();
-      }
+      unlockForReading( lock, namespace, null );
     }
   }
 
   @Override
-  public synchronized List<String> getElementTypeIds( String namespace ) throws MetaStoreException {
-    lockStore();
+  public List<String> getElementTypeIds( String namespace ) throws MetaStoreException {
+    lockForReading( true, namespace, null );
     try {
-      return listFolders( XmlUtil.getNamespaceFolder( rootFolder, namespace ) );
+      return listWatchedFolders( XmlUtil.getNamespaceFolder( rootFolder, namespace ) );
     } finally {
-      unlockStore();
+      unlockForReading( true, namespace, null );
     }
   }
 
-  protected synchronized IMetaStoreElementType getElementType( String namespace, String elementTypeId, boolean lock )
+  protected IMetaStoreElementType getElementType( String namespace, String elementTypeId, boolean lock )
     throws MetaStoreException {
-    if ( lock ) {
-      lockStore();
-    }
+    lockForReading( lock, namespace, null );
     try {
       String elementTypeFile = XmlUtil.getElementTypeFile( rootFolder, namespace, elementTypeId );
       if ( pathExists( elementTypeFile ) ) {
-        BaseXmlMetaStoreElementType elementType = newElementTypeFromFile( namespace, elementTypeFile );
+        BaseXmlMetaStoreElementType elementType = readElementType( namespace, elementTypeFile );
         elementType.setMetaStoreName( getName() );
         return elementType;
       } else {
         return null;
       }
     } finally {
-      if ( lock ) {
-        unlockStore();
-      }
+      unlockForReading( lock, namespace, null );
+    }
+  }
+
+  /**
+   * Read an element type from its file, or copy it from the element type cache if the file didn't change since it was
+   * parsed.
+   */
+  private BaseXmlMetaStoreElementType readElementType( String namespace, String elementTypeFile )
+    throws MetaStoreException {
+    if ( !elementTypeCacheEnabled ) {
+      return newElementTypeFromFile( namespace, elementTypeFile );
+    }
+    long lastModified = lastModified( elementTypeFile );
+    if ( lastModified <= 0L ) {
+      // Without a time changes can't be detected
+      return newElementTypeFromFile( namespace, elementTypeFile );
     }
+    long size = fileSize( elementTypeFile );
+    CachedElementType cached = elementTypeCache.get( elementTypeFile );
+    if ( cached == null || cached.lastModified != lastModified || cached.size != size ) {
+      BaseXmlMetaStoreElementType elementType = newElementTypeFromFile( namespace, elementTypeFile );
+      elementTypeCache.put( elementTypeFile,
+        new CachedElementType( copyElementType( namespace, elementType, elementTypeFile ), lastModified, size ) );
+      return elementType;
+    }
+    return copyElementType( namespace, cached.elementType, elementTypeFile );
+  }
+
+  private BaseXmlMetaStoreElementType copyElementType( String namespace, IMetaStoreElementType elementType,
+      String elementTypeFile ) throws MetaStoreException {
+    return newElementType( namespace, elementType.getId(), elementType.getName(), elementType.getDescription(),
+      elementTypeFile );
   }
 
   @Override
-  public synchronized IMetaStoreElementType getElementType( String namespace, String elementTypeId )
+  public IMetaStoreElementType getElementType( String namespace, String elementTypeId )
     throws MetaStoreException {
     return getElementType( namespace, elementTypeId, true );
   }
 
   @Override
-  public synchronized IMetaStoreElementType getElementTypeByName( String namespace, String elementTypeName )
+  public IMetaStoreElementType getElementTypeByName( String namespace, String elementTypeName )
     throws MetaStoreException {
-    for ( IMetaStoreElementType elementType : getElementTypes( namespace ) ) {
-      if ( elementType.getName() != null && elementType.getName().equalsIgnoreCase( elementTypeName ) ) {
-        return elementType;
-      }
-    }
-    return null;
+    return getElementTypeByName( namespace, elementTypeName, true );
   }
 
+  /**
+   * Find an element type by name, ignoring case. The folder registered for the name in the cache and the folder with
+   * the name itself are tried first so that usually only one type file is read. Only when neither contains the type
+   * all the element types in the namespace are read.
+   */
   @Override
-  public synchronized IMetaStoreElementType getElementTypeByName( String namespace, String elementTypeName,
+  public IMetaStoreElementType getElementTypeByName( String namespace, String elementTypeName,
       boolean lock )
     throws MetaStoreException {
-    for ( IMetaStoreElementType elementType : getElementTypes( namespace, lock ) ) {
-      if ( elementType.getName() != null && elementType.getName().equalsIgnoreCase( elementTypeName ) ) {
-        return elementType;
+    lockForReading( lock, namespace, null );
+    try {
+      if ( elementTypeName != null ) {
+        String cachedElementTypeId = metaStoreCache.getElementTypeIdByName( namespace, elementTypeName );
+        IMetaStoreElementType elementType = getElementTypeInFolder( namespace, cachedElementTypeId, elementTypeName );
+        if ( elementType == null && !elementTypeName.equals( cachedElementTypeId ) ) {
+          elementType = getElementTypeInFolder( namespace, elementTypeName, elementTypeName );
+        }
+        if ( elementType != null ) {
+          return elementType;
+        }
+      }
+
+      String namespaceFolder = XmlUtil.getNamespaceFolder( rootFolder, namespace );
+      if ( isKnownMissing( namespaceFolder, elementTypeName ) ) {
+        return null;
+      }
+      List<IMetaStoreElementType> elementTypes = getElementTypes( namespace, false );
+      if ( missingNameCacheEnabled ) {
+        KnownNames names = new KnownNames();
+        for ( IMetaStoreElementType elementType : elementTypes ) {
+          String elementTypeFilename = XmlUtil.getElementTypeFile( rootFolder, namespace, elementType.getName() );
+          names.add( elementType.getName(), elementTypeFilename, lastModified( elementTypeFilename ) );
+        }
+        rememberNames( namespaceFolder, names );
+      }
+      for ( IMetaStoreElementType elementType : elementTypes ) {
+        if ( elementType.getName() != null && elementType.getName().equalsIgnoreCase( elementTypeName ) ) {
+          metaStoreCache.registerElementTypeIdForName( namespace, elementTypeName, elementType.getId() );
+          return elementType;
+        }
       }
+      return null;
+    } finally {
+      unlockForReading( lock, namespace, null );
+    }
+  }
+
+  /**
+   * @return the element type stored in the given folder if its name matches, ignoring case. null otherwise.
+   */
+  private IMetaStoreElementType getElementTypeInFolder( String namespace, String elementTypeFolder,
+      String elementTypeName ) throws MetaStoreException {
+    if ( elementTypeFolder == null ) {
+      return null;
+    }
+    IMetaStoreElementType elementType = getElementType( namespace, elementTypeFolder, false );
+    if ( elementType != null && elementType.getName() != null
+        && elementType.getName().equalsIgnoreCase( elementTypeName ) ) {
+      return elementType;
     }
     return null;
   }
@@ -244,9 +693,9 @@ public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMeta
   }
 
   @Override
-  public synchronized void createElementType( String namespace, IMetaStoreElementType elementType )
+  public void createElementType( String namespace, IMetaStoreElementType elementType )
     throws MetaStoreException {
-    lockStore();
+    lockForWriting( namespace, null );
     try {
       // In the case of a file, the ID is the name
       //
@@ -254,38 +703,49 @@ public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMeta
         elementType.setId( elementType.getName() );
       }
 
+      String namespaceFolder = XmlUtil.getNamespaceFolder( rootFolder, namespace );
+      KnownNames names = getKnownNames( namespaceFolder );
       String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementType.getName() );
       String elementTypeFilename = XmlUtil.getElementTypeFile( rootFolder, namespace, elementType.getName() );
       if ( pathExists( elementTypeFolder ) && pathExists( elementTypeFilename ) ) {
         throw new MetaStoreElementTypeExistsException( getElementTypes( namespace, false ),
             "The specified element type already exists with the same ID" );
       }
-      if ( !pathExists( elementTypeFolder ) && !createDirectory( elementTypeFolder ) ) {
-        throw new MetaStoreException(
-            "Unable to create XML meta store element type folder '" + elementTypeFolder + "'" );
+      if ( !pathExists( elementTypeFolder ) ) {
+        if ( !createDirectory( elementTypeFolder ) ) {
+          throw new MetaStoreException(
+              "Unable to create XML meta store element type folder '" + elementTypeFolder + "'" );
+        }
+        if ( shardedLayout ) {
+          markSharded( elementTypeFolder );
+        }
       }
+      folderChanged( XmlUtil.getNamespaceFolder( rootFolder, namespace ) );
 
       // Copy the element type information to the XML meta store
       //
       BaseXmlMetaStoreElementType xmlType =
           newElementType( namespace, elementType.getId(), elementType.getName(), elementType.getDescription(),
             elementTypeFilename );
+      elementTypeCache.remove( elementTypeFilename );
       xmlType.save();
 
       metaStoreCache.registerElementTypeIdForName( namespace, elementType.getName(), elementType.getId() );
       metaStoreCache.registerProcessedFile( elementTypeFolder, lastModified( elementTypeFolder ) );
+      updateKnownNames( namespaceFolder, names,
+        Collections.singletonMap( elementTypeFilename, elementType.getName() ) );
 
       xmlType.setMetaStoreName( getName() );
       elementType.setMetaStoreName( getName() );
     } finally {
-      unlockStore();
+      unlockForWriting( namespace, null );
     }
   }
 
   @Override
-  public synchronized void updateElementType( String namespace, IMetaStoreElementType elementType )
+  public void updateElementType( String namespace, IMetaStoreElementType elementType )
     throws MetaStoreException {
-    lockStore();
+    lockForWriting( namespace, null );
     try {
       String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementType.getName() );
       if ( !pathExists( elementTypeFolder ) ) {
@@ -300,38 +760,37 @@ public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMeta
       BaseXmlMetaStoreElementType xmlType =
           newElementType( namespace, elementType.getId(), elementType.getName(), elementType.getDescription(),
             elementTypeFilename );
+      elementTypeCache.remove( elementTypeFilename );
       xmlType.save();
 
       metaStoreCache.registerElementTypeIdForName( namespace, elementType.getName(), elementType.getId() );
       metaStoreCache.registerProcessedFile( elementTypeFolder, lastModified( elementTypeFolder ) );
     } finally {
-      unlockStore();
+      unlockForWriting( namespace, null );
     }
   }
 
   @Override
-  public synchronized void deleteElementType( String namespace, IMetaStoreElementType elementType )
+  public void deleteElementType( String namespace, IMetaStoreElementType elementType )
     throws MetaStoreException {
-    lockStore();
+    lockForWriting( namespace, null );
     try {
       String elementTypeFilename = XmlUtil.getElementTypeFile( rootFolder, namespace, elementType.getName() );
       if ( !pathExists( elementTypeFilename ) ) {
         return;
       }
-      // Check if the element type has no remaining elements
-      List<IMetaStoreElement> elements =
-          getElements( namespace, elementType, false, true, new ArrayList<MetaStoreException>() );
-      if ( !elements.isEmpty() ) {
-        List<String> dependencies = new ArrayList<>();
-        for ( IMetaStoreElement element : elements ) {
-          dependencies.add( element.getId() );
-        }
+      String namespaceFolder = XmlUtil.getNamespaceFolder( rootFolder, namespace );
+      KnownNames names = getKnownNames( namespaceFolder );
+      // Check if the element type has no remaining elements, the IDs are the file names
+      List<String> dependencies = listElementIds( namespace, elementType.getName() );
+      if ( !dependencies.isEmpty() ) {
         throw new MetaStoreDependenciesExistsException( dependencies, "Unable to delete element type with name '"
             + elementType.getName() + "' in namespace '" + namespace + "' because there are still elements present" );
       }
 
       // Remove the elementType.xml file
       //
+      elementTypeCache.remove( elementTypeFilename );
       if ( !deletePath( elementTypeFilename ) ) {
         throw new MetaStoreException( "Unable to delete element type XML file '" + elementTypeFilename + "'" );
       }
@@ -339,13 +798,28 @@ public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMeta
       // Remove the folder too, should be empty by now.
       //
       String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementType.getName() );
+      folderChanged( XmlUtil.getNamespaceFolder( rootFolder, namespace ) );
+      folderChanged( elementTypeFolder );
+      String nameIndexFolder = XmlUtil.getElementTypeFolder( getNameIndexesFolder(), namespace, elementType.getName() );
+      deleteFolderFile( nameIndexFolder, XmlUtil.NAME_INDEX_FILE_NAME );
+      deleteFolderFile( XmlUtil.getNamespaceFolder( getNameIndexesFolder(), namespace ), elementType.getName() );
+      deleteFolderFile( elementTypeFolder, XmlUtil.STORE_LOCK_FILE_NAME );
+      if ( isSharded( elementTypeFolder ) ) {
+        deleteShardFolders( elementTypeFolder );
+        deleteFolderFile( elementTypeFolder, XmlUtil.SHARDED_LAYOUT_FILE_NAME );
+        shardedFolders.remove( elementTypeFolder );
+      }
       if ( !deletePath( elementTypeFolder ) ) {
         throw new MetaStoreException( "Unable to delete element type XML folder '" + elementTypeFolder + "'" );
       }
+      deleteFolderLock( elementTypeFolder );
       metaStoreCache.unregisterElementTypeId( namespace, elementType.getId() );
       metaStoreCache.unregisterProcessedFile( elementTypeFolder );
+      knownNames.remove( elementTypeFolder );
+      memoryNameIndexes.remove( elementTypeFolder );
+      updateKnownNames( namespaceFolder, names, Collections.singletonMap( elementTypeFilename, (String) null ) );
     } finally {
-      unlockStore();
+      unlockForWriting( namespace, null );
     }
   }
 
@@ -368,218 +842,1450 @@ public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMeta
     return getElements( namespace, elementType, lock, true, exceptionList );
   }
 
-  protected synchronized List<IMetaStoreElement> getElements( String namespace, IMetaStoreElementType elementType,
-      boolean lock, boolean includeProcessedFiles, List<MetaStoreException> exceptionList )
+  /**
+   * Retrieve all the elements belonging to an element type. In the lazy mode only the names are read from the element
+   * files and {@link XmlMetaStoreLazyElement}s are returned, which read the rest of the element when it is first used.
+   * A file of which not even the name can be read fails the list or ends up in exceptionList.
+   */
+  @Override
+  public List<IMetaStoreElement> getElements( String namespace, IMetaStoreElementType elementType, boolean lock,
+      List<MetaStoreException> exceptionList, boolean lazy )
     throws MetaStoreException {
-    if ( lock ) {
-      lockStore();
+    if ( !lazy ) {
+      return getElements( namespace, elementType, lock, true, exceptionList );
     }
+    lockForReading( lock, namespace, elementType.getName() );
     try {
-      String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementType.getName() );
-      Map<String, Long> processedFiles =
-          includeProcessedFiles ? Collections.emptyMap() : metaStoreCache.getProcessedFiles();
-      List<T> elementTypeFiles = listFiles( elementTypeFolder, processedFiles );
-      List<IMetaStoreElement> elements = new ArrayList<>( elementTypeFiles.size() );
-      for ( T elementTypeFile : elementTypeFiles ) {
-        String elementId = getFilename( elementTypeFile );
-        // File .type.xml doesn't hidden in OS Windows so better to ignore it explicitly
-        if ( elementId.equals( XmlUtil.ELEMENT_TYPE_FILE_NAME ) ) {
-          continue;
-        }
-        elementId = elementId.substring( 0, elementId.length() - 4 ); // remove .xml to get the ID
+      List<IMetaStoreElement> elements = new ArrayList<>();
+      Map<String, ElementFile> elementFiles =
+          listElementFiles( namespace, elementType.getName(), Collections.<String, Long>emptyMap() );
+      for ( Map.Entry<String, ElementFile> elementFile : elementFiles.entrySet() ) {
+        String elementId = elementFile.getKey();
+        String elementFilename = elementFile.getValue().filename;
         try {
-          elements.add( getElement( namespace, elementType, elementId, false ) );
+          long lastModified = getLastModified( elementFile.getValue() );
+          String elementName = readElementName( elementFilename );
+          metaStoreCache.registerElementIdForName( namespace, elementType, elementName, elementId );
+          metaStoreCache.registerProcessedFile( elementFilename, lastModified );
+          elements.add( new XmlMetaStoreLazyElement( this, namespace, elementType, elementId, elementName ) );
         } catch ( Exception e ) {
-          // If we are collecting exceptions instead of fatally exiting, add to the list
-          // of exceptions and continue
           if ( exceptionList != null ) {
             exceptionList.add( new MetaStoreException( "Could not load metaStore element '" + elementId + "'", e ) );
           } else {
-            // Strict run. abort list
             throw e;
           }
         }
       }
-
       return elements;
     } finally {
-      if ( lock ) {
-        unlockStore();
-      }
+      unlockForReading( lock, namespace, elementType.getName() );
     }
   }
 
-  @Override
-  public synchronized List<String> getElementIds( String namespace, IMetaStoreElementType elementType )
+  protected List<IMetaStoreElement> getElements( String namespace, IMetaStoreElementType elementType,
+      boolean lock, boolean includeProcessedFiles, List<MetaStoreException> exceptionList )
     throws MetaStoreException {
-    lockStore();
+    lockForReading( lock, namespace, elementType.getName() );
     try {
-      String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementType.getName() );
-      Map<String, Long> processedFiles = metaStoreCache.getProcessedFiles();
-      List<T> elementTypeFiles = listFiles( elementTypeFolder, processedFiles );
-      List<String> elementIds = new ArrayList<>( elementTypeFiles.size() );
-      for ( T elementTypeFile : elementTypeFiles ) {
-        String elementId = getFilename( elementTypeFile );
-        // File .type.xml doesn't hidden in OS Windows so better to ignore it explicitly
-        if ( elementId.equals( XmlUtil.ELEMENT_TYPE_FILE_NAME ) ) {
-          continue;
+      Map<String, Long> processedFiles =
+          includeProcessedFiles ? Collections.emptyMap() : metaStoreCache.getProcessedFiles();
+      Map<String, ElementFile> elementFiles =
+          listElementFiles( namespace, elementType.getName(), processedFiles );
+      List<String> elementIds = new ArrayList<>( elementFiles.keySet() );
+      if ( elementLoadingParallelism > 1 && elementIds.size() > 1 ) {
+        return loadElements( namespace, elementType, elementIds, elementFiles, exceptionList );
+      }
+
+      List<IMetaStoreElement> elements = new ArrayList<>( elementIds.size() );
+      for ( String elementId : elementIds ) {
+        try {
+          elements.add( loadElement( namespace, elementType, elementId, elementFiles.get( elementId ) ) );
+        } catch ( Exception e ) {
+          // If we are collecting exceptions instead of fatally exiting, add to the list
+          // of exceptions and continue
+          if ( exceptionList != null ) {
+            exceptionList.add( new MetaStoreException( "Could not load metaStore element '" + elementId + "'", e ) );
+          } else {
+            // Strict run. abort list
+            throw e;
+          }
         }
-        elementId = elementId.substring( 0, elementId.length() - 4 ); // remove .xml to get the ID
-        elementIds.add( elementId );
       }
 
-      return elementIds;
+      return elements;
     } finally {
-      unlockStore();
+      unlockForReading( lock, namespace, elementType.getName() );
     }
   }
 
-  @Override
-  public IMetaStoreElement getElement( String namespace, IMetaStoreElementType elementType, String elementId )
-    throws MetaStoreException {
-    return getElement( namespace, elementType, elementId, true );
+  /**
+   * Files like .type.xml, .metastore.lock and the name index aren't hidden in OS Windows so better to ignore them
+   * explicitly
+   *
+   * @return true if the file in an element type folder contains an element
+   */
+  private static boolean isElementFile( String filename ) {
+    return filename.endsWith( ".xml" ) && !filename.equals( XmlUtil.ELEMENT_TYPE_FILE_NAME );
   }
 
-  protected synchronized IMetaStoreElement getElement( String namespace, IMetaStoreElementType elementType,
-      String elementId, boolean lock )
-    throws MetaStoreException {
-    if ( lock ) {
-      lockStore();
+  /**
+   * Load elements without locking, on the element loading threads if there are several. The caller holds the locks.
+   *
+   * @return the elements in the order of their IDs, null for the elements whose file doesn't exist
+   */
+  private List<IMetaStoreElement> loadElements( String namespace, IMetaStoreElementType elementType,
+      List<String> elementIds ) throws MetaStoreException {
+    if ( elementLoadingParallelism > 1 && elementIds.size() > 1 ) {
+      return loadElements( namespace, elementType, elementIds, Collections.<String, ElementFile>emptyMap(), null );
     }
+    List<IMetaStoreElement> elements = new ArrayList<>( elementIds.size() );
+    for ( String elementId : elementIds ) {
+      elements.add( loadElement( namespace, elementType, elementId ) );
+    }
+    return elements;
+  }
+
+  /**
+   * Parse the element files on the element loading threads. The calling thread holds the locks for all of them.
+   *
+   * @param elementFiles
+   *          the element files found by listing their folder, by element ID. Elements that aren't in it are looked up.
+   * @return the elements in the order of their IDs
+   */
+  private List<IMetaStoreElement> loadElements( String namespace, IMetaStoreElementType elementType,
+      List<String> elementIds, Map<String, ElementFile> elementFiles, List<MetaStoreException> exceptionList )
+    throws MetaStoreException {
+    ExecutorService executor = getElementLoadingExecutor();
+    List<Future<IMetaStoreElement>> futures = new ArrayList<>( elementIds.size() );
     try {
-      String elementFilename = XmlUtil.getElementFile( rootFolder, namespace, elementType.getName(), elementId );
-      if ( !pathExists( elementFilename ) ) {
-        return null;
+      for ( String elementId : elementIds ) {
+        ElementFile elementFile = elementFiles.get( elementId );
+        futures.add( executor.submit( () -> loadElement( namespace, elementType, elementId, elementFile ) ) );
+      }
+      List<IMetaStoreElement> elements = new ArrayList<>( elementIds.size() );
+      for ( int i = 0; i < futures.size(); i++ ) {
+        try {
+          elements.add( futures.get( i ).get() );
+        } catch ( ExecutionException e ) {
+          // Same as parsing on this thread: collect the exception or abort the list
+          //
+          Throwable cause = e.getCause();
+          if ( cause instanceof Error ) {
+            throw (Error) cause;
+          } else if ( exceptionList != null ) {
+            exceptionList.add(
+              new MetaStoreException( "Could not load metaStore element '" + elementIds.get( i ) + "'", cause ) );
+          } else if ( cause instanceof RuntimeException ) {
+            throw (RuntimeException) cause;
+          } else if ( cause instanceof MetaStoreException ) {
+            throw (MetaStoreException) cause;
+          } else {
+            throw new MetaStoreException( cause );
+          }
+        }
       }
-      BaseXmlMetaStoreElement element = newElement( elementFilename );
-      metaStoreCache.registerElementIdForName( namespace, elementType, element.getName(), elementId );
-      metaStoreCache.registerProcessedFile( elementFilename, lastModified( elementFilename ) );
-      return element;
+      return elements;
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new MetaStoreException( "Interrupted while loading the elements of type '" + elementType.getName() + "'",
+        e );
+    } catch ( RejectedExecutionException e ) {
+      throw new MetaStoreException( "Unable to load the elements of type '" + elementType.getName() + "'", e );
     } finally {
-      if ( lock ) {
-        unlockStore();
+      // Once we return the locks are released: don't leave anything running
+      //
+      for ( Future<IMetaStoreElement> future : futures ) {
+        future.cancel( false );
       }
     }
   }
 
   @Override
-  public IMetaStoreElement getElementByName( String namespace, IMetaStoreElementType elementType, String name )
+  public List<String> getElementIds( String namespace, IMetaStoreElementType elementType )
     throws MetaStoreException {
-    return getElementByName( namespace, elementType, name, true );
+    lockForReading( true, namespace, elementType.getName() );
+    try {
+      return listElementIds( namespace, elementType.getName() );
+    } finally {
+      unlockForReading( true, namespace, elementType.getName() );
+    }
+  }
+
+  /**
+   * List the IDs of the elements of a type from the names of their files, without reading them. The caller holds the
+   * locks.
+   */
+  private List<String> listElementIds( String namespace, String elementTypeName ) throws MetaStoreException {
+    return new ArrayList<>( listElementFiles( namespace, elementTypeName, Collections.<String, Long>emptyMap() )
+      .keySet() );
+  }
+
+  /**
+   * List the element files of a type without reading them. A sharded element type folder is listed one shard folder at
+   * a time, together with the files that are still in the element type folder itself because it is being migrated.
+   * The caller holds the locks.
+   *
+   * @param processedFiles
+   *          the files to leave out if they didn't change since they were processed
+   * @return the files by element ID
+   */
+  private Map<String, ElementFile> listElementFiles( String namespace, String elementTypeName,
+      Map<String, Long> processedFiles ) throws MetaStoreException {
+    String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementTypeName );
+    Map<String, ElementFile> elementFiles = new LinkedHashMap<>();
+    addElementFiles( elementTypeFolder, processedFiles, elementFiles );
+    if ( isSharded( elementTypeFolder ) ) {
+      for ( String shardFolder : listShardFolders( elementTypeFolder ) ) {
+        addElementFiles( shardFolder, processedFiles, elementFiles );
+      }
+    }
+    return elementFiles;
+  }
+
+  private void addElementFiles( String folder, Map<String, Long> processedFiles,
+      Map<String, ElementFile> elementFiles ) throws MetaStoreException {
+    for ( T file : listWatchedFiles( folder, processedFiles ) ) {
+      String filename = getFilename( file );
+      if ( isElementFile( filename ) ) {
+        // remove .xml to get the ID
+        elementFiles.put( filename.substring( 0, filename.length() - 4 ), new ElementFile(
+          folder + File.separator + filename, getListedLastModified( file ), getListedFileSize( file ) ) );
+      }
+    }
+  }
+
+  /**
+   * @return the last modified time of a listed element file, from the listing if it was read while listing
+   */
+  private long getLastModified( ElementFile elementFile ) throws MetaStoreException {
+    return elementFile.lastModified >= 0 ? elementFile.lastModified : lastModified( elementFile.filename );
+  }
+
+  /**
+   * @return the size of a listed element file, from the listing if it was read while listing
+   */
+  private long getFileSize( ElementFile elementFile ) throws MetaStoreException {
+    return elementFile.size >= 0 ? elementFile.size : fileSize( elementFile.filename );
+  }
+
+  /**
+   * @return the shard folders on the second level of a sharded element type folder
+   */
+  private List<String> listShardFolders( String elementTypeFolder ) throws MetaStoreException {
+    List<String> shardFolders = new ArrayList<>();
+    for ( String parentName : listWatchedFolders( elementTypeFolder ) ) {
+      if ( !XmlUtil.isShardFolderName( parentName ) ) {
+        continue;
+      }
+      String parentFolder = elementTypeFolder + File.separator + parentName;
+      for ( String name : listFolders( parentFolder ) ) {
+        if ( XmlUtil.isShardFolderName( name ) ) {
+          shardFolders.add( parentFolder + File.separator + name );
+        }
+      }
+    }
+    return shardFolders;
+  }
+
+  /**
+   * @return true if the element type folder has the sharded layout
+   */
+  private boolean isSharded( String elementTypeFolder ) throws MetaStoreException {
+    if ( shardedFolders.contains( elementTypeFolder ) ) {
+      return true;
+    }
+    if ( flatFolders.contains( elementTypeFolder ) ) {
+      return false;
+    }
+    XmlMetaStoreWatcher currentWatcher = watcher;
+    long generation = currentWatcher == null ? 0L : currentWatcher.getGeneration();
+    if ( pathExists( elementTypeFolder + File.separator + XmlUtil.SHARDED_LAYOUT_FILE_NAME ) ) {
+      shardedFolders.add( elementTypeFolder );
+      return true;
+    }
+    // Another process can migrate the folder at any time, only the watcher reports it
+    //
+    if ( currentWatcher != null && currentWatcher.isWatched( elementTypeFolder ) ) {
+      flatFolders.add( elementTypeFolder );
+      if ( currentWatcher.getGeneration() != generation || watcher != currentWatcher ) {
+        flatFolders.remove( elementTypeFolder );
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the file of an element. In a sharded element type folder that is the file in the shard of the element,
+   *         unless the element is still in the element type folder itself because the folder is being migrated.
+   */
+  private String getElementFilename( String namespace, String elementTypeName, String elementId )
+    throws MetaStoreException {
+    String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementTypeName );
+    String filename = XmlUtil.getElementFile( rootFolder, namespace, elementTypeName, elementId );
+    String shardedFilename = XmlUtil.getShardedElementFile( rootFolder, namespace, elementTypeName, elementId );
+    if ( shardedFolders.contains( elementTypeFolder ) ) {
+      return !pathExists( shardedFilename ) && pathExists( filename ) ? filename : shardedFilename;
+    }
+    // An element in the element type folder itself is the element, whatever the layout. The layout is only checked if
+    // it isn't there, so finding the elements of a flat element type takes no more than before.
+    //
+    if ( flatFolders.contains( elementTypeFolder ) || pathExists( filename ) || !isSharded( elementTypeFolder ) ) {
+      return filename;
+    }
+    return shardedFilename;
+  }
+
+  /**
+   * Create the shard folders of a new element file if they don't exist yet.
+   */
+  private void createShardFolders( String elementTypeFolder, String elementFilename ) throws MetaStoreException {
+    String shardFolder = new File( elementFilename ).getParent();
+    if ( shardFolder.equals( elementTypeFolder ) || pathExists( shardFolder ) ) {
+      return;
+    }
+    for ( String folder : new String[] { new File( shardFolder ).getParent(), shardFolder } ) {
+      if ( !pathExists( folder ) && !createDirectory( folder ) && !pathExists( folder ) ) {
+        throw new MetaStoreException( "Unable to create XML meta store shard folder '" + folder + "'" );
+      }
+    }
+  }
+
+  /**
+   * Mark an element type folder with the sharded layout.
+   *
+   * @return false if this store can't write the marker file, the folder keeps the flat layout then
+   */
+  private boolean markSharded( String elementTypeFolder ) throws MetaStoreException {
+    if ( !writeFileAtomically( elementTypeFolder + File.separator + XmlUtil.SHARDED_LAYOUT_FILE_NAME,
+        "Pentaho metastore sharded layout 1\n".getBytes( StandardCharsets.UTF_8 ) ) ) {
+      return false;
+    }
+    shardedFolders.add( elementTypeFolder );
+    flatFolders.remove( elementTypeFolder );
+    knownNames.remove( elementTypeFolder );
+    return true;
+  }
+
+  @Override
+  public int countElements( String namespace, IMetaStoreElementType elementType ) throws MetaStoreException {
+    return getElementIds( namespace, elementType ).size();
+  }
+
+  @Override
+  public boolean elementExists( String namespace, IMetaStoreElementType elementType, String elementId )
+    throws MetaStoreException {
+    lockForReading( true, namespace, elementType.getName() );
+    try {
+      return pathExists( getElementFilename( namespace, elementType.getName(), elementId ) );
+    } finally {
+      unlockForReading( true, namespace, elementType.getName() );
+    }
+  }
+
+  /**
+   * List a page of elements from the name index: only the names of element files that were added or modified since
+   * they were indexed are read, only the elements on the page are parsed. Without the name index files (see
+   * {@link #setNameIndexEnabled(boolean)}) the index is kept in memory, so only the first page after a restart reads
+   * the names of all the element files. Files of which the name can't be read are left out.
+   */
+  @Override
+  public List<IMetaStoreElement> getElementsPage( String namespace, IMetaStoreElementType elementType,
+      MetaStoreElementOrder order, int offset, int limit ) throws MetaStoreException {
+    lockForReading( true, namespace, elementType.getName() );
+    try {
+      List<XmlMetaStoreNameIndex.Entry> entries = refreshNameIndex( namespace, elementType ).getEntriesByName();
+      if ( order == MetaStoreElementOrder.LAST_MODIFIED ) {
+        // The sort is stable: elements modified at the same time stay sorted by name
+        //
+        entries.sort( Comparator.comparingLong( XmlMetaStoreNameIndex.Entry::getLastModified ).reversed() );
+      }
+      List<String> pageIds = new ArrayList<>();
+      for ( XmlMetaStoreNameIndex.Entry entry : MetaStoreUtil.getPage( entries, offset, limit ) ) {
+        pageIds.add( entry.getId() );
+      }
+      List<IMetaStoreElement> elements = new ArrayList<>( pageIds.size() );
+      for ( IMetaStoreElement element : loadElements( namespace, elementType, pageIds ) ) {
+        if ( element != null ) {
+          elements.add( element );
+        }
+      }
+      return elements;
+    } finally {
+      unlockForReading( true, namespace, elementType.getName() );
+    }
+  }
+
+  /**
+   * Bring the name index of an element type up to date with the element files: deleted files are dropped and the names
+   * of new or modified files are read. The index is saved if it changed. Without the name index files it is kept in
+   * memory instead. The caller holds the lock on the element type, which other readers may hold as well.
+   *
+   * @return the index of all the element files of which the name can be read, which must not be changed
+   */
+  private XmlMetaStoreNameIndex refreshNameIndex( String namespace, IMetaStoreElementType elementType )
+    throws MetaStoreException {
+    String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementType.getName() );
+    XmlMetaStoreNameIndex index;
+    if ( nameIndexEnabled ) {
+      index = readNameIndex( namespace, elementType );
+    } else {
+      // Other readers of the element type refresh their own copy
+      //
+      XmlMetaStoreNameIndex memoryIndex = memoryNameIndexes.get( elementTypeFolder );
+      index = memoryIndex == null ? null : memoryIndex.copy();
+    }
+    boolean changed = index == null;
+    if ( index == null ) {
+      index = new XmlMetaStoreNameIndex();
+    }
+    Map<String, ElementFile> elementFiles =
+        listElementFiles( namespace, elementType.getName(), Collections.<String, Long>emptyMap() );
+    for ( String indexedId : index.getIds() ) {
+      if ( !elementFiles.containsKey( indexedId ) ) {
+        index.remove( indexedId );
+        changed = true;
+      }
+    }
+    for ( Map.Entry<String, ElementFile> elementFile : elementFiles.entrySet() ) {
+      String elementId = elementFile.getKey();
+      String elementFilename = elementFile.getValue().filename;
+      XmlMetaStoreNameIndex.Entry entry = index.getEntry( elementId );
+      long lastModified;
+      long size;
+      String elementName;
+      try {
+        lastModified = getLastModified( elementFile.getValue() );
+        size = getFileSize( elementFile.getValue() );
+        if ( entry != null && entry.getLastModified() == lastModified && entry.getSize() == size ) {
+          continue;
+        }
+        elementName = readElementName( elementFilename );
+      } catch ( MetaStoreException e ) {
+        index.remove( elementId );
+        continue;
+      }
+      index.put( elementId, elementName, lastModified, size );
+      metaStoreCache.registerElementIdForName( namespace, elementType, elementName, elementId );
+      metaStoreCache.registerProcessedFile( elementFilename, lastModified );
+      changed = true;
+    }
+    if ( !nameIndexEnabled ) {
+      memoryNameIndexes.put( elementTypeFolder, index );
+    } else if ( changed ) {
+      try {
+        writeNameIndex( namespace, elementType, index );
+      } catch ( MetaStoreException e ) {
+        // A read-only store can't keep an index, the names are read again for the next page
+      }
+    }
+    return index;
+  }
+
+  @Override
+  public IMetaStoreElement getElement( String namespace, IMetaStoreElementType elementType, String elementId )
+    throws MetaStoreException {
+    return getElement( namespace, elementType, elementId, true );
+  }
+
+  @Override
+  public Map<String, IMetaStoreElement> getElementsByIds( String namespace, IMetaStoreElementType elementType,
+      Collection<String> elementIds ) throws MetaStoreException {
+    lockForReading( true, namespace, elementType.getName() );
+    try {
+      List<String> uniqueElementIds = new ArrayList<>( new LinkedHashSet<>( elementIds ) );
+      List<IMetaStoreElement> loadedElements = loadElements( namespace, elementType, uniqueElementIds );
+      Map<String, IMetaStoreElement> elements = new LinkedHashMap<>();
+      for ( int i = 0; i < uniqueElementIds.size(); i++ ) {
+        if ( loadedElements.get( i ) != null ) {
+          elements.put( uniqueElementIds.get( i ), loadedElements.get( i ) );
+        }
+      }
+      return elements;
+    } finally {
+      unlockForReading( true, namespace, elementType.getName() );
+    }
+  }
+
+  protected IMetaStoreElement getElement( String namespace, IMetaStoreElementType elementType,
+      String elementId, boolean lock )
+    throws MetaStoreException {
+    lockForReading( lock, namespace, elementType.getName() );
+    try {
+      return loadElement( namespace, elementType, elementId );
+    } finally {
+      unlockForReading( lock, namespace, elementType.getName() );
+    }
+  }
+
+  /**
+   * Load an element without locking, the caller holds the locks.
+   *
+   * @return the element or null if its file doesn't exist
+   */
+  private IMetaStoreElement loadElement( String namespace, IMetaStoreElementType elementType, String elementId )
+    throws MetaStoreException {
+    return loadElement( namespace, elementType, elementId, null );
+  }
+
+  /**
+   * Load an element without locking, the caller holds the locks.
+   *
+   * @param elementFile
+   *          the element file found by listing its folder, null to look it up
+   * @return the element or null if its file doesn't exist
+   */
+  private IMetaStoreElement loadElement( String namespace, IMetaStoreElementType elementType, String elementId,
+      ElementFile elementFile ) throws MetaStoreException {
+    BaseXmlMetaStoreElement element;
+    long lastModified;
+    if ( elementFile == null ) {
+      String elementFilename = getElementFilename( namespace, elementType.getName(), elementId );
+      if ( !pathExists( elementFilename ) ) {
+        return null;
+      }
+      elementFile = new ElementFile( elementFilename, -1L, -1L );
+    }
+    try {
+      lastModified = getLastModified( elementFile );
+      element = readElement( elementFile.filename, lastModified, elementFile.size );
+    } catch ( MetaStoreException e ) {
+      // A listed file can be deleted before it is read
+      //
+      if ( !pathExists( elementFile.filename ) ) {
+        return null;
+      }
+      throw e;
+    }
+    metaStoreCache.registerElementIdForName( namespace, elementType, element.getName(), elementId );
+    metaStoreCache.registerProcessedFile( elementFile.filename, lastModified );
+    return element;
+  }
+
+  /**
+   * Read an element from its file, or copy it from the element cache if the file didn't change since it was parsed.
+   *
+   * @param size
+   *          the size of the file if it is known, -1 to read it if the element cache needs it
+   */
+  private BaseXmlMetaStoreElement readElement( String elementFilename, long lastModified, long size )
+    throws MetaStoreException {
+    XmlMetaStoreElementCache cache = elementCache;
+    if ( cache == null ) {
+      size = -1L;
+    } else if ( size < 0 ) {
+      size = fileSize( elementFilename );
+    }
+    if ( size < 0 ) {
+      return newElement( elementFilename );
+    }
+    IMetaStoreElement cachedElement = cache.get( elementFilename, lastModified, size );
+    if ( cachedElement != null ) {
+      return newElement( cachedElement );
+    }
+    BaseXmlMetaStoreElement element = newElement( elementFilename );
+    cache.put( elementFilename, lastModified, size, newElement( element ) );
+    return element;
+  }
+
+  private void evictElement( String elementFilename ) {
+    XmlMetaStoreElementCache cache = elementCache;
+    if ( cache != null ) {
+      cache.remove( elementFilename );
+    }
+  }
+
+  @Override
+  public IMetaStoreElement getElementByName( String namespace, IMetaStoreElementType elementType, String name )
+    throws MetaStoreException {
+    return getElementByName( namespace, elementType, name, true );
+  }
+
+  @Override
+  public IMetaStoreElement getElementByName( String namespace, IMetaStoreElementType elementType,
+      String name, boolean lock )
+    throws MetaStoreException {
+    return getElementsByNames( namespace, elementType, Collections.singletonList( name ), lock ).get( name );
+  }
+
+  @Override
+  public Map<String, IMetaStoreElement> getElementsByNames( String namespace, IMetaStoreElementType elementType,
+      Collection<String> names ) throws MetaStoreException {
+    return getElementsByNames( namespace, elementType, names, true );
+  }
+
+  protected Map<String, IMetaStoreElement> getElementsByNames( String namespace, IMetaStoreElementType elementType,
+      Collection<String> names, boolean lock ) throws MetaStoreException {
+    lockForReading( lock, namespace, elementType.getName() );
+    try {
+      Map<String, IMetaStoreElement> found = new HashMap<>();
+      Set<String> remaining = new LinkedHashSet<>( names );
+
+      // The names with a cached ID are loaded together
+      //
+      List<String> cachedNames = new ArrayList<>();
+      List<String> cachedElementIds = new ArrayList<>();
+      for ( String name : remaining ) {
+        String chachedElementId = metaStoreCache.getElementIdByName( namespace, elementType, name );
+        if ( chachedElementId != null ) {
+          cachedNames.add( name );
+          cachedElementIds.add( chachedElementId );
+        }
+      }
+      List<IMetaStoreElement> cachedElements = loadElements( namespace, elementType, cachedElementIds );
+      for ( int i = 0; i < cachedNames.size(); i++ ) {
+        IMetaStoreElement element = cachedElements.get( i );
+        if ( element != null && element.getName().equalsIgnoreCase( cachedNames.get( i ) ) ) {
+          found.put( cachedNames.get( i ), element );
+          remaining.remove( cachedNames.get( i ) );
+        }
+      }
+
+      String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementType.getName() );
+      XmlMetaStoreNameIndex index = nameIndexEnabled && !remaining.isEmpty()
+          ? readNameIndex( namespace, elementType ) : null;
+      for ( Iterator<String> iterator = remaining.iterator(); iterator.hasNext(); ) {
+        String name = iterator.next();
+        if ( isKnownMissing( elementTypeFolder, name ) ) {
+          iterator.remove();
+          continue;
+        }
+        IMetaStoreElement element =
+            index == null ? null : getElementFromNameIndex( index, namespace, elementType, name );
+        if ( element != null ) {
+          found.put( name, element );
+          iterator.remove();
+        }
+      }
+
+      if ( !remaining.isEmpty() ) {
+        found.putAll( findElementsByNames( namespace, elementType, remaining ) );
+      }
+
+      Map<String, IMetaStoreElement> elements = new LinkedHashMap<>();
+      for ( String name : names ) {
+        IMetaStoreElement element = found.get( name );
+        if ( element != null ) {
+          elements.put( name, element );
+        }
+      }
+      return elements;
+    } finally {
+      unlockForReading( lock, namespace, elementType.getName() );
+    }
+  }
+
+  /**
+   * Look up an element in the name index of its type. Index entries for files that changed since they were indexed are
+   * ignored.
+   *
+   * @return the element or null if it isn't in the index
+   */
+  private IMetaStoreElement getElementFromNameIndex( XmlMetaStoreNameIndex index, String namespace,
+      IMetaStoreElementType elementType, String name ) throws MetaStoreException {
+    for ( XmlMetaStoreNameIndex.Entry entry : index.getEntries( name ) ) {
+      String elementFilename =
+          getElementFilename( namespace, elementType.getName(), entry.getId() );
+      if ( !pathExists( elementFilename ) || lastModified( elementFilename ) != entry.getLastModified()
+          || fileSize( elementFilename ) != entry.getSize() ) {
+        continue;
+      }
+      IMetaStoreElement element = loadElement( namespace, elementType, entry.getId() );
+      if ( element != null && element.getName() != null && element.getName().equalsIgnoreCase( name ) ) {
+        return element;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Search the element files for names that aren't cached, all of them in a single pass. Only the names are read, an
+   * element is parsed once it is found. Without a name index or the missing name cache the files that were read before
+   * are skipped, their names are cached. Otherwise all the files are read to index or remember all the names. Files
+   * that can't be read are skipped.
+   *
+   * @return the first element found with every name, by name. Names without an element are left out.
+   */
+  private Map<String, IMetaStoreElement> findElementsByNames( String namespace, IMetaStoreElementType elementType,
+      Collection<String> searchedNames ) throws MetaStoreException {
+    String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementType.getName() );
+    XmlMetaStoreNameIndex index = nameIndexEnabled ? new XmlMetaStoreNameIndex() : null;
+    KnownNames names = missingNameCacheEnabled ? new KnownNames() : null;
+    boolean complete = index != null || names != null;
+    Map<String, Long> processedFiles = complete ? Collections.emptyMap() : metaStoreCache.getProcessedFiles();
+
+    // The searched names that weren't found yet, ignoring case
+    //
+    Map<String, List<String>> missing = new HashMap<>();
+    for ( String name : searchedNames ) {
+      missing.computeIfAbsent( KnownNames.toKey( name ), key -> new ArrayList<>() ).add( name );
+    }
+    Map<String, IMetaStoreElement> found = new HashMap<>();
+    Map<String, ElementFile> elementFiles = listElementFiles( namespace, elementType.getName(), processedFiles );
+    for ( Map.Entry<String, ElementFile> elementFile : elementFiles.entrySet() ) {
+      String elementId = elementFile.getKey();
+      String elementFilename = elementFile.getValue().filename;
+      String elementName;
+      long lastModified;
+      try {
+        lastModified = getLastModified( elementFile.getValue() );
+        elementName = readElementName( elementFilename );
+      } catch ( MetaStoreException e ) {
+        // Without the name of every file the missing names aren't known
+        names = null;
+        continue;
+      }
+      if ( index != null ) {
+        index.put( elementId, elementName, lastModified, getFileSize( elementFile.getValue() ) );
+      }
+      if ( names != null ) {
+        names.add( elementName, elementFilename, lastModified );
+      }
+      List<String> matchingNames = elementName == null ? null : missing.get( KnownNames.toKey( elementName ) );
+      if ( matchingNames != null ) {
+        IMetaStoreElement element;
+        try {
+          element = loadElement( namespace, elementType, elementId, elementFile.getValue() );
+        } catch ( MetaStoreException e ) {
+          // Only the name could be read, skip it like any other file that can't be read
+          continue;
+        }
+        if ( element != null ) {
+          for ( String name : matchingNames ) {
+            found.put( name, element );
+          }
+          missing.remove( KnownNames.toKey( elementName ) );
+          if ( !complete && missing.isEmpty() ) {
+            break;
+          }
+        }
+      } else {
+        metaStoreCache.registerElementIdForName( namespace, elementType, elementName, elementId );
+        metaStoreCache.registerProcessedFile( elementFilename, lastModified );
+      }
+    }
+    if ( index != null ) {
+      try {
+        writeNameIndex( namespace, elementType, index );
+      } catch ( MetaStoreException e ) {
+        // A read-only store can't keep an index, the elements are searched without it
+      }
+    }
+    if ( names != null ) {
+      rememberNames( elementTypeFolder, names );
+    }
+    return found;
+  }
+
+  /**
+   * @return true if the missing name cache knows that the folder doesn't contain the name
+   */
+  private boolean isKnownMissing( String folder, String name ) throws MetaStoreException {
+    KnownNames names = getKnownNames( folder );
+    return names != null && !names.contains( name );
+  }
+
+  /**
+   * @return the names in the folder or null if they aren't known or the folder or one of the files the names were read
+   *         from was modified since they were read
+   */
+  private KnownNames getKnownNames( String folder ) throws MetaStoreException {
+    if ( !missingNameCacheEnabled || shardedFolders.contains( folder ) ) {
+      return null;
+    }
+    KnownNames names = knownNames.get( folder );
+    if ( names == null ) {
+      return null;
+    }
+    if ( names.folderLastModified != lastModified( folder ) ) {
+      knownNames.remove( folder, names );
+      return null;
+    }
+    // Older versions rewrite a file in place, which doesn't modify the folder
+    //
+    for ( Map.Entry<String, Long> file : names.files.entrySet() ) {
+      if ( lastModified( file.getKey() ) != file.getValue() ) {
+        knownNames.remove( folder, names );
+        return null;
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Remember the names read from a folder. This is called while holding the lock on the folder, after everything was
+   * written to it, so the folder doesn't change between reading the names and its last modified time.
+   */
+  private void rememberNames( String folder, KnownNames names ) throws MetaStoreException {
+    if ( shardedFolders.contains( folder ) ) {
+      // Adding an element to a shard doesn't modify the element type folder, the names can't be trusted
+      return;
+    }
+    names.folderLastModified = lastModified( folder );
+    knownNames.put( folder, names );
+  }
+
+  /**
+   * Keep the names of a folder known after writing to it through this store.
+   *
+   * @param names
+   *          the names known before writing, null if they weren't known
+   * @param savedNames
+   *          the names of the saved elements or element type by filename, null for the deleted files. The names of
+   *          deleted elements stay known: the worst that can happen is that a lookup reads the folder.
+   */
+  private void updateKnownNames( String folder, KnownNames names, Map<String, String> savedNames )
+    throws MetaStoreException {
+    if ( names == null ) {
+      return;
+    }
+    for ( Map.Entry<String, String> savedName : savedNames.entrySet() ) {
+      if ( savedName.getValue() == null ) {
+        names.files.remove( savedName.getKey() );
+      } else {
+        names.add( savedName.getValue(), savedName.getKey(), lastModified( savedName.getKey() ) );
+      }
+    }
+    names.folderLastModified = lastModified( folder );
+  }
+
+  /**
+   * Update the name index of an element type after elements were saved or deleted, if there is an index.
+   *
+   * @param namesById
+   *          the names of the saved elements by ID, null for the deleted ones
+   */
+  private void updateNameIndex( String namespace, IMetaStoreElementType elementType, Map<String, String> namesById )
+    throws MetaStoreException {
+    if ( !nameIndexEnabled || namesById.isEmpty() ) {
+      return;
+    }
+    XmlMetaStoreNameIndex index = readNameIndex( namespace, elementType );
+    if ( index == null ) {
+      // Created the first time an element is searched by name
+      return;
+    }
+    for ( Map.Entry<String, String> nameById : namesById.entrySet() ) {
+      if ( nameById.getValue() == null ) {
+        index.remove( nameById.getKey() );
+      } else {
+        indexElement( index, namespace, elementType, nameById.getKey(), nameById.getValue() );
+      }
+    }
+    writeNameIndex( namespace, elementType, index );
+  }
+
+  private void indexElement( XmlMetaStoreNameIndex index, String namespace, IMetaStoreElementType elementType,
+      String elementId, String name ) throws MetaStoreException {
+    String elementFilename = getElementFilename( namespace, elementType.getName(), elementId );
+    index.put( elementId, name, lastModified( elementFilename ), fileSize( elementFilename ) );
+  }
+
+  /**
+   * @return the name index of the element type or null if there is none or it can't be used
+   */
+  private XmlMetaStoreNameIndex readNameIndex( String namespace, IMetaStoreElementType elementType )
+    throws MetaStoreException {
+    byte[] content = readFile( getNameIndexFile( namespace, elementType ) );
+    return content == null ? null : XmlMetaStoreNameIndex.parse( content );
+  }
+
+  /**
+   * Save the name index of an element type. The index files are kept in a hidden copy of the folder tree,
+   * {@link XmlUtil#NAME_INDEXES_FOLDER_NAME} in the root folder, so that the element type folders only contain what
+   * older versions expect: they list them and delete them once they are empty.
+   */
+  private void writeNameIndex( String namespace, IMetaStoreElementType elementType, XmlMetaStoreNameIndex index )
+    throws MetaStoreException {
+    String indexesFolder = getNameIndexesFolder();
+    if ( !pathExists( indexesFolder ) && createDirectory( indexesFolder ) ) {
+      hidePath( indexesFolder );
+    }
+    String namespaceFolder = XmlUtil.getNamespaceFolder( indexesFolder, namespace );
+    if ( !pathExists( namespaceFolder ) ) {
+      createDirectory( namespaceFolder );
+    }
+    String elementTypeFolder = XmlUtil.getElementTypeFolder( indexesFolder, namespace, elementType.getName() );
+    if ( !pathExists( elementTypeFolder ) ) {
+      createDirectory( elementTypeFolder );
+    }
+    writeFileAtomically( getNameIndexFile( namespace, elementType ), index.toBytes() );
+  }
+
+  private String getNameIndexesFolder() {
+    return rootFolder + File.separator + XmlUtil.NAME_INDEXES_FOLDER_NAME;
+  }
+
+  private String getNameIndexFile( String namespace, IMetaStoreElementType elementType ) {
+    return XmlUtil.getElementTypeFolder( getNameIndexesFolder(), namespace, elementType.getName() ) + File.separator
+        + XmlUtil.NAME_INDEX_FILE_NAME;
+  }
+
+  public void createElement( String namespace, IMetaStoreElementType elementType,
+      IMetaStoreElement element )
+    throws MetaStoreException {
+    createElements( namespace, elementType, Collections.singletonList( element ), null );
+  }
+
+  @Override
+  public void createElements( String namespace, IMetaStoreElementType elementType,
+      Collection<? extends IMetaStoreElement> elements, List<MetaStoreException> exceptionList )
+    throws MetaStoreException {
+    lockForWriting( namespace, elementType.getName() );
+    try {
+      String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementType.getName() );
+      KnownNames names = getKnownNames( elementTypeFolder );
+
+      // Check all the elements before writing any of them
+      //
+      List<IMetaStoreElement> validElements = new ArrayList<>( elements.size() );
+      List<BaseXmlMetaStoreElement> xmlElements = new ArrayList<>( elements.size() );
+      Set<String> elementIds = new HashSet<>();
+      List<IMetaStoreElement> existingElements = null;
+      for ( IMetaStoreElement element : elements ) {
+        // In the case of a file, the ID is the name
+        //
+        if ( element.getId() == null ) {
+          element.setId( element.getName() );
+        }
+        try {
+          String elementFilename = getElementFilename( namespace, elementType.getName(), element.getId() );
+          if ( !elementIds.add( element.getId() ) || pathExists( elementFilename ) ) {
+            if ( existingElements == null ) {
+              existingElements = getElements( namespace, elementType, false, true, new ArrayList<MetaStoreException>() );
+            }
+            throw new MetaStoreElementExistException( existingElements,
+                "The specified element already exists with the same ID: '" + element.getId() + "'" );
+          }
+          createShardFolders( elementTypeFolder, elementFilename );
+          BaseXmlMetaStoreElement xmlElement = newElement( element );
+          xmlElement.setFilename( elementFilename );
+          validElements.add( element );
+          xmlElements.add( xmlElement );
+        } catch ( Exception e ) {
+          elementFailed( exceptionList, "create", element.getId(), e );
+        }
+      }
+
+      List<Callable<Void>> writes = new ArrayList<>( xmlElements.size() );
+      for ( BaseXmlMetaStoreElement xmlElement : xmlElements ) {
+        writes.add( () -> {
+          evictElement( xmlElement.getFilename() );
+          xmlElement.save();
+          return null;
+        } );
+      }
+      Exception[] errors = new Exception[writes.size()];
+      boolean[] written = writeElements( writes, errors, exceptionList == null );
+      folderChanged( elementTypeFolder );
+
+      Map<String, String> namesById = new HashMap<>();
+      Map<String, String> namesByFile = new HashMap<>();
+      for ( int i = 0; i < xmlElements.size(); i++ ) {
+        if ( written[i] ) {
+          BaseXmlMetaStoreElement xmlElement = xmlElements.get( i );
+          IMetaStoreElement element = validElements.get( i );
+          metaStoreCache.registerElementIdForName( namespace, elementType, xmlElement.getName(), element.getId() );
+          metaStoreCache.registerProcessedFile( xmlElement.getFilename(), lastModified( xmlElement.getFilename() ) );
+          namesById.put( element.getId(), xmlElement.getName() );
+          namesByFile.put( xmlElement.getFilename(), xmlElement.getName() );
+          // In the case of the XML store, the name is the same as the ID
+          //
+          element.setId( xmlElement.getName() );
+        }
+      }
+      updateNameIndex( namespace, elementType, namesById );
+      updateKnownNames( elementTypeFolder, names, namesByFile );
+
+      for ( int i = 0; i < errors.length; i++ ) {
+        if ( errors[i] != null ) {
+          elementFailed( exceptionList, "create", validElements.get( i ).getId(), errors[i] );
+        }
+      }
+    } finally {
+      unlockForWriting( namespace, elementType.getName() );
+    }
+  }
+
+  @Override
+  public void updateElement( String namespace, IMetaStoreElementType elementType, String elementId,
+      IMetaStoreElement element )
+    throws MetaStoreException {
+    updateElements( namespace, elementType, Collections.singletonList( elementId ),
+      Collections.singletonList( element ), null );
+  }
+
+  @Override
+  public void updateElements( String namespace, IMetaStoreElementType elementType,
+      Collection<? extends IMetaStoreElement> elements, List<MetaStoreException> exceptionList )
+    throws MetaStoreException {
+    List<String> elementIds = new ArrayList<>( elements.size() );
+    for ( IMetaStoreElement element : elements ) {
+      elementIds.add( element.getId() );
+    }
+    updateElements( namespace, elementType, elementIds, new ArrayList<>( elements ), exceptionList );
+  }
+
+  private void updateElements( String namespace, IMetaStoreElementType elementType, List<String> elementIds,
+      List<IMetaStoreElement> elements, List<MetaStoreException> exceptionList )
+    throws MetaStoreException {
+
+    // verify that the element type belongs to this meta store
+    //
+    if ( elementType.getMetaStoreName() == null || !elementType.getMetaStoreName().equals( getName() ) ) {
+      throw new MetaStoreException( "The element type '" + elementType.getName()
+          + "' needs to explicitly belong to the meta store in which you are updating." );
+    }
+
+    lockForWriting( namespace, elementType.getName() );
+    try {
+      String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementType.getName() );
+      KnownNames names = getKnownNames( elementTypeFolder );
+
+      // Check all the elements before writing any of them
+      //
+      List<String> validElementIds = new ArrayList<>( elements.size() );
+      List<BaseXmlMetaStoreElement> xmlElements = new ArrayList<>( elements.size() );
+      for ( int i = 0; i < elements.size(); i++ ) {
+        IMetaStoreElement element = elements.get( i );
+        String elementId = elementIds.get( i );
+        try {
+          String elementFilename = getElementFilename( namespace, elementType.getName(), element.getName() );
+          if ( !pathExists( elementFilename ) ) {
+            throw new MetaStoreException(
+                "The specified element to update doesn't exist with ID: '" + elementId + "'" );
+          }
+          BaseXmlMetaStoreElement xmlElement = newElement( element );
+          xmlElement.setFilename( elementFilename );
+          xmlElement.setIdWithFilename( elementFilename );
+          validElementIds.add( elementId );
+          xmlElements.add( xmlElement );
+        } catch ( Exception e ) {
+          elementFailed( exceptionList, "update", elementId, e );
+        }
+      }
+
+      List<Callable<Void>> writes = new ArrayList<>( xmlElements.size() );
+      for ( BaseXmlMetaStoreElement xmlElement : xmlElements ) {
+        writes.add( () -> {
+          evictElement( xmlElement.getFilename() );
+          xmlElement.save();
+          return null;
+        } );
+      }
+      Exception[] errors = new Exception[writes.size()];
+      boolean[] written = writeElements( writes, errors, exceptionList == null );
+
+      Map<String, String> namesById = new HashMap<>();
+      Map<String, String> namesByFile = new HashMap<>();
+      for ( int i = 0; i < xmlElements.size(); i++ ) {
+        if ( written[i] ) {
+          BaseXmlMetaStoreElement xmlElement = xmlElements.get( i );
+          metaStoreCache.registerElementIdForName( namespace, elementType, xmlElement.getName(), xmlElement.getId() );
+          metaStoreCache.registerProcessedFile( xmlElement.getFilename(), lastModified( xmlElement.getFilename() ) );
+          namesById.put( xmlElement.getId(), xmlElement.getName() );
+          namesByFile.put( xmlElement.getFilename(), xmlElement.getName() );
+        }
+      }
+      updateNameIndex( namespace, elementType, namesById );
+      updateKnownNames( elementTypeFolder, names, namesByFile );
+
+      for ( int i = 0; i < errors.length; i++ ) {
+        if ( errors[i] != null ) {
+          elementFailed( exceptionList, "update", validElementIds.get( i ), errors[i] );
+        }
+      }
+    } finally {
+      unlockForWriting( namespace, elementType.getName() );
+    }
   }
 
   @Override
-  public synchronized IMetaStoreElement getElementByName( String namespace, IMetaStoreElementType elementType,
-      String name, boolean lock )
+  public void deleteElement( String namespace, IMetaStoreElementType elementType, String elementId )
     throws MetaStoreException {
-    if ( lock ) {
-      lockStore();
-    }
+    deleteElements( namespace, elementType, Collections.singletonList( elementId ), null );
+  }
+
+  @Override
+  public void deleteElements( String namespace, IMetaStoreElementType elementType, Collection<String> elementIds,
+      List<MetaStoreException> exceptionList ) throws MetaStoreException {
+    lockForWriting( namespace, elementType.getName() );
     try {
-      String chachedElementId = metaStoreCache.getElementIdByName( namespace, elementType, name );
-      if ( chachedElementId != null ) {
-        IMetaStoreElement element = getElement( namespace, elementType, chachedElementId, false );
-        if ( element != null && element.getName().equalsIgnoreCase( name ) ) {
-          return element;
+      String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementType.getName() );
+      List<String> existingElementIds = new ArrayList<>( elementIds.size() );
+      List<String> existingElementFilenames = new ArrayList<>( elementIds.size() );
+      List<Callable<Void>> writes = new ArrayList<>( elementIds.size() );
+      for ( String elementId : new LinkedHashSet<>( elementIds ) ) {
+        String elementFilename = getElementFilename( namespace, elementType.getName(), elementId );
+        if ( !pathExists( elementFilename ) ) {
+          continue;
+        }
+        existingElementIds.add( elementId );
+        existingElementFilenames.add( elementFilename );
+        writes.add( () -> {
+          evictElement( elementFilename );
+          if ( !deletePath( elementFilename ) ) {
+            throw new MetaStoreException(
+                "Unable to delete element with ID '" + elementId + "' in filename '" + elementFilename + "'" );
+          }
+          return null;
+        } );
+      }
+      if ( writes.isEmpty() ) {
+        return;
+      }
+      KnownNames names = getKnownNames( elementTypeFolder );
+
+      folderChanged( elementTypeFolder );
+      Exception[] errors = new Exception[writes.size()];
+      boolean[] written = writeElements( writes, errors, exceptionList == null );
+
+      Map<String, String> namesById = new HashMap<>();
+      Map<String, String> namesByFile = new HashMap<>();
+      for ( int i = 0; i < existingElementIds.size(); i++ ) {
+        if ( written[i] ) {
+          String elementId = existingElementIds.get( i );
+          metaStoreCache.unregisterElementId( namespace, elementType, elementId );
+          metaStoreCache.unregisterProcessedFile( existingElementFilenames.get( i ) );
+          namesById.put( elementId, null );
+          namesByFile.put( existingElementFilenames.get( i ), null );
         }
       }
+      updateNameIndex( namespace, elementType, namesById );
+      updateKnownNames( elementTypeFolder, names, namesByFile );
 
-      for ( IMetaStoreElement element : getElements( namespace, elementType, false, false,
-        new ArrayList<MetaStoreException>() ) ) {
-        if ( element.getName() != null && element.getName().equalsIgnoreCase( name ) ) {
-          return element;
+      for ( int i = 0; i < errors.length; i++ ) {
+        if ( errors[i] != null ) {
+          elementFailed( exceptionList, "delete", existingElementIds.get( i ), errors[i] );
         }
       }
-      return null;
     } finally {
-      if ( lock ) {
-        unlockStore();
+      unlockForWriting( namespace, elementType.getName() );
+    }
+  }
+
+  /**
+   * Convert every element type of the metastore to the sharded layout, see
+   * {@link #migrateToShardedLayout(String, IMetaStoreElementType)}.
+   *
+   * @return the number of element files that were moved
+   */
+  public int migrateToShardedLayout() throws MetaStoreException {
+    int moved = 0;
+    for ( String namespace : getNamespaces() ) {
+      for ( IMetaStoreElementType elementType : getElementTypes( namespace ) ) {
+        moved += migrateToShardedLayout( namespace, elementType );
       }
     }
+    return moved;
   }
 
-  public synchronized void createElement( String namespace, IMetaStoreElementType elementType,
-      IMetaStoreElement element )
+  /**
+   * Convert an element type to the sharded layout (see {@link #setShardedLayout(boolean)}) while the metastore is in
+   * use. Only the element type is locked, for as long as it takes to move its element files into their shards. The
+   * element type folder is marked as sharded before the first file is moved: if the migration is interrupted the
+   * elements that weren't moved yet are still found, and running the migration again moves them.
+   *
+   * @return the number of element files that were moved, 0 if the element type already has the sharded layout
+   */
+  public int migrateToShardedLayout( String namespace, IMetaStoreElementType elementType )
     throws MetaStoreException {
-    lockStore();
+    lockForWriting( namespace, elementType.getName() );
     try {
-      // In the case of a file, the ID is the name
-      //
-      if ( element.getId() == null ) {
-        element.setId( element.getName() );
+      String elementTypeFolder = XmlUtil.getElementTypeFolder( rootFolder, namespace, elementType.getName() );
+      if ( !pathExists( elementTypeFolder ) ) {
+        throw new MetaStoreException( "The element type with name '" + elementType.getName()
+            + "' doesn't exist in namespace '" + namespace + "'" );
       }
-
-      String elementFilename = XmlUtil.getElementFile( rootFolder, namespace, elementType.getName(), element.getId() );
-      if ( pathExists( elementFilename ) ) {
-        throw new MetaStoreElementExistException(
-            getElements( namespace, elementType, false, true, new ArrayList<MetaStoreException>() ),
-            "The specified element already exists with the same ID: '" + element.getId() + "'" );
+      if ( !isSharded( elementTypeFolder ) && !markSharded( elementTypeFolder ) ) {
+        throw new MetaStoreException( "This metastore can't use the sharded layout" );
       }
-      BaseXmlMetaStoreElement xmlElement = newElement( element );
-      xmlElement.setFilename( elementFilename );
-      xmlElement.save();
-
-      metaStoreCache.registerElementIdForName( namespace, elementType, xmlElement.getName(), element.getId() );
-      metaStoreCache.registerProcessedFile( elementFilename, lastModified( elementFilename ) );
-      // In the case of the XML store, the name is the same as the ID
-      //
-      element.setId( xmlElement.getName() );
+      int moved = 0;
+      for ( T file : listFiles( elementTypeFolder, Collections.<String, Long>emptyMap() ) ) {
+        String filename = getFilename( file );
+        if ( !isElementFile( filename ) ) {
+          continue;
+        }
+        String elementId = filename.substring( 0, filename.length() - 4 ); // remove .xml to get the ID
+        String flatFilename = elementTypeFolder + File.separator + filename;
+        String shardedFilename =
+            XmlUtil.getShardedElementFile( rootFolder, namespace, elementType.getName(), elementId );
+        createShardFolders( elementTypeFolder, shardedFilename );
+        evictElement( flatFilename );
+        if ( !movePath( flatFilename, shardedFilename ) ) {
+          throw new MetaStoreException( "Unable to move element file '" + flatFilename + "' to '" + shardedFilename
+              + "'" );
+        }
+        metaStoreCache.unregisterProcessedFile( flatFilename );
+        moved++;
+      }
+      folderChanged( elementTypeFolder );
+      return moved;
     } finally {
-      unlockStore();
+      unlockForWriting( namespace, elementType.getName() );
     }
   }
 
-  @Override
-  public synchronized void updateElement( String namespace, IMetaStoreElementType elementType, String elementId,
-      IMetaStoreElement element )
-    throws MetaStoreException {
+  /**
+   * Run the writes of a batch of elements, on the element loading threads if there are several. The calling thread
+   * holds the locks for all of them so they must not lock anything themselves. This only returns once none of the
+   * writes runs anymore.
+   *
+   * @param errors
+   *          receives the exception of every write that failed
+   * @param stopOnFailure
+   *          true to skip the writes that didn't start yet once one failed
+   * @return for every write whether it succeeded
+   */
+  private boolean[] writeElements( List<Callable<Void>> writes, Exception[] errors, boolean stopOnFailure ) {
+    boolean[] written = new boolean[writes.size()];
+    AtomicBoolean failed = new AtomicBoolean();
+    List<Runnable> tasks = new ArrayList<>( writes.size() );
+    for ( int i = 0; i < writes.size(); i++ ) {
+      int index = i;
+      tasks.add( () -> {
+        if ( stopOnFailure && failed.get() ) {
+          return;
+        }
+        try {
+          writes.get( index ).call();
+          written[index] = true;
+        } catch ( Exception e ) {
+          errors[index] = e;
+          failed.set( true );
+        }
+      } );
+    }
+    if ( elementLoadingParallelism <= 1 || tasks.size() <= 1 ) {
+      tasks.forEach( Runnable::run );
+      return written;
+    }
 
-    // verify that the element type belongs to this meta store
+    ExecutorService executor = getElementLoadingExecutor();
+    List<Future<?>> futures = new ArrayList<>( tasks.size() );
+    for ( Runnable task : tasks ) {
+      try {
+        futures.add( executor.submit( task ) );
+      } catch ( RejectedExecutionException e ) {
+        // The parallelism was changed in the meantime, write on this thread
+        //
+        task.run();
+      }
+    }
+    // Once we return the locks are released: wait for every write, even when interrupted
     //
-    if ( elementType.getMetaStoreName() == null || !elementType.getMetaStoreName().equals( getName() ) ) {
-      throw new MetaStoreException( "The element type '" + elementType.getName()
-          + "' needs to explicitly belong to the meta store in which you are updating." );
+    boolean interrupted = false;
+    Error error = null;
+    for ( Future<?> future : futures ) {
+      while ( true ) {
+        try {
+          future.get();
+          break;
+        } catch ( InterruptedException e ) {
+          interrupted = true;
+        } catch ( ExecutionException e ) {
+          // The exceptions are kept in errors, only errors get here
+          //
+          if ( error == null && e.getCause() instanceof Error ) {
+            error = (Error) e.getCause();
+          }
+          break;
+        }
+      }
+    }
+    if ( interrupted ) {
+      Thread.currentThread().interrupt();
     }
+    if ( error != null ) {
+      throw error;
+    }
+    return written;
+  }
 
-    lockStore();
-    try {
-      String elementFilename =
-          XmlUtil.getElementFile( rootFolder, namespace, elementType.getName(), element.getName() );
-      if ( !pathExists( elementFilename ) ) {
-        throw new MetaStoreException( "The specified element to update doesn't exist with ID: '" + elementId + "'" );
+  /**
+   * Add the failure of a single element of a batch to exceptionList or, in a strict run, throw it.
+   */
+  private static void elementFailed( List<MetaStoreException> exceptionList, String action, String elementId,
+      Exception e ) throws MetaStoreException {
+    if ( exceptionList != null ) {
+      exceptionList.add( new MetaStoreException( "Could not " + action + " metaStore element '" + elementId + "'", e ) );
+    } else if ( e instanceof MetaStoreException ) {
+      throw (MetaStoreException) e;
+    } else if ( e instanceof RuntimeException ) {
+      throw (RuntimeException) e;
+    } else {
+      throw new MetaStoreException( e );
+    }
+  }
+
+  /**
+   * Remove a file the store keeps in a folder, like the lock file or the name index, so the folder can be deleted.
+   */
+  private void deleteFolderFile( String folder, String filename ) throws MetaStoreException {
+    String path = folder + File.separator + filename;
+    if ( pathExists( path ) ) {
+      deletePath( path );
+    }
+  }
+
+  /**
+   * Remove the empty shard folders of a sharded element type folder so the folder can be deleted.
+   */
+  private void deleteShardFolders( String elementTypeFolder ) throws MetaStoreException {
+    for ( String shardFolder : listShardFolders( elementTypeFolder ) ) {
+      deletePath( shardFolder );
+    }
+    for ( String name : listFolders( elementTypeFolder ) ) {
+      if ( XmlUtil.isShardFolderName( name ) ) {
+        deletePath( elementTypeFolder + File.separator + name );
       }
+    }
+  }
 
-      BaseXmlMetaStoreElement xmlElement = newElement( element );
-      xmlElement.setFilename( elementFilename );
-      xmlElement.setIdWithFilename( elementFilename );
-      xmlElement.save();
+  // Locking
+  //
+  // There are three levels of locks: the store, a namespace folder and an element type folder. Reading takes a shared
+  // lock on every level down to the level read. Changing something takes an exclusive lock on the level that contains
+  // it and shared locks on the levels above: creating a namespace locks the store exclusively, creating an element
+  // type locks the store shared and its namespace exclusively, saving an element locks the store and the namespace
+  // shared and the element type exclusively. Writers of unrelated element types don't block each other.
+  //
+  // The locks are always acquired from the store down and released in reverse order, first the locks within this
+  // store and then the locks on the storage. An exclusive lock on a level keeps everybody else out of the levels
+  // below, so the thread holding it can always lock those too. Together this rules out deadlocks.
+  //
 
-      metaStoreCache.registerElementIdForName( namespace, elementType, xmlElement.getName(), xmlElement.getId() );
-      metaStoreCache.registerProcessedFile( elementFilename, lastModified( elementFilename ) );
-    } finally {
-      unlockStore();
+  /**
+   * Lock for reading down to the given level and, if requested, lock the storage too.
+   *
+   * @param lock
+   *          true to lock the storage with {@link #lockStoreForReading()} and {@link #lockFolder(String, boolean)}
+   * @param namespace
+   *          the namespace to lock or null to only lock the store
+   * @param elementTypeName
+   *          the element type in the namespace to lock or null to lock down to the namespace
+   */
+  private void lockForReading( boolean lock, String namespace, String elementTypeName ) throws MetaStoreException {
+    lock( getLockedFolders( namespace, elementTypeName ), false, lock );
+  }
+
+  private void unlockForReading( boolean lock, String namespace, String elementTypeName ) throws MetaStoreException {
+    unlock( getLockedFolders( namespace, elementTypeName ), false, lock );
+  }
+
+  /**
+   * Lock the given level for writing, the levels above it for reading, and the storage likewise.
+   *
+   * @param namespace
+   *          the namespace to lock or null to lock the whole store for writing
+   * @param elementTypeName
+   *          the element type to lock for writing or null to lock the namespace for writing
+   */
+  private void lockForWriting( String namespace, String elementTypeName ) throws MetaStoreException {
+    lock( getLockedFolders( namespace, elementTypeName ), true, true );
+  }
+
+  private void unlockForWriting( String namespace, String elementTypeName ) throws MetaStoreException {
+    unlock( getLockedFolders( namespace, elementTypeName ), true, true );
+  }
+
+  /**
+   * @return the folders below the store to lock, from the top down
+   */
+  private String[] getLockedFolders( String namespace, String elementTypeName ) {
+    if ( namespace == null ) {
+      return new String[0];
     }
+    String namespaceFolder = XmlUtil.getNamespaceFolder( rootFolder, namespace );
+    if ( elementTypeName == null ) {
+      return new String[] { namespaceFolder };
+    }
+    return new String[] { namespaceFolder, XmlUtil.getElementTypeFolder( rootFolder, namespace, elementTypeName ) };
   }
 
-  @Override
-  public synchronized void deleteElement( String namespace, IMetaStoreElementType elementType, String elementId )
-    throws MetaStoreException {
-    lockStore();
+  /**
+   * @return the lock within this store for a level: 0 is the store, the other levels are the folders
+   */
+  private Lock getLevelLock( String[] folders, int level, boolean exclusive ) {
+    ReentrantReadWriteLock lock =
+        level == 0 ? storeLock : folderLocks.computeIfAbsent( folders[level - 1], folder -> new ReentrantReadWriteLock() );
+    return isExclusiveLevel( folders, level, exclusive ) ? lock.writeLock() : lock.readLock();
+  }
+
+  /**
+   * Only the deepest level is locked for writing
+   */
+  private static boolean isExclusiveLevel( String[] folders, int level, boolean exclusive ) {
+    return exclusive && level == folders.length;
+  }
+
+  private void lock( String[] folders, boolean exclusive, boolean lockStorage ) throws MetaStoreException {
+    for ( int level = 0; level <= folders.length; level++ ) {
+      getLevelLock( folders, level, exclusive ).lock();
+    }
+    if ( !lockStorage ) {
+      return;
+    }
+    int lockedLevels = 0;
     try {
-      String elementFilename = XmlUtil.getElementFile( rootFolder, namespace, elementType.getName(), elementId );
-      if ( !pathExists( elementFilename ) ) {
-        return;
+      for ( int level = 0; level <= folders.length; level++ ) {
+        lockStorageLevel( folders, level, isExclusiveLevel( folders, level, exclusive ) );
+        lockedLevels++;
       }
-
-      if ( !deletePath( elementFilename ) ) {
-        throw new MetaStoreException(
-            "Unable to delete element with ID '" + elementId + "' in filename '" + elementFilename + "'" );
+    } catch ( MetaStoreException | RuntimeException e ) {
+      try {
+        unlockStorage( folders, exclusive, lockedLevels );
+      } finally {
+        unlockLevels( folders, exclusive );
       }
+      throw e;
+    }
+  }
 
-      metaStoreCache.unregisterElementId( namespace, elementType, elementId );
-      metaStoreCache.unregisterProcessedFile( elementFilename );
+  private void unlock( String[] folders, boolean exclusive, boolean lockStorage ) throws MetaStoreException {
+    try {
+      if ( lockStorage ) {
+        unlockStorage( folders, exclusive, folders.length + 1 );
+      }
     } finally {
-      unlockStore();
+      unlockLevels( folders, exclusive );
+    }
+  }
+
+  private void lockStorageLevel( String[] folders, int level, boolean exclusive ) throws MetaStoreException {
+    if ( level > 0 ) {
+      lockFolder( folders[level - 1], !exclusive );
+    } else if ( exclusive ) {
+      lockStore();
+    } else {
+      lockStoreForReading();
+    }
+  }
+
+  private void unlockStorage( String[] folders, boolean exclusive, int lockedLevels ) throws MetaStoreException {
+    MetaStoreException exception = null;
+    for ( int level = lockedLevels - 1; level >= 0; level-- ) {
+      try {
+        if ( level > 0 ) {
+          unlockFolder( folders[level - 1], !isExclusiveLevel( folders, level, exclusive ) );
+        } else if ( isExclusiveLevel( folders, level, exclusive ) ) {
+          unlockStore();
+        } else {
+          unlockStoreForReading();
+        }
+      } catch ( MetaStoreException e ) {
+        if ( exception == null ) {
+          exception = e;
+        }
+      }
+    }
+    if ( exception != null ) {
+      throw exception;
+    }
+  }
+
+  private void unlockLevels( String[] folders, boolean exclusive ) {
+    for ( int level = folders.length; level >= 0; level-- ) {
+      getLevelLock( folders, level, exclusive ).unlock();
     }
   }
 
@@ -615,6 +2321,21 @@ public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMeta
    */
   protected abstract boolean deletePath( String path ) throws MetaStoreException;
 
+  /**
+   * Move a file to another absolute path in the same metastore, keeping its last modified time. The element type
+   * folders are only converted to the sharded layout if this moves the file.
+   *
+   * @param source
+   *          absolute path of the file
+   * @param target
+   *          absolute path to move it to, in an existing folder
+   *
+   * @return true if the file was moved, false if this store can't move files
+   */
+  protected boolean movePath( String source, String target ) throws MetaStoreException {
+    return false;
+  }
+
   /**
    * List folders at an absolute path
    *
@@ -634,6 +2355,72 @@ public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMeta
    */
   protected abstract long lastModified( String path ) throws MetaStoreException;
 
+  /**
+   * Return the size of the file at the provided absolute path. The element cache is only used if this returns the size.
+   *
+   *
+   * @param path
+   *          absolute path
+   *
+   * @return long the size in bytes or -1 if the size can't be determined
+   */
+  protected long fileSize( String path ) throws MetaStoreException {
+    return -1L;
+  }
+
+  /**
+   * Return the last modified time of a file returned by {@link #listFiles(String, Map)}, as read while listing its
+   * folder. Stores that read it together with the listing save checking every listed file again.
+   *
+   * @param file
+   *          a file object returned by listFiles
+   *
+   * @return long the time in milliseconds or -1 if it wasn't read while listing
+   */
+  protected long getListedLastModified( T file ) throws MetaStoreException {
+    return -1L;
+  }
+
+  /**
+   * Return the size of a file returned by {@link #listFiles(String, Map)}, as read while listing its folder.
+   *
+   * @param file
+   *          a file object returned by listFiles
+   *
+   * @return long the size in bytes or -1 if it wasn't read while listing
+   */
+  protected long getListedFileSize( T file ) throws MetaStoreException {
+    return -1L;
+  }
+
+  /**
+   * Read the contents of the file at the provided absolute path. The name index is only used if this returns the
+   * contents.
+   *
+   * @param path
+   *          absolute path
+   *
+   * @return the contents of the file or null if it doesn't exist or can't be read by this store
+   */
+  protected byte[] readFile( String path ) throws MetaStoreException {
+    return null;
+  }
+
+  /**
+   * Replace the contents of the file at the provided absolute path in one go: readers see either the old or the new
+   * contents, never a partially written file.
+   *
+   * @param path
+   *          absolute path
+   * @param content
+   *          the new contents of the file
+   *
+   * @return true if the file was written, false if this store can't write files like this
+   */
+  protected boolean writeFileAtomically( String path, byte[] content ) throws MetaStoreException {
+    return false;
+  }
+
   /**
    * List files in a given directory. Does not include folders. Result should not include any item already in
    * processedFiles with the same modifiedTime as the value. (by absolute path)
@@ -698,6 +2485,20 @@ public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMeta
    */
   protected abstract BaseXmlMetaStoreElement newElement( String filename ) throws MetaStoreException;
 
+  /**
+   * Read the name of the element in the file at the provided absolute path. Implementations should stop reading once
+   * the name is found, this is used to search elements by name. By default the whole element is loaded.
+   *
+   *
+   * @param filename
+   *          absolute path
+   *
+   * @return the name of the element or null if it has none
+   */
+  protected String readElementName( String filename ) throws MetaStoreException {
+    return newElement( filename ).getName();
+  }
+
   /**
    * Create a new MetastoreElement copied from the provided element
    *
@@ -718,4 +2519,112 @@ public abstract class BaseXmlMetaStore<T> extends BaseMetaStore implements IMeta
   protected abstract void lockStore() throws MetaStoreException;
 
   protected abstract void unlockStore() throws MetaStoreException;
+
+  /**
+   * Lock the metastore for reading if possible. Several threads can read at the same time, so implementations that
+   * can let readers share the lock should override this. By default it locks the store like {@link #lockStore()}.
+   *
+   * @throws MetaStoreException
+   *           in case we have to wait more than 10 seconds to acquire a lock
+   */
+  protected void lockStoreForReading() throws MetaStoreException {
+    lockStore();
+  }
+
+  protected void unlockStoreForReading() throws MetaStoreException {
+    unlockStore();
+  }
+
+  /**
+   * Lock a namespace or element type folder in the storage. It is called after the store and the folders above were
+   * locked for reading. Implementations that can lock folders separately should override this, together with
+   * {@link #lockStoreForReading()}, so that writers of different element types don't block each other. By default
+   * nothing happens since the store lock covers everything.
+   *
+   * @param folder
+   *          the absolute path of the namespace or element type folder
+   * @param shared
+   *          true to lock for reading, false to lock for writing
+   * @throws MetaStoreException
+   *           in case we have to wait more than 10 seconds to acquire a lock
+   */
+  protected void lockFolder( String folder, boolean shared ) throws MetaStoreException {
+  }
+
+  protected void unlockFolder( String folder, boolean shared ) throws MetaStoreException {
+  }
+
+  /**
+   * Hide a file or folder that only this version uses from older versions, on file systems where a file has to be
+   * marked as hidden. By default nothing happens: the names of such files start with a dot.
+   *
+   * @param path
+   *          the absolute path of the file or folder to hide
+   */
+  protected void hidePath( String path ) throws MetaStoreException {
+  }
+
+  /**
+   * Clean up whatever {@link #lockFolder(String, boolean)} keeps for a namespace or element type folder that was
+   * deleted. It is called while the folder above is locked for writing.
+   *
+   * @param folder
+   *          the absolute path of the deleted namespace or element type folder
+   */
+  protected void deleteFolderLock( String folder ) throws MetaStoreException {
+  }
+
+  /**
+   * The lower-cased names found in a folder, with the last modified times of the folder and of the files they were read
+   * from
+   */
+  private static class KnownNames {
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> files = new ConcurrentHashMap<>();
+    private volatile long folderLastModified;
+
+    private void add( String name, String filename, long lastModified ) {
+      names.add( toKey( name ) );
+      files.put( filename, lastModified );
+    }
+
+    private boolean contains( String name ) {
+      return names.contains( toKey( name ) );
+    }
+
+    private static String toKey( String name ) {
+      return name == null ? "" : name.toLowerCase( Locale.ROOT );
+    }
+  }
+
+  /**
+   * An element file found by listing its folder, with the last modified time and size read while listing, -1 if they
+   * weren't
+   */
+  private static class ElementFile {
+    private final String filename;
+    private final long lastModified;
+    private final long size;
+
+    private ElementFile( String filename, long lastModified, long size ) {
+      this.filename = filename;
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+  }
+
+  /**
+   * A parsed element type with the last modified time and the size of the type file it was parsed from
+   */
+  private static class CachedElementType {
+    private final IMetaStoreElementType elementType;
+    private final long lastModified;
+    private final long size;
+
+    private CachedElementType( IMetaStoreElementType elementType, long lastModified, long size ) {
+      this.elementType = elementType;
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+  }
 }
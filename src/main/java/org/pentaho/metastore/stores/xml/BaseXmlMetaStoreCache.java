@@ -16,12 +16,14 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.pentaho.metastore.api.IMetaStoreElementType;
 
 public abstract class BaseXmlMetaStoreCache implements XmlMetaStoreCache {
 
-  private final Map<String, Long> processedFiles = new HashMap<String, Long>();
+  // Concurrent: the metastore reads the map returned by getProcessedFiles() while other threads register files
+  private final Map<String, Long> processedFiles = new ConcurrentHashMap<String, Long>();
 
   private final Map<String, Map<String, ElementType>> elementTypesMap = new HashMap<String, Map<String, ElementType>>();
 
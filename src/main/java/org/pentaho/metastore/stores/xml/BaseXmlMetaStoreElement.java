@@ -16,12 +16,12 @@ package org.pentaho.metastore.stores.xml;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
@@ -33,6 +33,9 @@ import org.pentaho.metastore.api.security.MetaStoreOwnerPermissions;
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -69,9 +72,103 @@ public abstract class BaseXmlMetaStoreElement extends XmlMetaStoreAttribute impl
    *           In case there is a problem reading the file.
    */
   protected void loadFromStream( InputStream in ) throws MetaStoreException {
+    if ( XmlUtil.isStreamingParserEnabled() ) {
+      loadFromXmlStream( in );
+    } else {
+      loadFromDocument( in );
+    }
+  }
+
+  /**
+   * Load element data in a single pass with a StAX reader. This is the default way of loading elements.
+   *
+   * @param in
+   *          The stream to load the element (with children) from.
+   * @throws MetaStoreException
+   *           In case there is a problem reading the file.
+   */
+  protected void loadFromXmlStream( InputStream in ) throws MetaStoreException {
+    XMLInputFactory inputFactory = XmlUtil.borrowXMLInputFactory();
+    XMLStreamReader reader = null;
+    try {
+      reader = inputFactory.createXMLStreamReader( in );
+      XmlUtil.moveToRootElement( reader );
+      while ( XmlUtil.nextChildElement( reader ) ) {
+        String nodeName = reader.getLocalName();
+        if ( "name".equals( nodeName ) ) {
+          name = XmlUtil.getElementValue( reader );
+        } else if ( "security".equals( nodeName ) ) {
+          loadSecurity( reader );
+        } else if ( !loadAttributeElement( reader ) ) {
+          XmlUtil.skipElement( reader );
+        }
+      }
+    } catch ( Exception e ) {
+      throw new MetaStoreException( "Unable to load XML metastore attribute from file '" + filename + "'", e );
+    } finally {
+      if ( reader != null ) {
+        try {
+          reader.close();
+        } catch ( XMLStreamException ignored ) {
+          // Closing the reader doesn't close the underlying stream
+        }
+      }
+      XmlUtil.returnXMLInputFactory( inputFactory );
+    }
+  }
+
+  /**
+   * Read only the name of an element. The name is written before the attributes, so reading stops after the first few
+   * tags instead of loading the complete element.
+   *
+   * @param in
+   *          The stream to read the element from.
+   * @param filename
+   *          The file the stream reads, for error messages.
+   * @return the name of the element or null if it has none
+   * @throws MetaStoreException
+   *           In case there is a problem reading the stream.
+   */
+  public static String readName( InputStream in, String filename ) throws MetaStoreException {
+    XMLInputFactory inputFactory = XmlUtil.borrowXMLInputFactory();
+    XMLStreamReader reader = null;
     try {
-      DocumentBuilderFactory documentBuilderFactory = XmlUtil.createSafeDocumentBuilderFactory();
-      DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+      reader = inputFactory.createXMLStreamReader( in );
+      XmlUtil.moveToRootElement( reader );
+      while ( XmlUtil.nextChildElement( reader ) ) {
+        if ( "name".equals( reader.getLocalName() ) ) {
+          return XmlUtil.getElementValue( reader );
+        }
+        XmlUtil.skipElement( reader );
+      }
+      return null;
+    } catch ( Exception e ) {
+      throw new MetaStoreException( "Unable to read the name of the XML metastore element in file '" + filename + "'",
+        e );
+    } finally {
+      if ( reader != null ) {
+        try {
+          reader.close();
+        } catch ( XMLStreamException ignored ) {
+          // Closing the reader doesn't close the underlying stream
+        }
+      }
+      XmlUtil.returnXMLInputFactory( inputFactory );
+    }
+  }
+
+  /**
+   * Load element data by building a DOM document first. Used when the streaming parser is disabled.
+   *
+   * @param in
+   *          The stream to load the element (with children) from.
+   * @throws MetaStoreException
+   *           In case there is a problem reading the file.
+   */
+  protected void loadFromDocument( InputStream in ) throws MetaStoreException {
+    DocumentBuilder documentBuilder = null;
+    try {
+      documentBuilder = XmlUtil.borrowDocumentBuilder();
       Document document = documentBuilder.parse( in );
       Element dataTypeElement = document.getDocumentElement();
 
@@ -80,6 +177,8 @@ public abstract class BaseXmlMetaStoreElement extends XmlMetaStoreAttribute impl
       loadSecurity( dataTypeElement );
     } catch ( Exception e ) {
       throw new MetaStoreException( "Unable to load XML metastore attribute from file '" + filename + "'", e );
+    } finally {
+      XmlUtil.returnDocumentBuilder( documentBuilder );
     }
   }
 
@@ -100,10 +199,54 @@ public abstract class BaseXmlMetaStoreElement extends XmlMetaStoreAttribute impl
   }
 
   protected void save( OutputStream out ) throws MetaStoreException {
+    if ( XmlUtil.isStreamingWriterEnabled() ) {
+      saveToXmlStream( out );
+    } else {
+      saveToDocument( out );
+    }
+  }
 
+  /**
+   * Write the element straight to the stream with an XMLStreamWriter. This is the default way of saving elements.
+   *
+   * @param out
+   *          The stream to write to. It is flushed but not closed.
+   * @throws MetaStoreException
+   *           In case there is a problem writing the element.
+   */
+  protected void saveToXmlStream( OutputStream out ) throws MetaStoreException {
     try {
-      DocumentBuilderFactory factory = XmlUtil.createSafeDocumentBuilderFactory();
-      DocumentBuilder builder = factory.newDocumentBuilder();
+      Writer writer = new OutputStreamWriter( out, StandardCharsets.UTF_8 );
+      XMLStreamWriter xmlWriter = new XmlMetaStoreStreamWriter( writer );
+      xmlWriter.writeStartDocument();
+      xmlWriter.writeStartElement( XML_TAG );
+
+      appendAttribute( this, xmlWriter );
+      appendElement( this, xmlWriter );
+      appendSecurity( xmlWriter );
+
+      xmlWriter.writeEndElement();
+      xmlWriter.writeEndDocument();
+      xmlWriter.close();
+      writer.flush();
+    } catch ( Exception e ) {
+      throw new MetaStoreException( "Unable to save XML meta store element to file '" + filename + "'", e );
+    }
+  }
+
+  /**
+   * Build a DOM of the element and serialize it with a Transformer. Used when the streaming writer is disabled.
+   *
+   * @param out
+   *          The stream to write to.
+   * @throws MetaStoreException
+   *           In case there is a problem writing the element.
+   */
+  protected void saveToDocument( OutputStream out ) throws MetaStoreException {
+    DocumentBuilder builder = null;
+    Transformer transformer = null;
+    try {
+      builder = XmlUtil.borrowDocumentBuilder();
       Document doc = builder.newDocument();
 
       Element element = doc.createElement( XML_TAG );
@@ -115,13 +258,7 @@ public abstract class BaseXmlMetaStoreElement extends XmlMetaStoreAttribute impl
 
       // Write the document content into the data type XML file
       //
-      TransformerFactory transformerFactory = TransformerFactory.newInstance();
-      transformerFactory.setFeature( XMLConstants.FEATURE_SECURE_PROCESSING, true );
-      transformerFactory.setAttribute( XMLConstants.ACCESS_EXTERNAL_DTD, "" );
-      transformerFactory.setAttribute( XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "" );
-      Transformer transformer = transformerFactory.newTransformer();
-      transformer.setOutputProperty( OutputKeys.INDENT, "yes" );
-      transformer.setOutputProperty( "{http://xml.apache.org/xslt}indent-amount", "2" );
+      transformer = XmlUtil.borrowTransformer();
       DOMSource source = new DOMSource( doc );
       StreamResult result = new StreamResult( out );
 
@@ -129,6 +266,9 @@ public abstract class BaseXmlMetaStoreElement extends XmlMetaStoreAttribute impl
       transformer.transform( source, result );
     } catch ( Exception e ) {
       throw new MetaStoreException( "Unable to save XML meta store element to file '" + filename + "'", e );
+    } finally {
+      XmlUtil.returnDocumentBuilder( builder );
+      XmlUtil.returnTransformer( transformer );
     }
   }
 
@@ -140,6 +280,40 @@ public abstract class BaseXmlMetaStoreElement extends XmlMetaStoreAttribute impl
     parentElement.appendChild( nameElement );
   }
 
+  protected void appendElement( IMetaStoreElement element, XMLStreamWriter writer ) throws XMLStreamException {
+    XmlUtil.writeElement( writer, "name", element.getName() );
+  }
+
+  protected void appendSecurity( XMLStreamWriter writer ) throws XMLStreamException {
+    // <security>
+    //
+    writer.writeStartElement( "security" );
+
+    // <security><owner>
+    //
+    writer.writeStartElement( "owner" );
+    if ( owner != null ) {
+      // <security><owner><name/><type/>
+      //
+      owner.append( writer );
+    }
+    writer.writeEndElement();
+
+    // <security><owner-permissions-list>
+    //
+    writer.writeStartElement( "owner-permissions-list" );
+    for ( MetaStoreOwnerPermissions ownerPermissions : ownerPermissionsList ) {
+      // <security><owner-permissions-list><owner-permissions>
+      //
+      writer.writeStartElement( "owner-permissions" );
+      ownerPermissions.append( writer );
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+
+    writer.writeEndElement();
+  }
+
   protected void appendSecurity( Document doc, Element parentElement ) {
     // <security>
     //
@@ -198,6 +372,28 @@ public abstract class BaseXmlMetaStoreElement extends XmlMetaStoreAttribute impl
     }
   }
 
+  protected void loadSecurity( XMLStreamReader reader ) throws MetaStoreException, XMLStreamException {
+    while ( XmlUtil.nextChildElement( reader ) ) {
+      String nodeName = reader.getLocalName();
+      if ( "owner".equals( nodeName ) ) {
+        // Load security details...
+        //
+        owner = new XmlMetaStoreElementOwner( reader );
+      } else if ( "owner-permissions-list".equals( nodeName ) ) {
+        while ( XmlUtil.nextChildElement( reader ) ) {
+          if ( "owner-permissions".equals( reader.getLocalName() ) ) {
+            MetaStoreOwnerPermissions ownerPermissions = new MetaStoreOwnerPermissions( reader );
+            ownerPermissionsList.add( ownerPermissions );
+          } else {
+            XmlUtil.skipElement( reader );
+          }
+        }
+      } else {
+        XmlUtil.skipElement( reader );
+      }
+    }
+  }
+
   /**
    * Duplicate the element data into this structure.
    * 
@@ -22,15 +22,18 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 public abstract class BaseXmlMetaStoreElementType extends BaseElementType {
 
@@ -63,15 +66,55 @@ public abstract class BaseXmlMetaStoreElementType extends BaseElementType {
   }
 
   protected void loadFromStream( String filename, InputStream input ) throws MetaStoreException {
+    if ( XmlUtil.isStreamingParserEnabled() ) {
+      loadFromXmlStream( filename, input );
+    } else {
+      loadFromDocument( filename, input );
+    }
+  }
+
+  protected void loadFromXmlStream( String filename, InputStream input ) throws MetaStoreException {
+    XMLInputFactory inputFactory = XmlUtil.borrowXMLInputFactory();
+    XMLStreamReader reader = null;
     try {
-      DocumentBuilderFactory documentBuilderFactory = XmlUtil.createSafeDocumentBuilderFactory();
-      DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+      reader = inputFactory.createXMLStreamReader( input );
+      XmlUtil.moveToRootElement( reader );
+      while ( XmlUtil.nextChildElement( reader ) ) {
+        String nodeName = reader.getLocalName();
+        if ( "name".equals( nodeName ) ) {
+          setName( XmlUtil.getElementValue( reader ) );
+        } else if ( "description".equals( nodeName ) ) {
+          setDescription( XmlUtil.getElementValue( reader ) );
+        } else {
+          XmlUtil.skipElement( reader );
+        }
+      }
+    } catch ( Exception e ) {
+      throw new MetaStoreException( "Unable to load XML metastore element type from file '" + filename + "'", e );
+    } finally {
+      if ( reader != null ) {
+        try {
+          reader.close();
+        } catch ( XMLStreamException ignored ) {
+          // Closing the reader doesn't close the underlying stream
+        }
+      }
+      XmlUtil.returnXMLInputFactory( inputFactory );
+    }
+  }
+
+  protected void loadFromDocument( String filename, InputStream input ) throws MetaStoreException {
+    DocumentBuilder documentBuilder = null;
+    try {
+      documentBuilder = XmlUtil.borrowDocumentBuilder();
       Document document = documentBuilder.parse( input );
       Element elementTypeElement = document.getDocumentElement();
 
       loadElementType( elementTypeElement );
     } catch ( Exception e ) {
       throw new MetaStoreException( "Unable to load XML metastore element type from file '" + filename + "'", e );
+    } finally {
+      XmlUtil.returnDocumentBuilder( documentBuilder );
     }
   }
 
@@ -101,9 +144,47 @@ public abstract class BaseXmlMetaStoreElementType extends BaseElementType {
   }
 
   public void saveToStreamResult( StreamResult streamResult ) throws MetaStoreException {
+    if ( XmlUtil.isStreamingWriterEnabled()
+        && ( streamResult.getOutputStream() != null || streamResult.getWriter() != null ) ) {
+      saveToXmlStream( streamResult );
+    } else {
+      saveToDocument( streamResult );
+    }
+  }
+
+  /**
+   * Write the element type straight to the stream or writer of the result with an XMLStreamWriter.
+   */
+  protected void saveToXmlStream( StreamResult streamResult ) throws MetaStoreException {
+    try {
+      Writer writer = streamResult.getWriter();
+      if ( writer == null ) {
+        writer = new OutputStreamWriter( streamResult.getOutputStream(), StandardCharsets.UTF_8 );
+      }
+      XMLStreamWriter xmlWriter = new XmlMetaStoreStreamWriter( writer );
+      xmlWriter.writeStartDocument();
+      xmlWriter.writeStartElement( XML_TAG );
+
+      appendElementType( xmlWriter );
+
+      xmlWriter.writeEndElement();
+      xmlWriter.writeEndDocument();
+      xmlWriter.close();
+      writer.flush();
+    } catch ( Exception e ) {
+      throw new MetaStoreException( "Unable to serialize XML meta store to stream result", e );
+    }
+  }
+
+  /**
+   * Build a DOM of the element type and serialize it with a Transformer. Used when the streaming writer is disabled or
+   * when the result has no stream or writer.
+   */
+  protected void saveToDocument( StreamResult streamResult ) throws MetaStoreException {
+    DocumentBuilder builder = null;
+    Transformer transformer = null;
     try {
-      DocumentBuilderFactory factory = XmlUtil.createSafeDocumentBuilderFactory();
-      DocumentBuilder builder = factory.newDocumentBuilder();
+      builder = XmlUtil.borrowDocumentBuilder();
       Document doc = builder.newDocument();
 
       Element elementTypeElement = doc.createElement( XML_TAG );
@@ -113,13 +194,7 @@ public abstract class BaseXmlMetaStoreElementType extends BaseElementType {
 
       // Write the document content into the data type XML file
       //
-      TransformerFactory transformerFactory = TransformerFactory.newInstance();
-      transformerFactory.setFeature( XMLConstants.FEATURE_SECURE_PROCESSING, true );
-      transformerFactory.setAttribute( XMLConstants.ACCESS_EXTERNAL_DTD, "" );
-      transformerFactory.setAttribute( XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "" );
-      Transformer transformer = transformerFactory.newTransformer();
-      transformer.setOutputProperty( "{http://xml.apache.org/xslt}indent-amount", "2" );
-      transformer.setOutputProperty( OutputKeys.INDENT, "yes" );
+      transformer = XmlUtil.borrowTransformer();
 
       DOMSource source = new DOMSource( doc );
 
@@ -127,9 +202,17 @@ public abstract class BaseXmlMetaStoreElementType extends BaseElementType {
       transformer.transform( source, streamResult );
     } catch ( Exception e ) {
       throw new MetaStoreException( "Unable to serialize XML meta store to stream result", e );
+    } finally {
+      XmlUtil.returnDocumentBuilder( builder );
+      XmlUtil.returnTransformer( transformer );
     }
   }
 
+  protected void appendElementType( XMLStreamWriter writer ) throws XMLStreamException {
+    XmlUtil.writeElement( writer, "name", getName() );
+    XmlUtil.writeElement( writer, "description", getDescription() );
+  }
+
   protected void appendElementType( Document doc, Element elementTypeElement ) {
     Element nameElement = doc.createElement( "name" );
     nameElement.appendChild( doc.createTextNode( getName() ) );
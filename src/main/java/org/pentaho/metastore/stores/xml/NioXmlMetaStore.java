@@ -0,0 +1,186 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.stores.xml;
+
+import org.pentaho.metastore.api.exceptions.MetaStoreException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An XML metastore that accesses the file system through java.nio.file instead of java.io.File. The contents of a
+ * folder are listed with a DirectoryStream and the type, last modified time and size of every entry are read with a
+ * single attribute read, where java.io.File needs a separate call for each. The last modified time and size are
+ * handed to the metastore with the listed files, so reading all the elements of a type doesn't check every file
+ * again. This makes a big difference on network file systems where every call is a round trip.
+ * <p>
+ * The files and folders are stored in exactly the same way as {@link XmlMetaStore} stores them so both classes can be
+ * used on the same metastore.
+ */
+public class NioXmlMetaStore extends XmlMetaStore {
+
+  // On Windows the hidden flag is a file attribute, elsewhere hidden files start with a dot
+  //
+  private static final boolean DOS_ATTRIBUTES = File.separatorChar == '\\';
+
+  public NioXmlMetaStore() throws MetaStoreException {
+    super();
+  }
+
+  public NioXmlMetaStore( XmlMetaStoreCache metaStoreCacheImpl ) throws MetaStoreException {
+    super( metaStoreCacheImpl );
+  }
+
+  /**
+   *
+   * @param rootFolder
+   *          absolute path to the root folder of the metastore
+   */
+  public NioXmlMetaStore( String rootFolder ) throws MetaStoreException {
+    super( rootFolder );
+  }
+
+  /**
+   *
+   * @param rootFolder
+   *          absolute path to the root folder of the metastore
+   * @param metaStoreCacheImpl
+   */
+  public NioXmlMetaStore( String rootFolder, XmlMetaStoreCache metaStoreCacheImpl ) throws MetaStoreException {
+    super( rootFolder, metaStoreCacheImpl );
+  }
+
+  /**
+   * List the non-hidden folders. Like {@link File#listFiles()} an empty list is returned if the folder can't be read.
+   */
+  @Override
+  protected List<String> listFolders( String folder ) {
+    List<String> folderNames = new ArrayList<>();
+    try ( DirectoryStream<Path> stream = Files.newDirectoryStream( Paths.get( folder ) ) ) {
+      for ( Path path : stream ) {
+        BasicFileAttributes attributes = readAttributes( path );
+        if ( attributes != null && attributes.isDirectory() && !isHidden( path, attributes ) ) {
+          folderNames.add( path.getFileName().toString() );
+        }
+      }
+    } catch ( IOException | DirectoryIteratorException e ) {
+      return Collections.emptyList();
+    }
+    return folderNames;
+  }
+
+  /**
+   * List the non-hidden files that are not in processedFiles with the same last modified time, with the last modified
+   * time and size read while listing. Like {@link File#listFiles()} an empty list is returned if the folder can't be
+   * read.
+   */
+  @Override
+  protected List<File> listFiles( String folder, Map<String, Long> processedFiles ) {
+    File folderFile = new File( folder );
+    List<File> files = new ArrayList<>();
+    try ( DirectoryStream<Path> stream = Files.newDirectoryStream( folderFile.toPath() ) ) {
+      for ( Path path : stream ) {
+        BasicFileAttributes attributes = readAttributes( path );
+        if ( attributes == null || !attributes.isRegularFile() || isHidden( path, attributes ) ) {
+          continue;
+        }
+        ListedFile file = new ListedFile( folderFile, path.getFileName().toString(),
+          attributes.lastModifiedTime().toMillis(), attributes.size() );
+        Long fileLastModified = processedFiles.get( file.getPath() );
+        if ( fileLastModified != null && fileLastModified == file.listedLastModified ) {
+          continue;
+        }
+        files.add( file );
+      }
+    } catch ( IOException | DirectoryIteratorException e ) {
+      return Collections.emptyList();
+    }
+    return files;
+  }
+
+  @Override
+  protected boolean pathExists( String path ) {
+    return Files.exists( Paths.get( path ) );
+  }
+
+  @Override
+  protected long lastModified( String path ) throws MetaStoreException {
+    BasicFileAttributes attributes = readAttributes( Paths.get( path ) );
+    return attributes == null ? 0L : attributes.lastModifiedTime().toMillis();
+  }
+
+  @Override
+  protected long fileSize( String path ) throws MetaStoreException {
+    BasicFileAttributes attributes = readAttributes( Paths.get( path ) );
+    return attributes == null ? -1L : attributes.size();
+  }
+
+  @Override
+  protected long getListedLastModified( File file ) {
+    return file instanceof ListedFile ? ( (ListedFile) file ).listedLastModified : -1L;
+  }
+
+  @Override
+  protected long getListedFileSize( File file ) {
+    return file instanceof ListedFile ? ( (ListedFile) file ).listedSize : -1L;
+  }
+
+  /**
+   * @return the attributes of the file or folder, or null if they can't be read, for example because it was removed.
+   */
+  private static BasicFileAttributes readAttributes( Path path ) {
+    try {
+      if ( DOS_ATTRIBUTES ) {
+        return Files.readAttributes( path, DosFileAttributes.class );
+      }
+      return Files.readAttributes( path, BasicFileAttributes.class );
+    } catch ( IOException | UnsupportedOperationException e ) {
+      return null;
+    }
+  }
+
+  private static boolean isHidden( Path path, BasicFileAttributes attributes ) {
+    if ( attributes instanceof DosFileAttributes ) {
+      return ( (DosFileAttributes) attributes ).isHidden();
+    }
+    return path.getFileName().toString().startsWith( "." );
+  }
+
+  /**
+   * A listed file with the last modified time and size it had when its folder was listed. The methods of File still
+   * read the file system.
+   */
+  private static class ListedFile extends File {
+    private static final long serialVersionUID = 1L;
+
+    private final long listedLastModified;
+    private final long listedSize;
+
+    private ListedFile( File folder, String name, long listedLastModified, long listedSize ) {
+      super( folder, name );
+      this.listedLastModified = listedLastModified;
+      this.listedSize = listedSize;
+    }
+  }
+}
@@ -19,9 +19,15 @@ import org.pentaho.metastore.api.IMetaStoreElementType;
 import org.pentaho.metastore.api.security.MetaStoreElementOwnerType;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -32,6 +38,7 @@ import java.util.UUID;
 public class XmlMetaStore extends BaseXmlMetaStore<File> {
 
   private File rootFile;
+  private volatile XmlMetaStoreFileLock fileLock;
 
   public XmlMetaStore() throws MetaStoreException {
     this( defaultCache() );
@@ -112,18 +119,95 @@ public class XmlMetaStore extends BaseXmlMetaStore<File> {
     return pathFile.mkdir();
   }
 
+  /**
+   * On Windows a file is hidden by an attribute, elsewhere by a name that starts with a dot.
+   */
+  @Override
+  protected void hidePath( String path ) throws MetaStoreException {
+    if ( File.separatorChar != '\\' ) {
+      return;
+    }
+    try {
+      Files.setAttribute( Paths.get( path ), "dos:hidden", Boolean.TRUE );
+    } catch ( IOException | UnsupportedOperationException e ) {
+      throw new MetaStoreException( "Unable to hide '" + path + "'", e );
+    }
+  }
+
   @Override
   protected boolean deletePath( String path ) throws MetaStoreException {
     File pathFile = new File( path );
     return pathFile.delete();
   }
 
+  /**
+   * Rename the file, which keeps its last modified time.
+   */
+  @Override
+  protected boolean movePath( String source, String target ) throws MetaStoreException {
+    try {
+      try {
+        Files.move( Paths.get( source ), Paths.get( target ), StandardCopyOption.ATOMIC_MOVE );
+      } catch ( AtomicMoveNotSupportedException e ) {
+        Files.move( Paths.get( source ), Paths.get( target ) );
+      }
+      return true;
+    } catch ( IOException e ) {
+      throw new MetaStoreException( "Unable to move file '" + source + "' to '" + target + "'", e );
+    }
+  }
+
   @Override
   protected long lastModified( String path ) throws MetaStoreException {
     File pathFile = new File( path );
     return pathFile.lastModified();
   }
 
+  @Override
+  protected long fileSize( String path ) throws MetaStoreException {
+    File pathFile = new File( path );
+    return pathFile.length();
+  }
+
+  @Override
+  protected byte[] readFile( String path ) throws MetaStoreException {
+    try {
+      return Files.readAllBytes( Paths.get( path ) );
+    } catch ( NoSuchFileException e ) {
+      return null;
+    } catch ( IOException e ) {
+      throw new MetaStoreException( "Unable to read file '" + path + "'", e );
+    }
+  }
+
+  /**
+   * Write the contents to a temporary file next to the file and move it in place.
+   */
+  @Override
+  protected boolean writeFileAtomically( String path, byte[] content ) throws MetaStoreException {
+    Path target = Paths.get( path );
+    Path temporary = null;
+    try {
+      temporary = Files.createTempFile( target.getParent(), target.getFileName().toString(), ".tmp" );
+      Files.write( temporary, content );
+      try {
+        Files.move( temporary, target, StandardCopyOption.ATOMIC_MOVE );
+      } catch ( AtomicMoveNotSupportedException e ) {
+        Files.move( temporary, target, StandardCopyOption.REPLACE_EXISTING );
+      }
+      return true;
+    } catch ( IOException e ) {
+      if ( temporary != null ) {
+        try {
+          Files.deleteIfExists( temporary );
+        } catch ( IOException ignored ) {
+          // Nothing we can do about it
+        }
+      }
+      throw new MetaStoreException( "Unable to write file '" + path + "'", e );
+    }
+  }
+
   @Override
   protected List<File> listFiles( String folder, Map<String, Long> processedFiles ) {
     File folderFile = new File( folder );
@@ -181,6 +265,21 @@ public class XmlMetaStore extends BaseXmlMetaStore<File> {
     return new XmlMetaStoreElement( filename );
   }
 
+  /**
+   * Read the element file only up to the name, unless the streaming parser is disabled.
+   */
+  @Override
+  protected String readElementName( String filename ) throws MetaStoreException {
+    if ( !XmlUtil.isStreamingParserEnabled() ) {
+      return super.readElementName( filename );
+    }
+    try ( InputStream in = new FileInputStream( filename ) ) {
+      return BaseXmlMetaStoreElement.readName( in, filename );
+    } catch ( IOException e ) {
+      throw new MetaStoreException( "Unable to read XML metastore element from file '" + filename + "'", e );
+    }
+  }
+
   protected XmlMetaStoreElement newElement( IMetaStoreElement element ) throws MetaStoreException {
     return new XmlMetaStoreElement( element );
   }
@@ -192,46 +291,72 @@ public class XmlMetaStore extends BaseXmlMetaStore<File> {
   }
 
   /**
-   * Create a .lock file in the store root folder. If it already exists, wait until it becomes available.
-   * 
+   * Lock the store for writing. Other threads and processes using the same folder can neither read nor write until
+   * the lock is released.
+   *
    * @throws MetaStoreException
    *           in case we have to wait more than 10 seconds to acquire a lock
    */
   @Override
   protected void lockStore() throws MetaStoreException {
-    boolean waiting = true;
-    long totalTime = 0L;
-    while ( waiting ) {
-      File lockFile = new File( rootFile, ".lock" );
-      try {
-        // PDI-19756: make fewer calls to createNewFile() to prevent random Windows error
-        if ( !lockFile.exists() && lockFile.createNewFile() ) {
-          return;
-        }
-      } catch ( IOException e ) {
-        // PDI-19756: Due to known issue with createNewFile()
-        // we are trying to understand if the exception is due to lack of permissions or just a random fail
-        if ( e.getMessage().contains( "Access is denied" ) && Files.isWritable( Paths.get( rootFile.getPath() ) ) ) {
-          continue;
-        }
-      }
-      try {
-        Thread.sleep( 100 );
-      } catch ( InterruptedException e ) {
-        throw new RuntimeException( e );
-      }
-      totalTime += 100;
-      if ( totalTime > 10000 ) {
-        throw new MetaStoreException( "Maximum wait time of 10 seconds exceed while acquiring lock. "
-          + "If there is only one instance of this application running, "
-          + "try deleting the '.lock' file in the metastore folder if the problem reoccurs on startup" );
-      }
-    }
+    getFileLock().lockExclusive();
   }
 
   @Override
   protected void unlockStore() {
-    File lockFile = new File( rootFile, ".lock" );
-    lockFile.delete();
+    getFileLock().unlockExclusive();
+  }
+
+  /**
+   * Lock the store for reading. Other threads and processes using the same folder can read but not write until the
+   * lock is released. Readers don't take the legacy lock file of {@link XmlUtil#LEGACY_LOCK_PROPERTY}.
+   *
+   * @throws MetaStoreException
+   *           in case we have to wait more than 10 seconds to acquire a lock
+   */
+  @Override
+  protected void lockStoreForReading() throws MetaStoreException {
+    getFileLock().lockShared();
+  }
+
+  @Override
+  protected void unlockStoreForReading() {
+    getFileLock().unlockShared();
+  }
+
+  /**
+   * Lock a namespace or element type folder so that other threads and processes can work in other folders at the same
+   * time. Older versions only lock the whole store, which is already locked.
+   */
+  @Override
+  protected void lockFolder( String folder, boolean shared ) throws MetaStoreException {
+    XmlMetaStoreFileLock folderLock = XmlMetaStoreFileLock.forFolder( rootFile, new File( folder ) );
+    if ( shared ) {
+      folderLock.lockShared();
+    } else {
+      folderLock.lockExclusive();
+    }
+  }
+
+  @Override
+  protected void unlockFolder( String folder, boolean shared ) {
+    XmlMetaStoreFileLock folderLock = XmlMetaStoreFileLock.forFolder( rootFile, new File( folder ) );
+    if ( shared ) {
+      folderLock.unlockShared();
+    } else {
+      folderLock.unlockExclusive();
+    }
+  }
+
+  @Override
+  protected void deleteFolderLock( String folder ) {
+    XmlMetaStoreFileLock.deleteFolderLock( rootFile, new File( folder ) );
+  }
+
+  private XmlMetaStoreFileLock getFileLock() {
+    if ( fileLock == null ) {
+      fileLock = XmlMetaStoreFileLock.forStore( rootFile );
+    }
+    return fileLock;
   }
 }
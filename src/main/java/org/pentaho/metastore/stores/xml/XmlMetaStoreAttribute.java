@@ -26,6 +26,10 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
 public class XmlMetaStoreAttribute implements IMetaStoreAttribute {
 
   public static final String XML_TAG = "attribute";
@@ -72,16 +76,7 @@ public class XmlMetaStoreAttribute implements IMetaStoreAttribute {
       } else if ( "value".equals( elementNode.getNodeName() ) ) {
         value = XmlUtil.getNodeValue( elementNode );
       } else if ( "type".equals( elementNode.getNodeName() ) ) {
-        String type = XmlUtil.getNodeValue( elementNode );
-        if ( "Integer".equals( type ) ) {
-          value = Integer.valueOf( (String) value );
-        } else if ( "Double".equals( type ) ) {
-          value = Double.valueOf( (String) value );
-        } else if ( "Long".equals( type ) ) {
-          value = Long.valueOf( (String) value );
-        } /*
-           * else { value = value; }
-           */
+        convertValue( XmlUtil.getNodeValue( elementNode ) );
       } else if ( "children".equals( elementNode.getNodeName() ) ) {
         NodeList childNodes = elementNode.getChildNodes();
         for ( int c = 0; c < childNodes.getLength(); c++ ) {
@@ -96,6 +91,64 @@ public class XmlMetaStoreAttribute implements IMetaStoreAttribute {
     }
   }
 
+  /**
+   * Load the attribute from a streaming reader positioned on the start tag of the attribute (or child) element. The
+   * reader is left on the matching end tag.
+   *
+   * @param reader
+   *          the reader to load the attribute from
+   */
+  protected void loadAttribute( XMLStreamReader reader ) throws XMLStreamException {
+    while ( XmlUtil.nextChildElement( reader ) ) {
+      if ( !loadAttributeElement( reader ) ) {
+        XmlUtil.skipElement( reader );
+      }
+    }
+  }
+
+  /**
+   * Load one of the id, value, type or children elements of an attribute.
+   *
+   * @param reader
+   *          a reader positioned on the start tag of a child of the attribute element
+   * @return true if the element was consumed, false if it isn't part of the attribute
+   */
+  protected boolean loadAttributeElement( XMLStreamReader reader ) throws XMLStreamException {
+    String nodeName = reader.getLocalName();
+    if ( "id".equals( nodeName ) ) {
+      id = XmlUtil.getElementValue( reader );
+    } else if ( "value".equals( nodeName ) ) {
+      value = XmlUtil.getElementValue( reader );
+    } else if ( "type".equals( nodeName ) ) {
+      convertValue( XmlUtil.getElementValue( reader ) );
+    } else if ( "children".equals( nodeName ) ) {
+      while ( XmlUtil.nextChildElement( reader ) ) {
+        if ( "child".equals( reader.getLocalName() ) ) {
+          XmlMetaStoreAttribute childElement = new XmlMetaStoreAttribute();
+          childElement.loadAttribute( reader );
+          addChild( childElement );
+        } else {
+          XmlUtil.skipElement( reader );
+        }
+      }
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  private void convertValue( String type ) {
+    if ( "Integer".equals( type ) ) {
+      value = Integer.valueOf( (String) value );
+    } else if ( "Double".equals( type ) ) {
+      value = Double.valueOf( (String) value );
+    } else if ( "Long".equals( type ) ) {
+      value = Long.valueOf( (String) value );
+    } /*
+       * else { value = value; }
+       */
+  }
+
   @Override
   public void deleteChild( String entityId ) {
     Iterator<IMetaStoreAttribute> it = children.values().iterator();
@@ -214,6 +267,27 @@ public class XmlMetaStoreAttribute implements IMetaStoreAttribute {
     }
   }
 
+  protected void appendAttribute( IMetaStoreAttribute attribute, XMLStreamWriter writer )
+    throws MetaStoreException, XMLStreamException {
+    if ( attribute.getId() == null ) {
+      throw new MetaStoreException( "An attribute has to be non-null" );
+    }
+    XmlUtil.writeElement( writer, "id", attribute.getId() );
+    XmlUtil.writeElement( writer, "value", attribute.getValue() != null ? attribute.getValue().toString() : "" );
+    XmlUtil.writeElement( writer, "type", getType( attribute.getValue() ) );
+
+    List<IMetaStoreAttribute> children = attribute.getChildren();
+    if ( !children.isEmpty() ) {
+      writer.writeStartElement( "children" );
+      for ( IMetaStoreAttribute childElement : children ) {
+        writer.writeStartElement( "child" );
+        appendAttribute( childElement, writer );
+        writer.writeEndElement();
+      }
+      writer.writeEndElement();
+    }
+  }
+
   protected String getType( Object object ) {
 
     if ( object == null ) {
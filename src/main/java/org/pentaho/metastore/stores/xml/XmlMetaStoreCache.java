@@ -105,7 +105,8 @@ public interface XmlMetaStoreCache {
   void registerProcessedFile( String fullPath, long lastModified );
   
   /**
-   * @return map [full path -> last modified time] of registered processed files.
+   * @return map [full path -> last modified time] of registered processed files. The metastore reads it without
+   *         holding a lock while other threads register files, so it has to be a snapshot or a concurrent map.
    */
   Map<String, Long> getProcessedFiles();
   
@@ -0,0 +1,199 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.stores.xml;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.pentaho.metastore.api.IMetaStoreElement;
+
+/**
+ * A bounded cache of parsed metastore elements, keyed by the absolute path of the element file. Every entry remembers
+ * the last modified time and the size of the file it was parsed from. An entry is only handed out when both still
+ * match the file on disk, otherwise it is dropped and the file is parsed again.
+ * <p>
+ * The least recently used entries are evicted when either the number of entries or the total weight exceeds the
+ * configured maximum. The weight of an entry is the size of the XML file it was parsed from, which is a reasonable
+ * approximation of the memory the parsed element takes.
+ * <p>
+ * The cached elements are never handed out directly: the metastore stores a private copy and returns a copy of that
+ * to its callers, so changes made to a returned element don't end up in the cache.
+ */
+public class XmlMetaStoreElementCache {
+
+  public static final int DEFAULT_MAX_ENTRIES = 1000;
+  public static final long DEFAULT_MAX_WEIGHT = 16L * 1024 * 1024;
+
+  private final int maxEntries;
+  private final long maxWeight;
+
+  private final Map<String, Entry> entries = new LinkedHashMap<>( 16, 0.75f, true );
+  private long weight;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public XmlMetaStoreElementCache() {
+    this( DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT );
+  }
+
+  /**
+   * @param maxEntries
+   *          the maximum number of elements to keep
+   * @param maxWeight
+   *          the maximum total size in bytes of the files the cached elements were parsed from
+   */
+  public XmlMetaStoreElementCache( int maxEntries, long maxWeight ) {
+    if ( maxEntries <= 0 || maxWeight <= 0 ) {
+      throw new IllegalArgumentException( "The maximum number of entries and weight need to be positive" );
+    }
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * Look up the element parsed from a file.
+   *
+   * @param path
+   *          the absolute path of the element file
+   * @param lastModified
+   *          the current last modified time of the file
+   * @param size
+   *          the current size of the file in bytes
+   * @return the cached element or null if it isn't cached or the file changed since it was parsed
+   */
+  public synchronized IMetaStoreElement get( String path, long lastModified, long size ) {
+    Entry entry = entries.get( path );
+    if ( entry == null ) {
+      misses++;
+      return null;
+    }
+    if ( entry.lastModified != lastModified || entry.size != size ) {
+      remove( path );
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.element;
+  }
+
+  /**
+   * Cache the element parsed from a file. Elements from files larger than the maximum weight are not cached.
+   *
+   * @param path
+   *          the absolute path of the element file
+   * @param lastModified
+   *          the last modified time of the file the element was parsed from
+   * @param size
+   *          the size in bytes of the file the element was parsed from
+   * @param element
+   *          the parsed element. It shouldn't be modified after it was added to the cache.
+   */
+  public synchronized void put( String path, long lastModified, long size, IMetaStoreElement element ) {
+    remove( path );
+    if ( size > maxWeight ) {
+      return;
+    }
+    entries.put( path, new Entry( element, lastModified, size ) );
+    weight += size;
+
+    Iterator<Entry> iterator = entries.values().iterator();
+    while ( ( entries.size() > maxEntries || weight > maxWeight ) && iterator.hasNext() ) {
+      Entry eldest = iterator.next();
+      iterator.remove();
+      weight -= eldest.size;
+      evictions++;
+    }
+  }
+
+  /**
+   * Remove the element parsed from the file with the given path, if any.
+   *
+   * @param path
+   *          the absolute path of the element file
+   */
+  public synchronized void remove( String path ) {
+    Entry entry = entries.remove( path );
+    if ( entry != null ) {
+      weight -= entry.size;
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    weight = 0L;
+  }
+
+  /**
+   * @return the number of cached elements
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the total size in bytes of the files the cached elements were parsed from
+   */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  /**
+   * @return the number of lookups that returned a cached element
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of lookups that found no element or an element parsed from an older version of the file
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return the number of elements removed to stay within the maximum number of entries or weight
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  public synchronized void resetStatistics() {
+    hits = 0L;
+    misses = 0L;
+    evictions = 0L;
+  }
+
+  private static class Entry {
+    private final IMetaStoreElement element;
+    private final long lastModified;
+    private final long size;
+
+    private Entry( IMetaStoreElement element, long lastModified, long size ) {
+      this.element = element;
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+  }
+}
@@ -21,6 +21,10 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
 public class XmlMetaStoreElementOwner implements IMetaStoreElementOwner {
 
   private String name;
@@ -66,6 +70,33 @@ public class XmlMetaStoreElementOwner implements IMetaStoreElementOwner {
      */
   }
 
+  /**
+   * Load an element owner from a streaming reader
+   * 
+   * @param reader
+   *          The reader positioned on the start tag of the owner element. It's left on the matching end tag.
+   * @throws MetaStoreException
+   *           In case there was an error loading the data, if data was incomplete, ...
+   */
+  public XmlMetaStoreElementOwner( XMLStreamReader reader ) throws MetaStoreException, XMLStreamException {
+    while ( XmlUtil.nextChildElement( reader ) ) {
+      String nodeName = reader.getLocalName();
+      if ( "name".equals( nodeName ) ) {
+        name = XmlUtil.getElementValue( reader );
+      } else if ( "type".equals( nodeName ) ) {
+        String typeString = XmlUtil.getElementValue( reader );
+        try {
+          type = MetaStoreElementOwnerType.getOwnerType( typeString );
+        } catch ( Exception ex ) {
+          throw new MetaStoreException( "Unable to convert owner type [" + typeString
+              + "] to one of USER, ROLE or SYSTEM_ROLE", ex );
+        }
+      } else {
+        XmlUtil.skipElement( reader );
+      }
+    }
+  }
+
   public XmlMetaStoreElementOwner( IMetaStoreElementOwner owner ) {
     this.name = owner.getName();
     this.type = owner.getOwnerType();
@@ -81,6 +112,11 @@ public class XmlMetaStoreElementOwner implements IMetaStoreElementOwner {
     ownerElement.appendChild( typeElement );
   }
 
+  public void append( XMLStreamWriter writer ) throws XMLStreamException {
+    XmlUtil.writeElement( writer, "name", name == null ? "" : name );
+    XmlUtil.writeElement( writer, "type", type == null ? "" : type.name() );
+  }
+
   @Override
   public String getName() {
     return name;
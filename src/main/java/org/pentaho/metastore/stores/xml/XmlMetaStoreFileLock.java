@@ -0,0 +1,399 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.stores.xml;
+
+import org.pentaho.metastore.api.exceptions.MetaStoreException;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A read/write lock on a metastore folder that is shared by all the threads and all the processes using the folder.
+ * The folder is either the root folder of the metastore or one of its namespace or element type folders.
+ * <p>
+ * Within this JVM there is one read/write lock per folder, so all the XmlMetaStore instances on the same folder
+ * cooperate. Other processes are kept out with a lock on a lock file: a shared lock while this JVM reads, an exclusive
+ * one while it writes. Readers in different processes don't block each other and the operating system releases the
+ * lock if a process dies, so no stale lock file can block the metastore. Readers create the lock file too, so a writer
+ * that comes after them has to wait. Only the readers of a read-only metastore go without a lock.
+ * <p>
+ * The lock file of the root folder is in the root folder itself. The lock files of the namespace and element type
+ * folders are kept in a hidden copy of the folder tree, {@link XmlUtil#FOLDER_LOCKS_FOLDER_NAME} in the root folder,
+ * so that the namespace and element type folders only contain what older versions expect and they can still delete
+ * them.
+ * <p>
+ * When {@link XmlUtil#LEGACY_LOCK_PROPERTY} is "true", the exclusive root lock also creates the
+ * {@link XmlUtil#LOCK_FILE_NAME} file, and waits while it exists, like older versions do. The file is removed again at
+ * the end of the outermost exclusive operation. Shared acquisitions never take it, so readers and element writers in
+ * different processes don't block each other on it.
+ */
+class XmlMetaStoreFileLock {
+
+  private static final long MAX_WAIT_MILLIS = 10000L;
+
+  // On Windows the hidden flag is a file attribute, elsewhere hidden files start with a dot
+  //
+  private static final boolean DOS_ATTRIBUTES = File.separatorChar == '\\';
+
+  // One lock per lock file in this JVM, kept as long as somebody uses it. The key is the path held by the lock, so the
+  // entry goes away together with the lock.
+  //
+  private static final Map<String, WeakReference<XmlMetaStoreFileLock>> LOCKS = new WeakHashMap<>();
+
+  // The locks with holders, which have to stay in LOCKS until they are unlocked
+  //
+  private static final Set<XmlMetaStoreFileLock> HELD = ConcurrentHashMap.newKeySet();
+
+  private final String path;
+  private final File lockFile;
+
+  // The namespace or element type folder the lock is for, null for the root folder
+  //
+  private final File folder;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  // The legacy lock file for the root folder of a metastore, null for the other folders
+  //
+  private volatile File legacyLockFile;
+
+  // The lock file is locked while there are holders in this JVM
+  //
+  private int holders;
+  private FileChannel channel;
+  private boolean legacyLocked;
+
+  private XmlMetaStoreFileLock( File lockFile, File folder ) {
+    this.lockFile = lockFile;
+    this.folder = folder;
+    this.path = lockFile.getPath();
+  }
+
+  /**
+   * @return the lock for the metastore in the given root folder
+   */
+  static XmlMetaStoreFileLock forStore( File rootFolder ) {
+    XmlMetaStoreFileLock storeLock = forLockFile( new File( rootFolder, XmlUtil.STORE_LOCK_FILE_NAME ), null );
+    storeLock.legacyLockFile = new File( rootFolder, XmlUtil.LOCK_FILE_NAME ).getAbsoluteFile();
+    return storeLock;
+  }
+
+  /**
+   * @return the lock for a namespace or element type folder of the metastore in the given root folder
+   */
+  static XmlMetaStoreFileLock forFolder( File rootFolder, File folder ) {
+    return forLockFile( getFolderLockFile( rootFolder, folder ), folder.getAbsoluteFile() );
+  }
+
+  /**
+   * @return the lock file of a namespace or element type folder, in the hidden copy of the folder tree
+   */
+  static File getFolderLockFile( File rootFolder, File folder ) {
+    Path relativePath = rootFolder.getAbsoluteFile().toPath().relativize( folder.getAbsoluteFile().toPath() );
+    File locksFolder = new File( rootFolder, XmlUtil.FOLDER_LOCKS_FOLDER_NAME );
+    return new File( new File( locksFolder, relativePath.toString() ), XmlUtil.STORE_LOCK_FILE_NAME );
+  }
+
+  /**
+   * Delete the lock file of a deleted namespace or element type folder. The caller holds the exclusive lock on the
+   * folder above, so nobody can be holding or waiting for this one.
+   */
+  static void deleteFolderLock( File rootFolder, File folder ) {
+    File folderLockFile = getFolderLockFile( rootFolder, folder );
+    if ( folderLockFile.delete() || !folderLockFile.exists() ) {
+      folderLockFile.getParentFile().delete();
+    }
+  }
+
+  private static XmlMetaStoreFileLock forLockFile( File file, File folder ) {
+    File lockFile = file.getAbsoluteFile();
+    synchronized ( LOCKS ) {
+      WeakReference<XmlMetaStoreFileLock> reference = LOCKS.get( lockFile.getPath() );
+      XmlMetaStoreFileLock fileLock = reference == null ? null : reference.get();
+      if ( fileLock == null ) {
+        fileLock = new XmlMetaStoreFileLock( lockFile, folder );
+        LOCKS.put( fileLock.path, new WeakReference<>( fileLock ) );
+      }
+      return fileLock;
+    }
+  }
+
+  /**
+   * @return the number of locks in this JVM that are still referenced
+   */
+  static int getLockCount() {
+    synchronized ( LOCKS ) {
+      return LOCKS.size();
+    }
+  }
+
+  /**
+   * Lock for reading: other readers can proceed, writers have to wait.
+   *
+   * @throws MetaStoreException
+   *           in case we have to wait more than 10 seconds to acquire the lock
+   */
+  void lockShared() throws MetaStoreException {
+    lock( lock.readLock(), true );
+  }
+
+  void unlockShared() {
+    unlock( lock.readLock() );
+  }
+
+  /**
+   * Lock for writing: everybody else has to wait.
+   *
+   * @throws MetaStoreException
+   *           in case we have to wait more than 10 seconds to acquire the lock
+   */
+  void lockExclusive() throws MetaStoreException {
+    lock( lock.writeLock(), false );
+  }
+
+  void unlockExclusive() {
+    unlock( lock.writeLock() );
+  }
+
+  private void lock( Lock jvmLock, boolean shared ) throws MetaStoreException {
+    long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+    try {
+      if ( !jvmLock.tryLock( MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS ) ) {
+        throw timeout();
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new MetaStoreException( "Interrupted while acquiring the metastore lock", e );
+    }
+    try {
+      lockFile( shared, deadline );
+    } catch ( MetaStoreException | RuntimeException e ) {
+      jvmLock.unlock();
+      throw e;
+    }
+  }
+
+  private void unlock( Lock jvmLock ) {
+    try {
+      unlockFile();
+    } finally {
+      jvmLock.unlock();
+    }
+  }
+
+  private synchronized void lockFile( boolean shared, long deadline ) throws MetaStoreException {
+    if ( holders == 0 ) {
+      // The legacy lock file is only taken by exclusive root operations. Nobody else holds this lock then, so it is
+      // removed again when the outermost operation unlocks.
+      //
+      boolean legacy = !shared && lockLegacyFile( deadline );
+      try {
+        FileChannel openedChannel = openChannel( shared );
+        if ( openedChannel != null ) {
+          acquire( openedChannel, shared, deadline );
+        }
+        channel = openedChannel;
+      } catch ( MetaStoreException | RuntimeException e ) {
+        if ( legacy ) {
+          legacyLockFile.delete();
+        }
+        throw e;
+      }
+      legacyLocked = legacy;
+      HELD.add( this );
+    }
+    holders++;
+  }
+
+  private synchronized void unlockFile() {
+    holders--;
+    if ( holders == 0 ) {
+      if ( channel != null ) {
+        // Closing the channel releases the lock
+        //
+        closeQuietly( channel );
+        channel = null;
+      }
+      if ( legacyLocked ) {
+        legacyLockFile.delete();
+        legacyLocked = false;
+      }
+      HELD.remove( this );
+    }
+  }
+
+  /**
+   * @return the channel to lock or null if there's nothing to protect against: the folder doesn't exist (yet), or a
+   *         reader found a read-only metastore that no other process can write either.
+   */
+  private FileChannel openChannel( boolean shared ) throws MetaStoreException {
+    Path lockPath = lockFile.toPath();
+    try {
+      if ( folder != null ) {
+        if ( !folder.isDirectory() ) {
+          return null;
+        }
+        // The folder of a namespace or element type lock file is created by the first one to lock it
+        //
+        createLocksFolder( lockFile.getParentFile() );
+      }
+      return FileChannel.open( lockPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE );
+    } catch ( NoSuchFileException e ) {
+      return null;
+    } catch ( IOException e ) {
+      if ( shared ) {
+        // A shared lock only needs to read the lock file, if it's there
+        //
+        try {
+          return FileChannel.open( lockPath, StandardOpenOption.READ );
+        } catch ( IOException readException ) {
+          if ( isReadOnly() ) {
+            return null;
+          }
+        }
+      }
+      throw new MetaStoreException( "Unable to open metastore lock file '" + lockFile + "'", e );
+    }
+  }
+
+  /**
+   * @return true if the lock file can't be created because the folder it belongs in, or the nearest one that exists,
+   *         is read-only
+   */
+  private boolean isReadOnly() {
+    File existingFolder = lockFile.getParentFile();
+    while ( existingFolder != null && !existingFolder.isDirectory() ) {
+      existingFolder = existingFolder.getParentFile();
+    }
+    return existingFolder == null || !Files.isWritable( existingFolder.toPath() );
+  }
+
+  /**
+   * Create the folder of a namespace or element type lock file, and the hidden folder it is in, if they don't exist.
+   */
+  private static void createLocksFolder( File lockFolder ) throws IOException {
+    if ( lockFolder.isDirectory() ) {
+      return;
+    }
+    File locksFolder = lockFolder;
+    while ( !XmlUtil.FOLDER_LOCKS_FOLDER_NAME.equals( locksFolder.getName() ) ) {
+      locksFolder = locksFolder.getParentFile();
+    }
+    if ( !locksFolder.isDirectory() ) {
+      Files.createDirectories( locksFolder.toPath() );
+      if ( DOS_ATTRIBUTES ) {
+        Files.setAttribute( locksFolder.toPath(), "dos:hidden", Boolean.TRUE );
+      }
+    }
+    Files.createDirectories( lockFolder.toPath() );
+  }
+
+  /**
+   * Create the legacy lock file of the root folder, waiting while another process has it.
+   *
+   * @return true if the file was created and has to be removed when unlocking
+   */
+  private boolean lockLegacyFile( long deadline ) throws MetaStoreException {
+    File legacyFile = legacyLockFile;
+    if ( legacyFile == null || !XmlUtil.isLegacyLockEnabled() ) {
+      return false;
+    }
+    File rootFolder = legacyFile.getParentFile();
+    try {
+      while ( true ) {
+        try {
+          // PDI-19756: make fewer calls to createNewFile() to prevent random Windows error
+          if ( !legacyFile.exists() && legacyFile.createNewFile() ) {
+            return true;
+          }
+        } catch ( IOException e ) {
+          if ( !rootFolder.isDirectory() ) {
+            // Nothing to protect yet
+            return false;
+          }
+          if ( !Files.isWritable( rootFolder.toPath() ) ) {
+            throw new MetaStoreException( "Unable to create metastore lock file '" + legacyFile + "'", e );
+          }
+          // PDI-19756: known issue with createNewFile() on Windows, try again
+        }
+        if ( System.currentTimeMillis() > deadline ) {
+          throw new MetaStoreException( "Maximum wait time of 10 seconds exceed while acquiring lock. "
+            + "If there is only one instance of this application running, "
+            + "try deleting the '.lock' file in the metastore folder if the problem reoccurs on startup" );
+        }
+        Thread.sleep( 100L );
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new MetaStoreException( "Interrupted while acquiring the metastore lock", e );
+    }
+  }
+
+  private void acquire( FileChannel fileChannel, boolean shared, long deadline ) throws MetaStoreException {
+    long wait = 1L;
+    try {
+      while ( true ) {
+        try {
+          FileLock acquired = fileChannel.tryLock( 0L, Long.MAX_VALUE, shared );
+          if ( acquired != null ) {
+            return;
+          }
+        } catch ( OverlappingFileLockException e ) {
+          // Locked by a copy of this class in another class loader, wait for it like for another process
+        }
+        if ( System.currentTimeMillis() > deadline ) {
+          throw timeout();
+        }
+        Thread.sleep( wait );
+        wait = Math.min( wait * 2, 100L );
+      }
+    } catch ( IOException e ) {
+      closeQuietly( fileChannel );
+      throw new MetaStoreException( "Unable to lock metastore lock file '" + lockFile + "'", e );
+    } catch ( InterruptedException e ) {
+      closeQuietly( fileChannel );
+      Thread.currentThread().interrupt();
+      throw new MetaStoreException( "Interrupted while acquiring the metastore lock", e );
+    } catch ( MetaStoreException e ) {
+      closeQuietly( fileChannel );
+      throw e;
+    }
+  }
+
+  private static void closeQuietly( FileChannel fileChannel ) {
+    try {
+      fileChannel.close();
+    } catch ( IOException ignored ) {
+      // Nothing we can do about it
+    }
+  }
+
+  private MetaStoreException timeout() {
+    return new MetaStoreException( "Maximum wait time of 10 seconds exceed while acquiring lock on '" + lockFile + "'" );
+  }
+}
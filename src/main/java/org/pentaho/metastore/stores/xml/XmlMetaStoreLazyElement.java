@@ -0,0 +1,157 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.stores.xml;
+
+import java.util.List;
+
+import org.pentaho.metastore.api.IMetaStoreAttribute;
+import org.pentaho.metastore.api.IMetaStoreElement;
+import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.api.exceptions.MetaStoreException;
+import org.pentaho.metastore.api.security.IMetaStoreElementOwner;
+import org.pentaho.metastore.api.security.MetaStoreOwnerPermissions;
+
+/**
+ * An element listed without parsing its file: only the ID and the name are known up front. The rest of the element is
+ * read from the metastore the first time anything else is used, including changing the ID or the name.
+ * <p>
+ * If the element can't be read by then, for example because it was deleted in the meantime, the first use fails with
+ * a RuntimeException.
+ */
+public class XmlMetaStoreLazyElement implements IMetaStoreElement {
+
+  private final BaseXmlMetaStore<?> metaStore;
+  private final String namespace;
+  private final IMetaStoreElementType elementType;
+  private final String id;
+  private final String name;
+
+  private IMetaStoreElement element;
+
+  XmlMetaStoreLazyElement( BaseXmlMetaStore<?> metaStore, String namespace, IMetaStoreElementType elementType,
+      String id, String name ) {
+    this.metaStore = metaStore;
+    this.namespace = namespace;
+    this.elementType = elementType;
+    this.id = id;
+    this.name = name;
+  }
+
+  /**
+   * @return true if the element was read from the metastore
+   */
+  public synchronized boolean isLoaded() {
+    return element != null;
+  }
+
+  private synchronized IMetaStoreElement load() {
+    if ( element == null ) {
+      IMetaStoreElement loaded;
+      try {
+        loaded = metaStore.getElement( namespace, elementType, id );
+      } catch ( MetaStoreException e ) {
+        throw new RuntimeException( "Unable to load metaStore element '" + id + "'", e );
+      }
+      if ( loaded == null ) {
+        throw new RuntimeException( "The metaStore element '" + id + "' doesn't exist anymore" );
+      }
+      element = loaded;
+    }
+    return element;
+  }
+
+  @Override
+  public synchronized String getId() {
+    return element == null ? id : element.getId();
+  }
+
+  @Override
+  public void setId( String id ) {
+    load().setId( id );
+  }
+
+  @Override
+  public synchronized String getName() {
+    return element == null ? name : element.getName();
+  }
+
+  @Override
+  public void setName( String name ) {
+    load().setName( name );
+  }
+
+  @Override
+  public Object getValue() {
+    return load().getValue();
+  }
+
+  @Override
+  public void setValue( Object value ) {
+    load().setValue( value );
+  }
+
+  @Override
+  public List<IMetaStoreAttribute> getChildren() {
+    return load().getChildren();
+  }
+
+  @Override
+  public void addChild( IMetaStoreAttribute attribute ) {
+    load().addChild( attribute );
+  }
+
+  @Override
+  public void deleteChild( String attributeId ) {
+    load().deleteChild( attributeId );
+  }
+
+  @Override
+  public void clearChildren() {
+    load().clearChildren();
+  }
+
+  @Override
+  public IMetaStoreAttribute getChild( String id ) {
+    return load().getChild( id );
+  }
+
+  @Override
+  public IMetaStoreElementType getElementType() {
+    return load().getElementType();
+  }
+
+  @Override
+  public void setElementType( IMetaStoreElementType elementType ) {
+    load().setElementType( elementType );
+  }
+
+  @Override
+  public IMetaStoreElementOwner getOwner() {
+    return load().getOwner();
+  }
+
+  @Override
+  public void setOwner( IMetaStoreElementOwner owner ) {
+    load().setOwner( owner );
+  }
+
+  @Override
+  public List<MetaStoreOwnerPermissions> getOwnerPermissionsList() {
+    return load().getOwnerPermissionsList();
+  }
+
+  @Override
+  public void setOwnerPermissionsList( List<MetaStoreOwnerPermissions> ownerPermissions ) {
+    load().setOwnerPermissionsList( ownerPermissions );
+  }
+}
@@ -0,0 +1,248 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.stores.xml;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.pentaho.metastore.util.MetaStoreUtil;
+
+/**
+ * The names of the elements of an element type, stored in the element type folder so that an element can be found by
+ * name after a restart without parsing every element file.
+ * <p>
+ * Every entry maps the lower-cased name of an element to its ID, together with the last modified time and the size of
+ * the element file when it was indexed. An entry is only trusted if both still match the file. Names that aren't in
+ * the index may still exist, for example because another program added the element, so a miss is checked by reading
+ * the element files.
+ * <p>
+ * The entries are kept sorted by name and ID, so that a page of elements sorted by name can be listed from the index.
+ * <p>
+ * The file has one line per element with tab-separated name, ID, last modified time and size.
+ */
+class XmlMetaStoreNameIndex {
+
+  private static final String HEADER = "# Pentaho metastore element name index 1";
+
+  /** The entries by lower-cased name and ID, both sorted */
+  private final Map<String, Map<String, Entry>> entriesByName = new TreeMap<>();
+
+  /** The lower-cased name of every element ID */
+  private final Map<String, String> namesById = new HashMap<>();
+
+  /**
+   * @return the entries of the elements with the given name, ignoring case
+   */
+  Collection<Entry> getEntries( String name ) {
+    Map<String, Entry> entries = entriesByName.get( toKey( name ) );
+    return entries == null ? Collections.<Entry>emptyList() : new ArrayList<>( entries.values() );
+  }
+
+  /**
+   * @return the entry of the element with the given ID or null if it isn't indexed
+   */
+  Entry getEntry( String id ) {
+    String key = namesById.get( id );
+    return key == null ? null : entriesByName.get( key ).get( id );
+  }
+
+  /**
+   * @return all the entries sorted by lower-cased name and ID
+   */
+  List<Entry> getEntriesByName() {
+    List<Entry> entries = new ArrayList<>( namesById.size() );
+    for ( Map<String, Entry> entriesWithName : entriesByName.values() ) {
+      entries.addAll( entriesWithName.values() );
+    }
+    return entries;
+  }
+
+  /**
+   * @return the IDs of all the indexed elements
+   */
+  List<String> getIds() {
+    return new ArrayList<>( namesById.keySet() );
+  }
+
+  void put( String id, String name, long lastModified, long size ) {
+    remove( id );
+    String key = toKey( name );
+    entriesByName.computeIfAbsent( key, k -> new TreeMap<>() ).put( id, new Entry( id, key, lastModified, size ) );
+    namesById.put( id, key );
+  }
+
+  void remove( String id ) {
+    String key = namesById.remove( id );
+    if ( key == null ) {
+      return;
+    }
+    Map<String, Entry> entries = entriesByName.get( key );
+    entries.remove( id );
+    if ( entries.isEmpty() ) {
+      entriesByName.remove( key );
+    }
+  }
+
+  int size() {
+    return namesById.size();
+  }
+
+  /**
+   * @return an index with the same entries that can be changed without changing this one
+   */
+  XmlMetaStoreNameIndex copy() {
+    XmlMetaStoreNameIndex copy = new XmlMetaStoreNameIndex();
+    for ( Map.Entry<String, Map<String, Entry>> entries : entriesByName.entrySet() ) {
+      copy.entriesByName.put( entries.getKey(), new TreeMap<>( entries.getValue() ) );
+    }
+    copy.namesById.putAll( namesById );
+    return copy;
+  }
+
+  private static String toKey( String name ) {
+    return MetaStoreUtil.getNameSortKey( name );
+  }
+
+  /**
+   * @return the index stored in the given content or null if it isn't an index this version understands
+   */
+  static XmlMetaStoreNameIndex parse( byte[] content ) {
+    String[] lines = new String( content, StandardCharsets.UTF_8 ).split( "\n" );
+    if ( lines.length == 0 || !HEADER.equals( lines[0] ) ) {
+      return null;
+    }
+    XmlMetaStoreNameIndex index = new XmlMetaStoreNameIndex();
+    for ( int i = 1; i < lines.length; i++ ) {
+      if ( lines[i].isEmpty() ) {
+        continue;
+      }
+      String[] fields = lines[i].split( "\t", -1 );
+      if ( fields.length != 4 ) {
+        return null;
+      }
+      try {
+        String id = unescape( fields[1] );
+        String key = unescape( fields[0] );
+        index.entriesByName.computeIfAbsent( key, k -> new TreeMap<>() )
+          .put( id, new Entry( id, key, Long.parseLong( fields[2] ), Long.parseLong( fields[3] ) ) );
+        index.namesById.put( id, key );
+      } catch ( IllegalArgumentException e ) {
+        return null;
+      }
+    }
+    return index;
+  }
+
+  byte[] toBytes() {
+    StringBuilder content = new StringBuilder( HEADER ).append( '\n' );
+    for ( Map.Entry<String, String> nameById : namesById.entrySet() ) {
+      Entry entry = entriesByName.get( nameById.getValue() ).get( nameById.getKey() );
+      content.append( escape( nameById.getValue() ) ).append( '\t' ).append( escape( entry.id ) ).append( '\t' )
+        .append( entry.lastModified ).append( '\t' ).append( entry.size ).append( '\n' );
+    }
+    return content.toString().getBytes( StandardCharsets.UTF_8 );
+  }
+
+  private static String escape( String value ) {
+    StringBuilder escaped = new StringBuilder( value.length() );
+    for ( char c : value.toCharArray() ) {
+      switch ( c ) {
+        case '\\':
+          escaped.append( "\\\\" );
+          break;
+        case '\t':
+          escaped.append( "\\t" );
+          break;
+        case '\n':
+          escaped.append( "\\n" );
+          break;
+        case '\r':
+          escaped.append( "\\r" );
+          break;
+        default:
+          escaped.append( c );
+      }
+    }
+    return escaped.toString();
+  }
+
+  private static String unescape( String value ) {
+    StringBuilder unescaped = new StringBuilder( value.length() );
+    for ( int i = 0; i < value.length(); i++ ) {
+      char c = value.charAt( i );
+      if ( c != '\\' ) {
+        unescaped.append( c );
+        continue;
+      }
+      if ( ++i == value.length() ) {
+        throw new IllegalArgumentException( "Incomplete escape sequence in '" + value + "'" );
+      }
+      switch ( value.charAt( i ) ) {
+        case '\\':
+          unescaped.append( '\\' );
+          break;
+        case 't':
+          unescaped.append( '\t' );
+          break;
+        case 'n':
+          unescaped.append( '\n' );
+          break;
+        case 'r':
+          unescaped.append( '\r' );
+          break;
+        default:
+          throw new IllegalArgumentException( "Unknown escape sequence in '" + value + "'" );
+      }
+    }
+    return unescaped.toString();
+  }
+
+  static class Entry {
+    private final String id;
+    private final String name;
+    private final long lastModified;
+    private final long size;
+
+    private Entry( String id, String name, long lastModified, long size ) {
+      this.id = id;
+      this.name = name;
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+
+    String getId() {
+      return id;
+    }
+
+    /**
+     * @return the lower-cased name
+     */
+    String getName() {
+      return name;
+    }
+
+    long getLastModified() {
+      return lastModified;
+    }
+
+    long getSize() {
+      return size;
+    }
+  }
+}
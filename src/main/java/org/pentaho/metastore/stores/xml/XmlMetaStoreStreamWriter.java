@@ -0,0 +1,443 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.stores.xml;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * An XMLStreamWriter that writes the metastore XML files in exactly the same layout as the indenting DOM transformer
+ * does: an XML declaration with standalone="no", two space indentation, empty elements collapsed to &lt;name/&gt; and
+ * the same character references for control and supplementary characters. This keeps files written by either path
+ * byte-for-byte identical.
+ * <p>
+ * The output is collected in a buffer and handed to the wrapped writer when the writer is flushed, the document is
+ * ended or the buffer grows large, so the wrapped writer doesn't need to be buffered itself. The metastore doesn't use
+ * namespaces: prefixes and namespace declarations are written as given and only tracked so the namespace context can
+ * be queried, like a non-repairing XMLStreamWriter does.
+ */
+public class XmlMetaStoreStreamWriter implements XMLStreamWriter {
+
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+  private static final String INDENT = "  ";
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Writer writer;
+  private final StringBuilder buffer = new StringBuilder( BUFFER_SIZE );
+
+  /** The names of the open elements, innermost last */
+  private final List<String> openElements = new ArrayList<>();
+
+  /** For each open element: true if it has child elements */
+  private final List<Boolean> hasChildElements = new ArrayList<>();
+
+  /** The prefixes bound to namespace URIs, one scope for the document and one for each open element */
+  private final List<Map<String, String>> prefixScopes = new ArrayList<>();
+
+  /** Consulted for prefixes not bound in any scope, set with {@link #setNamespaceContext(NamespaceContext)} */
+  private NamespaceContext rootContext;
+
+  /** true while the start tag of the innermost element isn't closed yet, so it can still become an empty element */
+  private boolean startTagOpen;
+
+  /** true while the open start tag belongs to an empty element, which is ended as soon as anything else is written */
+  private boolean emptyElementOpen;
+
+  /**
+   * @param writer
+   *          the writer to write to. It is flushed but not closed by this class.
+   */
+  public XmlMetaStoreStreamWriter( Writer writer ) {
+    this.writer = writer;
+    prefixScopes.add( new HashMap<>() );
+  }
+
+  @Override
+  public void writeStartDocument() throws XMLStreamException {
+    writeStartDocument( "UTF-8", "1.0" );
+  }
+
+  @Override
+  public void writeStartDocument( String version ) throws XMLStreamException {
+    writeStartDocument( "UTF-8", version );
+  }
+
+  @Override
+  public void writeStartDocument( String encoding, String version ) throws XMLStreamException {
+    write( "<?xml version=\"" + version + "\" encoding=\"" + encoding + "\" standalone=\"no\"?>" );
+    write( LINE_SEPARATOR );
+  }
+
+  @Override
+  public void writeStartElement( String localName ) throws XMLStreamException {
+    writeStartElement( XMLConstants.DEFAULT_NS_PREFIX, localName, null );
+  }
+
+  @Override
+  public void writeStartElement( String namespaceURI, String localName ) throws XMLStreamException {
+    writeStartElement( requirePrefix( namespaceURI ), localName, namespaceURI );
+  }
+
+  @Override
+  public void writeStartElement( String prefix, String localName, String namespaceURI ) throws XMLStreamException {
+    closeStartTag();
+    int depth = openElements.size();
+    if ( depth > 0 ) {
+      hasChildElements.set( depth - 1, Boolean.TRUE );
+      writeIndent( depth );
+    }
+    String qualifiedName = qualify( prefix, localName );
+    openElements.add( qualifiedName );
+    hasChildElements.add( Boolean.FALSE );
+    prefixScopes.add( new HashMap<>() );
+    write( "<" );
+    write( qualifiedName );
+    startTagOpen = true;
+  }
+
+  @Override
+  public void writeEndElement() throws XMLStreamException {
+    if ( emptyElementOpen ) {
+      closeStartTag();
+    }
+    if ( openElements.isEmpty() ) {
+      throw new XMLStreamException( "No element to end" );
+    }
+    int depth = openElements.size() - 1;
+    String localName = openElements.remove( depth );
+    boolean children = hasChildElements.remove( depth );
+    prefixScopes.remove( depth + 1 );
+    if ( startTagOpen ) {
+      write( "/>" );
+      startTagOpen = false;
+      return;
+    }
+    if ( children ) {
+      writeIndent( depth );
+    }
+    write( "</" );
+    write( localName );
+    write( ">" );
+  }
+
+  @Override
+  public void writeEmptyElement( String localName ) throws XMLStreamException {
+    writeStartElement( localName );
+    emptyElementOpen = true;
+  }
+
+  @Override
+  public void writeEmptyElement( String namespaceURI, String localName ) throws XMLStreamException {
+    writeStartElement( namespaceURI, localName );
+    emptyElementOpen = true;
+  }
+
+  @Override
+  public void writeEmptyElement( String prefix, String localName, String namespaceURI ) throws XMLStreamException {
+    writeStartElement( prefix, localName, namespaceURI );
+    emptyElementOpen = true;
+  }
+
+  @Override
+  public void writeEndDocument() throws XMLStreamException {
+    while ( !openElements.isEmpty() ) {
+      writeEndElement();
+    }
+    write( LINE_SEPARATOR );
+    flush();
+  }
+
+  @Override
+  public void writeAttribute( String localName, String value ) throws XMLStreamException {
+    writeAttribute( XMLConstants.DEFAULT_NS_PREFIX, null, localName, value );
+  }
+
+  @Override
+  public void writeAttribute( String namespaceURI, String localName, String value ) throws XMLStreamException {
+    writeAttribute( requirePrefix( namespaceURI ), namespaceURI, localName, value );
+  }
+
+  @Override
+  public void writeAttribute( String prefix, String namespaceURI, String localName, String value )
+    throws XMLStreamException {
+    if ( !startTagOpen ) {
+      throw new XMLStreamException( "Attributes can only be written directly after a start element" );
+    }
+    write( " " );
+    write( qualify( prefix, localName ) );
+    write( "=\"" );
+    writeEscaped( value, true );
+    write( "\"" );
+  }
+
+  /**
+   * Write text content, escaped the same way the DOM transformer escapes it.
+   */
+  @Override
+  public void writeCharacters( String text ) throws XMLStreamException {
+    if ( text == null || text.isEmpty() ) {
+      return;
+    }
+    closeStartTag();
+    writeEscaped( text, false );
+  }
+
+  @Override
+  public void writeNamespace( String prefix, String namespaceURI ) throws XMLStreamException {
+    if ( prefix == null || prefix.isEmpty() || XMLConstants.XMLNS_ATTRIBUTE.equals( prefix ) ) {
+      writeDefaultNamespace( namespaceURI );
+      return;
+    }
+    writeAttribute( XMLConstants.XMLNS_ATTRIBUTE, XMLConstants.XMLNS_ATTRIBUTE_NS_URI, prefix, namespaceURI );
+    setPrefix( prefix, namespaceURI );
+  }
+
+  @Override
+  public void writeDefaultNamespace( String namespaceURI ) throws XMLStreamException {
+    writeAttribute( XMLConstants.XMLNS_ATTRIBUTE, namespaceURI );
+    setDefaultNamespace( namespaceURI );
+  }
+
+  @Override
+  public String getPrefix( String uri ) throws XMLStreamException {
+    return getNamespaceContext().getPrefix( uri );
+  }
+
+  @Override
+  public void setPrefix( String prefix, String uri ) throws XMLStreamException {
+    prefixScopes.get( prefixScopes.size() - 1 ).put( prefix, uri );
+  }
+
+  @Override
+  public void setDefaultNamespace( String uri ) throws XMLStreamException {
+    setPrefix( XMLConstants.DEFAULT_NS_PREFIX, uri );
+  }
+
+  @Override
+  public void setNamespaceContext( NamespaceContext context ) throws XMLStreamException {
+    if ( !openElements.isEmpty() ) {
+      throw new XMLStreamException( "The namespace context can only be set before the first element" );
+    }
+    rootContext = context;
+  }
+
+  @Override
+  public NamespaceContext getNamespaceContext() {
+    return new NamespaceContext() {
+      @Override
+      public String getNamespaceURI( String prefix ) {
+        for ( int i = prefixScopes.size() - 1; i >= 0; i-- ) {
+          String uri = prefixScopes.get( i ).get( prefix );
+          if ( uri != null ) {
+            return uri;
+          }
+        }
+        return rootContext == null ? XMLConstants.NULL_NS_URI : rootContext.getNamespaceURI( prefix );
+      }
+
+      @Override
+      public String getPrefix( String namespaceURI ) {
+        for ( int i = prefixScopes.size() - 1; i >= 0; i-- ) {
+          for ( Map.Entry<String, String> entry : prefixScopes.get( i ).entrySet() ) {
+            // Skip prefixes bound to another URI in an inner scope
+            //
+            if ( entry.getValue().equals( namespaceURI ) && namespaceURI.equals( getNamespaceURI( entry.getKey() ) ) ) {
+              return entry.getKey();
+            }
+          }
+        }
+        return rootContext == null ? null : rootContext.getPrefix( namespaceURI );
+      }
+
+      @Override
+      public Iterator<String> getPrefixes( String namespaceURI ) {
+        String prefix = getPrefix( namespaceURI );
+        return prefix == null ? Collections.<String>emptyIterator() : Collections.singletonList( prefix ).iterator();
+      }
+    };
+  }
+
+  @Override
+  public void writeCharacters( char[] text, int start, int len ) throws XMLStreamException {
+    writeCharacters( new String( text, start, len ) );
+  }
+
+  @Override
+  public void writeComment( String data ) throws XMLStreamException {
+    closeStartTag();
+    write( "<!--" + data + "-->" );
+  }
+
+  @Override
+  public void writeProcessingInstruction( String target ) throws XMLStreamException {
+    closeStartTag();
+    write( "<?" + target + "?>" );
+  }
+
+  @Override
+  public void writeProcessingInstruction( String target, String data ) throws XMLStreamException {
+    closeStartTag();
+    write( "<?" + target + " " + data + "?>" );
+  }
+
+  @Override
+  public void writeCData( String data ) throws XMLStreamException {
+    closeStartTag();
+    write( "<![CDATA[" + data + "]]>" );
+  }
+
+  @Override
+  public void writeDTD( String dtd ) throws XMLStreamException {
+    write( dtd );
+  }
+
+  @Override
+  public void writeEntityRef( String name ) throws XMLStreamException {
+    closeStartTag();
+    write( "&" + name + ";" );
+  }
+
+  @Override
+  public void close() throws XMLStreamException {
+    flush();
+  }
+
+  @Override
+  public void flush() throws XMLStreamException {
+    try {
+      writer.append( buffer );
+      buffer.setLength( 0 );
+      writer.flush();
+    } catch ( IOException e ) {
+      throw new XMLStreamException( e );
+    }
+  }
+
+  /**
+   * @return the prefix bound to the namespace URI
+   * @throws XMLStreamException
+   *           if no prefix is bound to it
+   */
+  private String requirePrefix( String namespaceURI ) throws XMLStreamException {
+    String prefix = getPrefix( namespaceURI );
+    if ( prefix == null ) {
+      throw new XMLStreamException( "No prefix is bound to namespace '" + namespaceURI + "'" );
+    }
+    return prefix;
+  }
+
+  private static String qualify( String prefix, String localName ) {
+    return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+  }
+
+  private void closeStartTag() throws XMLStreamException {
+    if ( emptyElementOpen ) {
+      emptyElementOpen = false;
+      writeEndElement();
+    } else if ( startTagOpen ) {
+      write( ">" );
+      startTagOpen = false;
+    }
+  }
+
+  private void writeIndent( int depth ) throws XMLStreamException {
+    write( LINE_SEPARATOR );
+    for ( int i = 0; i < depth; i++ ) {
+      write( INDENT );
+    }
+  }
+
+  /**
+   * Write the text with the same escaping as the DOM transformer: markup characters as entities, control characters
+   * and supplementary characters as decimal character references and new lines as the platform line separator.
+   */
+  private void writeEscaped( String text, boolean attribute ) throws XMLStreamException {
+    int start = 0;
+    int length = text.length();
+    for ( int i = 0; i < length; i++ ) {
+      char c = text.charAt( i );
+      String replacement;
+      if ( c == '&' ) {
+        replacement = "&amp;";
+      } else if ( c == '<' ) {
+        replacement = "&lt;";
+      } else if ( c == '>' ) {
+        replacement = "&gt;";
+      } else if ( c == '"' && attribute ) {
+        replacement = "&quot;";
+      } else if ( c == '\n' && !attribute ) {
+        replacement = LINE_SEPARATOR;
+      } else if ( ( c < 0x20 && c != '\t' ) || ( c >= 0x7F && c <= 0x9F ) || Character.isLowSurrogate( c ) ) {
+        replacement = "&#" + (int) c + ";";
+      } else if ( Character.isHighSurrogate( c ) ) {
+        if ( i + 1 >= length || !Character.isLowSurrogate( text.charAt( i + 1 ) ) ) {
+          throw new XMLStreamException( "Invalid UTF-16 surrogate detected: " + Integer.toHexString( c ) );
+        }
+        replacement = "&#" + text.codePointAt( i ) + ";";
+        write( text, start, i - start );
+        write( replacement );
+        i++;
+        start = i + 1;
+        continue;
+      } else {
+        continue;
+      }
+      write( text, start, i - start );
+      write( replacement );
+      start = i + 1;
+    }
+    write( text, start, length - start );
+  }
+
+  private void write( String string ) throws XMLStreamException {
+    buffer.append( string );
+    flushFullBuffer();
+  }
+
+  private void write( String string, int offset, int length ) throws XMLStreamException {
+    if ( length > 0 ) {
+      buffer.append( string, offset, offset + length );
+      flushFullBuffer();
+    }
+  }
+
+  /**
+   * Hand the buffer to the wrapped writer once it holds {@link #BUFFER_SIZE} characters or more.
+   */
+  private void flushFullBuffer() throws XMLStreamException {
+    if ( buffer.length() >= BUFFER_SIZE ) {
+      try {
+        writer.append( buffer );
+        buffer.setLength( 0 );
+      } catch ( IOException e ) {
+        throw new XMLStreamException( e );
+      }
+    }
+  }
+
+  @Override
+  public Object getProperty( String name ) {
+    throw new IllegalArgumentException( "Property '" + name + "' is not supported" );
+  }
+}
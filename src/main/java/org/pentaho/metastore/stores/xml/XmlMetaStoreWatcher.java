@@ -0,0 +1,277 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.stores.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the root folder of an XML metastore, its namespace folders and its element type folders for changes and
+ * passes them on to the metastore, which uses them to keep its caches up to date without checking the file system on
+ * every read.
+ * <p>
+ * Events are delivered by a daemon thread, so a change made by another process is only seen once its event has been
+ * handled. When the file system drops events (an overflow) the metastore is told to forget everything it cached.
+ * <p>
+ * Shard folders are not watched: they are listed on every read and the files in them are checked against the file
+ * system. Network file systems are not watched either, since they don't report changes made by other hosts, and
+ * neither are file systems the JDK can only poll, where changes are reported seconds late.
+ */
+class XmlMetaStoreWatcher {
+
+  private static final int NAMESPACE_DEPTH = 1;
+  private static final int ELEMENT_TYPE_DEPTH = 2;
+
+  /** The types of file stores shared over the network, as returned by FileStore.type() */
+  private static final Set<String> REMOTE_FILE_STORE_TYPES = new HashSet<>( Arrays.asList( "nfs", "nfs4", "cifs",
+    "smb", "smbfs", "smb2", "smb3", "afs", "ncpfs", "9p", "ceph", "glusterfs", "fuse.sshfs", "fuse.glusterfs",
+    "davfs", "webdav" ) );
+
+  private final BaseXmlMetaStore<?> metaStore;
+  private final String rootFolder;
+  private final WatchService watchService;
+  private final Thread thread;
+
+  /** The watched folders by their watch key */
+  private final Map<WatchKey, WatchedFolder> watchedFolders = new ConcurrentHashMap<>();
+
+  /** The watched folders by path */
+  private final Map<String, WatchedFolder> watchedPaths = new ConcurrentHashMap<>();
+
+  /** Incremented for every change, before the change is passed on to the metastore */
+  private final AtomicLong generation = new AtomicLong();
+
+  private XmlMetaStoreWatcher( BaseXmlMetaStore<?> metaStore, String rootFolder, WatchService watchService ) {
+    this.metaStore = metaStore;
+    this.rootFolder = rootFolder;
+    this.watchService = watchService;
+    this.thread = new Thread( this::processEvents, "XML metastore watcher for " + rootFolder );
+    this.thread.setDaemon( true );
+  }
+
+  /**
+   * Start watching the metastore in the given root folder.
+   *
+   * @param metaStore
+   *          the metastore to notify of changes
+   * @param rootFolder
+   *          the root folder of the metastore
+   * @return the watcher or null if the root folder can't be watched or its changes aren't reported reliably, in which
+   *         case the metastore keeps checking the file system.
+   */
+  static XmlMetaStoreWatcher start( BaseXmlMetaStore<?> metaStore, String rootFolder ) {
+    WatchService watchService = null;
+    try {
+      Path rootPath = Paths.get( rootFolder );
+      if ( !Files.isDirectory( rootPath ) || isRemote( rootPath ) ) {
+        return null;
+      }
+      watchService = rootPath.getFileSystem().newWatchService();
+      if ( isPolling( watchService ) ) {
+        watchService.close();
+        return null;
+      }
+      XmlMetaStoreWatcher watcher = new XmlMetaStoreWatcher( metaStore, rootFolder, watchService );
+      watcher.registerAll();
+      watcher.thread.start();
+      return watcher;
+    } catch ( IOException | InvalidPathException | UnsupportedOperationException e ) {
+      if ( watchService != null ) {
+        try {
+          watchService.close();
+        } catch ( IOException ignored ) {
+          // Nothing to clean up
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * @return true if the folder is on a network share, where only the changes made on this host are reported. A share
+   *         mapped to a drive letter on Windows can't be told apart from a local disk.
+   */
+  static boolean isRemote( Path folder ) throws IOException {
+    if ( folder.toAbsolutePath().toString().startsWith( "\\\\" ) ) {
+      // A UNC path on Windows
+      return true;
+    }
+    return isRemoteFileStoreType( Files.getFileStore( folder ).type() );
+  }
+
+  static boolean isRemoteFileStoreType( String type ) {
+    return type != null && REMOTE_FILE_STORE_TYPES.contains( type.toLowerCase( Locale.ROOT ) );
+  }
+
+  /**
+   * @return true if the watch service polls the folders instead of being told about changes by the operating system,
+   *         as the JDK does on macOS. It reports changes seconds after they were made.
+   */
+  static boolean isPolling( WatchService watchService ) {
+    return watchService.getClass().getName().endsWith( "PollingWatchService" );
+  }
+
+  void close() {
+    try {
+      watchService.close();
+    } catch ( IOException ignored ) {
+      // The thread stops either way
+    }
+  }
+
+  /**
+   * @return a number that changes every time a change is detected. Compare it before and after reading a folder to
+   *         see if the result of the read can be cached.
+   */
+  long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * @return true if changes in the given folder are reported
+   */
+  boolean isWatched( String folder ) {
+    return watchedPaths.containsKey( folder );
+  }
+
+  /**
+   * Watch the root folder, the namespace folders and the element type folders
+   */
+  private void registerAll() throws IOException {
+    register( rootFolder, 0 );
+    for ( String namespace : listFolders( rootFolder ) ) {
+      if ( isIgnoredInRoot( namespace ) ) {
+        continue;
+      }
+      String namespaceFolder = rootFolder + File.separator + namespace;
+      register( namespaceFolder, NAMESPACE_DEPTH );
+      for ( String elementType : listFolders( namespaceFolder ) ) {
+        register( namespaceFolder + File.separator + elementType, ELEMENT_TYPE_DEPTH );
+      }
+    }
+  }
+
+  /**
+   * @return true for the legacy lock file and the hidden folders with the lock files and the name indexes
+   */
+  private static boolean isIgnoredInRoot( String name ) {
+    return XmlUtil.LOCK_FILE_NAME.equals( name ) || XmlUtil.FOLDER_LOCKS_FOLDER_NAME.equals( name )
+        || XmlUtil.NAME_INDEXES_FOLDER_NAME.equals( name );
+  }
+
+  private void register( String folder, int depth ) throws IOException {
+    WatchKey key = Paths.get( folder ).register( watchService, StandardWatchEventKinds.ENTRY_CREATE,
+      StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY );
+    WatchedFolder watchedFolder = new WatchedFolder( folder, depth );
+    watchedFolders.put( key, watchedFolder );
+    watchedPaths.put( folder, watchedFolder );
+  }
+
+  private static List<String> listFolders( String folder ) throws IOException {
+    List<String> names = new ArrayList<>();
+    try ( DirectoryStream<Path> stream = Files.newDirectoryStream( Paths.get( folder ), Files::isDirectory ) ) {
+      for ( Path path : stream ) {
+        names.add( path.getFileName().toString() );
+      }
+    }
+    return names;
+  }
+
+  private void processEvents() {
+    try {
+      while ( true ) {
+        WatchKey key = watchService.take();
+        WatchedFolder watchedFolder = watchedFolders.get( key );
+        if ( watchedFolder != null ) {
+          for ( WatchEvent<?> event : key.pollEvents() ) {
+            processEvent( watchedFolder, event );
+          }
+        }
+        if ( !key.reset() ) {
+          watchedFolders.remove( key );
+          if ( watchedFolder != null ) {
+            watchedPaths.remove( watchedFolder.path, watchedFolder );
+          }
+        }
+      }
+    } catch ( ClosedWatchServiceException | InterruptedException e ) {
+      // Stopped watching
+    } catch ( Exception e ) {
+      // Without events the caches can't be trusted anymore: go back to checking the file system
+      //
+      close();
+      metaStore.watcherFailed( this );
+    }
+  }
+
+  private void processEvent( WatchedFolder watchedFolder, WatchEvent<?> event ) throws IOException {
+    if ( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+      generation.incrementAndGet();
+      metaStore.rescan();
+      registerAll();
+      return;
+    }
+    String name = event.context().toString();
+    if ( XmlUtil.STORE_LOCK_FILE_NAME.equals( name ) || name.startsWith( XmlUtil.NAME_INDEX_FILE_NAME )
+        || ( watchedFolder.depth == 0 && isIgnoredInRoot( name ) ) ) {
+      // Locking and unlocking the store or one of its folders or writing a name index doesn't change anything
+      return;
+    }
+    String path = watchedFolder.path + File.separator + name;
+    generation.incrementAndGet();
+    metaStore.pathChanged( watchedFolder.path, path );
+
+    if ( event.kind() == StandardWatchEventKinds.ENTRY_CREATE && watchedFolder.depth < ELEMENT_TYPE_DEPTH
+        && Files.isDirectory( Paths.get( path ) ) ) {
+      register( path, watchedFolder.depth + 1 );
+      if ( watchedFolder.depth + 1 < ELEMENT_TYPE_DEPTH ) {
+        // Element type folders created before the namespace folder was registered don't cause events
+        //
+        for ( String elementType : listFolders( path ) ) {
+          register( path + File.separator + elementType, ELEMENT_TYPE_DEPTH );
+        }
+      }
+      generation.incrementAndGet();
+      metaStore.pathChanged( watchedFolder.path, path );
+    }
+  }
+
+  private static class WatchedFolder {
+    private final String path;
+    private final int depth;
+
+    private WatchedFolder( String path, int depth ) {
+      this.path = path;
+      this.depth = depth;
+    }
+  }
+}
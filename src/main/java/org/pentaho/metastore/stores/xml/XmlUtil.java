@@ -14,18 +14,87 @@
 package org.pentaho.metastore.stores.xml;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
 
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 public class XmlUtil {
 
   public static final String META_FOLDER_NAME = "metastore";
   public static final String ELEMENT_TYPE_FILE_NAME = ".type.xml";
+  public static final String LOCK_FILE_NAME = ".lock";
+  public static final String STORE_LOCK_FILE_NAME = ".metastore.lock";
+
+  /**
+   * The hidden folder in the root folder of a metastore that holds the lock files of its namespace and element type
+   * folders, in a copy of their folder tree.
+   */
+  public static final String FOLDER_LOCKS_FOLDER_NAME = ".metastore.locks";
+
+  /**
+   * The hidden folder in the root folder of a metastore that holds the name indexes of its element types, in a copy of
+   * their folder tree.
+   */
+  public static final String NAME_INDEXES_FOLDER_NAME = ".metastore.indexes";
+  public static final String NAME_INDEX_FILE_NAME = ".names.idx";
+
+  /**
+   * The file that marks an element type folder with the sharded layout: the element files are spread over two levels
+   * of shard folders, see {@link #getShardedElementFile(String, String, String, String)}.
+   */
+  public static final String SHARDED_LAYOUT_FILE_NAME = ".sharded";
+
+  /**
+   * System property that selects the XML parser used to load elements and element types. The single-pass StAX parser
+   * is used unless this property is set to "false", in which case the DOM parser is used.
+   */
+  public static final String STREAMING_PARSER_PROPERTY = "pentaho.metastore.xml.streaming.parser";
+
+  /**
+   * System property that selects how elements and element types are saved. They are written with an XMLStreamWriter
+   * unless this property is set to "false", in which case a DOM is built and serialized with a Transformer. Both
+   * produce the same output.
+   */
+  public static final String STREAMING_WRITER_PROPERTY = "pentaho.metastore.xml.streaming.writer";
+
+  /**
+   * System property that selects how XmlMetaStore keeps other processes out. Readers take a shared and writers an
+   * exclusive lock on the {@link #STORE_LOCK_FILE_NAME} file. Set this property to "true" while processes running older
+   * versions still use the same metastore folder: exclusive root operations then also create the
+   * {@link #LOCK_FILE_NAME} file, and wait while it exists, like older versions do.
+   */
+  public static final String LEGACY_LOCK_PROPERTY = "pentaho.metastore.xml.legacy.lock";
+
+  /**
+   * The maximum number of idle instances kept per pool. More instances can be borrowed at the same time, the extra ones
+   * are simply discarded when they are returned.
+   */
+  private static final int MAX_POOL_SIZE = Math.max( 4, Runtime.getRuntime().availableProcessors() * 2 );
+
+  private static final Pool<DocumentBuilder> documentBuilderPool = new Pool<>();
+  private static final Pool<Transformer> transformerPool = new Pool<>();
+  private static final Pool<XMLInputFactory> xmlInputFactoryPool = new Pool<>();
 
   public static String getNodeValue( Node node ) {
     if ( node == null ) {
@@ -58,6 +127,30 @@ public class XmlUtil {
     return getElementTypeFolder( rootFolder, namespace, elementTypeId ) + File.separator + elementId + ".xml";
   }
 
+  /**
+   * The file of an element in an element type folder with the sharded layout. The element is stored two folder levels
+   * down, in folders named after two hexadecimal digits of a hash of its ID. That keeps the number of files per folder
+   * 256 times smaller than in a flat element type folder. The hash ignores the case of the ID, so that on file systems
+   * that ignore case, like on Windows, an element is found in its shard with an ID in another case, as it is in a flat
+   * element type folder.
+   */
+  public static String getShardedElementFile( String rootFolder, String namespace, String elementTypeId,
+      String elementId ) {
+    CRC32 crc = new CRC32();
+    crc.update( elementId.toLowerCase( Locale.ROOT ).getBytes( StandardCharsets.UTF_8 ) );
+    long hash = crc.getValue();
+    return getElementTypeFolder( rootFolder, namespace, elementTypeId ) + File.separator
+        + Character.forDigit( (int) ( hash >>> 4 ) & 0xf, 16 ) + File.separator
+        + Character.forDigit( (int) hash & 0xf, 16 ) + File.separator + elementId + ".xml";
+  }
+
+  /**
+   * @return true if the name is the name of a shard folder on either level
+   */
+  public static boolean isShardFolderName( String name ) {
+    return name.length() == 1 && "0123456789abcdef".indexOf( name.charAt( 0 ) ) >= 0;
+  }
+
 
   public static DocumentBuilderFactory createSafeDocumentBuilderFactory() throws ParserConfigurationException {
     DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
@@ -65,4 +158,265 @@ public class XmlUtil {
     factory.setFeature( "http://apache.org/xml/features/disallow-doctype-decl", true );
     return factory;
   }
+
+  /**
+   * Borrow a secure DocumentBuilder from the pool shared by all XML metastores. Give it back with
+   * {@link #returnDocumentBuilder(DocumentBuilder)} when done.
+   */
+  public static DocumentBuilder borrowDocumentBuilder() throws ParserConfigurationException {
+    DocumentBuilder builder = documentBuilderPool.poll();
+    if ( builder == null ) {
+      builder = createSafeDocumentBuilderFactory().newDocumentBuilder();
+      documentBuilderPool.created();
+    }
+    return builder;
+  }
+
+  public static void returnDocumentBuilder( DocumentBuilder builder ) {
+    if ( builder != null ) {
+      builder.reset();
+      documentBuilderPool.offer( builder );
+    }
+  }
+
+  /**
+   * Borrow a Transformer from the pool shared by all XML metastores, configured to indent its output with 2 spaces.
+   * Give it back with {@link #returnTransformer(Transformer)} when done.
+   */
+  public static Transformer borrowTransformer() throws TransformerConfigurationException {
+    Transformer transformer = transformerPool.poll();
+    if ( transformer == null ) {
+      transformer = createSafeTransformerFactory().newTransformer();
+      transformerPool.created();
+    }
+    transformer.setOutputProperty( OutputKeys.INDENT, "yes" );
+    transformer.setOutputProperty( "{http://xml.apache.org/xslt}indent-amount", "2" );
+    return transformer;
+  }
+
+  public static void returnTransformer( Transformer transformer ) {
+    if ( transformer != null ) {
+      transformer.reset();
+      transformerPool.offer( transformer );
+    }
+  }
+
+  /**
+   * Borrow a secure XMLInputFactory from the pool shared by all XML metastores. Give it back with
+   * {@link #returnXMLInputFactory(XMLInputFactory)} when done.
+   */
+  public static XMLInputFactory borrowXMLInputFactory() {
+    XMLInputFactory factory = xmlInputFactoryPool.poll();
+    if ( factory == null ) {
+      factory = createSafeXMLInputFactory();
+      xmlInputFactoryPool.created();
+    }
+    return factory;
+  }
+
+  public static void returnXMLInputFactory( XMLInputFactory factory ) {
+    if ( factory != null ) {
+      xmlInputFactoryPool.offer( factory );
+    }
+  }
+
+  /**
+   * @return the number of times a DocumentBuilder, Transformer or XMLInputFactory was taken from a pool instead of
+   *         being created.
+   */
+  public static long getPoolHits() {
+    return documentBuilderPool.hits.sum() + transformerPool.hits.sum() + xmlInputFactoryPool.hits.sum();
+  }
+
+  /**
+   * @return the number of DocumentBuilder, Transformer and XMLInputFactory instances created because the pool was
+   *         empty.
+   */
+  public static long getPoolCreations() {
+    return documentBuilderPool.creations.sum() + transformerPool.creations.sum()
+        + xmlInputFactoryPool.creations.sum();
+  }
+
+  public static void resetPoolStatistics() {
+    for ( Pool<?> pool : new Pool<?>[] { documentBuilderPool, transformerPool, xmlInputFactoryPool } ) {
+      pool.hits.reset();
+      pool.creations.reset();
+    }
+  }
+
+  public static TransformerFactory createSafeTransformerFactory() throws TransformerConfigurationException {
+    TransformerFactory transformerFactory = TransformerFactory.newInstance();
+    transformerFactory.setFeature( XMLConstants.FEATURE_SECURE_PROCESSING, true );
+    transformerFactory.setAttribute( XMLConstants.ACCESS_EXTERNAL_DTD, "" );
+    transformerFactory.setAttribute( XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "" );
+    return transformerFactory;
+  }
+
+  public static XMLInputFactory createSafeXMLInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty( XMLInputFactory.SUPPORT_DTD, false );
+    factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false );
+    factory.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE, false );
+    factory.setProperty( XMLInputFactory.IS_COALESCING, true );
+    return factory;
+  }
+
+  /**
+   * @return true if elements and element types should be loaded with the StAX parser, false to use the DOM parser.
+   */
+  public static boolean isStreamingParserEnabled() {
+    return !"false".equalsIgnoreCase( System.getProperty( STREAMING_PARSER_PROPERTY ) );
+  }
+
+  /**
+   * @return true if elements and element types should be saved with an XMLStreamWriter, false to use a Transformer.
+   */
+  public static boolean isStreamingWriterEnabled() {
+    return !"false".equalsIgnoreCase( System.getProperty( STREAMING_WRITER_PROPERTY ) );
+  }
+
+  /**
+   * @return true if XmlMetaStore should also lock with the {@link #LOCK_FILE_NAME} file like older versions do.
+   */
+  public static boolean isLegacyLockEnabled() {
+    return "true".equalsIgnoreCase( System.getProperty( LEGACY_LOCK_PROPERTY ) );
+  }
+
+  /**
+   * Write an element that only contains text.
+   *
+   * @param writer
+   *          the writer to use
+   * @param name
+   *          the element name
+   * @param value
+   *          the text of the element, null or empty writes an empty element
+   */
+  public static void writeElement( XMLStreamWriter writer, String name, String value ) throws XMLStreamException {
+    writer.writeStartElement( name );
+    writer.writeCharacters( value == null ? "" : value );
+    writer.writeEndElement();
+  }
+
+  /**
+   * Move the reader to the document element.
+   *
+   * @param reader
+   *          a reader positioned at the start of the document
+   * @throws XMLStreamException
+   *           in case the document has no root element or contains a DOCTYPE declaration
+   */
+  public static void moveToRootElement( XMLStreamReader reader ) throws XMLStreamException {
+    while ( reader.hasNext() ) {
+      int event = reader.next();
+      if ( event == XMLStreamConstants.START_ELEMENT ) {
+        return;
+      }
+      if ( event == XMLStreamConstants.DTD ) {
+        throw new XMLStreamException( "DOCTYPE is disallowed", reader.getLocation() );
+      }
+    }
+    throw new XMLStreamException( "No root element found", reader.getLocation() );
+  }
+
+  /**
+   * Move the reader to the next child element of the current element.
+   *
+   * @param reader
+   *          a reader positioned on the start tag of the parent or on the end tag of the previous child
+   * @return true if the reader is positioned on the start tag of the next child, false if it is positioned on the end
+   *         tag of the parent
+   */
+  public static boolean nextChildElement( XMLStreamReader reader ) throws XMLStreamException {
+    while ( reader.hasNext() ) {
+      int event = reader.next();
+      if ( event == XMLStreamConstants.START_ELEMENT ) {
+        return true;
+      }
+      if ( event == XMLStreamConstants.END_ELEMENT ) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The streaming equivalent of {@link #getNodeValue(Node)}: returns the first text of the current element and leaves
+   * the reader on its end tag.
+   *
+   * @param reader
+   *          a reader positioned on a start tag
+   * @return the text of the element or null if it has none
+   */
+  public static String getElementValue( XMLStreamReader reader ) throws XMLStreamException {
+    String value = null;
+    int depth = 0;
+    while ( reader.hasNext() ) {
+      int event = reader.next();
+      if ( event == XMLStreamConstants.START_ELEMENT ) {
+        depth++;
+      } else if ( event == XMLStreamConstants.END_ELEMENT ) {
+        if ( depth == 0 ) {
+          break;
+        }
+        depth--;
+      } else if ( depth == 0 && value == null
+          && ( event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.SPACE ) ) {
+        value = reader.getText();
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Skip the current element, including all of its children, leaving the reader on its end tag.
+   *
+   * @param reader
+   *          a reader positioned on a start tag
+   */
+  public static void skipElement( XMLStreamReader reader ) throws XMLStreamException {
+    int depth = 0;
+    while ( reader.hasNext() ) {
+      int event = reader.next();
+      if ( event == XMLStreamConstants.START_ELEMENT ) {
+        depth++;
+      } else if ( event == XMLStreamConstants.END_ELEMENT ) {
+        if ( depth == 0 ) {
+          return;
+        }
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * A bounded, thread-safe pool of idle instances with hit and creation counters.
+   */
+  private static final class Pool<T> {
+    private final Queue<T> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder creations = new LongAdder();
+
+    T poll() {
+      T instance = idle.poll();
+      if ( instance != null ) {
+        idleCount.decrementAndGet();
+        hits.increment();
+      }
+      return instance;
+    }
+
+    void created() {
+      creations.increment();
+    }
+
+    void offer( T instance ) {
+      if ( idleCount.incrementAndGet() <= MAX_POOL_SIZE ) {
+        idle.offer( instance );
+      } else {
+        idleCount.decrementAndGet();
+      }
+    }
+  }
 }
@@ -17,11 +17,13 @@ import org.pentaho.metastore.api.IMetaStore;
 import org.pentaho.metastore.api.IMetaStoreAttribute;
 import org.pentaho.metastore.api.IMetaStoreElement;
 import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.api.MetaStoreElementOrder;
 import org.pentaho.metastore.api.exceptions.MetaStoreException;
 import org.pentaho.metastore.api.exceptions.MetaStoreNamespaceExistsException;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.locks.Lock;
@@ -34,6 +36,39 @@ import java.util.concurrent.locks.Lock;
  */
 public class MetaStoreUtil {
 
+  /**
+   * Elements by name ignoring case and then by ID, see {@link MetaStoreElementOrder#NAME}
+   */
+  public static final Comparator<IMetaStoreElement> ELEMENT_NAME_ORDER = MetaStoreElementOrder.ELEMENT_NAME_ORDER;
+
+  /**
+   * @return the name as it is compared when sorting by name: lower case, an empty string for null
+   */
+  public static String getNameSortKey( String name ) {
+    return MetaStoreElementOrder.getNameSortKey( name );
+  }
+
+  /**
+   * Cut a page out of a sorted list.
+   *
+   * @param list
+   *          The complete list
+   * @param offset
+   *          The number of entries to skip
+   * @param limit
+   *          The maximum number of entries on the page
+   * @return A copy of the entries on the page, empty if the offset is past the end of the list
+   */
+  public static <T> List<T> getPage( List<T> list, int offset, int limit ) {
+    if ( offset < 0 || limit < 0 ) {
+      throw new IllegalArgumentException( "The offset and the limit of a page can't be negative" );
+    }
+    if ( offset >= list.size() ) {
+      return new ArrayList<T>();
+    }
+    return new ArrayList<T>( list.subList( offset, (int) Math.min( (long) offset + limit, list.size() ) ) );
+  }
+
   /**
    * Create the specified namespace if it doesn't exist.
    * 
@@ -111,7 +146,9 @@ public class MetaStoreUtil {
     throws MetaStoreException {
     List<String> names = new ArrayList<String>();
 
-    List<IMetaStoreElement> elements = metaStore.getElements( namespace, elementType );
+    // Only the names are needed, don't read the rest of the elements
+    //
+    List<IMetaStoreElement> elements = metaStore.getElements( namespace, elementType, true, null, true );
     for ( IMetaStoreElement element : elements ) {
       names.add( element.getName() );
     }
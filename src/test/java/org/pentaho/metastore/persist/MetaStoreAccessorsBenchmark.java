@@ -0,0 +1,101 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.persist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.metastore.persist.MetaStoreAccessors.Getter;
+import org.pentaho.metastore.persist.MetaStoreAccessors.Instantiator;
+import org.pentaho.metastore.persist.MetaStoreAccessors.Setter;
+import org.pentaho.metastore.persist.MetaStoreClassInfo.Attribute;
+import org.pentaho.metastore.test.testclasses.cube.Cube;
+import org.pentaho.metastore.test.testclasses.cube.Dimension;
+import org.pentaho.metastore.test.testclasses.my.MyElement;
+
+/**
+ * Compares calling the constructors, getters and setters of MyElement, Cube and Dimension through method handles
+ * against calling them through reflection. Every round creates an object of each class and copies every attribute
+ * onto itself. This is not a unit test, run it with:
+ *
+ * <pre>
+ * java -cp ... org.pentaho.metastore.persist.MetaStoreAccessorsBenchmark [iterations]
+ * </pre>
+ */
+public class MetaStoreAccessorsBenchmark {
+
+  private static final Class<?>[] CLASSES = { MyElement.class, Cube.class, Dimension.class };
+
+  public static void main( String[] args ) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt( args[0] ) : 1000000;
+    List<ClassAccessors> handles = new ArrayList<>();
+    List<ClassAccessors> reflection = new ArrayList<>();
+    for ( Class<?> clazz : CLASSES ) {
+      handles.add( new ClassAccessors( clazz, false ) );
+      reflection.add( new ClassAccessors( clazz, true ) );
+    }
+
+    // Warm up both paths before measuring
+    //
+    run( handles, iterations );
+    run( reflection, iterations );
+
+    long handleNanos = run( handles, iterations );
+    long reflectionNanos = run( reflection, iterations );
+
+    System.out.println( String.format( "Method handles : %8.1f ns/round", (double) handleNanos / iterations ) );
+    System.out.println( String.format( "Reflection     : %8.1f ns/round", (double) reflectionNanos / iterations ) );
+    System.out.println( String.format( "Speedup        : %8.2fx", (double) reflectionNanos / handleNanos ) );
+  }
+
+  private static long run( List<ClassAccessors> classes, int iterations ) throws Exception {
+    long start = System.nanoTime();
+    int hash = 0;
+    for ( int i = 0; i < iterations; i++ ) {
+      for ( ClassAccessors accessors : classes ) {
+        Object object = accessors.instantiator.newInstance();
+        for ( int a = 0; a < accessors.getters.size(); a++ ) {
+          Object value = accessors.getters.get( a ).get( object );
+          accessors.setters.get( a ).set( object, value );
+          hash += value == null ? 0 : 1;
+        }
+      }
+    }
+    long nanos = System.nanoTime() - start;
+    if ( hash == 42 ) {
+      // Keep the JIT from dropping the loop
+      System.out.print( "" );
+    }
+    return nanos;
+  }
+
+  private static class ClassAccessors {
+    private final Instantiator instantiator;
+    private final List<Getter> getters = new ArrayList<>();
+    private final List<Setter> setters = new ArrayList<>();
+
+    private ClassAccessors( Class<?> clazz, boolean reflective ) {
+      instantiator =
+        reflective ? MetaStoreAccessors.reflectiveInstantiator( clazz ) : MetaStoreAccessors.instantiator( clazz );
+      for ( Attribute attribute : MetaStoreClassInfo.get( clazz ).getAttributes() ) {
+        if ( attribute.getGetter() == null || attribute.getSetter() == null ) {
+          continue;
+        }
+        getters.add( reflective ? MetaStoreAccessors.reflectiveGetter( attribute.getGetter() )
+          : MetaStoreAccessors.getter( attribute.getGetter() ) );
+        setters.add( reflective ? MetaStoreAccessors.reflectiveSetter( attribute.getSetter() )
+          : MetaStoreAccessors.setter( attribute.getSetter() ) );
+      }
+    }
+  }
+}
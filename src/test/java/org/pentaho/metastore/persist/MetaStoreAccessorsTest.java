@@ -0,0 +1,85 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.persist;
+
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.pentaho.metastore.persist.MetaStoreAccessors.Getter;
+import org.pentaho.metastore.persist.MetaStoreAccessors.Setter;
+import org.pentaho.metastore.test.testclasses.my.MyElement;
+
+public class MetaStoreAccessorsTest extends TestCase {
+
+  public void testGettersSettersAndConstructors() throws Exception {
+    MyElement element = (MyElement) MetaStoreAccessors.instantiator( MyElement.class ).newInstance();
+
+    Setter setName = MetaStoreAccessors.setter( MyElement.class.getMethod( "setName", String.class ) );
+    Getter getName = MetaStoreAccessors.getter( MyElement.class.getMethod( "getName" ) );
+    setName.set( element, "name" );
+    assertEquals( "name", getName.get( element ) );
+
+    // Primitives are boxed and unboxed like with reflection
+    //
+    Setter setter = MetaStoreAccessors.setter( Bean.class.getMethod( "setCount", int.class ) );
+    Getter getter = MetaStoreAccessors.getter( Bean.class.getMethod( "getCount" ) );
+    Bean bean = (Bean) MetaStoreAccessors.instantiator( Bean.class ).newInstance();
+    setter.set( bean, 5 );
+    assertEquals( 5, getter.get( bean ) );
+  }
+
+  public void testExceptionsArePassedOn() throws Exception {
+    Bean bean = new Bean();
+    for ( Getter getter : new Getter[] {
+      MetaStoreAccessors.getter( Bean.class.getMethod( "getFailure" ) ),
+      MetaStoreAccessors.reflectiveGetter( Bean.class.getMethod( "getFailure" ) ) } ) {
+      try {
+        getter.get( bean );
+        fail( "The getter should have thrown an exception" );
+      } catch ( IllegalStateException e ) {
+        assertEquals( "failure", e.getMessage() );
+      }
+    }
+  }
+
+  public void testInaccessibleClassFallsBackToReflection() throws Exception {
+    // The empty list is a private class in java.util
+    //
+    List<Object> list = Collections.emptyList();
+    Getter getter = MetaStoreAccessors.getter( list.getClass().getMethod( "size" ) );
+    try {
+      getter.get( list );
+      fail( "A public method of a private class in another package can't be called" );
+    } catch ( IllegalAccessException e ) {
+      // expected, like with Method.invoke()
+    }
+  }
+
+  public static class Bean {
+    private int count;
+
+    public int getCount() {
+      return count;
+    }
+
+    public void setCount( int count ) {
+      this.count = count;
+    }
+
+    public String getFailure() {
+      throw new IllegalStateException( "failure" );
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.persist;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.pentaho.metastore.persist.MetaStoreClassInfo.Attribute;
+import org.pentaho.metastore.persist.MetaStoreClassInfo.AttributeType;
+import org.pentaho.metastore.test.testclasses.my.ChildElement;
+import org.pentaho.metastore.test.testclasses.my.InheritedElement;
+import org.pentaho.metastore.test.testclasses.my.MyMigrationElement;
+
+public class MetaStoreClassInfoTest extends TestCase {
+
+  public void testClassInfoIsShared() throws Exception {
+    assertSame( MetaStoreClassInfo.get( InheritedElement.class ), MetaStoreClassInfo.get( InheritedElement.class ) );
+    assertEquals( "custom", MetaStoreClassInfo.get( InheritedElement.class ).getElementType().name() );
+    assertNull( MetaStoreClassInfo.get( ChildElement.class ).getElementType() );
+  }
+
+  public void testAttributesIncludeSuperclassFields() throws Exception {
+    Map<String, Attribute> attributes = getAttributes( InheritedElement.class );
+    assertEquals( new HashSet<>( Arrays.asList( "property1", "property2", "name", "childElement" ) ),
+      attributes.keySet() );
+
+    Attribute property1 = attributes.get( "property1" );
+    assertEquals( "property1", property1.getKey() );
+    assertEquals( AttributeType.STRING, property1.getType() );
+    assertEquals( InheritedElement.class, property1.getField().getDeclaringClass() );
+    assertEquals( InheritedElement.class.getMethod( "getProperty1" ), property1.getGetter() );
+    assertEquals( InheritedElement.class.getMethod( "setProperty1", String.class ), property1.getSetter() );
+
+    Attribute childElement = attributes.get( "childElement" );
+    assertEquals( AttributeType.POJO, childElement.getType() );
+    assertEquals( "getChildElement", childElement.getGetter().getName() );
+    assertEquals( "setChildElement", childElement.getSetter().getName() );
+  }
+
+  public void testKeysAndAliasKeys() throws Exception {
+    Map<String, Attribute> attributes = getAttributes( MyMigrationElement.class );
+    assertEquals( "host_name", attributes.get( "hostname" ).getKey() );
+    assertEquals( Arrays.asList( "hostname" ), attributes.get( "hostname" ).getAliasKeys() );
+    assertEquals( Arrays.asList( "stepname", "stepName" ), attributes.get( "stepName" ).getAliasKeys() );
+    assertFalse( attributes.containsKey( "name" ) );
+  }
+
+  public void testAliasKeysMappedLaterAreSeen() throws Exception {
+    Attribute property1 = getAttributes( InheritedElement.class ).get( "property1" );
+    assertTrue( property1.getAliasKeys().isEmpty() );
+    MetaStoreKeyMap.keyMap.put( "property1", new String[] { "propertyOne" } );
+    try {
+      assertEquals( Arrays.asList( "propertyOne" ), property1.getAliasKeys() );
+    } finally {
+      MetaStoreKeyMap.keyMap.remove( "property1" );
+    }
+  }
+
+  public void testMethodLookups() throws Exception {
+    MetaStoreClassInfo classInfo = MetaStoreClassInfo.get( InheritedElement.class );
+    assertEquals( "setName", classInfo.getDeclaredMethod( "setName", String.class ).getName() );
+    assertSame( classInfo.getDeclaredMethod( "setName", String.class ),
+      classInfo.getDeclaredMethod( "setName", String.class ) );
+    assertNull( classInfo.getDeclaredMethod( "setName", Integer.class ) );
+    assertNull( classInfo.getDeclaredMethod( "hashCode" ) );
+
+    assertEquals( "getName", classInfo.getMethod( "getName" ).getName() );
+    try {
+      classInfo.getMethod( "getFilename" );
+      fail( "InheritedElement doesn't have a getFilename() method" );
+    } catch ( NoSuchMethodException e ) {
+      // expected
+    }
+  }
+
+  private static Map<String, Attribute> getAttributes( Class<?> clazz ) {
+    List<Attribute> attributes = MetaStoreClassInfo.get( clazz ).getAttributes();
+    Map<String, Attribute> attributesByName = new LinkedHashMap<>();
+    for ( Attribute attribute : attributes ) {
+      attributesByName.put( attribute.getName(), attribute );
+    }
+    return attributesByName;
+  }
+}
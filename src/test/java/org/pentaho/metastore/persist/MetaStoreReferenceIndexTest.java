@@ -0,0 +1,85 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.persist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.pentaho.metastore.test.testclasses.my.MyNameElement;
+
+public class MetaStoreReferenceIndexTest extends TestCase {
+
+  private List<MyNameElement> list;
+  private int reads;
+
+  @Override
+  protected void setUp() throws Exception {
+    list = new ArrayList<MyNameElement>() {
+      @Override
+      public MyNameElement get( int index ) {
+        reads++;
+        return super.get( index );
+      }
+    };
+    for ( int i = 0; i < 10; i++ ) {
+      list.add( new MyNameElement( "name" + i, "description" + i, "color" + i ) );
+    }
+  }
+
+  public void testFindReturnsTheFirstObjectWithTheName() throws Exception {
+    MyNameElement duplicate = new MyNameElement( "name3", "duplicate", "red" );
+    list.add( duplicate );
+    MetaStoreReferenceIndex index = new MetaStoreReferenceIndex( list, "getName" );
+    assertSame( list.get( 3 ), index.find( "name3" ) );
+    assertSame( list.get( 9 ), index.find( "name9" ) );
+    assertSame( list.get( 3 ), index.find( "name3" ) );
+    assertNull( index.find( "unknown" ) );
+  }
+
+  public void testFindOnlyReadsTheListAsFarAsNeeded() throws Exception {
+    MetaStoreReferenceIndex index = new MetaStoreReferenceIndex( list, "getName" );
+    index.find( "name3" );
+    assertEquals( 4, reads );
+    index.find( "name1" );
+    assertEquals( 4, reads );
+    index.find( "name5" );
+    assertEquals( 6, reads );
+    index.find( "unknown" );
+    assertEquals( 10, reads );
+  }
+
+  public void testMissingNameIsRemembered() throws Exception {
+    MetaStoreReferenceIndex index = new MetaStoreReferenceIndex( list, "getName" );
+    assertNull( index.find( "late" ) );
+    int readsAfterMiss = reads;
+    assertNull( index.find( "late" ) );
+    assertEquals( readsAfterMiss, reads );
+
+    // The list can change between loads, the next load has a new index
+    //
+    list.get( 2 ).setName( "late" );
+    assertNull( index.find( "late" ) );
+    assertSame( list.get( 2 ), new MetaStoreReferenceIndex( list, "getName" ).find( "late" ) );
+  }
+
+  public void testFirstObjectWinsAfterARename() throws Exception {
+    assertSame( list.get( 7 ), new MetaStoreReferenceIndex( list, "getName" ).find( "name7" ) );
+
+    // An earlier object gets the name of an indexed one
+    //
+    list.get( 2 ).setName( "name7" );
+    assertSame( list.get( 2 ), new MetaStoreReferenceIndex( list, "getName" ).find( "name7" ) );
+  }
+}
@@ -0,0 +1,164 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.persist.processor;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.pentaho.metastore.api.IMetaStore;
+import org.pentaho.metastore.api.IMetaStoreElement;
+import org.pentaho.metastore.persist.IMetaStoreSerializer;
+import org.pentaho.metastore.persist.MetaStoreFactory;
+import org.pentaho.metastore.stores.memory.MemoryMetaStore;
+import org.pentaho.metastore.util.MetaStoreUtil;
+
+public class MetaStoreSerializerProcessorTest extends TestCase {
+
+  private static final String SAMPLE_SOURCE = String.join( "\n",
+    "package sample;",
+    "",
+    "import java.util.ArrayList;",
+    "import java.util.Date;",
+    "import java.util.List;",
+    "import org.pentaho.metastore.persist.MetaStoreAttribute;",
+    "import org.pentaho.metastore.persist.MetaStoreElementType;",
+    "",
+    "@MetaStoreElementType( name = \"Sample\", description = \"A sample\" )",
+    "public class Sample {",
+    "  public enum Color { RED, GREEN }",
+    "",
+    "  public static String countSetBy;",
+    "",
+    "  private String name;",
+    "  @MetaStoreAttribute( key = \"the_count\" ) private int count;",
+    "  @MetaStoreAttribute private long size;",
+    "  @MetaStoreAttribute private boolean enabled;",
+    "  @MetaStoreAttribute private Date created;",
+    "  @MetaStoreAttribute private Color color;",
+    "  @MetaStoreAttribute( password = true ) private String secret;",
+    "  @MetaStoreAttribute private List<String> tags = new ArrayList<>();",
+    "",
+    "  public String getName() { return name; }",
+    "  public void setName( String name ) { this.name = name; }",
+    "  public int getCount() { return count; }",
+    "  public void setCount( int count ) {",
+    "    this.count = count;",
+    "    countSetBy = new Throwable().getStackTrace()[1].getClassName();",
+    "  }",
+    "  public long getSize() { return size; }",
+    "  public void setSize( long size ) { this.size = size; }",
+    "  public boolean isEnabled() { return enabled; }",
+    "  public void setEnabled( boolean enabled ) { this.enabled = enabled; }",
+    "  public Date getCreated() { return created; }",
+    "  public void setCreated( Date created ) { this.created = created; }",
+    "  public Color getColor() { return color; }",
+    "  public void setColor( Color color ) { this.color = color; }",
+    "  String getSecret() { return secret; }",
+    "  void setSecret( String secret ) { this.secret = secret; }",
+    "  public List<String> getTags() { return tags; }",
+    "  public void setTags( List<String> tags ) { this.tags = tags; }",
+    "}",
+    "" );
+
+  private File folder;
+
+  @Override
+  protected void setUp() throws Exception {
+    folder = Files.createTempDirectory( "metastore-processor" ).toFile();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteDirectory( folder );
+  }
+
+  @SuppressWarnings( "unchecked" )
+  public void testGeneratedSerializerIsUsedByTheFactory() throws Exception {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if ( compiler == null ) {
+      // Running on a JRE without a compiler
+      return;
+    }
+    File sourceFolder = new File( folder, "sample" );
+    assertTrue( sourceFolder.mkdirs() );
+    File source = new File( sourceFolder, "Sample.java" );
+    Files.write( source.toPath(), SAMPLE_SOURCE.getBytes( StandardCharsets.UTF_8 ) );
+
+    int result = compiler.run( null, null, null, "-classpath",
+      System.getProperty( "java.class.path" ), "-processor", MetaStoreSerializerProcessor.class.getName(), "-d",
+      folder.getPath(), "-s", folder.getPath(), source.getPath() );
+    assertEquals( 0, result );
+
+    String generated = new String( Files.readAllBytes(
+      new File( sourceFolder, "Sample" + IMetaStoreSerializer.CLASS_NAME_SUFFIX + ".java" ).toPath() ),
+      StandardCharsets.UTF_8 );
+    assertTrue( generated.contains( "object.setCount( Integer.parseInt( value ) );" ) );
+    assertTrue( generated.contains( "context.loadAttribute( sample.Sample.class, object, \"tags\", child );" ) );
+
+    try ( URLClassLoader classLoader =
+      new URLClassLoader( new URL[] { folder.toURI().toURL() }, getClass().getClassLoader() ) ) {
+      Class<Object> sampleClass = (Class<Object>) classLoader.loadClass( "sample.Sample" );
+      Class<?> colorClass = classLoader.loadClass( "sample.Sample$Color" );
+
+      Object sample = sampleClass.getDeclaredConstructor().newInstance();
+      Date created = new Date( 1234567890000L );
+      sampleClass.getMethod( "setName", String.class ).invoke( sample, "first" );
+      sampleClass.getMethod( "setCount", int.class ).invoke( sample, 5 );
+      sampleClass.getMethod( "setSize", long.class ).invoke( sample, 12345678901L );
+      sampleClass.getMethod( "setEnabled", boolean.class ).invoke( sample, true );
+      sampleClass.getMethod( "setCreated", Date.class ).invoke( sample, created );
+      sampleClass.getMethod( "setColor", colorClass ).invoke( sample, colorClass.getEnumConstants()[1] );
+      ( (List<String>) sampleClass.getMethod( "getTags" ).invoke( sample ) ).addAll( Arrays.asList( "a", "b" ) );
+      Method setSecret = sampleClass.getDeclaredMethod( "setSecret", String.class );
+      setSecret.setAccessible( true );
+      setSecret.invoke( sample, "password" );
+
+      IMetaStore metaStore = new MemoryMetaStore();
+      MetaStoreFactory<Object> factory = new MetaStoreFactory<>( sampleClass, metaStore, "ns" );
+      factory.saveElement( sample );
+
+      IMetaStoreElement element =
+        metaStore.getElementByName( "ns", metaStore.getElementTypeByName( "ns", "Sample" ), "first" );
+      assertEquals( "5", MetaStoreUtil.getChildString( element, "the_count" ) );
+      assertEquals( "Y", MetaStoreUtil.getChildString( element, "enabled" ) );
+      assertEquals( "GREEN", MetaStoreUtil.getChildString( element, "color" ) );
+      assertFalse( "password".equals( MetaStoreUtil.getChildString( element, "secret" ) ) );
+
+      Object loaded = factory.loadElement( "first" );
+      assertEquals( "sample.Sample" + IMetaStoreSerializer.CLASS_NAME_SUFFIX,
+        sampleClass.getField( "countSetBy" ).get( null ) );
+      assertEquals( 5, sampleClass.getMethod( "getCount" ).invoke( loaded ) );
+      assertEquals( 12345678901L, sampleClass.getMethod( "getSize" ).invoke( loaded ) );
+      assertEquals( true, sampleClass.getMethod( "isEnabled" ).invoke( loaded ) );
+      assertEquals( created, sampleClass.getMethod( "getCreated" ).invoke( loaded ) );
+      assertEquals( "GREEN", String.valueOf( sampleClass.getMethod( "getColor" ).invoke( loaded ) ) );
+      assertEquals( Arrays.asList( "a", "b" ), sampleClass.getMethod( "getTags" ).invoke( loaded ) );
+      Method getSecret = sampleClass.getDeclaredMethod( "getSecret" );
+      getSecret.setAccessible( true );
+      assertEquals( "password", getSecret.invoke( loaded ) );
+    }
+  }
+}
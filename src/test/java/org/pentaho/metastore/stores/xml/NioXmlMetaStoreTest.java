@@ -0,0 +1,122 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+package org.pentaho.metastore.stores.xml;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.metastore.util.FileUtil;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NioXmlMetaStoreTest {
+
+  private NioXmlMetaStore metaStore;
+  private XmlMetaStore fileMetaStore;
+  private File folder;
+
+  @Before
+  public void before() throws Exception {
+    metaStore = new NioXmlMetaStore();
+    fileMetaStore = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() );
+    folder = new File( metaStore.getRootFolder(), "folder" );
+    assertTrue( folder.mkdir() );
+    assertTrue( new File( folder, "sub" ).mkdir() );
+    assertTrue( new File( folder, ".hidden-sub" ).mkdir() );
+    Files.write( new File( folder, "a.xml" ).toPath(), new byte[] { 1, 2, 3 } );
+    Files.write( new File( folder, "b.xml" ).toPath(), new byte[] { 1 } );
+    Files.write( new File( folder, ".hidden.xml" ).toPath(), new byte[] { 1 } );
+  }
+
+  @After
+  public void after() throws Exception {
+    FileUtil.cleanFolder( new File( metaStore.getRootFolder() ).getParentFile(), true );
+  }
+
+  private static List<String> sorted( List<String> names ) {
+    List<String> result = new ArrayList<>( names );
+    Collections.sort( result );
+    return result;
+  }
+
+  private static List<String> names( List<File> files ) {
+    List<String> result = new ArrayList<>();
+    for ( File file : files ) {
+      result.add( file.getPath() );
+    }
+    return sorted( result );
+  }
+
+  @Test
+  public void testListFolders() {
+    assertEquals( Collections.singletonList( "sub" ), metaStore.listFolders( folder.getPath() ) );
+    assertEquals( fileMetaStore.listFolders( folder.getPath() ), metaStore.listFolders( folder.getPath() ) );
+    assertTrue( metaStore.listFolders( new File( folder, "missing" ).getPath() ).isEmpty() );
+  }
+
+  @Test
+  public void testListFiles() {
+    Map<String, Long> processedFiles = new HashMap<>();
+    List<File> files = metaStore.listFiles( folder.getPath(), processedFiles );
+    assertEquals( 2, files.size() );
+    assertEquals( names( fileMetaStore.listFiles( folder.getPath(), processedFiles ) ), names( files ) );
+    assertTrue( metaStore.listFiles( new File( folder, "missing" ).getPath(), processedFiles ).isEmpty() );
+  }
+
+  @Test
+  public void testListFilesSkipsProcessedFiles() {
+    File a = new File( folder, "a.xml" );
+    File b = new File( folder, "b.xml" );
+    Map<String, Long> processedFiles = new HashMap<>();
+    processedFiles.put( a.getPath(), a.lastModified() );
+    processedFiles.put( b.getPath(), b.lastModified() - 1000L );
+
+    List<File> files = metaStore.listFiles( folder.getPath(), processedFiles );
+
+    assertEquals( Collections.singletonList( b.getPath() ), names( files ) );
+    assertEquals( names( fileMetaStore.listFiles( folder.getPath(), processedFiles ) ), names( files ) );
+  }
+
+  @Test
+  public void testAttributes() throws Exception {
+    String a = new File( folder, "a.xml" ).getPath();
+    String missing = new File( folder, "missing.xml" ).getPath();
+
+    assertTrue( metaStore.pathExists( a ) );
+    assertFalse( metaStore.pathExists( missing ) );
+    assertEquals( 3L, metaStore.fileSize( a ) );
+    assertEquals( new File( a ).lastModified(), metaStore.lastModified( a ) );
+    assertEquals( 0L, metaStore.lastModified( missing ) );
+    assertEquals( -1L, metaStore.fileSize( missing ) );
+  }
+
+  @Test
+  public void testListedFilesCarryTheirAttributes() throws Exception {
+    for ( File file : metaStore.listFiles( folder.getPath(), Collections.<String, Long>emptyMap() ) ) {
+      assertEquals( file.lastModified(), metaStore.getListedLastModified( file ) );
+      assertEquals( file.length(), metaStore.getListedFileSize( file ) );
+    }
+    File unlisted = new File( folder, "a.xml" );
+    assertEquals( -1L, metaStore.getListedLastModified( unlisted ) );
+    assertEquals( -1L, metaStore.getListedFileSize( unlisted ) );
+  }
+}
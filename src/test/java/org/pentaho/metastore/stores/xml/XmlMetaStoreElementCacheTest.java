@@ -0,0 +1,167 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+package org.pentaho.metastore.stores.xml;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.metastore.api.IMetaStoreElement;
+import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.util.FileUtil;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class XmlMetaStoreElementCacheTest {
+
+  private static final String NAMESPACE = "test";
+
+  private XmlMetaStore metaStore;
+  private XmlMetaStoreElementCache elementCache;
+  private IMetaStoreElementType elementType;
+
+  @Before
+  public void before() throws Exception {
+    metaStore = new XmlMetaStore();
+    elementCache = new XmlMetaStoreElementCache();
+    metaStore.setElementCache( elementCache );
+
+    metaStore.createNamespace( NAMESPACE );
+    elementType = metaStore.newElementType( NAMESPACE );
+    elementType.setName( "Type" );
+    metaStore.createElementType( NAMESPACE, elementType );
+  }
+
+  @After
+  public void after() throws Exception {
+    FileUtil.cleanFolder( new File( metaStore.getRootFolder() ).getParentFile(), true );
+  }
+
+  private IMetaStoreElement createElement( String name, String value ) throws Exception {
+    IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+    element.setName( name );
+    element.addChild( metaStore.newAttribute( "attr", value ) );
+    metaStore.createElement( NAMESPACE, elementType, element );
+    return element;
+  }
+
+  @Test
+  public void testRepeatedReadsUseCache() throws Exception {
+    createElement( "one", "value" );
+
+    IMetaStoreElement first = metaStore.getElement( NAMESPACE, elementType, "one" );
+    IMetaStoreElement second = metaStore.getElement( NAMESPACE, elementType, "one" );
+    IMetaStoreElement byName = metaStore.getElementByName( NAMESPACE, elementType, "one" );
+
+    assertEquals( 1, elementCache.getMisses() );
+    assertEquals( 2, elementCache.getHits() );
+    assertNotSame( first, second );
+    assertEquals( "value", second.getChild( "attr" ).getValue() );
+    assertEquals( "one", byName.getName() );
+  }
+
+  @Test
+  public void testChangesToReturnedElementDontReachCache() throws Exception {
+    createElement( "one", "value" );
+
+    IMetaStoreElement element = metaStore.getElement( NAMESPACE, elementType, "one" );
+    element.getChild( "attr" ).setValue( "changed" );
+
+    assertEquals( "value", metaStore.getElement( NAMESPACE, elementType, "one" ).getChild( "attr" ).getValue() );
+  }
+
+  @Test
+  public void testChangedFileIsReadAgain() throws Exception {
+    createElement( "one", "value" );
+    metaStore.getElement( NAMESPACE, elementType, "one" );
+
+    File file = new File( XmlUtil.getElementFile( metaStore.getRootFolder(), NAMESPACE, "Type", "one" ) );
+    String xml = new String( Files.readAllBytes( file.toPath() ), StandardCharsets.UTF_8 );
+    Files.write( file.toPath(), xml.replace( ">value<", ">other value<" ).getBytes( StandardCharsets.UTF_8 ) );
+
+    IMetaStoreElement element = metaStore.getElement( NAMESPACE, elementType, "one" );
+
+    assertEquals( "other value", element.getChild( "attr" ).getValue() );
+    assertEquals( 0, elementCache.getHits() );
+    assertEquals( 2, elementCache.getMisses() );
+  }
+
+  @Test
+  public void testUpdateAndDeleteEvict() throws Exception {
+    IMetaStoreElement element = createElement( "one", "value" );
+    metaStore.getElement( NAMESPACE, elementType, "one" );
+    assertEquals( 1, elementCache.size() );
+
+    element.getChild( "attr" ).setValue( "updated" );
+    elementType.setMetaStoreName( metaStore.getName() );
+    metaStore.updateElement( NAMESPACE, elementType, element.getId(), element );
+    assertEquals( 0, elementCache.size() );
+    assertEquals( "updated", metaStore.getElement( NAMESPACE, elementType, "one" ).getChild( "attr" ).getValue() );
+
+    metaStore.deleteElement( NAMESPACE, elementType, "one" );
+    assertEquals( 0, elementCache.size() );
+    assertNull( metaStore.getElement( NAMESPACE, elementType, "one" ) );
+  }
+
+  @Test
+  public void testEvictionByEntries() {
+    XmlMetaStoreElementCache cache = new XmlMetaStoreElementCache( 2, 1000L );
+    IMetaStoreElement one = new XmlMetaStoreElement();
+    IMetaStoreElement two = new XmlMetaStoreElement();
+    IMetaStoreElement three = new XmlMetaStoreElement();
+
+    cache.put( "one", 1L, 10L, one );
+    cache.put( "two", 1L, 10L, two );
+    assertSame( one, cache.get( "one", 1L, 10L ) );
+    cache.put( "three", 1L, 10L, three );
+
+    assertEquals( 2, cache.size() );
+    assertEquals( 1, cache.getEvictions() );
+    assertSame( one, cache.get( "one", 1L, 10L ) );
+    assertNull( cache.get( "two", 1L, 10L ) );
+  }
+
+  @Test
+  public void testEvictionByWeight() {
+    XmlMetaStoreElementCache cache = new XmlMetaStoreElementCache( 10, 100L );
+
+    cache.put( "one", 1L, 60L, new XmlMetaStoreElement() );
+    cache.put( "two", 1L, 30L, new XmlMetaStoreElement() );
+    cache.put( "three", 1L, 30L, new XmlMetaStoreElement() );
+    cache.put( "huge", 1L, 200L, new XmlMetaStoreElement() );
+
+    assertEquals( 2, cache.size() );
+    assertEquals( 60L, cache.getWeight() );
+    assertNull( cache.get( "one", 1L, 60L ) );
+    assertNull( cache.get( "huge", 1L, 200L ) );
+  }
+
+  @Test
+  public void testValidator() {
+    XmlMetaStoreElementCache cache = new XmlMetaStoreElementCache();
+    cache.put( "one", 1L, 10L, new XmlMetaStoreElement() );
+
+    assertNull( cache.get( "one", 1L, 11L ) );
+    assertEquals( 0, cache.size() );
+    assertEquals( 0L, cache.getWeight() );
+
+    cache.put( "one", 1L, 10L, new XmlMetaStoreElement() );
+    assertNull( cache.get( "one", 2L, 10L ) );
+    assertEquals( 2, cache.getMisses() );
+  }
+}
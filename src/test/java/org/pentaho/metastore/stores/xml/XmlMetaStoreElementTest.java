@@ -12,16 +12,32 @@
 
 package org.pentaho.metastore.stores.xml;
 
+import org.junit.After;
 import org.junit.Test;
+import org.pentaho.metastore.api.IMetaStoreAttribute;
 import org.pentaho.metastore.api.exceptions.MetaStoreException;
+import org.pentaho.metastore.api.security.MetaStoreElementOwnerType;
+import org.pentaho.metastore.api.security.MetaStoreObjectPermission;
+import org.pentaho.metastore.api.security.MetaStoreOwnerPermissions;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.Comparator;
+import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 public class XmlMetaStoreElementTest {
 
+  private static final String ELEMENT_FOLDER = "src/test/resources/metastore_test/metastore/pentaho/ParentElement";
+
+  @After
+  public void after() {
+    System.clearProperty( XmlUtil.STREAMING_PARSER_PROPERTY );
+  }
+
   @Test
   public void testLongName() {
     String pattern = "1234567890";
@@ -42,4 +58,67 @@ public class XmlMetaStoreElementTest {
     }
   }
 
+
+  @Test
+  public void testStreamingParserMatchesDomParser() throws Exception {
+    for ( String filename : new String[] { "test.xml", "test_legacy.xml" } ) {
+      String path = ELEMENT_FOLDER + File.separator + filename;
+      XmlMetaStoreElement streamed = new XmlMetaStoreElement( path );
+      System.setProperty( XmlUtil.STREAMING_PARSER_PROPERTY, "false" );
+      XmlMetaStoreElement parsed = new XmlMetaStoreElement( path );
+      System.clearProperty( XmlUtil.STREAMING_PARSER_PROPERTY );
+
+      assertEquals( parsed.getName(), streamed.getName() );
+      assertAttributesEqual( parsed, streamed );
+    }
+  }
+
+  @Test
+  public void testStreamingParserLoadsSecurityAndTypes() throws Exception {
+    File file = File.createTempFile( "XmlMetaStoreElementTest", ".xml" );
+    file.deleteOnExit();
+
+    XmlMetaStoreElement element = new XmlMetaStoreElement( null, "id", null );
+    element.setName( "element name" );
+    element.addChild( new XmlMetaStoreAttribute( "integer", 1 ) );
+    element.addChild( new XmlMetaStoreAttribute( "long", 2L ) );
+    element.addChild( new XmlMetaStoreAttribute( "double", 3.5 ) );
+    element.addChild( new XmlMetaStoreAttribute( "string", "a < b & c" ) );
+    element.setOwner( new XmlMetaStoreElementOwner( "admin", MetaStoreElementOwnerType.USER ) );
+    element.getOwnerPermissionsList().add( new MetaStoreOwnerPermissions(
+      new XmlMetaStoreElementOwner( "users", MetaStoreElementOwnerType.ROLE ), MetaStoreObjectPermission.READ,
+      MetaStoreObjectPermission.UPDATE ) );
+    element.setFilename( file.getPath() );
+    element.save();
+
+    XmlMetaStoreElement loaded = new XmlMetaStoreElement( file.getPath() );
+    assertEquals( "element name", loaded.getName() );
+    assertEquals( 1, loaded.getChild( "integer" ).getValue() );
+    assertEquals( 2L, loaded.getChild( "long" ).getValue() );
+    assertEquals( 3.5, loaded.getChild( "double" ).getValue() );
+    assertEquals( "a < b & c", loaded.getChild( "string" ).getValue() );
+    assertNull( loaded.getValue() );
+    assertEquals( "admin", loaded.getOwner().getName() );
+    assertEquals( MetaStoreElementOwnerType.USER, loaded.getOwner().getOwnerType() );
+    assertEquals( 1, loaded.getOwnerPermissionsList().size() );
+    MetaStoreOwnerPermissions ownerPermissions = loaded.getOwnerPermissionsList().get( 0 );
+    assertEquals( "users", ownerPermissions.getOwner().getName() );
+    assertEquals( MetaStoreElementOwnerType.ROLE, ownerPermissions.getOwner().getOwnerType() );
+    assertEquals( 2, ownerPermissions.getPermissions().size() );
+    assertEquals( MetaStoreObjectPermission.UPDATE, ownerPermissions.getPermissions().get( 1 ) );
+  }
+
+  private static void assertAttributesEqual( IMetaStoreAttribute expected, IMetaStoreAttribute actual ) {
+    assertEquals( expected.getId(), actual.getId() );
+    assertEquals( expected.getValue(), actual.getValue() );
+    List<IMetaStoreAttribute> expectedChildren = expected.getChildren();
+    List<IMetaStoreAttribute> actualChildren = actual.getChildren();
+    assertEquals( expectedChildren.size(), actualChildren.size() );
+    expectedChildren.sort( Comparator.comparing( IMetaStoreAttribute::getId ) );
+    actualChildren.sort( Comparator.comparing( IMetaStoreAttribute::getId ) );
+    for ( int i = 0; i < expectedChildren.size(); i++ ) {
+      assertAttributesEqual( expectedChildren.get( i ), actualChildren.get( i ) );
+    }
+  }
+
 }
@@ -0,0 +1,379 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+package org.pentaho.metastore.stores.xml;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.metastore.api.IMetaStoreElement;
+import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.util.FileUtil;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class XmlMetaStoreFileLockTest {
+
+  private static final String NAMESPACE = "test";
+
+  private XmlMetaStore metaStore;
+  private ExecutorService executor;
+  private volatile CyclicBarrier listingBarrier;
+
+  @Before
+  public void before() throws Exception {
+    metaStore = new XmlMetaStore() {
+      @Override
+      protected List<File> listFiles( String folder, Map<String, Long> processedFiles ) {
+        CyclicBarrier barrier = listingBarrier;
+        if ( barrier != null ) {
+          try {
+            barrier.await( 5, TimeUnit.SECONDS );
+          } catch ( Exception e ) {
+            throw new IllegalStateException( "Readers didn't meet", e );
+          }
+        }
+        return super.listFiles( folder, processedFiles );
+      }
+    };
+    executor = Executors.newFixedThreadPool( 2 );
+  }
+
+  @After
+  public void after() throws Exception {
+    System.clearProperty( XmlUtil.LEGACY_LOCK_PROPERTY );
+    executor.shutdownNow();
+    FileUtil.cleanFolder( new File( metaStore.getRootFolder() ).getParentFile(), true );
+  }
+
+  private IMetaStoreElementType createElementType( String name ) throws Exception {
+    IMetaStoreElementType elementType = metaStore.newElementType( NAMESPACE );
+    elementType.setName( name );
+    metaStore.createElementType( NAMESPACE, elementType );
+    return elementType;
+  }
+
+  private IMetaStoreElement createElement( IMetaStoreElementType elementType, String name ) throws Exception {
+    IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+    element.setName( name );
+    metaStore.createElement( NAMESPACE, elementType, element );
+    return element;
+  }
+
+  @Test
+  public void testReadersProceedInParallel() throws Exception {
+    metaStore.createNamespace( NAMESPACE );
+    IMetaStoreElementType elementType = metaStore.newElementType( NAMESPACE );
+    elementType.setName( "Type" );
+    metaStore.createElementType( NAMESPACE, elementType );
+
+    // Both readers wait for each other inside the store: that only works if neither blocks the other
+    //
+    listingBarrier = new CyclicBarrier( 2 );
+    Future<?> first = executor.submit( () -> metaStore.getElements( NAMESPACE, elementType ) );
+    Future<?> second = executor.submit( () -> metaStore.getElements( NAMESPACE, elementType ) );
+    first.get( 10, TimeUnit.SECONDS );
+    second.get( 10, TimeUnit.SECONDS );
+  }
+
+  @Test
+  public void testWriterWaitsForReaders() throws Exception {
+    XmlMetaStoreFileLock lock = XmlMetaStoreFileLock.forStore( new File( metaStore.getRootFolder() ) );
+    lock.lockShared();
+    executor.submit( () -> {
+      lock.lockShared();
+      lock.unlockShared();
+      return null;
+    } ).get( 5, TimeUnit.SECONDS );
+
+    Future<?> writer = executor.submit( () -> {
+      lock.lockExclusive();
+      lock.unlockExclusive();
+      return null;
+    } );
+    try {
+      writer.get( 300, TimeUnit.MILLISECONDS );
+      fail( "The writer should wait for the reader" );
+    } catch ( TimeoutException e ) {
+      // OK
+    } finally {
+      lock.unlockShared();
+    }
+    writer.get( 5, TimeUnit.SECONDS );
+    assertTrue( new File( metaStore.getRootFolder(), XmlUtil.STORE_LOCK_FILE_NAME ).isFile() );
+  }
+
+  @Test
+  public void testStoresOnSameFolderShareLock() throws Exception {
+    XmlMetaStore other = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() );
+    metaStore.lockStore();
+    try {
+      Future<?> writer = executor.submit( () -> {
+        other.createNamespace( NAMESPACE );
+        return null;
+      } );
+      try {
+        writer.get( 300, TimeUnit.MILLISECONDS );
+        fail( "The other store should wait for the lock" );
+      } catch ( TimeoutException e ) {
+        // OK
+      }
+      metaStore.unlockStore();
+      writer.get( 5, TimeUnit.SECONDS );
+    } catch ( Exception e ) {
+      metaStore.unlockStore();
+      throw e;
+    }
+    assertTrue( metaStore.namespaceExists( NAMESPACE ) );
+  }
+
+  @Test
+  public void testWritersOfDifferentElementTypesProceedInParallel() throws Exception {
+    metaStore.createNamespace( NAMESPACE );
+    IMetaStoreElementType first = createElementType( "First" );
+    IMetaStoreElementType second = createElementType( "Second" );
+
+    // Another writer of the first element type holds its lock
+    //
+    XmlMetaStoreFileLock lock = XmlMetaStoreFileLock.forFolder( new File( metaStore.getRootFolder() ),
+      new File( XmlUtil.getElementTypeFolder( metaStore.getRootFolder(), NAMESPACE, first.getName() ) ) );
+    lock.lockExclusive();
+    try {
+      executor.submit( () -> createElement( second, "one" ) ).get( 5, TimeUnit.SECONDS );
+      Future<?> writer = executor.submit( () -> createElement( first, "two" ) );
+      try {
+        writer.get( 300, TimeUnit.MILLISECONDS );
+        fail( "The writer should wait for the element type lock" );
+      } catch ( TimeoutException e ) {
+        // OK
+      }
+      lock.unlockExclusive();
+      writer.get( 5, TimeUnit.SECONDS );
+    } catch ( Exception e ) {
+      lock.unlockExclusive();
+      throw e;
+    }
+    assertEquals( 1, metaStore.getElements( NAMESPACE, first ).size() );
+    assertEquals( 1, metaStore.getElements( NAMESPACE, second ).size() );
+  }
+
+  @Test
+  public void testNamespaceWriterBlocksElementWriters() throws Exception {
+    metaStore.createNamespace( NAMESPACE );
+    IMetaStoreElementType elementType = createElementType( "Type" );
+
+    XmlMetaStoreFileLock lock = XmlMetaStoreFileLock.forFolder( new File( metaStore.getRootFolder() ),
+      new File( XmlUtil.getNamespaceFolder( metaStore.getRootFolder(), NAMESPACE ) ) );
+    lock.lockExclusive();
+    try {
+      Future<?> writer = executor.submit( () -> createElement( elementType, "one" ) );
+      try {
+        writer.get( 300, TimeUnit.MILLISECONDS );
+        fail( "The writer should wait for the namespace lock" );
+      } catch ( TimeoutException e ) {
+        // OK
+      }
+      lock.unlockExclusive();
+      writer.get( 5, TimeUnit.SECONDS );
+    } catch ( Exception e ) {
+      lock.unlockExclusive();
+      throw e;
+    }
+  }
+
+  @Test
+  public void testDeleteFoldersWithLockFiles() throws Exception {
+    metaStore.createNamespace( NAMESPACE );
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    IMetaStoreElement element = createElement( elementType, "one" );
+    File rootFolder = new File( metaStore.getRootFolder() );
+    File elementTypeFolder =
+      new File( XmlUtil.getElementTypeFolder( metaStore.getRootFolder(), NAMESPACE, elementType.getName() ) );
+
+    // The folders only contain what older versions expect, the lock files are kept apart
+    //
+    assertFalse( new File( elementTypeFolder, XmlUtil.STORE_LOCK_FILE_NAME ).exists() );
+    assertFalse( new File( elementTypeFolder.getParentFile(), XmlUtil.STORE_LOCK_FILE_NAME ).exists() );
+    assertTrue( XmlMetaStoreFileLock.getFolderLockFile( rootFolder, elementTypeFolder ).isFile() );
+    assertEquals( Collections.singletonList( NAMESPACE ), metaStore.getNamespaces() );
+    assertEquals( 1, metaStore.getElements( NAMESPACE, elementType ).size() );
+
+    metaStore.deleteElement( NAMESPACE, elementType, element.getId() );
+    metaStore.deleteElementType( NAMESPACE, elementType );
+    metaStore.deleteNamespace( NAMESPACE );
+    assertFalse( elementTypeFolder.getParentFile().exists() );
+    assertFalse( XmlMetaStoreFileLock.getFolderLockFile( rootFolder, elementTypeFolder.getParentFile() )
+      .getParentFile().exists() );
+  }
+
+  @Test
+  public void testReadersOfAnOlderMetastoreCreateLockFiles() throws Exception {
+    metaStore.createNamespace( NAMESPACE );
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    createElement( elementType, "one" );
+
+    // As written by an older version
+    //
+    File rootFolder = new File( metaStore.getRootFolder() );
+    FileUtil.cleanFolder( new File( rootFolder, XmlUtil.FOLDER_LOCKS_FOLDER_NAME ), true );
+    assertTrue( new File( rootFolder, XmlUtil.STORE_LOCK_FILE_NAME ).delete() );
+
+    XmlMetaStore reader = new XmlMetaStore( rootFolder.getParent() );
+    assertEquals( 1, reader.getElements( NAMESPACE, reader.getElementTypeByName( NAMESPACE, "Type" ) ).size() );
+    assertEquals( Collections.singletonList( NAMESPACE ), reader.getNamespaces() );
+    assertTrue( new File( rootFolder, XmlUtil.STORE_LOCK_FILE_NAME ).isFile() );
+    File elementTypeFolder = new File( XmlUtil.getElementTypeFolder( metaStore.getRootFolder(), NAMESPACE, "Type" ) );
+    assertTrue( XmlMetaStoreFileLock.getFolderLockFile( rootFolder, elementTypeFolder ).isFile() );
+    assertFalse( new File( rootFolder, XmlUtil.LOCK_FILE_NAME ).exists() );
+  }
+
+  @Test
+  public void testReaderBeforeTheFirstWriterKeepsOtherProcessesOut() throws Exception {
+    File storeLockFile = new File( metaStore.getRootFolder(), XmlUtil.STORE_LOCK_FILE_NAME );
+    storeLockFile.delete();
+
+    metaStore.lockStoreForReading();
+    try {
+      assertTrue( storeLockFile.isFile() );
+      assertEquals( "busy", runProcess( "lock", storeLockFile.getPath() ) );
+    } finally {
+      metaStore.unlockStoreForReading();
+    }
+    assertEquals( "locked", runProcess( "lock", storeLockFile.getPath() ) );
+  }
+
+  @Test
+  public void testLegacyLockIsOptIn() throws Exception {
+    System.setProperty( XmlUtil.LEGACY_LOCK_PROPERTY, "true" );
+    File legacyLockFile = new File( metaStore.getRootFolder(), XmlUtil.LOCK_FILE_NAME );
+
+    // Only exclusive root operations take the legacy lock file
+    //
+    metaStore.lockStoreForReading();
+    try {
+      assertFalse( legacyLockFile.exists() );
+    } finally {
+      metaStore.unlockStoreForReading();
+    }
+    metaStore.lockStore();
+    try {
+      assertTrue( legacyLockFile.exists() );
+      metaStore.createNamespace( NAMESPACE );
+      assertTrue( legacyLockFile.exists() );
+    } finally {
+      metaStore.unlockStore();
+    }
+    assertFalse( legacyLockFile.exists() );
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    IMetaStoreElement element = createElement( elementType, "one" );
+    assertFalse( legacyLockFile.exists() );
+
+    // An older version holds the store: readers go ahead, root writers wait
+    //
+    assertTrue( legacyLockFile.createNewFile() );
+    assertEquals( Collections.singletonList( NAMESPACE ), metaStore.getNamespaces() );
+    assertEquals( 1, metaStore.getElements( NAMESPACE, elementType ).size() );
+    Future<?> writer = executor.submit( () -> {
+      metaStore.deleteElement( NAMESPACE, elementType, element.getId() );
+      metaStore.deleteElementType( NAMESPACE, elementType );
+      metaStore.deleteNamespace( NAMESPACE );
+      return null;
+    } );
+    try {
+      writer.get( 300, TimeUnit.MILLISECONDS );
+      fail( "The writer should wait for the older version" );
+    } catch ( TimeoutException e ) {
+      // OK
+    } finally {
+      legacyLockFile.delete();
+    }
+    writer.get( 5, TimeUnit.SECONDS );
+    assertFalse( metaStore.namespaceExists( NAMESPACE ) );
+    assertFalse( legacyLockFile.exists() );
+  }
+
+  @Test
+  public void testNoLegacyLockByDefault() throws Exception {
+    File legacyLockFile = new File( metaStore.getRootFolder(), XmlUtil.LOCK_FILE_NAME );
+
+    metaStore.lockStore();
+    try {
+      assertFalse( legacyLockFile.exists() );
+    } finally {
+      metaStore.unlockStore();
+    }
+  }
+
+  @Test
+  public void testProcessesWriteDifferentElementTypesInParallel() throws Exception {
+    metaStore.createNamespace( NAMESPACE );
+    IMetaStoreElementType first = createElementType( "First" );
+    IMetaStoreElementType second = createElementType( "Second" );
+
+    // This process holds the lock of the first element type while another one writes the second
+    //
+    XmlMetaStoreFileLock lock = XmlMetaStoreFileLock.forFolder( new File( metaStore.getRootFolder() ),
+      new File( XmlUtil.getElementTypeFolder( metaStore.getRootFolder(), NAMESPACE, first.getName() ) ) );
+    lock.lockExclusive();
+    try {
+      assertEquals( "done", runProcess( "write", new File( metaStore.getRootFolder() ).getParent(), NAMESPACE,
+        second.getName(), "10" ) );
+    } finally {
+      lock.unlockExclusive();
+    }
+    createElement( first, "one" );
+    assertEquals( 1, metaStore.getElements( NAMESPACE, first ).size() );
+    assertEquals( 10, metaStore.getElements( NAMESPACE, second ).size() );
+  }
+
+  /**
+   * Run {@link XmlMetaStoreLockProcess} in another JVM.
+   *
+   * @return the last line it printed
+   */
+  private static String runProcess( String... args ) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add( new File( new File( System.getProperty( "java.home" ), "bin" ), "java" ).getPath() );
+    command.add( "-cp" );
+    command.add( System.getProperty( "java.class.path" ) );
+    command.add( XmlMetaStoreLockProcess.class.getName() );
+    command.addAll( Arrays.asList( args ) );
+    Process process = new ProcessBuilder( command ).redirectErrorStream( true ).start();
+    String lastLine = null;
+    try ( BufferedReader reader =
+      new BufferedReader( new InputStreamReader( process.getInputStream(), StandardCharsets.UTF_8 ) ) ) {
+      for ( String line = reader.readLine(); line != null; line = reader.readLine() ) {
+        lastLine = line;
+      }
+    }
+    assertTrue( "The other process didn't finish", process.waitFor( 30, TimeUnit.SECONDS ) );
+    return lastLine;
+  }
+}
@@ -0,0 +1,60 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+package org.pentaho.metastore.stores.xml;
+
+import org.pentaho.metastore.api.IMetaStoreElement;
+import org.pentaho.metastore.api.IMetaStoreElementType;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Uses a metastore from another JVM, so that {@link XmlMetaStoreFileLockTest} can check how processes lock each other
+ * out. It writes elements and prints "done" when it succeeds, or tries to lock a lock file and prints "locked" or
+ * "busy":
+ *
+ * <pre>
+ * java -cp ... org.pentaho.metastore.stores.xml.XmlMetaStoreLockProcess write [folder] [namespace] [element type] [count]
+ * java -cp ... org.pentaho.metastore.stores.xml.XmlMetaStoreLockProcess lock [lock file]
+ * </pre>
+ */
+public class XmlMetaStoreLockProcess {
+
+  public static void main( String[] args ) throws Exception {
+    if ( "write".equals( args[0] ) ) {
+      write( args[1], args[2], args[3], Integer.parseInt( args[4] ) );
+      System.out.println( "done" );
+    } else if ( "lock".equals( args[0] ) ) {
+      System.out.println( lock( args[1] ) ? "locked" : "busy" );
+    } else {
+      throw new IllegalArgumentException( "Unknown command: " + args[0] );
+    }
+  }
+
+  private static void write( String folder, String namespace, String elementTypeName, int count ) throws Exception {
+    XmlMetaStore metaStore = new XmlMetaStore( folder );
+    IMetaStoreElementType elementType = metaStore.getElementTypeByName( namespace, elementTypeName );
+    for ( int i = 0; i < count; i++ ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( elementTypeName + "-" + i );
+      metaStore.createElement( namespace, elementType, element );
+    }
+  }
+
+  private static boolean lock( String lockFile ) throws Exception {
+    try ( FileChannel channel = FileChannel.open( Paths.get( lockFile ), StandardOpenOption.CREATE,
+      StandardOpenOption.READ, StandardOpenOption.WRITE ) ) {
+      return channel.tryLock() != null;
+    }
+  }
+}
@@ -0,0 +1,181 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+package org.pentaho.metastore.stores.xml;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.metastore.api.IMetaStoreElement;
+import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.api.exceptions.MetaStoreException;
+import org.pentaho.metastore.util.FileUtil;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class XmlMetaStoreNameIndexTest {
+
+  private static final String NAMESPACE = "test";
+
+  private XmlMetaStore metaStore;
+  private IMetaStoreElementType elementType;
+  private File indexFile;
+
+  @Before
+  public void before() throws Exception {
+    metaStore = new XmlMetaStore();
+    metaStore.setNameIndexEnabled( true );
+    metaStore.createNamespace( NAMESPACE );
+    elementType = metaStore.newElementType( NAMESPACE );
+    elementType.setName( "Type" );
+    metaStore.createElementType( NAMESPACE, elementType );
+    String indexesFolder = metaStore.getRootFolder() + File.separator + XmlUtil.NAME_INDEXES_FOLDER_NAME;
+    indexFile = new File( XmlUtil.getElementTypeFolder( indexesFolder, NAMESPACE, "Type" ),
+      XmlUtil.NAME_INDEX_FILE_NAME );
+  }
+
+  @After
+  public void after() throws Exception {
+    FileUtil.cleanFolder( new File( metaStore.getRootFolder() ).getParentFile(), true );
+  }
+
+  private void createElement( String name ) throws Exception {
+    IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+    element.setName( name );
+    metaStore.createElement( NAMESPACE, elementType, element );
+  }
+
+  /**
+   * @return a store on the same folder with empty caches that counts the element files it parses
+   */
+  private XmlMetaStore restart( AtomicInteger parsed ) throws Exception {
+    XmlMetaStore restarted = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() ) {
+      @Override
+      protected XmlMetaStoreElement newElement( String filename ) throws MetaStoreException {
+        parsed.incrementAndGet();
+        return super.newElement( filename );
+      }
+    };
+    restarted.setNameIndexEnabled( true );
+    return restarted;
+  }
+
+  @Test
+  public void testParseWhatWasWritten() {
+    XmlMetaStoreNameIndex index = new XmlMetaStoreNameIndex();
+    index.put( "one", "One", 1L, 10L );
+    index.put( "two", "Tab\tand\nnew line\\", 2L, 20L );
+    index.put( "three", "ONE", 3L, 30L );
+    index.remove( "three" );
+
+    XmlMetaStoreNameIndex parsed = XmlMetaStoreNameIndex.parse( index.toBytes() );
+    assertNotNull( parsed );
+    assertEquals( 2, parsed.size() );
+    XmlMetaStoreNameIndex.Entry entry = parsed.getEntries( "oNe" ).iterator().next();
+    assertEquals( "one", entry.getId() );
+    assertEquals( 1L, entry.getLastModified() );
+    assertEquals( 10L, entry.getSize() );
+    assertEquals( "two", parsed.getEntries( "tab\tAND\nNew line\\" ).iterator().next().getId() );
+    assertTrue( parsed.getEntries( "three" ).isEmpty() );
+  }
+
+  @Test
+  public void testParseUnknownContent() {
+    assertNull( XmlMetaStoreNameIndex.parse( "something else\n".getBytes( StandardCharsets.UTF_8 ) ) );
+    assertNull( XmlMetaStoreNameIndex.parse( new byte[0] ) );
+  }
+
+  @Test
+  public void testColdLookupReadsOneElement() throws Exception {
+    for ( int i = 0; i < 10; i++ ) {
+      createElement( "element" + i );
+    }
+    assertFalse( indexFile.exists() );
+    assertNull( metaStore.getElementByName( NAMESPACE, elementType, "nothing" ) );
+    assertTrue( indexFile.exists() );
+
+    AtomicInteger parsed = new AtomicInteger();
+    XmlMetaStore restarted = restart( parsed );
+    IMetaStoreElement element = restarted.getElementByName( NAMESPACE, elementType, "ELEMENT7" );
+    assertEquals( "element7", element.getName() );
+    assertEquals( 1, parsed.get() );
+  }
+
+  @Test
+  public void testIndexFollowsChanges() throws Exception {
+    createElement( "first" );
+    metaStore.getElementByName( NAMESPACE, elementType, "first" );
+    createElement( "second" );
+    metaStore.deleteElement( NAMESPACE, elementType, "first" );
+
+    AtomicInteger parsed = new AtomicInteger();
+    XmlMetaStore restarted = restart( parsed );
+    assertEquals( "second", restarted.getElementByName( NAMESPACE, elementType, "second" ).getName() );
+    assertEquals( 1, parsed.get() );
+    assertNull( restarted.getElementByName( NAMESPACE, elementType, "first" ) );
+  }
+
+  @Test
+  public void testChangedFileIsNotTrusted() throws Exception {
+    createElement( "first" );
+    metaStore.getElementByName( NAMESPACE, elementType, "first" );
+
+    // Another program gives the element another name without updating the index
+    //
+    XmlMetaStoreElement changed = metaStore.newElement( elementType, "first", null );
+    changed.setName( "renamed" );
+    changed.setFilename( XmlUtil.getElementFile( metaStore.getRootFolder(), NAMESPACE, "Type", "first" ) );
+    changed.save();
+    new File( changed.getFilename() ).setLastModified( System.currentTimeMillis() + 5000L );
+
+    XmlMetaStore restarted = restart( new AtomicInteger() );
+    assertNull( restarted.getElementByName( NAMESPACE, elementType, "first" ) );
+    assertEquals( "renamed", restarted.getElementByName( NAMESPACE, elementType, "renamed" ).getName() );
+  }
+
+  @Test
+  public void testDeleteElementTypeWithIndex() throws Exception {
+    createElement( "first" );
+    assertNull( metaStore.getElementByName( NAMESPACE, elementType, "nothing" ) );
+    assertTrue( indexFile.exists() );
+    assertEquals( 1, metaStore.getElements( NAMESPACE, elementType ).size() );
+
+    metaStore.deleteElement( NAMESPACE, elementType, "first" );
+    metaStore.deleteElementType( NAMESPACE, elementType );
+    assertFalse( indexFile.getParentFile().exists() );
+    metaStore.deleteNamespace( NAMESPACE );
+    assertFalse( indexFile.getParentFile().getParentFile().exists() );
+  }
+
+  @Test
+  public void testIndexIsKeptApartFromTheElements() throws Exception {
+    createElement( "first" );
+    assertNull( metaStore.getElementByName( NAMESPACE, elementType, "nothing" ) );
+    assertTrue( indexFile.exists() );
+
+    // Older versions take every file in the element type folder that isn't hidden for an element
+    //
+    File elementTypeFolder = new File( XmlUtil.getElementTypeFolder( metaStore.getRootFolder(), NAMESPACE, "Type" ) );
+    assertArrayEquals( new String[] { "first.xml" },
+      elementTypeFolder.list( ( folder, name ) -> !new File( folder, name ).isHidden() ) );
+    assertEquals( Collections.singletonList( NAMESPACE ), metaStore.getNamespaces() );
+  }
+}
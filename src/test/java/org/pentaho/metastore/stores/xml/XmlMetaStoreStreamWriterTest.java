@@ -0,0 +1,108 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.stores.xml;
+
+import org.junit.Test;
+import org.pentaho.metastore.api.security.MetaStoreElementOwnerType;
+import org.pentaho.metastore.api.security.MetaStoreObjectPermission;
+import org.pentaho.metastore.api.security.MetaStoreOwnerPermissions;
+
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class XmlMetaStoreStreamWriterTest {
+
+  @Test
+  public void testElementOutputMatchesTransformer() throws Exception {
+    XmlMetaStoreElement element = new XmlMetaStoreElement( null, "id", null );
+    element.setName( "a <name> & \"quotes\"\r\nwith a é \u0001 \u0085 😀\ttab" );
+    element.addChild( new XmlMetaStoreAttribute( "integer", 1 ) );
+    element.addChild( new XmlMetaStoreAttribute( "empty", "" ) );
+    XmlMetaStoreAttribute nested = new XmlMetaStoreAttribute( "nested", null );
+    nested.addChild( new XmlMetaStoreAttribute( "double", 2.5 ) );
+    nested.addChild( new XmlMetaStoreAttribute( "spaces", "  " ) );
+    element.addChild( nested );
+    element.setOwner( new XmlMetaStoreElementOwner( "admin", MetaStoreElementOwnerType.USER ) );
+    element.getOwnerPermissionsList().add( new MetaStoreOwnerPermissions(
+      new XmlMetaStoreElementOwner( "users", MetaStoreElementOwnerType.ROLE ), MetaStoreObjectPermission.READ ) );
+    element.getOwnerPermissionsList().add( new MetaStoreOwnerPermissions() );
+
+    assertSameOutput( element );
+    assertSameOutput( new XmlMetaStoreElement() {
+      {
+        setId( "no-name" );
+      }
+    } );
+  }
+
+  @Test
+  public void testElementTypeOutputMatchesTransformer() throws Exception {
+    XmlMetaStoreElementType elementType = new XmlMetaStoreElementType( "pentaho", "id", "Type & name", null );
+
+    StringWriter streamed = new StringWriter();
+    elementType.saveToXmlStream( new StreamResult( streamed ) );
+    StringWriter transformed = new StringWriter();
+    elementType.saveToDocument( new StreamResult( transformed ) );
+
+    assertEquals( transformed.toString(), streamed.toString() );
+  }
+
+  @Test
+  public void testNamespaces() throws Exception {
+    StringWriter out = new StringWriter();
+    XmlMetaStoreStreamWriter writer = new XmlMetaStoreStreamWriter( out );
+    writer.writeStartElement( "p", "root", "urn:a" );
+    writer.writeNamespace( "p", "urn:a" );
+    writer.writeDefaultNamespace( "urn:default" );
+    writer.writeEmptyElement( "urn:a", "child" );
+    writer.writeAttribute( "urn:a", "key", "value" );
+    assertEquals( "p", writer.getPrefix( "urn:a" ) );
+    assertEquals( "", writer.getPrefix( "urn:default" ) );
+    writer.writeEndDocument();
+
+    assertEquals( "<p:root xmlns:p=\"urn:a\" xmlns=\"urn:default\">" + System.lineSeparator()
+      + "  <p:child p:key=\"value\"/>" + System.lineSeparator() + "</p:root>" + System.lineSeparator(),
+      out.toString() );
+    assertNull( writer.getPrefix( "urn:a" ) );
+  }
+
+  @Test
+  public void testLongTextIsHandedOverBeforeTheEnd() throws Exception {
+    StringWriter out = new StringWriter();
+    XmlMetaStoreStreamWriter writer = new XmlMetaStoreStreamWriter( out );
+    StringBuilder text = new StringBuilder();
+    for ( int i = 0; i < 10000; i++ ) {
+      text.append( "&x" );
+    }
+    writer.writeStartElement( "value" );
+    writer.writeCharacters( text.toString() );
+    assertTrue( out.getBuffer().length() > 0 );
+    writer.writeEndDocument();
+    assertTrue( out.toString().endsWith( "&amp;x</value>" + System.lineSeparator() ) );
+  }
+
+  private static void assertSameOutput( XmlMetaStoreElement element ) throws Exception {
+    ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+    element.saveToXmlStream( streamed );
+    ByteArrayOutputStream transformed = new ByteArrayOutputStream();
+    element.saveToDocument( transformed );
+
+    assertArrayEquals( transformed.toByteArray(), streamed.toByteArray() );
+  }
+}
@@ -0,0 +1,735 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+package org.pentaho.metastore.stores.xml;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.metastore.api.IMetaStoreElement;
+import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.api.MetaStoreElementOrder;
+import org.pentaho.metastore.api.exceptions.MetaStoreDependenciesExistsException;
+import org.pentaho.metastore.api.exceptions.MetaStoreElementExistException;
+import org.pentaho.metastore.api.exceptions.MetaStoreException;
+import org.pentaho.metastore.util.FileUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class XmlMetaStoreTest {
+
+  private static final String NAMESPACE = "test";
+
+  private XmlMetaStore metaStore;
+
+  @Before
+  public void before() throws Exception {
+    metaStore = new XmlMetaStore();
+    metaStore.createNamespace( NAMESPACE );
+  }
+
+  @After
+  public void after() throws Exception {
+    FileUtil.cleanFolder( new File( metaStore.getRootFolder() ).getParentFile(), true );
+  }
+
+  private IMetaStoreElementType createElementType( String name ) throws Exception {
+    IMetaStoreElementType elementType = metaStore.newElementType( NAMESPACE );
+    elementType.setName( name );
+    elementType.setDescription( name + " description" );
+    metaStore.createElementType( NAMESPACE, elementType );
+    return elementType;
+  }
+
+  /**
+   * Put a type folder with an unreadable type file in the namespace: a lookup that reads all the types fails.
+   */
+  private void createBrokenElementType() throws Exception {
+    File folder = new File( XmlUtil.getElementTypeFolder( metaStore.getRootFolder(), NAMESPACE, "broken" ) );
+    assertTrue( folder.mkdirs() );
+    Files.write( new File( folder, XmlUtil.ELEMENT_TYPE_FILE_NAME ).toPath(),
+      "<data-type><name>".getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  @Test
+  public void testGetElementTypeByNameReadsOnlyMatchingType() throws Exception {
+    createElementType( "Type" );
+    createBrokenElementType();
+
+    IMetaStoreElementType elementType = metaStore.getElementTypeByName( NAMESPACE, "Type" );
+    assertEquals( "Type", elementType.getName() );
+    assertEquals( "Type description", elementType.getDescription() );
+    assertEquals( metaStore.getName(), elementType.getMetaStoreName() );
+
+    assertEquals( "Type", metaStore.getElementTypeByName( NAMESPACE, "Type", false ).getName() );
+  }
+
+  @Test
+  public void testGetElementTypeByNameIgnoresCase() throws Exception {
+    createElementType( "Type" );
+
+    assertEquals( "Type", metaStore.getElementTypeByName( NAMESPACE, "TYPE" ).getName() );
+    assertEquals( "Type", metaStore.getElementTypeByName( NAMESPACE, "type" ).getName() );
+  }
+
+  @Test
+  public void testGetElementTypeByNameInOtherFolder() throws Exception {
+    XmlMetaStoreElementType elementType = metaStore.newElementType( NAMESPACE );
+    elementType.setName( "Other name" );
+    File folder = new File( XmlUtil.getElementTypeFolder( metaStore.getRootFolder(), NAMESPACE, "folder" ) );
+    assertTrue( folder.mkdirs() );
+    elementType.setFilename( new File( folder, XmlUtil.ELEMENT_TYPE_FILE_NAME ).getPath() );
+    elementType.save();
+
+    IMetaStoreElementType found = metaStore.getElementTypeByName( NAMESPACE, "Other name" );
+    assertEquals( "folder", found.getId() );
+
+    // The folder is now known, the other types don't need to be read anymore
+    //
+    createBrokenElementType();
+    assertEquals( "folder", metaStore.getElementTypeByName( NAMESPACE, "Other name" ).getId() );
+  }
+
+  @Test
+  public void testGetElementTypeByNameAfterDelete() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    metaStore.deleteElementType( NAMESPACE, elementType );
+
+    assertNull( metaStore.getElementTypeByName( NAMESPACE, "Type" ) );
+    assertNull( metaStore.getElementTypeByName( NAMESPACE, null ) );
+  }
+
+  @Test
+  public void testGetElementsInParallel() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    for ( int i = 0; i < 20; i++ ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( "element" + i );
+      metaStore.createElement( NAMESPACE, elementType, element );
+    }
+    List<IMetaStoreElement> expected = metaStore.getElements( NAMESPACE, elementType );
+
+    metaStore.setElementLoadingParallelism( 4 );
+    List<IMetaStoreElement> elements = metaStore.getElements( NAMESPACE, elementType );
+    assertEquals( 20, elements.size() );
+    for ( int i = 0; i < expected.size(); i++ ) {
+      assertEquals( expected.get( i ).getName(), elements.get( i ).getName() );
+    }
+  }
+
+  @Test
+  public void testGetElementsInParallelCollectsExceptions() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    for ( int i = 0; i < 5; i++ ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( "element" + i );
+      metaStore.createElement( NAMESPACE, elementType, element );
+    }
+    Files.write( new File( XmlUtil.getElementFile( metaStore.getRootFolder(), NAMESPACE, "Type", "broken" ) ).toPath(),
+      "<element><name>".getBytes( StandardCharsets.UTF_8 ) );
+    metaStore.setElementLoadingParallelism( 3 );
+
+    List<MetaStoreException> exceptions = new ArrayList<>();
+    assertEquals( 5, metaStore.getElements( NAMESPACE, elementType, true, exceptions ).size() );
+    assertEquals( 1, exceptions.size() );
+    assertTrue( exceptions.get( 0 ).getMessage().contains( "'broken'" ) );
+
+    try {
+      metaStore.getElements( NAMESPACE, elementType );
+      fail( "The broken element should abort the list" );
+    } catch ( MetaStoreException e ) {
+      // OK
+    }
+  }
+
+  @Test
+  public void testGetElementsLazily() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    for ( int i = 0; i < 5; i++ ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( "element" + i );
+      element.addChild( metaStore.newAttribute( "attribute", "value" + i ) );
+      metaStore.createElement( NAMESPACE, elementType, element );
+    }
+
+    AtomicInteger parsed = new AtomicInteger();
+    XmlMetaStore restarted = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() ) {
+      @Override
+      protected XmlMetaStoreElement newElement( String filename ) throws MetaStoreException {
+        parsed.incrementAndGet();
+        return super.newElement( filename );
+      }
+    };
+    List<IMetaStoreElement> elements = restarted.getElements( NAMESPACE, elementType, true, null, true );
+    assertEquals( 5, elements.size() );
+    List<String> names = new ArrayList<>();
+    for ( IMetaStoreElement element : elements ) {
+      names.add( element.getName() );
+      assertEquals( element.getName(), element.getId() );
+    }
+    Collections.sort( names );
+    assertEquals( Arrays.asList( "element0", "element1", "element2", "element3", "element4" ), names );
+    assertEquals( 0, parsed.get() );
+
+    // The rest of the element is read when it is used
+    //
+    IMetaStoreElement element = elements.get( 0 );
+    assertEquals( "value" + element.getName().substring( 7 ), element.getChild( "attribute" ).getValue() );
+    assertTrue( ( (XmlMetaStoreLazyElement) element ).isLoaded() );
+    assertEquals( 1, parsed.get() );
+
+    // A deleted element can't be read anymore
+    //
+    metaStore.deleteElement( NAMESPACE, elementType, elements.get( 1 ).getId() );
+    try {
+      elements.get( 1 ).getChildren();
+      fail( "The deleted element can't be loaded" );
+    } catch ( RuntimeException e ) {
+      // OK
+    }
+  }
+
+  @Test
+  public void testCountElementsAndElementExistsDontParseElements() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    for ( int i = 0; i < 3; i++ ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( "element" + i );
+      metaStore.createElement( NAMESPACE, elementType, element );
+    }
+
+    AtomicInteger parsed = new AtomicInteger();
+    XmlMetaStore restarted = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() ) {
+      @Override
+      protected XmlMetaStoreElement newElement( String filename ) throws MetaStoreException {
+        parsed.incrementAndGet();
+        return super.newElement( filename );
+      }
+    };
+    assertEquals( 3, restarted.countElements( NAMESPACE, elementType ) );
+    assertTrue( restarted.elementExists( NAMESPACE, elementType, "element1" ) );
+    assertFalse( restarted.elementExists( NAMESPACE, elementType, "element3" ) );
+
+    // The elements are listed as dependencies by their IDs
+    //
+    try {
+      restarted.deleteElementType( NAMESPACE, elementType );
+      fail( "The element type still has elements" );
+    } catch ( MetaStoreDependenciesExistsException e ) {
+      List<String> dependencies = new ArrayList<>( e.getDependencies() );
+      Collections.sort( dependencies );
+      assertEquals( Arrays.asList( "element0", "element1", "element2" ), dependencies );
+    }
+    try {
+      restarted.deleteNamespace( NAMESPACE );
+      fail( "The namespace still has element types" );
+    } catch ( MetaStoreDependenciesExistsException e ) {
+      assertEquals( Collections.singletonList( elementType.getId() ), e.getDependencies() );
+    }
+    assertEquals( 0, parsed.get() );
+
+    restarted.deleteElement( NAMESPACE, elementType, "element1" );
+    assertEquals( 2, metaStore.countElements( NAMESPACE, elementType ) );
+    assertFalse( metaStore.elementExists( NAMESPACE, elementType, "element1" ) );
+  }
+
+  @Test
+  public void testGetElementsPageParsesOnlyThePage() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    for ( String name : new String[] { "c", "A", "e", "b", "d" } ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( name );
+      metaStore.createElement( NAMESPACE, elementType, element );
+    }
+    long now = System.currentTimeMillis();
+    for ( String id : new String[] { "b", "d", "A", "c", "e" } ) {
+      now -= 10000L;
+      assertTrue( new File( XmlUtil.getElementFile( metaStore.getRootFolder(), NAMESPACE, "Type", id ) )
+        .setLastModified( now ) );
+    }
+
+    AtomicInteger parsed = new AtomicInteger();
+    XmlMetaStore restarted = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() ) {
+      @Override
+      protected XmlMetaStoreElement newElement( String filename ) throws MetaStoreException {
+        parsed.incrementAndGet();
+        return super.newElement( filename );
+      }
+    };
+    restarted.setNameIndexEnabled( true );
+    assertEquals( Arrays.asList( "A", "b" ),
+      getNames( restarted.getElementsPage( NAMESPACE, elementType, MetaStoreElementOrder.NAME, 0, 2 ) ) );
+    assertEquals( 2, parsed.get() );
+    assertEquals( Arrays.asList( "e" ),
+      getNames( restarted.getElementsPage( NAMESPACE, elementType, MetaStoreElementOrder.NAME, 4, 2 ) ) );
+    assertTrue( restarted.getElementsPage( NAMESPACE, elementType, MetaStoreElementOrder.NAME, 5, 2 ).isEmpty() );
+    assertEquals( Arrays.asList( "b", "d", "A" ),
+      getNames( restarted.getElementsPage( NAMESPACE, elementType, MetaStoreElementOrder.LAST_MODIFIED, 0, 3 ) ) );
+    assertEquals( 6, parsed.get() );
+
+    // Changes made by another store are picked up
+    //
+    metaStore.deleteElement( NAMESPACE, elementType, "A" );
+    IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+    element.setName( "a2" );
+    metaStore.createElement( NAMESPACE, elementType, element );
+    assertEquals( Arrays.asList( "a2", "b" ),
+      getNames( restarted.getElementsPage( NAMESPACE, elementType, MetaStoreElementOrder.NAME, 0, 2 ) ) );
+    assertEquals( Arrays.asList( "a2" ),
+      getNames( restarted.getElementsPage( NAMESPACE, elementType, MetaStoreElementOrder.LAST_MODIFIED, 0, 1 ) ) );
+  }
+
+  @Test
+  public void testGetElementsPageWithoutIndexReadsNamesOnce() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    for ( String name : new String[] { "c", "A", "b" } ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( name );
+      metaStore.createElement( NAMESPACE, elementType, element );
+    }
+    AtomicInteger read = new AtomicInteger();
+    XmlMetaStore restarted = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() ) {
+      @Override
+      protected String readElementName( String filename ) throws MetaStoreException {
+        read.incrementAndGet();
+        return super.readElementName( filename );
+      }
+    };
+    assertEquals( Arrays.asList( "A", "b" ),
+      getNames( restarted.getElementsPage( NAMESPACE, elementType, MetaStoreElementOrder.NAME, 0, 2 ) ) );
+    assertEquals( Arrays.asList( "c" ),
+      getNames( restarted.getElementsPage( NAMESPACE, elementType, MetaStoreElementOrder.NAME, 2, 2 ) ) );
+    assertEquals( 3, read.get() );
+
+    // Only the new file is read
+    //
+    IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+    element.setName( "a2" );
+    metaStore.createElement( NAMESPACE, elementType, element );
+    assertEquals( Arrays.asList( "A", "a2" ),
+      getNames( restarted.getElementsPage( NAMESPACE, elementType, MetaStoreElementOrder.NAME, 0, 2 ) ) );
+    assertEquals( 4, read.get() );
+  }
+
+  private static List<String> getNames( List<IMetaStoreElement> elements ) {
+    List<String> names = new ArrayList<>();
+    for ( IMetaStoreElement element : elements ) {
+      names.add( element.getName() );
+    }
+    return names;
+  }
+
+  @Test
+  public void testShardedLayout() throws Exception {
+    metaStore.setShardedLayout( true );
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    for ( int i = 0; i < 40; i++ ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( "element" + i );
+      element.addChild( metaStore.newAttribute( "attribute", "value" + i ) );
+      metaStore.createElement( NAMESPACE, elementType, element );
+    }
+    File elementTypeFolder = new File( XmlUtil.getElementTypeFolder( metaStore.getRootFolder(), NAMESPACE, "Type" ) );
+    assertTrue( new File( XmlUtil.getShardedElementFile( metaStore.getRootFolder(), NAMESPACE, "Type", "element7" ) )
+      .exists() );
+    assertFalse( new File( elementTypeFolder, "element7.xml" ).exists() );
+
+    // Any store reads the layout from the folder
+    //
+    XmlMetaStore restarted = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() );
+    assertEquals( 40, restarted.getElements( NAMESPACE, elementType ).size() );
+    assertEquals( 40, restarted.countElements( NAMESPACE, elementType ) );
+    assertTrue( restarted.elementExists( NAMESPACE, elementType, "element39" ) );
+    assertEquals( "value12",
+      restarted.getElementByName( NAMESPACE, elementType, "element12" ).getChild( "attribute" ).getValue() );
+
+    IMetaStoreElement element = restarted.getElement( NAMESPACE, elementType, "element3" );
+    element.getChild( "attribute" ).setValue( "changed" );
+    restarted.updateElement( NAMESPACE, restarted.getElementTypeByName( NAMESPACE, "Type" ), "element3", element );
+    assertEquals( "changed",
+      metaStore.getElement( NAMESPACE, elementType, "element3" ).getChild( "attribute" ).getValue() );
+
+    metaStore.deleteElements( NAMESPACE, elementType, metaStore.getElementIds( NAMESPACE, elementType ), null );
+    assertEquals( 0, restarted.countElements( NAMESPACE, elementType ) );
+    metaStore.deleteElementType( NAMESPACE, elementType );
+    assertFalse( elementTypeFolder.exists() );
+  }
+
+  @Test
+  public void testMigrateToShardedLayout() throws Exception {
+    metaStore.setNameIndexEnabled( true );
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    for ( int i = 0; i < 20; i++ ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( "element" + i );
+      metaStore.createElement( NAMESPACE, elementType, element );
+    }
+    assertEquals( "element5", metaStore.getElementByName( NAMESPACE, elementType, "element5" ).getName() );
+
+    XmlMetaStore other = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() );
+    assertEquals( 20, other.migrateToShardedLayout() );
+    assertEquals( 0, other.migrateToShardedLayout() );
+    File elementTypeFolder = new File( XmlUtil.getElementTypeFolder( metaStore.getRootFolder(), NAMESPACE, "Type" ) );
+    assertFalse( new File( elementTypeFolder, "element5.xml" ).exists() );
+
+    // The store that created the elements finds them in their shards, the name index is still valid
+    //
+    assertEquals( 20, metaStore.getElements( NAMESPACE, elementType ).size() );
+    assertEquals( "element5", metaStore.getElementByName( NAMESPACE, elementType, "element5" ).getName() );
+    IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+    element.setName( "element20" );
+    metaStore.createElement( NAMESPACE, elementType, element );
+    assertTrue( new File( XmlUtil.getShardedElementFile( metaStore.getRootFolder(), NAMESPACE, "Type", "element20" ) )
+      .exists() );
+
+    // An element the migration didn't get to is still found and moved the next time
+    //
+    File shardedFile =
+        new File( XmlUtil.getShardedElementFile( metaStore.getRootFolder(), NAMESPACE, "Type", "element8" ) );
+    Files.move( shardedFile.toPath(), new File( elementTypeFolder, "element8.xml" ).toPath() );
+    assertEquals( 21, metaStore.countElements( NAMESPACE, elementType ) );
+    assertEquals( "element8", metaStore.getElement( NAMESPACE, elementType, "element8" ).getName() );
+    assertEquals( 1, metaStore.migrateToShardedLayout( NAMESPACE, elementType ) );
+    assertTrue( shardedFile.exists() );
+  }
+
+  @Test
+  public void testFlatLayoutIsOnlyCheckedOnAMiss() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+    element.setName( "element" );
+    metaStore.createElement( NAMESPACE, elementType, element );
+
+    List<String> checked = new ArrayList<>();
+    XmlMetaStore restarted = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() ) {
+      @Override
+      protected boolean pathExists( String path ) {
+        checked.add( new File( path ).getName() );
+        return super.pathExists( path );
+      }
+    };
+    assertEquals( "element", restarted.getElement( NAMESPACE, elementType, "element" ).getName() );
+    assertTrue( restarted.elementExists( NAMESPACE, elementType, "element" ) );
+    assertFalse( checked.contains( XmlUtil.SHARDED_LAYOUT_FILE_NAME ) );
+
+    assertNull( restarted.getElement( NAMESPACE, elementType, "missing" ) );
+    assertTrue( checked.contains( XmlUtil.SHARDED_LAYOUT_FILE_NAME ) );
+  }
+
+  @Test
+  public void testCreateElementsCollectsExceptions() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    IMetaStoreElement existing = metaStore.newElement( elementType, null, null );
+    existing.setName( "element3" );
+    metaStore.createElement( NAMESPACE, elementType, existing );
+
+    List<IMetaStoreElement> elements = new ArrayList<>();
+    for ( int i = 0; i < 10; i++ ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( "element" + i );
+      element.addChild( metaStore.newAttribute( "attribute", "value" + i ) );
+      elements.add( element );
+    }
+    IMetaStoreElement duplicate = metaStore.newElement( elementType, null, null );
+    duplicate.setName( "element5" );
+    elements.add( duplicate );
+    metaStore.setElementLoadingParallelism( 4 );
+
+    List<MetaStoreException> exceptions = new ArrayList<>();
+    metaStore.createElements( NAMESPACE, elementType, elements, exceptions );
+    assertEquals( 2, exceptions.size() );
+    assertTrue( exceptions.get( 0 ).getMessage().contains( "'element3'" ) );
+    assertTrue( exceptions.get( 0 ).getCause() instanceof MetaStoreElementExistException );
+    assertTrue( exceptions.get( 1 ).getMessage().contains( "'element5'" ) );
+    assertEquals( 10, metaStore.getElements( NAMESPACE, elementType ).size() );
+    assertEquals( "value7",
+      metaStore.getElementByName( NAMESPACE, elementType, "element7" ).getChild( "attribute" ).getValue() );
+
+    // A strict batch doesn't write anything if one of the elements already exists
+    //
+    IMetaStoreElement added = metaStore.newElement( elementType, null, null );
+    added.setName( "added" );
+    try {
+      metaStore.createElements( NAMESPACE, elementType, Arrays.asList( added, duplicate ), null );
+      fail( "The existing element should abort the batch" );
+    } catch ( MetaStoreElementExistException e ) {
+      // OK
+    }
+    assertNull( metaStore.getElementByName( NAMESPACE, elementType, "added" ) );
+  }
+
+  @Test
+  public void testUpdateAndDeleteElements() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    metaStore.setElementLoadingParallelism( 3 );
+    List<IMetaStoreElement> elements = new ArrayList<>();
+    for ( int i = 0; i < 6; i++ ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( "element" + i );
+      elements.add( element );
+    }
+    metaStore.createElements( NAMESPACE, elementType, elements, null );
+
+    for ( IMetaStoreElement element : elements ) {
+      element.addChild( metaStore.newAttribute( "attribute", "updated" ) );
+    }
+    IMetaStoreElement missing = metaStore.newElement( elementType, "missing", null );
+    missing.setName( "missing" );
+    List<IMetaStoreElement> updates = new ArrayList<>( elements );
+    updates.add( missing );
+    List<MetaStoreException> exceptions = new ArrayList<>();
+    metaStore.updateElements( NAMESPACE, elementType, updates, exceptions );
+    assertEquals( 1, exceptions.size() );
+    assertTrue( exceptions.get( 0 ).getMessage().contains( "'missing'" ) );
+    for ( IMetaStoreElement element : metaStore.getElements( NAMESPACE, elementType ) ) {
+      assertEquals( "updated", element.getChild( "attribute" ).getValue() );
+    }
+
+    metaStore.deleteElements( NAMESPACE, elementType, Arrays.asList( "element1", "element4", "missing" ), null );
+    List<String> names = new ArrayList<>();
+    for ( IMetaStoreElement element : metaStore.getElements( NAMESPACE, elementType ) ) {
+      names.add( element.getName() );
+    }
+    Collections.sort( names );
+    assertEquals( Arrays.asList( "element0", "element2", "element3", "element5" ), names );
+  }
+
+  @Test
+  public void testGetElementByNameParsesOnlyMatchingElement() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    for ( int i = 0; i < 10; i++ ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( "element" + i );
+      element.addChild( metaStore.newAttribute( "attribute", "value" + i ) );
+      metaStore.createElement( NAMESPACE, elementType, element );
+    }
+
+    AtomicInteger parsed = new AtomicInteger();
+    XmlMetaStore restarted = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() ) {
+      @Override
+      protected XmlMetaStoreElement newElement( String filename ) throws MetaStoreException {
+        parsed.incrementAndGet();
+        return super.newElement( filename );
+      }
+    };
+    IMetaStoreElement element = restarted.getElementByName( NAMESPACE, elementType, "Element7" );
+    assertEquals( "element7", element.getName() );
+    assertEquals( "value7", element.getChild( "attribute" ).getValue() );
+    assertEquals( 1, parsed.get() );
+
+    // The names of the files read along the way are cached
+    //
+    assertNull( restarted.getElementByName( NAMESPACE, elementType, "missing" ) );
+    int parsedBefore = parsed.get();
+    for ( int i = 0; i < 10; i++ ) {
+      assertEquals( "element" + i, restarted.getElementByName( NAMESPACE, elementType, "element" + i ).getName() );
+    }
+    assertEquals( parsedBefore + 10, parsed.get() );
+  }
+
+  @Test
+  public void testGetElementsByIdsAndNames() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    for ( int i = 0; i < 10; i++ ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( "element" + i );
+      metaStore.createElement( NAMESPACE, elementType, element );
+    }
+
+    AtomicInteger parsed = new AtomicInteger();
+    AtomicInteger namesRead = new AtomicInteger();
+    XmlMetaStore restarted = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() ) {
+      @Override
+      protected XmlMetaStoreElement newElement( String filename ) throws MetaStoreException {
+        parsed.incrementAndGet();
+        return super.newElement( filename );
+      }
+
+      @Override
+      protected String readElementName( String filename ) throws MetaStoreException {
+        namesRead.incrementAndGet();
+        return super.readElementName( filename );
+      }
+    };
+    restarted.setElementLoadingParallelism( 3 );
+
+    Map<String, IMetaStoreElement> elements = restarted.getElementsByIds( NAMESPACE, elementType,
+      Arrays.asList( "element8", "missing", "element2", "element8" ) );
+    assertEquals( Arrays.asList( "element8", "element2" ), new ArrayList<>( elements.keySet() ) );
+    assertEquals( "element2", elements.get( "element2" ).getName() );
+    assertEquals( 2, parsed.get() );
+
+    // All the names are searched in one pass over the files
+    //
+    parsed.set( 0 );
+    elements = restarted.getElementsByNames( NAMESPACE, elementType,
+      Arrays.asList( "Element5", "missing", "element3", "ELEMENT3" ) );
+    assertEquals( Arrays.asList( "Element5", "element3", "ELEMENT3" ), new ArrayList<>( elements.keySet() ) );
+    assertEquals( "element5", elements.get( "Element5" ).getName() );
+    assertEquals( "element3", elements.get( "ELEMENT3" ).getName() );
+    assertEquals( 2, parsed.get() );
+    assertTrue( namesRead.get() <= 10 );
+
+    // Afterwards the IDs of the names are cached
+    //
+    namesRead.set( 0 );
+    elements = restarted.getElementsByNames( NAMESPACE, elementType, Arrays.asList( "element0", "element9" ) );
+    assertEquals( 2, elements.size() );
+    assertEquals( 0, namesRead.get() );
+  }
+
+  @Test
+  public void testReadNameStopsAtName() throws Exception {
+    String xml = "<element><id>x</id><security><owner/></security><name>The name</name><children>";
+    assertEquals( "The name",
+      BaseXmlMetaStoreElement.readName( new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ), "x" ) );
+    assertNull( BaseXmlMetaStoreElement.readName(
+      new ByteArrayInputStream( "<element/>".getBytes( StandardCharsets.UTF_8 ) ), "x" ) );
+  }
+
+  @Test
+  public void testMissingNamesAnsweredFromMemory() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    AtomicInteger read = new AtomicInteger();
+    XmlMetaStore store = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() ) {
+      @Override
+      protected String readElementName( String filename ) throws MetaStoreException {
+        read.incrementAndGet();
+        return super.readElementName( filename );
+      }
+    };
+    store.setMissingNameCacheEnabled( true );
+    IMetaStoreElement existing = store.newElement( elementType, null, null );
+    existing.setName( "existing" );
+    store.createElement( NAMESPACE, elementType, existing );
+
+    // Save new elements after checking that their names are free, like MetaStoreFactory does
+    //
+    assertNull( store.getElementByName( NAMESPACE, elementType, "new0" ) );
+    int readBefore = read.get();
+    for ( int i = 1; i < 20; i++ ) {
+      assertNull( store.getElementByName( NAMESPACE, elementType, "new" + i ) );
+      IMetaStoreElement element = store.newElement( elementType, null, null );
+      element.setName( "new" + i );
+      store.createElement( NAMESPACE, elementType, element );
+    }
+    assertEquals( readBefore, read.get() );
+    assertEquals( "new7", store.getElementByName( NAMESPACE, elementType, "NEW7" ).getName() );
+
+    // Another store adds an element: the folder changed so the names are read again
+    //
+    IMetaStoreElement other = metaStore.newElement( elementType, null, null );
+    other.setName( "other" );
+    metaStore.createElement( NAMESPACE, elementType, other );
+    new File( XmlUtil.getElementTypeFolder( metaStore.getRootFolder(), NAMESPACE, "Type" ) )
+      .setLastModified( System.currentTimeMillis() + 5000L );
+    assertEquals( "other", store.getElementByName( NAMESPACE, elementType, "other" ).getName() );
+  }
+
+  @Test
+  public void testMissingNameCacheSeesFilesRewrittenInPlace() throws Exception {
+    IMetaStoreElementType elementType = createElementType( "Type" );
+    metaStore.setMissingNameCacheEnabled( true );
+    IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+    element.setName( "first" );
+    metaStore.createElement( NAMESPACE, elementType, element );
+    assertNull( metaStore.getElementByName( NAMESPACE, elementType, "renamed" ) );
+
+    // An older version rewrites the element file with another name, which doesn't modify the folder
+    //
+    File folder = new File( XmlUtil.getElementTypeFolder( metaStore.getRootFolder(), NAMESPACE, "Type" ) );
+    long folderLastModified = folder.lastModified();
+    XmlMetaStoreElement changed = metaStore.newElement( elementType, "first", null );
+    changed.setName( "renamed" );
+    changed.setFilename( XmlUtil.getElementFile( metaStore.getRootFolder(), NAMESPACE, "Type", "first" ) );
+    changed.save();
+    new File( changed.getFilename() ).setLastModified( System.currentTimeMillis() + 5000L );
+    assertTrue( folder.setLastModified( folderLastModified ) );
+
+    assertEquals( "renamed", metaStore.getElementByName( NAMESPACE, elementType, "renamed" ).getName() );
+  }
+
+  @Test
+  public void testMissingElementTypeAnsweredFromMemory() throws Exception {
+    createElementType( "Type" );
+    metaStore.setMissingNameCacheEnabled( true );
+    assertNull( metaStore.getElementTypeByName( NAMESPACE, "Missing" ) );
+    createElementType( "Created" );
+
+    // A broken type makes every lookup that reads all the types fail. Hide it by restoring the time of the folder.
+    //
+    File namespaceFolder = new File( XmlUtil.getNamespaceFolder( metaStore.getRootFolder(), NAMESPACE ) );
+    long lastModified = namespaceFolder.lastModified();
+    createBrokenElementType();
+    assertTrue( namespaceFolder.setLastModified( lastModified ) );
+    assertNull( metaStore.getElementTypeByName( NAMESPACE, "Missing" ) );
+    assertEquals( "Created", metaStore.getElementTypeByName( NAMESPACE, "Created" ).getName() );
+
+    assertTrue( namespaceFolder.setLastModified( lastModified + 5000L ) );
+    try {
+      metaStore.getElementTypeByName( NAMESPACE, "Missing" );
+      fail( "The changed namespace folder should be read again" );
+    } catch ( MetaStoreException e ) {
+      // OK
+    }
+  }
+
+  @Test
+  public void testElementTypesAreCached() throws Exception {
+    createElementType( "Type" );
+    AtomicInteger parsed = new AtomicInteger();
+    XmlMetaStore store = new XmlMetaStore( new File( metaStore.getRootFolder() ).getParent() ) {
+      @Override
+      public XmlMetaStoreElementType newElementTypeFromFile( String namespace, String filename )
+        throws MetaStoreException {
+        parsed.incrementAndGet();
+        return super.newElementTypeFromFile( namespace, filename );
+      }
+    };
+
+    IMetaStoreElementType first = store.getElementTypeByName( NAMESPACE, "Type" );
+    first.setDescription( "Changed by the caller" );
+    IMetaStoreElementType second = store.getElementType( NAMESPACE, "Type" );
+    assertEquals( 1, store.getElementTypes( NAMESPACE ).size() );
+    assertEquals( 1, parsed.get() );
+    assertEquals( "Type description", second.getDescription() );
+    assertEquals( store.getName(), second.getMetaStoreName() );
+
+    // Changes made by another store are picked up
+    //
+    IMetaStoreElementType changed = metaStore.getElementType( NAMESPACE, "Type" );
+    changed.setDescription( "Changed in the other store" );
+    metaStore.updateElementType( NAMESPACE, changed );
+    File typeFile = new File( XmlUtil.getElementTypeFile( metaStore.getRootFolder(), NAMESPACE, "Type" ) );
+    assertTrue( typeFile.setLastModified( typeFile.lastModified() + 5000L ) );
+    assertEquals( "Changed in the other store", store.getElementType( NAMESPACE, "Type" ).getDescription() );
+    assertEquals( 2, parsed.get() );
+
+    store.setElementTypeCacheEnabled( false );
+    store.getElementType( NAMESPACE, "Type" );
+    assertEquals( 3, parsed.get() );
+  }
+}
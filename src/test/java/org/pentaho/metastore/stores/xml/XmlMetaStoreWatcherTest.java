@@ -0,0 +1,176 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+package org.pentaho.metastore.stores.xml;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.metastore.api.IMetaStoreElement;
+import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.util.FileUtil;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class XmlMetaStoreWatcherTest {
+
+  private static final String NAMESPACE = "test";
+
+  private final AtomicInteger folderListings = new AtomicInteger();
+  private final AtomicInteger fileListings = new AtomicInteger();
+
+  private XmlMetaStore metaStore;
+  private IMetaStoreElementType elementType;
+
+  @Before
+  public void before() throws Exception {
+    metaStore = new XmlMetaStore() {
+      @Override
+      protected List<String> listFolders( String folder ) {
+        folderListings.incrementAndGet();
+        return super.listFolders( folder );
+      }
+
+      @Override
+      protected List<File> listFiles( String folder, Map<String, Long> processedFiles ) {
+        fileListings.incrementAndGet();
+        return super.listFiles( folder, processedFiles );
+      }
+    };
+    metaStore.createNamespace( NAMESPACE );
+    elementType = metaStore.newElementType( NAMESPACE );
+    elementType.setName( "Type" );
+    metaStore.createElementType( NAMESPACE, elementType );
+    createElement( "one" );
+  }
+
+  @After
+  public void after() throws Exception {
+    metaStore.stopWatching();
+    FileUtil.cleanFolder( new File( metaStore.getRootFolder() ).getParentFile(), true );
+  }
+
+  private void createElement( String name ) throws Exception {
+    IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+    element.setName( name );
+    element.addChild( metaStore.newAttribute( "attr", "value" ) );
+    metaStore.createElement( NAMESPACE, elementType, element );
+  }
+
+  private static void waitFor( Callable<Boolean> condition ) throws Exception {
+    long end = System.currentTimeMillis() + 20000L;
+    while ( !condition.call() ) {
+      assertTrue( "Change not detected in time", System.currentTimeMillis() < end );
+      Thread.sleep( 50 );
+    }
+  }
+
+  @Test
+  public void testListingsAreCachedWhileWatching() throws Exception {
+    assertTrue( metaStore.startWatching() );
+    assertTrue( metaStore.isWatching() );
+
+    assertEquals( 1, metaStore.getNamespaces().size() );
+    assertEquals( 1, metaStore.getElements( NAMESPACE, elementType ).size() );
+    int folders = folderListings.get();
+    int files = fileListings.get();
+
+    for ( int i = 0; i < 3; i++ ) {
+      assertEquals( 1, metaStore.getNamespaces().size() );
+      assertEquals( 1, metaStore.getElements( NAMESPACE, elementType ).size() );
+    }
+    assertEquals( folders, folderListings.get() );
+    assertEquals( files, fileListings.get() );
+
+    metaStore.stopWatching();
+    assertFalse( metaStore.isWatching() );
+    metaStore.getNamespaces();
+    assertEquals( folders + 1, folderListings.get() );
+  }
+
+  @Test
+  public void testOwnChangesAreVisibleImmediately() throws Exception {
+    assertTrue( metaStore.startWatching() );
+    assertEquals( 1, metaStore.getElements( NAMESPACE, elementType ).size() );
+    assertEquals( 1, metaStore.getNamespaces().size() );
+
+    createElement( "two" );
+    assertEquals( 2, metaStore.getElements( NAMESPACE, elementType ).size() );
+
+    metaStore.deleteElement( NAMESPACE, elementType, "one" );
+    assertEquals( 1, metaStore.getElements( NAMESPACE, elementType ).size() );
+
+    metaStore.createNamespace( "other" );
+    assertEquals( 2, metaStore.getNamespaces().size() );
+  }
+
+  @Test
+  public void testExternalChangesAreDetected() throws Exception {
+    metaStore.setElementCache( new XmlMetaStoreElementCache() );
+    assertTrue( metaStore.startWatching() );
+    assertEquals( 1, metaStore.getNamespaces().size() );
+    assertEquals( 1, metaStore.getElements( NAMESPACE, elementType ).size() );
+
+    // A new namespace with a new element type
+    //
+    File elementTypeFolder = new File( metaStore.getRootFolder(), "external" + File.separator + "Type" );
+    assertTrue( elementTypeFolder.mkdirs() );
+    waitFor( () -> metaStore.getNamespaces().size() == 2 );
+    waitFor( () -> metaStore.getElementTypeIds( "external" ).size() == 1 );
+
+    // A new element file
+    //
+    File one = new File( XmlUtil.getElementFile( metaStore.getRootFolder(), NAMESPACE, "Type", "one" ) );
+    File two = new File( one.getParentFile(), "two.xml" );
+    String xml = new String( Files.readAllBytes( one.toPath() ), StandardCharsets.UTF_8 );
+    Files.write( two.toPath(), xml.getBytes( StandardCharsets.UTF_8 ) );
+    waitFor( () -> metaStore.getElements( NAMESPACE, elementType ).size() == 2 );
+
+    // A changed element file, even if the size and modification time stay the same
+    //
+    long lastModified = one.lastModified();
+    Files.write( one.toPath(), xml.replace( ">value<", ">VALUE<" ).getBytes( StandardCharsets.UTF_8 ) );
+    assertTrue( one.setLastModified( lastModified ) );
+    waitFor( () -> "VALUE".equals( metaStore.getElement( NAMESPACE, elementType, "one" ).getChild( "attr" )
+      .getValue() ) );
+
+    // A deleted element file
+    //
+    assertTrue( two.delete() );
+    waitFor( () -> metaStore.getElements( NAMESPACE, elementType ).size() == 1 );
+  }
+
+  @Test
+  public void testFallBackWhenRootCantBeWatched() throws Exception {
+    metaStore.setRootFolder( new File( metaStore.getRootFolder(), "missing" ).getPath() );
+    assertFalse( metaStore.startWatching() );
+    assertFalse( metaStore.isWatching() );
+  }
+
+  @Test
+  public void testNetworkFileSystemsAreNotWatched() throws Exception {
+    assertTrue( XmlMetaStoreWatcher.isRemoteFileStoreType( "nfs4" ) );
+    assertTrue( XmlMetaStoreWatcher.isRemoteFileStoreType( "CIFS" ) );
+    assertFalse( XmlMetaStoreWatcher.isRemoteFileStoreType( "ext4" ) );
+    assertFalse( XmlMetaStoreWatcher.isRemoteFileStoreType( "NTFS" ) );
+    assertFalse( XmlMetaStoreWatcher.isRemote( new File( metaStore.getRootFolder() ).toPath() ) );
+  }
+}
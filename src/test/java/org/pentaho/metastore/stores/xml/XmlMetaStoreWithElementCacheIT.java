@@ -0,0 +1,26 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+package org.pentaho.metastore.stores.xml;
+
+import org.pentaho.metastore.api.exceptions.MetaStoreException;
+import org.pentaho.metastore.test.XmlMetaStoreIT;
+
+public class XmlMetaStoreWithElementCacheIT extends XmlMetaStoreIT {
+
+  @Override
+  protected XmlMetaStore createMetaStore() throws MetaStoreException {
+    XmlMetaStore metaStore = new XmlMetaStore( new AutomaticXmlMetaStoreCache() );
+    metaStore.setElementCache( new XmlMetaStoreElementCache() );
+    return metaStore;
+  }
+
+}
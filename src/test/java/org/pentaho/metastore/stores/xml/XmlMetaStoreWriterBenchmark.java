@@ -0,0 +1,80 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.stores.xml;
+
+import org.pentaho.metastore.api.security.MetaStoreElementOwnerType;
+import org.pentaho.metastore.api.security.MetaStoreObjectPermission;
+import org.pentaho.metastore.api.security.MetaStoreOwnerPermissions;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Compares saving an element with the XMLStreamWriter against building a DOM and running it through a Transformer.
+ * This is not a unit test, run it with:
+ *
+ * <pre>
+ * java -cp ... org.pentaho.metastore.stores.xml.XmlMetaStoreWriterBenchmark [iterations]
+ * </pre>
+ */
+public class XmlMetaStoreWriterBenchmark {
+
+  public static void main( String[] args ) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt( args[0] ) : 20000;
+    XmlMetaStoreElement element = createElement();
+
+    // Warm up both paths before measuring
+    //
+    run( element, true, iterations );
+    run( element, false, iterations );
+
+    long streamNanos = run( element, true, iterations );
+    long domNanos = run( element, false, iterations );
+
+    System.out.println( String.format( "XMLStreamWriter : %8.2f us/save", streamNanos / 1000.0 / iterations ) );
+    System.out.println( String.format( "DOM+Transformer : %8.2f us/save", domNanos / 1000.0 / iterations ) );
+    System.out.println( String.format( "Speedup         : %8.2fx", (double) domNanos / streamNanos ) );
+  }
+
+  private static long run( XmlMetaStoreElement element, boolean streaming, int iterations ) throws Exception {
+    long start = System.nanoTime();
+    for ( int i = 0; i < iterations; i++ ) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream( 4096 );
+      if ( streaming ) {
+        element.saveToXmlStream( out );
+      } else {
+        element.saveToDocument( out );
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * @return an element shaped like a typical shared database connection: a few dozen attributes, one level of nesting.
+   */
+  private static XmlMetaStoreElement createElement() {
+    XmlMetaStoreElement element = new XmlMetaStoreElement( null, "benchmark", null );
+    element.setName( "benchmark" );
+    for ( int i = 0; i < 30; i++ ) {
+      element.addChild( new XmlMetaStoreAttribute( "attribute" + i, "value of attribute " + i ) );
+    }
+    XmlMetaStoreAttribute options = new XmlMetaStoreAttribute( "options", null );
+    for ( int i = 0; i < 10; i++ ) {
+      options.addChild( new XmlMetaStoreAttribute( "option" + i, i ) );
+    }
+    element.addChild( options );
+    element.setOwner( new XmlMetaStoreElementOwner( "admin", MetaStoreElementOwnerType.USER ) );
+    element.getOwnerPermissionsList().add( new MetaStoreOwnerPermissions(
+      new XmlMetaStoreElementOwner( "users", MetaStoreElementOwnerType.ROLE ), MetaStoreObjectPermission.READ ) );
+    return element;
+  }
+}
@@ -0,0 +1,97 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.metastore.stores.xml;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class XmlUtilTest {
+
+  @Test
+  public void testDocumentBuilderIsReused() throws Exception {
+    DocumentBuilder builder = XmlUtil.borrowDocumentBuilder();
+    XmlUtil.returnDocumentBuilder( builder );
+    long hits = XmlUtil.getPoolHits();
+    long creations = XmlUtil.getPoolCreations();
+
+    DocumentBuilder reused = XmlUtil.borrowDocumentBuilder();
+    XmlUtil.returnDocumentBuilder( reused );
+
+    assertEquals( hits + 1, XmlUtil.getPoolHits() );
+    assertEquals( creations, XmlUtil.getPoolCreations() );
+  }
+
+  @Test
+  public void testPooledDocumentBuilderStaysSecure() throws Exception {
+    String xml = "<?xml version=\"1.0\"?><!DOCTYPE element [<!ENTITY x \"y\">]><element>&x;</element>";
+    for ( int i = 0; i < 2; i++ ) {
+      DocumentBuilder builder = XmlUtil.borrowDocumentBuilder();
+      try {
+        builder.parse( new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ) );
+        fail( "A DOCTYPE declaration should be rejected" );
+      } catch ( SAXException e ) {
+        // OK
+      } finally {
+        XmlUtil.returnDocumentBuilder( builder );
+      }
+    }
+  }
+
+  @Test
+  public void testTransformerIsReconfiguredAfterReset() throws Exception {
+    Transformer transformer = XmlUtil.borrowTransformer();
+    transformer.setOutputProperty( OutputKeys.INDENT, "no" );
+    XmlUtil.returnTransformer( transformer );
+
+    long creations = XmlUtil.getPoolCreations();
+    Transformer reused = XmlUtil.borrowTransformer();
+    try {
+      assertEquals( creations, XmlUtil.getPoolCreations() );
+      assertEquals( "yes", reused.getOutputProperty( OutputKeys.INDENT ) );
+    } finally {
+      XmlUtil.returnTransformer( reused );
+    }
+  }
+
+  @Test
+  public void testXmlInputFactoryIsReused() throws Exception {
+    XMLInputFactory factory = XmlUtil.borrowXMLInputFactory();
+    XmlUtil.returnXMLInputFactory( factory );
+
+    long creations = XmlUtil.getPoolCreations();
+    XMLInputFactory reused = XmlUtil.borrowXMLInputFactory();
+    XmlUtil.returnXMLInputFactory( reused );
+
+    assertEquals( creations, XmlUtil.getPoolCreations() );
+    assertEquals( Boolean.FALSE, reused.getProperty( XMLInputFactory.SUPPORT_DTD ) );
+  }
+
+  @Test
+  public void testShardIgnoresTheCaseOfTheId() {
+    File lowerCase = new File( XmlUtil.getShardedElementFile( "root", "namespace", "Type", "element" ) );
+    File upperCase = new File( XmlUtil.getShardedElementFile( "root", "namespace", "Type", "ELEMENT" ) );
+    assertEquals( lowerCase.getParent(), upperCase.getParent() );
+    assertEquals( "ELEMENT.xml", upperCase.getName() );
+  }
+}
@@ -21,9 +21,12 @@ import org.pentaho.metastore.api.exceptions.MetaStoreException;
 import org.pentaho.metastore.api.security.MetaStoreElementOwnerType;
 import org.pentaho.metastore.stores.delegate.DelegatingMetaStore;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -1086,6 +1089,52 @@ public class DelegatingMetastoreTest {
         any( IMetaStoreElement.class ) );
   }
 
+  @Test
+  public void testGetElementsByNamesAsksEveryStoreForTheRemainingNames() throws MetaStoreException {
+    final String testNamespace = "test";
+    IMetaStoreElementType elementType = getMockElementTypeWithName( "type" );
+    IMetaStoreElement element1 = mock( IMetaStoreElement.class );
+    IMetaStoreElement element2 = mock( IMetaStoreElement.class );
+
+    IMetaStore metaStore1 = getMockMetaStoreWithName( "store_1" );
+    when( metaStore1.getElementTypeByName( testNamespace, "type" ) ).thenReturn( elementType );
+    when( metaStore1.getElementsByNames( eq( testNamespace ), eq( elementType ), any() ) )
+      .thenReturn( Collections.singletonMap( "b", element1 ) );
+    IMetaStore metaStore2 = getMockMetaStoreWithName( "store_2" );
+    when( metaStore2.getElementTypeByName( testNamespace, "type" ) ).thenReturn( elementType );
+    when( metaStore2.getElementsByNames( eq( testNamespace ), eq( elementType ), any() ) )
+      .thenReturn( Collections.singletonMap( "a", element2 ) );
+
+    DelegatingMetaStore delegatingMetaStore = new DelegatingMetaStore( metaStore1, metaStore2 );
+    Map<String, IMetaStoreElement> elements =
+        delegatingMetaStore.getElementsByNames( testNamespace, elementType, Arrays.asList( "a", "b", "c" ) );
+    assertEquals( Arrays.asList( "a", "b" ), new ArrayList<String>( elements.keySet() ) );
+    assertEquals( element2, elements.get( "a" ) );
+    assertEquals( element1, elements.get( "b" ) );
+    verify( metaStore2, never() ).getElementByName( any(), any( IMetaStoreElementType.class ), any() );
+  }
+
+  @Test
+  public void testCreateElementsOnlyCreatesElementsInActiveMetaStore() throws MetaStoreException {
+    final String inactiveName1 = "inactive_1";
+    final String activeName = "active";
+    final String testNamespace = "test";
+
+    IMetaStoreElementType mockElementType = mock( IMetaStoreElementType.class );
+    List<IMetaStoreElement> mockElements =
+        Arrays.asList( mock( IMetaStoreElement.class ), mock( IMetaStoreElement.class ) );
+    List<MetaStoreException> exceptions = new ArrayList<MetaStoreException>();
+
+    IMetaStore activeMetaStore = getMockMetaStoreWithName( activeName );
+    IMetaStore inactiveMetaStore1 = getMockMetaStoreWithName( inactiveName1 );
+
+    DelegatingMetaStore delegatingMetaStore = new DelegatingMetaStore( inactiveMetaStore1, activeMetaStore );
+    delegatingMetaStore.setActiveMetaStoreName( activeName );
+    delegatingMetaStore.createElements( testNamespace, mockElementType, mockElements, exceptions );
+    verify( activeMetaStore ).createElements( testNamespace, mockElementType, mockElements, exceptions );
+    verify( inactiveMetaStore1, never() ).createElements( any(), any( IMetaStoreElementType.class ), any(), any() );
+  }
+
   @Test( expected = MetaStoreException.class )
   public void testDeleteElementThrowsExceptionIfNoActive() throws MetaStoreException {
     final String inactiveName1 = "inactive_1";
@@ -13,6 +13,13 @@
 
 package org.pentaho.metastore.test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.pentaho.metastore.api.IMetaStoreElement;
+import org.pentaho.metastore.api.IMetaStoreElementType;
+import org.pentaho.metastore.api.MetaStoreElementOrder;
 import org.pentaho.metastore.stores.memory.MemoryMetaStore;
 
 public class MemoryMetaStoreTest extends MetaStoreTestBase {
@@ -34,4 +41,33 @@ public class MemoryMetaStoreTest extends MetaStoreTestBase {
     super.testParallelOneStore( metaStore );
   }
 
+  public void testElementsPage() throws Exception {
+    metaStore.createNamespace( "pages" );
+    IMetaStoreElementType elementType = metaStore.newElementType( "pages" );
+    elementType.setName( "Type" );
+    metaStore.createElementType( "pages", elementType );
+    for ( String name : new String[] { "c", "A", "b", "d" } ) {
+      IMetaStoreElement element = metaStore.newElement( elementType, null, null );
+      element.setName( name );
+      metaStore.createElement( "pages", elementType, element );
+    }
+
+    assertEquals( Arrays.asList( "A", "b" ),
+      getNames( metaStore.getElementsPage( "pages", elementType, MetaStoreElementOrder.NAME, 0, 2 ) ) );
+    assertEquals( Arrays.asList( "c", "d" ),
+      getNames( metaStore.getElementsPage( "pages", elementType, MetaStoreElementOrder.NAME, 2, 5 ) ) );
+    assertTrue( metaStore.getElementsPage( "pages", elementType, MetaStoreElementOrder.NAME, 4, 2 ).isEmpty() );
+
+    metaStore.updateElement( "pages", elementType, "b", metaStore.getElement( "pages", elementType, "b" ) );
+    assertEquals( Arrays.asList( "b", "d", "A" ),
+      getNames( metaStore.getElementsPage( "pages", elementType, MetaStoreElementOrder.LAST_MODIFIED, 0, 3 ) ) );
+  }
+
+  private static List<String> getNames( List<IMetaStoreElement> elements ) {
+    List<String> names = new ArrayList<String>();
+    for ( IMetaStoreElement element : elements ) {
+      names.add( element.getName() );
+    }
+    return names;
+  }
 }
@@ -339,6 +339,49 @@ public class MetaStoreFactoryTest extends TestCase {
     assertEquals( "descY", _x.getY().getDescription() );
   }
 
+  @Test
+  public void testFactoryReferencesAreShared() throws Exception {
+    MemoryMetaStore metaStore = new MemoryMetaStore();
+    metaStore.setName( "shared" );
+    MetaStoreFactory<X> factoryX = new MetaStoreFactory<X>( X.class, metaStore, "pentaho" );
+    MetaStoreFactory<Y> factoryY = new MetaStoreFactory<Y>( Y.class, metaStore, "pentaho" );
+    factoryX.addNameFactory( X.FACTORY_Y, factoryY );
+
+    for ( String name : new String[] { "x1", "x2" } ) {
+      X x = new X( name );
+      x.getYs().add( new Y( "1", "desc1" ) );
+      x.setY( new Y( "1", "desc1" ) );
+      factoryX.saveElement( x );
+    }
+
+    // Within one call every referenced element is loaded once
+    //
+    List<X> xs = factoryX.getElements();
+    assertEquals( 2, xs.size() );
+    assertSame( xs.get( 0 ).getY(), xs.get( 0 ).getYs().get( 0 ) );
+    assertSame( xs.get( 0 ).getY(), xs.get( 1 ).getY() );
+    assertNotSame( factoryX.loadElement( "x1" ).getY(), factoryX.loadElement( "x1" ).getY() );
+
+    // Across calls only with the cache of the referenced factory
+    //
+    assertFalse( factoryY.isReferenceCacheEnabled() );
+    factoryY.setReferenceCacheEnabled( true );
+    Y y = factoryX.loadElement( "x1" ).getY();
+    assertSame( y, factoryX.loadElement( "x2" ).getY() );
+    assertSame( y, factoryX.getElements().get( 0 ).getY() );
+
+    factoryY.saveElement( new Y( "1", "changed" ) );
+    Y changed = factoryX.loadElement( "x1" ).getY();
+    assertNotSame( y, changed );
+    assertEquals( "changed", changed.getDescription() );
+
+    factoryY.clearReferenceCache();
+    assertNotSame( changed, factoryX.loadElement( "x1" ).getY() );
+
+    factoryY.setReferenceCacheEnabled( false );
+    assertNotSame( factoryX.loadElement( "x1" ).getY(), factoryX.loadElement( "x1" ).getY() );
+  }
+
   /**
    * Save and load a complete Cube object in the IMetaStore through named references and factories.
    * Some object are saved through a factory with a name reference.  One dimension is embedded in the cube.
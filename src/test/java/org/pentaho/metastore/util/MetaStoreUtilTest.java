@@ -72,7 +72,7 @@ public class MetaStoreUtilTest {
     IMetaStoreElement elem1 = mock( IMetaStoreElement.class );
     elements.add( elem1 );
 
-    when( mockMetaStore.getElements( namespace, metaStoreElementType ) ).thenReturn( elements );
+    when( mockMetaStore.getElements( namespace, metaStoreElementType, true, null, true ) ).thenReturn( elements );
     when( elem1.getName() ).thenReturn( "test" );
 
     String[] names = metaStoreUtil.getElementNames( namespace, mockMetaStore, metaStoreElementType );